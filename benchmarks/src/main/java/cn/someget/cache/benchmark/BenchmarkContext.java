@@ -0,0 +1,80 @@
+package cn.someget.cache.benchmark;
+
+import com.github.fppt.jedismock.RedisServer;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.protocol.ProtocolVersion;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * 性能测试用的spring容器, 和业务里面一样通过自动装配加载本库
+ * redis用的是进程内的替身(jedis-mock), 测出来的redis耗时只能用来做前后对比, 不代表真实的网络开销
+ *
+ * @author agent
+ * @date 2026-10-17 20:39
+ */
+public class BenchmarkContext implements AutoCloseable {
+
+    /**
+     * 只扫描本包, 本库的bean由spring.factories自动装配
+     */
+    @SpringBootApplication
+    public static class Application {
+
+        /**
+         * redis替身不支持RESP3, lettuce默认会先尝试RESP3
+         */
+        @Bean
+        public LettuceClientConfigurationBuilderCustomizer resp2() {
+            return builder -> builder.clientOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP2).build());
+        }
+    }
+
+    private final RedisServer redisServer;
+
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkContext(RedisServer redisServer, ConfigurableApplicationContext context) {
+        this.redisServer = redisServer;
+        this.context = context;
+    }
+
+    /**
+     * 启动redis替身和spring容器
+     */
+    public static BenchmarkContext start() throws IOException {
+        RedisServer redisServer = RedisServer.newRedisServer(0, InetAddress.getLoopbackAddress());
+        redisServer.start();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties("spring.redis.host=" + redisServer.getHost(),
+                        "spring.redis.port=" + redisServer.getBindPort(),
+                        "logging.level.root=WARN")
+                .run();
+        return new BenchmarkContext(redisServer, context);
+    }
+
+    public <T> T getBean(Class<T> clazz) {
+        return context.getBean(clazz);
+    }
+
+    public <T> T getBean(String name, Class<T> clazz) {
+        return context.getBean(name, clazz);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+}
@@ -0,0 +1,46 @@
+package cn.someget.cache.benchmark;
+
+import cn.someget.cache.anno.Cache;
+import org.springframework.stereotype.Service;
+
+/**
+ * 被测试的方法, 每个方法对应一种命中情况
+ * 方法本身只是new一个对象, 测出来的基本都是切面和缓存的开销
+ *
+ * @author agent
+ * @date 2026-10-17 20:39
+ */
+@Service
+public class BenchmarkService {
+
+    /**
+     * 没有注解, 作为基准
+     */
+    public UserDto direct(Long id) {
+        return UserDto.of(id);
+    }
+
+    /**
+     * 本地缓存命中
+     */
+    @Cache(prefix = "bench:aspect:local:%d", expire = 3600L, usingLocalCache = true, localExpire = 3600L)
+    public UserDto localHit(Long id) {
+        return UserDto.of(id);
+    }
+
+    /**
+     * redis命中
+     */
+    @Cache(prefix = "bench:aspect:redis:%d", expire = 3600L)
+    public UserDto redisHit(Long id) {
+        return UserDto.of(id);
+    }
+
+    /**
+     * redis未命中, 方法返回null并且没有开启空缓存, 所以每次都会查redis再执行方法
+     */
+    @Cache(prefix = "bench:aspect:miss:%d")
+    public UserDto redisMiss(Long id) {
+        return null;
+    }
+}
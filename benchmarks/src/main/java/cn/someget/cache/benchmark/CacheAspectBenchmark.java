@@ -0,0 +1,71 @@
+package cn.someget.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheAspect.doAround的开销
+ * direct是没有注解的方法(同样经过代理), 其他几个和它的差值就是切面在各种命中情况下的开销
+ *
+ * @author agent
+ * @date 2026-10-17 20:39
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheAspectBenchmark {
+
+    private BenchmarkContext context;
+
+    private BenchmarkService service;
+
+    private Long id = 10086L;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start();
+        service = context.getBean(BenchmarkService.class);
+        // 先调用一次, 把数据写到缓存里面
+        service.localHit(id);
+        service.redisHit(id);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDto direct() {
+        return service.direct(id);
+    }
+
+    @Benchmark
+    public UserDto localHit() {
+        return service.localHit(id);
+    }
+
+    @Benchmark
+    public UserDto redisHit() {
+        return service.redisHit(id);
+    }
+
+    @Benchmark
+    public UserDto redisMiss() {
+        return service.redisMiss(id);
+    }
+}
@@ -0,0 +1,113 @@
+package cn.someget.cache.benchmark;
+
+import cn.someget.cache.codec.CacheCodec;
+import cn.someget.cache.codec.JsonCacheCodec;
+import cn.someget.cache.codec.KryoCacheCodec;
+import com.alibaba.fastjson.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 序列化的开销, 一个对象和一个20个元素的List
+ * fastjsonString是改用CacheCodec之前的写法(先转字符串再转字节)
+ *
+ * @author agent
+ * @date 2026-10-17 20:39
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final int LIST_SIZE = 20;
+
+    private final CacheCodec json = new JsonCacheCodec();
+
+    private final CacheCodec kryo = new KryoCacheCodec(UserDto.class);
+
+    private UserDto user;
+
+    private List<UserDto> users;
+
+    private byte[] jsonUser;
+
+    private byte[] jsonUsers;
+
+    private byte[] kryoUser;
+
+    private byte[] kryoUsers;
+
+    @Setup
+    public void setUp() {
+        user = UserDto.of(10086L);
+        users = new ArrayList<>(LIST_SIZE);
+        for (long i = 0; i < LIST_SIZE; i++) {
+            users.add(UserDto.of(i));
+        }
+        jsonUser = json.encode(user);
+        jsonUsers = json.encode(users);
+        kryoUser = kryo.encode(user);
+        kryoUsers = kryo.encode(users);
+    }
+
+    @Benchmark
+    public byte[] fastjsonString() {
+        return JSON.toJSONString(user).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return json.encode(user);
+    }
+
+    @Benchmark
+    public UserDto jsonDecode() {
+        return json.decode(jsonUser, UserDto.class);
+    }
+
+    @Benchmark
+    public byte[] jsonEncodeList() {
+        return json.encode(users);
+    }
+
+    @Benchmark
+    public List<UserDto> jsonDecodeList() {
+        return json.decodeList(jsonUsers, UserDto.class);
+    }
+
+    @Benchmark
+    public byte[] kryoEncode() {
+        return kryo.encode(user);
+    }
+
+    @Benchmark
+    public UserDto kryoDecode() {
+        return kryo.decode(kryoUser, UserDto.class);
+    }
+
+    @Benchmark
+    public byte[] kryoEncodeList() {
+        return kryo.encode(users);
+    }
+
+    @Benchmark
+    public List<UserDto> kryoDecodeList() {
+        return kryo.decodeList(kryoUsers, UserDto.class);
+    }
+}
@@ -0,0 +1,97 @@
+package cn.someget.cache.benchmark;
+
+import cn.someget.cache.utils.KeyTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拼key的几种写法, String.format是改用KeyTemplate之前的写法
+ *
+ * @author agent
+ * @date 2026-10-17 20:39
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBuildingBenchmark {
+
+    private static final String TEMPLATE = "user:info:%d";
+
+    private static final int BATCH_SIZE = 100;
+
+    private final KeyTemplate positional = KeyTemplate.compile(TEMPLATE, null);
+
+    private final KeyTemplate named = KeyTemplate.compile("user:info:#{id}", new String[]{"id"});
+
+    private long id = 10086L;
+
+    /**
+     * 和切面里面一样, 参数是方法调用时已经装箱好的数组
+     */
+    private Object[] args;
+
+    private List<Long> ids;
+
+    @Setup
+    public void setUp() {
+        args = new Object[]{id};
+        ids = new ArrayList<>(BATCH_SIZE);
+        for (long i = 0; i < BATCH_SIZE; i++) {
+            ids.add(id + i);
+        }
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        return String.format(TEMPLATE, args);
+    }
+
+    @Benchmark
+    public String concat() {
+        return "user:info:" + id;
+    }
+
+    @Benchmark
+    public String stringBuilder() {
+        return new StringBuilder(32).append("user:info:").append(id).toString();
+    }
+
+    @Benchmark
+    public String keyTemplate() {
+        return positional.build(args);
+    }
+
+    @Benchmark
+    public String keyTemplateNamed() {
+        return named.build(args);
+    }
+
+    @Benchmark
+    public void stringFormatBatch(Blackhole blackhole) {
+        for (Long each : ids) {
+            blackhole.consume(String.format(TEMPLATE, each));
+        }
+    }
+
+    @Benchmark
+    public Map<Long, String> keyTemplateBatch() {
+        return positional.buildEach(ids);
+    }
+}
@@ -0,0 +1,89 @@
+package cn.someget.cache.benchmark;
+
+import cn.someget.cache.service.CacheService;
+import cn.someget.cache.utils.CollectionWeigher;
+import cn.someget.cache.utils.KeyTemplate;
+import cn.someget.cache.utils.LocalCache;
+import cn.someget.cache.utils.LocalCacheSpec;
+import cn.someget.cache.utils.RedisRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量查询在各级缓存上的开销
+ * localHit走LocalCacheServiceImpl并且全部命中本地缓存, redisHit直接走RedisCacheServiceImpl并且全部命中redis
+ *
+ * @author agent
+ * @date 2026-10-17 20:39
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TierLookupBenchmark {
+
+    private static final String PREFIX = "bench:tier:%d";
+
+    @Param({"10", "100", "5000"})
+    private int size;
+
+    private BenchmarkContext context;
+
+    private CacheService localCacheService;
+
+    private CacheService redisCacheService;
+
+    private List<Long> ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start();
+        localCacheService = context.getBean("defaultLocalCacheService", CacheService.class);
+        redisCacheService = context.getBean("defaultRedisCacheService", CacheService.class);
+        // 本地缓存分区在测试期间不能过期
+        context.getBean(LocalCache.class).register(PREFIX,
+                new LocalCacheSpec(3600L, 0L, size * 2L, 0L, CollectionWeigher.class));
+        ids = new ArrayList<>(size);
+        Map<String, Object> keyValues = new HashMap<>(size);
+        for (long i = 0; i < size; i++) {
+            ids.add(i);
+            keyValues.put(KeyTemplate.compile(PREFIX, null).build(new Object[]{i}), UserDto.of(i));
+        }
+        context.getBean(RedisRepository.class).batchSet(keyValues, 3600L);
+        // 第一次查询会把redis里面的数据写到本地缓存
+        localCacheService.getObjectFromCache(ids, UserDto.class, PREFIX, PREFIX);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<Long, UserDto> localHit() {
+        return localCacheService.getObjectFromCache(ids, UserDto.class, PREFIX, PREFIX);
+    }
+
+    @Benchmark
+    public Map<Long, UserDto> redisHit() {
+        return redisCacheService.getObjectFromCache(ids, UserDto.class, PREFIX, PREFIX);
+    }
+}
@@ -0,0 +1,40 @@
+package cn.someget.cache.benchmark;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 性能测试用的对象, 字段和业务里面常见的用户信息差不多
+ *
+ * @author agent
+ * @date 2026-10-17 20:39
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDto {
+
+    private Long id;
+
+    private String name;
+
+    private String email;
+
+    private Integer age;
+
+    private Boolean vip;
+
+    private Date createdAt;
+
+    private List<String> tags;
+
+    public static UserDto of(long id) {
+        return new UserDto(id, "user-" + id, "user-" + id + "@someget.cn", (int) (id % 80),
+                id % 2 == 0, new Date(1651565100000L + id), Arrays.asList("tag-a", "tag-b", "tag-" + id));
+    }
+}
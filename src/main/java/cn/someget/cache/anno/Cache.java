@@ -1,8 +1,14 @@
 package cn.someget.cache.anno;
 
+import cn.someget.cache.codec.CacheCodec;
+import cn.someget.cache.utils.CollectionWeigher;
+import com.github.benmanes.caffeine.cache.Weigher;
+
 import java.lang.annotation.*;
 
 import static cn.someget.cache.utils.RedisKey.COMMON_HIT_EXPIRE;
+import static cn.someget.cache.utils.RedisKey.LOCAL_EXPIRE;
+import static cn.someget.cache.utils.RedisKey.LOCAL_MAXIMUM_SIZE;
 
 /**
  * 对外暴露的注解
@@ -18,6 +24,7 @@ public @interface Cache {
     /**
      * key的前缀, 注意要使用占位符
      * 如入参是long, 占位符就是prefixKey:%d
+     * 也可以按参数名引用参数, 如prefixKey:#{uid}, 或者引用参数的属性, 如prefixKey:#{query.uid}
      */
     String prefix() default "";
 
@@ -32,22 +39,146 @@ public @interface Cache {
     long missExpire() default 0L;
 
     /**
-     * 是否多对多(如果是Map<T, List<E>>的结构才需要设置成true)
-     * java的泛型擦除, 没得办法, 后期会想办法
+     * 过期时间的随机抖动, 单位秒(默认0不开启)
+     * 每个key写入redis的时候过期时间随机加上[0, jitter]秒, 一起加载的一批key不会在同一秒一起过期
+     * 不会超过过期时间本身, 所以空缓存(missExpire)最多翻倍
+     */
+    long jitter() default 0L;
+
+    /**
+     * 按过期时间比例的随机抖动, 0-100(默认0不开启)
+     * 比如20表示过期时间随机加上[0, 20%], 对expire和missExpire都生效, 和jitter同时设置时取大的
+     */
+    int jitterPercent() default 0;
+
+    /**
+     * 是否多对多(Map<T, List<E>>的结构)
+     * 现在会从方法的泛型返回值里面自动识别(Map的value是集合或者数组), 一般不用再设置, 设置成true会强制按多对多处理
      */
     boolean hasMoreValue() default false;
 
     /**
-     * 对应类型, 反序列化需要使用, 记得传
+     * 对应类型, 反序列化需要使用
+     * 现在会从方法的泛型返回值里面自动识别(List<V>, Set<V>, V[], Map<K, V>, Map<K, List<V>>里面的V), 解析不出来的时候才需要传
+     * one to one按返回值(包括泛型和Optional<V>)反序列化, 不需要传
      */
     Class<?> clazz() default Object.class;
 
     /**
      * 是否使用本地缓存(caffeine)
      * 注意使用本地缓存本质最终兜底还是redis
-     * 只不过获取redis之前会尝试走caffeine获取(ttl3秒目前不可以改)
+     * 只不过获取redis之前会尝试走caffeine获取(默认ttl3秒, 可以通过localExpire修改)
+     * 每个prefix都有自己单独的caffeine分区, 同一个prefix的多个注解配置必须一样, 不一样的话启动时报错
      * p.s. 自行考虑好业务场景以及对数据不一致的接受程度
      */
     boolean usingLocalCache() default false;
 
+    /**
+     * 本地缓存写入后的过期时间, 单位秒(默认3秒)
+     */
+    long localExpire() default LOCAL_EXPIRE;
+
+    /**
+     * 本地缓存访问后的过期时间, 单位秒(默认0不开启)
+     */
+    long localExpireAfterAccess() default 0L;
+
+    /**
+     * 本地缓存最多缓存多少个key(默认10000), 设置了localMaximumWeight之后不生效
+     */
+    long localMaximumSize() default LOCAL_MAXIMUM_SIZE;
+
+    /**
+     * 本地缓存的最大权重(默认0不开启), 开启后按localWeigher计算出来的权重限制容量
+     */
+    long localMaximumWeight() default 0L;
+
+    /**
+     * 本地缓存的权重计算, 需要有无参构造
+     * 默认集合按元素个数算, 其他对象算1
+     */
+    Class<? extends Weigher<String, Object>> localWeigher() default CollectionWeigher.class;
+
+    /**
+     * 是否合并并发未命中(仅jvm内)
+     * 开启后同一个key同时未命中时只有一个线程会执行方法, 其他线程等待并共享结果
+     * 批量查询时, 已经有其他线程在加载的id也不会再次送去方法
+     */
+    boolean singleFlight() default false;
+
+    /**
+     * 是否使用分布式锁加载未命中的数据(仅对单个key的查询生效)
+     * 开启后只有拿到锁(SET NX PX)的节点会执行方法, 其他节点轮询缓存, 读到数据或者空缓存就返回
+     * 锁释放了还没有数据, 或者等了cache-anno.lock.wait还没有数据的话, 会自己执行方法兜底; redis异常的时候直接执行方法
+     * 锁的有效期是cache-anno.lock.lease, 方法执行得比它久的话别的节点也会去执行方法
+     * 可以和singleFlight一起使用, 这样每个节点只会有一个线程去抢锁
+     */
+    boolean distributedLock() default false;
+
+    /**
+     * 逻辑过期时间, 单位秒(默认0不开启)
+     * 开启后写入redis的值会带上逻辑过期时间, 过了逻辑过期时间但还没到expire的数据会照常直接返回
+     * 同时后台会重新执行一次方法, 把新的结果写回redis和本地缓存, 这样调用方就不用等真正过期之后再去查db
+     * 逻辑过期时间和值存在一起(本地缓存和热点key里面也带着), 不管哪个节点写的, 从哪一级缓存命中, 判断的都是值自己的时间
+     * 后台刷新在刷新线程池里面重新执行方法(批量查询是把过期的id放在一起执行一次), 和loadChunkSize一样拿不到调用线程的ThreadLocal:
+     * 事务、SecurityContext、MDC、请求级缓存(RequestCache)等都没有, 依赖这些的方法不要开启
+     * 需要比expire小才有意义, 空缓存不会带逻辑过期时间
+     */
+    long refreshAhead() default 0L;
+
+    /**
+     * 写入redis的序列化方式(默认CacheCodec.class表示使用全局默认)
+     * 全局默认是json, 容器里面有唯一的CacheCodec bean的话就用它
+     * 可选KryoCacheCodec(二进制, 需要自行引入kryo, 业务类型要继承后注册), 也可以自己实现CacheCodec
+     * 注意切换序列化方式之后老数据可能读不出来, 同一个prefix的多个注解配置(包括compressThreshold)必须一样, 不一样的话启动时报错
+     */
+    Class<? extends CacheCodec> codec() default CacheCodec.class;
+
+    /**
+     * 序列化之后超过多少字节就压缩(deflate)再写入redis, 单位字节(默认0不压缩)
+     * 适合Map<K, List<V>>这种比较大的值, 建议设置成几KB, 太小的值压缩不划算
+     * 读取时不管有没有开启都能读出压缩过的数据, 所以可以放心地开关
+     */
+    int compressThreshold() default 0;
+
+    /**
+     * 是否异步写入redis(默认false)
+     * 开启后方法执行完的结果先放到队列里面, 由后台线程批量合并写入redis, 方法直接返回不用等redis
+     * 队列满了的时候会丢掉这次写入(下次查询会重新加载), 所以短时间内可能会多查几次db
+     * 本地缓存还是同步写入的
+     * 还没写入的值会被@CacheEvict, @CachePut和CacheInvalidator(包括其他节点的广播)取消, 不会在删除之后又写回去
+     */
+    boolean writeBehind() default false;
+
+    /**
+     * 是否给prefix加上版本号(默认false)
+     * 开启后key后面会带上:v版本号, 调用CacheInvalidator.evictAll(prefix)把版本号加一,
+     * 这个prefix下面所有的key都会同时失效(旧的key等着自己过期), 不需要SCAN+DEL
+     * 各个节点最多延迟cache-anno.version.refresh-interval(默认1秒)看到新的版本号, 开启了失效广播的话会立即看到
+     */
+    boolean versioned() default false;
+
+    /**
+     * 是否用布隆过滤器过滤一定不存在的id(默认false, 只对批量查询生效)
+     * 过滤掉的id不会去查redis, 也不会送去方法, 更不会写空缓存, 适合被随机id刷接口的场景
+     * 方法查到的id会自动放进过滤器, 但是要先调用BloomFilterRegistry.putAll放入所有存在的id, 再调用markReady之后才开始过滤
+     */
+    boolean bloomFilter() default false;
+
+    /**
+     * 布隆过滤器预计有多少个id(默认0表示用cache-anno.bloom.expected-insertions)
+     */
+    long bloomExpectedInsertions() default 0L;
+
+    /**
+     * 批量查询未命中的id超过多少个就拆成多片, 每片单独执行一次方法(默认0不拆, 只对批量查询生效)
+     * 各片并发执行, 每片执行完马上写缓存, 最后合并结果返回, 适合未命中很多时一次IN查询太大容易超时的场景
+     * 同步方法的各片在cache-anno.loader的线程池里面执行(jdk支持的话用虚拟线程), 调用线程自己执行最后一片,
+     * 所以除了最后一片, 方法里面拿不到调用线程的ThreadLocal: 事务(各片不在调用方的事务里面, 看不到没提交的数据)、
+     * SecurityContext、MDC、请求级缓存(RequestCache)等都没有, 依赖这些的方法不要开启
+     * 方法里面又调用了开启拆片的批量查询时, 嵌套的各片直接在当前线程依次执行, 不会再占用线程池
+     * 调用方最多等cache-anno.loader.timeout毫秒, 超时的话同步方法抛出IllegalStateException, 异步方法以TimeoutException失败
+     */
+    int loadChunkSize() default 0;
+
 }
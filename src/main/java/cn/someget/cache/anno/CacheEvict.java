@@ -0,0 +1,37 @@
+package cn.someget.cache.anno;
+
+import java.lang.annotation.*;
+
+/**
+ * 删除缓存的注解, 一般用在写db的方法上
+ * key的规则和@Cache一样: 第一个入参是List的话, 每个元素都会拼出一个key(有第二个参数的话拼在key后面),
+ * 否则按整个入参拼一个key; 所有key放在一个管道里面UNLINK, 同时删除所有节点的本地缓存
+ *
+ * @author agent
+ * @date 2026-10-17 20:04
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface CacheEvict {
+
+    /**
+     * key的前缀, 和对应的@Cache的prefix写成一样的
+     * 入参是对象的话可以用#{0.id}或者#{user.id}取属性
+     * 和@Cache上同一个prefix引用的参数位置要一样, 不一样的话启动时报错
+     */
+    String prefix() default "";
+
+    /**
+     * 是否在方法执行之前删除(默认方法执行成功之后才删除, 方法抛异常就不删)
+     */
+    boolean beforeInvocation() default false;
+
+    /**
+     * 是否等到事务提交之后再删除(默认false)
+     * 开启后如果方法在事务里面执行, 会在事务提交之后删除, 事务回滚就不删; 不在事务里面的话直接删除
+     * 可以避免事务还没提交的时候其他线程把旧数据又读回缓存
+     */
+    boolean afterCommit() default false;
+
+}
@@ -0,0 +1,49 @@
+package cn.someget.cache.anno;
+
+import java.lang.annotation.*;
+
+/**
+ * 更新缓存的注解, 把方法的返回值直接写入redis, 同时删除所有节点的本地缓存
+ * key的规则和@Cache一样: 第一个入参是List的话, 返回值要是Map<id, 值>, 每个id的值写入各自的key(一个管道),
+ * 入参里面有但是返回的Map里面没有的id会被删除; 否则返回值写入按整个入参拼出来的key, 返回null的话删除这个key
+ * 序列化方式和对应的@Cache一样(按prefix), 过期时间, 随机抖动, 逻辑过期时间(refreshAhead)和是否异步写入(writeBehind)默认也和同一个prefix的@Cache一样
+ * 写入和删除放在一个管道里面
+ *
+ * @author agent
+ * @date 2026-10-17 20:04
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface CachePut {
+
+    /**
+     * key的前缀, 和对应的@Cache的prefix写成一样的
+     * 和@Cache上同一个prefix引用的参数位置要一样, 不一样的话启动时报错
+     */
+    String prefix() default "";
+
+    /**
+     * 单位秒(默认0表示和同一个prefix的@Cache一样, 没有@Cache的话是10分钟)
+     */
+    long expire() default 0L;
+
+    /**
+     * 过期时间的随机抖动, 单位秒, 和@Cache的jitter一样
+     * jitter和jitterPercent都是0(默认)表示和同一个prefix的@Cache一样
+     */
+    long jitter() default 0L;
+
+    /**
+     * 按过期时间比例的随机抖动, 0-100, 和@Cache的jitterPercent一样
+     * jitter和jitterPercent都是0(默认)表示和同一个prefix的@Cache一样
+     */
+    int jitterPercent() default 0;
+
+    /**
+     * 是否等到事务提交之后再写入(默认false)
+     * 开启后如果方法在事务里面执行, 会在事务提交之后写入, 事务回滚就不写; 不在事务里面的话直接写入
+     */
+    boolean afterCommit() default false;
+
+}
@@ -6,10 +6,24 @@ import cn.hutool.core.convert.Convert;
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.text.CharSequenceUtil;
-import cn.someget.cache.anno.Cache;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.someget.cache.codec.CacheCodec;
 import cn.someget.cache.service.CacheService;
+import cn.someget.cache.service.CacheTier;
+import cn.someget.cache.utils.BloomFilterRegistry;
+import cn.someget.cache.utils.CacheMetrics;
+import cn.someget.cache.utils.HotKeyDetector;
+import cn.someget.cache.utils.KeyTemplate;
+import cn.someget.cache.utils.LoaderExecutor;
+import cn.someget.cache.utils.LocalCache;
+import cn.someget.cache.utils.NullValue;
+import cn.someget.cache.utils.PrefixVersions;
 import cn.someget.cache.utils.RedisKey;
 import cn.someget.cache.utils.RedisRepository;
+import cn.someget.cache.utils.RefreshValue;
+import cn.someget.cache.utils.RequestCache;
+import cn.someget.cache.utils.SingleFlight;
+import cn.someget.cache.utils.WriteBehindQueue;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -17,15 +31,32 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -51,6 +82,65 @@ public class CacheAspect {
     @Resource(name = "defaultLocalCacheService")
     private CacheService localCacheService;
 
+    @Resource
+    private SingleFlight singleFlight;
+
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CachePlanRegistry planRegistry;
+
+    @Resource
+    private WriteBehindQueue writeBehindQueue;
+
+    @Resource
+    private PrefixVersions prefixVersions;
+
+    @Resource
+    private BloomFilterRegistry bloomFilters;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    @Resource
+    private LoaderExecutor loaderExecutor;
+
+    @Resource
+    private RequestCache requestCache;
+
+    /**
+     * 分布式锁的有效期, 单位毫秒, 要比方法最慢的执行时间长, 不然锁过期之后别的节点也会去执行方法
+     */
+    @Value("${cache-anno.lock.lease:" + LOCK_LEASE_TIME + "}")
+    private long lockLease;
+
+    /**
+     * 没拿到分布式锁时最多等多久, 单位毫秒, 超时还没有数据就自己执行方法
+     */
+    @Value("${cache-anno.lock.wait:" + LOCK_WAIT_TIME + "}")
+    private long lockWait;
+
+    /**
+     * 正在后台刷新的key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 逻辑过期之后的后台刷新线程池, 队列满了就放弃这次刷新, 下次命中还会再触发
+     */
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE),
+            ThreadFactoryBuilder.create().setNamePrefix("cache-anno-refresh-").setDaemon(true).build());
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdown();
+    }
+
     @Pointcut(value = "@annotation(cn.someget.cache.anno.Cache)")
     public void cache() {
         //point
@@ -58,158 +148,674 @@ public class CacheAspect {
 
     @Around("cache()")
     public Object doAround(ProceedingJoinPoint joinPoint) throws Throwable {
-        // 拿到当前方法信息
+        // 拿到当前方法解析好的执行计划
         MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        Method method = methodSignature.getMethod();
-        Cache cache = method.getAnnotation(Cache.class);
-        boolean usingLocalCache = cache.usingLocalCache();
+        CachePlan plan = planRegistry.get(methodSignature.getMethod(), AopUtils.getTargetClass(joinPoint.getTarget()));
         // 判断使用redis还是local进行自动缓存
-        CacheService cacheService = usingLocalCache ? localCacheService : redisCacheService;
-        // 获取前缀
-        String prefix = cache.prefix();
-        // 获取存储的类型
-        Class<?> clazz = cache.clazz();
-        // 是否多对多 仅在方法出参为Map<T, List<E>>的结构下才生效
-        boolean hasMoreValue = cache.hasMoreValue();
-        // 获取过期时间
-        long expire = cache.expire();
-        // 获取未命中的过期时间
-        long missExpire = cache.missExpire();
+        CacheService cacheService = plan.isUsingLocalCache() ? localCacheService : redisCacheService;
         // 获取方法的入参
         Object[] args = joinPoint.getArgs();
-        // 获取返回类型
-        Class<?> returnType = method.getReturnType();
-        // 如果没有入参的话, 暂不支持这种方式自动缓存
-        Assert.notNull(args, "do not support non args");
         // 如果参数是null, 直接返回null
         Object arg = args[0];
         if (arg == null) {
-            log.warn("query key is null, class:{}, method:{}, args:{}", clazz.getName(), method.getName(), JSON.toJSONString(args));
-            return null;
-        }
-
-        // 如果第一个入参是list, 则说明是多对多的返回
-        if (arg instanceof List) {
-            // 如果参数大于2则不支持
-            Assert.isTrue(args.length <= 2, "do not support args > 2");
-            // 如果有两个参数,第二个参数是List或者Map也不支持
-            boolean paramCheck = args.length == 2 && (args[1] instanceof List || arg instanceof Map);
-            Assert.isFalse(paramCheck, "do not support the args");
-            // 验证返回值是否是字典(那么返回参数一定要是Map, 不然无法映射多对多的关系)
-            Assert.isTrue(returnType == Map.class, "param error");
-
-            // 把参数变成恢复成List
-            List<Object> inputList = (List<Object>) arg;
-
-            // 把第二个参数拼接到prefix上(若有)
-            if (args.length == 2) {
-                String param2 = Convert.toStr(args[1], "");
-                if (CharSequenceUtil.isNotBlank(param2)) {
-                    prefix = prefix + ":" + param2;
-                }
+            log.warn("query key is null, plan:{}, args:{}", plan, JSON.toJSONString(args));
+            return plan.isAsync() ? async(plan, () -> CompletableFuture.completedFuture(null)) : null;
+        }
+        // 参数声明成Object之类的时候还是可能传进来List, 返回值不是Map的话没办法批量查询, 和以前一样报错
+        Assert.isFalse(!plan.getShape().isBatch() && arg instanceof List, "param error, return type must be Map");
+        // 请求级缓存在调用线程里面拿, 异步方法的回调里面也用这一个; 没有打开的时候是null
+        RequestCache.Memo memo = requestCache.current();
+        // 异步的方法查缓存和写缓存都不占用调用线程
+        if (plan.isAsync()) {
+            return async(plan, () -> doHandleAsync(joinPoint, args, cacheService, plan, memo));
+        }
+
+        if (plan.getShape().isBatch()) {
+            return doHandleListCache((List<Object>) arg, joinPoint, args, cacheService, plan, memo);
+        }
+        String key = versioned(plan, plan.getTemplate()).build(args);
+        if (plan.getShape() == CachePlan.Shape.ONE_TO_LIST) {
+            return memoize(memo, key, plan, () -> doHandleOne2ListCache(joinPoint, key, plan.getClazz(), cacheService, plan));
+        }
+        return memoize(memo, key, plan, () -> doHandleOne2OneCache(joinPoint, key, plan.getValueType(), cacheService, plan));
+    }
+
+    /**
+     * 开启了版本号的话在key后面拼上prefix当前的版本号
+     */
+    private KeyTemplate versioned(CachePlan plan, KeyTemplate template) {
+        return plan.isVersioned() ? template.append(prefixVersions.stamp(plan.getPrefix())) : template;
+    }
+
+    /**
+     * 处理list to map的自动缓存
+     */
+    @SuppressWarnings("unchecked")
+    private Object doHandleListCache(List<Object> inputList,
+                                     ProceedingJoinPoint joinPoint,
+                                     Object[] args,
+                                     CacheService cacheService,
+                                     CachePlan plan,
+                                     RequestCache.Memo memo) throws Throwable {
+        // 布隆过滤器判断一定不存在的id直接去掉, 不查缓存也不执行方法
+        if (plan.isBloomFilter()) {
+            inputList = bloomFilters.filter(plan.getPrefix(), inputList);
+            if (inputList.isEmpty()) {
+                return new HashMap<>(0);
             }
+        }
+        // 每个id的key只拼一次, 各级缓存和后面的加载都用这一份
+        ListKeys keys = listKeys(inputList, args, plan);
+        // 请求级缓存里面已经有的id不再查缓存容器
+        Map<Object, Object> memoized = memoized(memo, keys, plan);
+        Map<Object, String> lookupKeys = lookupKeys(keys, memoized);
 
-            /*
-             * 去缓存容器里面取数据
-             * true  list to many(Map<K, List<V>)
-             * false list to one(Map<K, V>)
-             */
-            Map<Object, ?> cacheMap = hasMoreValue
-                    ? cacheService.getObjectListFromCache(inputList, clazz, prefix)
-                    : cacheService.getObjectFromCache(inputList, clazz, prefix);
-
-            // 空缓存类型
-            String emptyCache = hasMoreValue ? EMPTY_COLLECTION : EMPTY_OBJECT;
-
-            /*
-             * 执行自动缓存方法
-             * list list to many(Map<K, List<V>)
-             * list list to one(Map<K, V>)
-             */
-            doHandleListCache(inputList, clazz, cacheMap, joinPoint, prefix, expire, emptyCache, args, missExpire);
-
-            // 把里面元素
-            return cacheMap.entrySet().stream()
-                    .filter(entry -> !EMPTY_OBJECT.equals(JSON.toJSONString(entry.getValue())))
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        /*
+         * 去缓存容器里面取数据
+         * list to many(Map<K, List<V>)
+         * list to one(Map<K, V>)
+         */
+        Map<Object, ?> cacheMap;
+        if (lookupKeys.isEmpty()) {
+            cacheMap = new HashMap<>(memoized.size());
+        } else if (plan.getShape() == CachePlan.Shape.LIST_TO_MANY) {
+            cacheMap = CacheTier.lookupAllLists(cacheService, lookupKeys, plan.getClazz(), plan.getPrefix());
         } else {
-            // 如果第一个入参不是list,说明是一对一或者一对多的返回
-            String key = String.format(prefix, args);
-            // one to list
-            if (returnType == List.class) {
-                return doHandleOne2ListCache(joinPoint, key, clazz, expire, cacheService, missExpire);
+            cacheMap = CacheTier.lookupAll(cacheService, lookupKeys, plan.getClazz(), plan.getPrefix());
+        }
+        ((Map<Object, Object>) cacheMap).putAll(memoized);
+
+        // 执行自动缓存方法
+        doHandleListCache(inputList, cacheMap, joinPoint, keys, args, plan);
+
+        remember(memo, inputList, cacheMap, memoized, keys, plan);
+        return toReturnMap(cacheMap, plan);
+    }
+
+    /**
+     * 批量查询的id先从请求级缓存里面拿
+     *
+     * @return id -> 缓存的值, 没有请求级缓存的时候是空的
+     */
+    private Map<Object, Object> memoized(RequestCache.Memo memo, ListKeys keys, CachePlan plan) {
+        if (memo == null) {
+            return Collections.emptyMap();
+        }
+        Map<Object, Object> memoized = new HashMap<>(keys.asMap().size());
+        keys.asMap().forEach((id, key) -> {
+            Object value = memo.get(key);
+            if (value != null) {
+                memoized.put(id, value);
+            }
+        });
+        cacheMetrics.get(CacheMetrics.Get.REQUEST_HIT, plan.getPrefix(), memoized.size());
+        return memoized;
+    }
+
+    /**
+     * 请求级缓存没有命中, 还要去缓存容器里面查的id
+     */
+    private static Map<Object, String> lookupKeys(ListKeys keys, Map<Object, Object> memoized) {
+        if (memoized.isEmpty()) {
+            return keys.asMap();
+        }
+        Map<Object, String> lookupKeys = new LinkedHashMap<>(keys.asMap().size());
+        keys.asMap().forEach((id, key) -> {
+            if (!memoized.containsKey(id)) {
+                lookupKeys.put(id, key);
+            }
+        });
+        return lookupKeys;
+    }
+
+    /**
+     * 批量查询的结果放进请求级缓存, 方法也没有查到的id只有开启了空缓存才放, 和redis里面保持一致
+     *
+     * @param cacheMap 缓存和方法查到的所有结果
+     * @param memoized 本来就是从请求级缓存里面拿的
+     */
+    private static void remember(RequestCache.Memo memo,
+                                 List<Object> inputList,
+                                 Map<Object, ?> cacheMap,
+                                 Map<Object, Object> memoized,
+                                 ListKeys keys,
+                                 CachePlan plan) {
+        if (memo == null) {
+            return;
+        }
+        boolean missCached = !DISABLE_MISS_VALUE.equals(plan.getMissExpire());
+        for (Object id : inputList) {
+            if (memoized.containsKey(id)) {
+                continue;
+            }
+            Object value = cacheMap.get(id);
+            if (value != null) {
+                memo.put(keys.get(id), NullValue.isNull(value) ? value : plan.toCached(value));
+            } else if (missCached) {
+                memo.put(keys.get(id), NullValue.INSTANCE);
             }
-            // one to one
-            return doHandleOne2OneCache(joinPoint, key, expire, returnType, cacheService, missExpire);
         }
     }
 
+    /**
+     * 单个key先查请求级缓存, 没有的话走正常的流程, 结果再放进请求级缓存
+     *
+     * @param handler 正常的流程
+     */
+    private Object memoize(RequestCache.Memo memo, String key, CachePlan plan, SingleFlight.Loader handler) throws Throwable {
+        if (memo == null) {
+            return handler.load();
+        }
+        Object memoized = memo.get(key);
+        if (memoized != null) {
+            cacheMetrics.get(CacheMetrics.Get.REQUEST_HIT, plan.getPrefix(), 1);
+            return plan.toReturn(plan.getShape() == CachePlan.Shape.ONE_TO_LIST ? unwrapEmptyList(memoized) : unwrapEmpty(memoized));
+        }
+        Object result = handler.load();
+        remember(memo, key, plan.toCached(result), plan);
+        return result;
+    }
+
+    /**
+     * 异步方法的{@link #memoize(RequestCache.Memo, String, CachePlan, SingleFlight.Loader)}
+     */
+    private CompletableFuture<Object> memoizeAsync(RequestCache.Memo memo,
+                                                   String key,
+                                                   CachePlan plan,
+                                                   Supplier<CompletableFuture<Object>> handler) {
+        if (memo == null) {
+            return handler.get();
+        }
+        Object memoized = memo.get(key);
+        if (memoized != null) {
+            cacheMetrics.get(CacheMetrics.Get.REQUEST_HIT, plan.getPrefix(), 1);
+            return CompletableFuture.completedFuture(plan.toReturn(plan.getShape() == CachePlan.Shape.ONE_TO_LIST ? unwrapEmptyList(memoized) : unwrapEmpty(memoized)));
+        }
+        return handler.get().thenApply(result -> {
+            remember(memo, key, plan.toCached(result), plan);
+            return result;
+        });
+    }
+
+    /**
+     * 单个key的结果放进请求级缓存
+     * one to list的空集合和one to one的null一样, 只有开启了空缓存才放
+     */
+    private static void remember(RequestCache.Memo memo, String key, Object cached, CachePlan plan) {
+        if (plan.getShape() == CachePlan.Shape.ONE_TO_LIST && CollUtil.isEmpty((Iterable<?>) cached)) {
+            cached = null;
+        }
+        if (cached != null) {
+            memo.put(key, cached);
+        } else if (!DISABLE_MISS_VALUE.equals(plan.getMissExpire())) {
+            memo.put(key, NullValue.INSTANCE);
+        }
+    }
+
+    /**
+     * 拼好批量查询每个id的key, 第二个参数和版本号拼在prefix后面
+     */
+    private ListKeys listKeys(List<Object> inputList, Object[] args, CachePlan plan) {
+        KeyTemplate template = plan.getTemplate();
+        // 把第二个参数拼接到prefix上(若有)
+        if (plan.isSuffixArg()) {
+            String param2 = Convert.toStr(args[1], "");
+            if (CharSequenceUtil.isNotBlank(param2)) {
+                template = template.append(":" + param2);
+            }
+        }
+        template = versioned(plan, template);
+        return new ListKeys(template, args, template.buildEach(inputList, args));
+    }
+
+    /**
+     * 批量查询的结果转成方法的返回值, 去掉空缓存, 里面的元素转成方法声明的类型
+     */
+    private static Map<Object, Object> toReturnMap(Map<Object, ?> cacheMap, CachePlan plan) {
+        return cacheMap.entrySet().stream()
+                .filter(entry -> !NullValue.isNull(entry.getValue()))
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> plan.toReturn(entry.getValue())));
+    }
+
+    /**
+     * 按照方法声明的类型返回, Mono/Flux等到订阅的时候才开始查缓存
+     *
+     * @param plan    执行计划
+     * @param handler 缓存的处理
+     * @return CompletableFuture, Mono或者Flux
+     */
+    private static Object async(CachePlan plan, Supplier<CompletableFuture<Object>> handler) {
+        switch (plan.getAsync()) {
+            case MONO:
+                return ReactorAdapter.defer(handler, false);
+            case FLUX:
+                return ReactorAdapter.defer(handler, true);
+            default:
+                return handler.get();
+        }
+    }
+
+    /**
+     * 处理返回CompletableFuture/Mono/Flux的方法
+     * 查缓存, 未命中时执行方法, 方法的结果完成之后写缓存, 中间都不会阻塞等待
+     * 未命中时方法在redis回调的线程里面执行, 方法本身应该很快返回, 耗时的部分放在返回的future里面
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> doHandleAsync(ProceedingJoinPoint joinPoint,
+                                                    Object[] args,
+                                                    CacheService cacheService,
+                                                    CachePlan plan,
+                                                    RequestCache.Memo memo) {
+        if (plan.getShape().isBatch()) {
+            return doHandleListCacheAsync((List<Object>) args[0], joinPoint, args, cacheService, plan, memo);
+        }
+        String key = versioned(plan, plan.getTemplate()).build(args);
+        if (plan.getShape() == CachePlan.Shape.ONE_TO_LIST) {
+            return memoizeAsync(memo, key, plan, () -> doHandleOne2ListCacheAsync(joinPoint, key, cacheService, plan));
+        }
+        return memoizeAsync(memo, key, plan, () -> doHandleOne2OneCacheAsync(joinPoint, key, cacheService, plan));
+    }
+
+    /**
+     * 异步处理one to one的自动缓存
+     */
+    private CompletableFuture<Object> doHandleOne2OneCacheAsync(ProceedingJoinPoint joinPoint,
+                                                                String key,
+                                                                CacheService cacheService,
+                                                                CachePlan plan) {
+        return CacheTier.lookupAsync(cacheService, key, plan.getValueType(), plan.getPrefix())
+                .thenCompose(cached -> cached != null
+                        ? CompletableFuture.completedFuture(plan.toReturn(unwrapEmpty(cached)))
+                        : proceedAsync(joinPoint, plan, null).thenApply(value -> cacheOne2One(key, plan.toCached(value), plan)));
+    }
+
+    /**
+     * 异步处理one to list的自动缓存
+     */
+    private CompletableFuture<Object> doHandleOne2ListCacheAsync(ProceedingJoinPoint joinPoint,
+                                                                 String key,
+                                                                 CacheService cacheService,
+                                                                 CachePlan plan) {
+        return CacheTier.lookupListAsync(cacheService, key, plan.getClazz(), plan.getPrefix())
+                .thenCompose(cached -> cached != null
+                        ? CompletableFuture.completedFuture(plan.toReturn(unwrapEmptyList(cached)))
+                        : proceedAsync(joinPoint, plan, null).thenApply(value -> cacheOne2List(key, value, plan)));
+    }
+
+    /**
+     * 异步处理list to map的自动缓存, 未命中的部分一次(或者拆片)送去执行方法
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> doHandleListCacheAsync(List<Object> inputList,
+                                                             ProceedingJoinPoint joinPoint,
+                                                             Object[] args,
+                                                             CacheService cacheService,
+                                                             CachePlan plan,
+                                                             RequestCache.Memo memo) {
+        ListKeys keys = listKeys(inputList, args, plan);
+        // 请求级缓存里面已经有的id不再查缓存容器
+        Map<Object, Object> memoized = memoized(memo, keys, plan);
+        Map<Object, String> lookupKeys = lookupKeys(keys, memoized);
+        CompletableFuture<? extends Map<Object, ?>> cached;
+        if (lookupKeys.isEmpty()) {
+            cached = CompletableFuture.completedFuture(new HashMap<>(memoized.size()));
+        } else if (plan.getShape() == CachePlan.Shape.LIST_TO_MANY) {
+            cached = CacheTier.lookupAllListsAsync(cacheService, lookupKeys, plan.getClazz(), plan.getPrefix());
+        } else {
+            cached = CacheTier.lookupAllAsync(cacheService, lookupKeys, plan.getClazz(), plan.getPrefix());
+        }
+        return cached.thenCompose(cacheMap -> {
+            Map<Object, Object> shared = (Map<Object, Object>) cacheMap;
+            shared.replaceAll((id, value) -> RefreshValue.unwrap(value));
+            shared.putAll(memoized);
+            List<Object> cacheMissList = missList(inputList, cacheMap);
+            CompletableFuture<?> loaded;
+            if (cacheMissList.isEmpty()) {
+                loaded = CompletableFuture.completedFuture(null);
+            } else if (plan.getLoadChunkSize() <= 0 || cacheMissList.size() <= plan.getLoadChunkSize()) {
+                loaded = proceedAsync(joinPoint, plan, missArgs(cacheMissList, args))
+                        .thenAccept(result -> cacheListResult(cacheMissList, cacheMap, keys, plan, (Map<?, ?>) result));
+            } else {
+                // 拆片的话每片的future同时发出去, 各自完成之后马上写缓存, 全部完成之后合并
+                // 最多等cache-anno.loader.timeout, 超时的话整个调用以TimeoutException失败, 没完成的片之后完成了照常写缓存
+                List<CompletableFuture<Map<?, ?>>> futures = CollUtil.split(cacheMissList, plan.getLoadChunkSize()).stream()
+                        .map(chunk -> proceedAsync(joinPoint, plan, missArgs(chunk, args))
+                                .<Map<?, ?>>thenApply(result -> cacheListResult(chunk, new HashMap<>(chunk.size()), keys, plan, (Map<?, ?>) result)))
+                        .collect(Collectors.toList());
+                loaded = loaderExecutor.within(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])))
+                        .thenRun(() -> futures.forEach(future -> shared.putAll(future.join())));
+            }
+            return loaded.thenApply(ignored -> {
+                remember(memo, inputList, cacheMap, memoized, keys, plan);
+                return toReturnMap(cacheMap, plan);
+            });
+        });
+    }
+
+    /**
+     * 执行异步方法, 返回的future完成之后记录执行的耗时
+     * Mono/Flux在这里订阅, Flux收集成List
+     *
+     * @param args 替换后的参数, null表示用原来的参数
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> proceedAsync(ProceedingJoinPoint joinPoint, CachePlan plan, Object[] args) {
+        long start = cacheMetrics.start();
+        CompletableFuture<Object> future;
+        try {
+            Object result = args == null ? joinPoint.proceed() : joinPoint.proceed(args);
+            if (result == null) {
+                future = CompletableFuture.completedFuture(null);
+            } else if (plan.getAsync() == CachePlan.Async.FUTURE) {
+                future = ((CompletionStage<Object>) result).toCompletableFuture();
+            } else {
+                future = ReactorAdapter.toFuture(result);
+            }
+        } catch (Throwable e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((value, e) -> cacheMetrics.loader(plan.getMethod(), plan.getPrefix(), start, e != null));
+    }
+
     /**
      * 处理one to list的自动缓存
      */
     private Object doHandleOne2ListCache(ProceedingJoinPoint joinPoint,
                                          String key,
                                          Class<?> returnType,
-                                         long expire,
                                          CacheService cacheService,
-                                         long missExpire) throws Throwable {
-        // 从缓存容器里面拿数据
-        List<?> objectListFromCache = cacheService.getObjectListFromCache(key, returnType);
-        // 不为空的话就把这个直接返回
-        if (CollUtil.isNotEmpty(objectListFromCache)) {
-            return objectListFromCache;
-        }
-        // 为空的话执行方法, 拿到从db查询的结果
-        Object proceed = joinPoint.proceed();
-        if (proceed instanceof List) {
-            List<?> real = (List<?>) proceed;
+                                         CachePlan plan) throws Throwable {
+        // 从缓存容器里面拿数据, 空集合缓存是空缓存标记
+        Object objectListFromCache = CacheTier.lookupList(cacheService, key, returnType, plan.getPrefix());
+        // 不为空的话就把这个直接返回, 过了逻辑过期时间的话后台刷新一下
+        if (objectListFromCache != null) {
+            refreshIfStale(key, objectListFromCache, () -> loadOne2List(joinPoint, key, plan), plan);
+            return plan.toReturn(unwrapEmptyList(objectListFromCache));
+        }
+        // 为空的话执行方法
+        SingleFlight.Loader loader = () -> loadOne2List(joinPoint, key, plan);
+        // 开启分布式锁的话, 只有拿到锁的节点执行方法, 其他节点等缓存
+        if (plan.isDistributedLock()) {
+            SingleFlight.Loader direct = loader;
+            loader = () -> lockAndLoad(key, direct,
+                    () -> CacheTier.lookupList(cacheService, key, returnType, plan.getPrefix()), cached -> plan.toReturn(unwrapEmptyList(cached)));
+        }
+        // 开启合并的话同一个key只会有一个线程执行
+        return plan.isSingleFlight() ? singleFlight.execute(key, loader) : loader.load();
+    }
+
+    /**
+     * 执行方法并把结果写入缓存(one to list)
+     */
+    private Object loadOne2List(ProceedingJoinPoint joinPoint,
+                                String key,
+                                CachePlan plan) throws Throwable {
+        // 执行方法, 拿到从db查询的结果
+        return cacheOne2List(key, proceed(joinPoint, plan, null), plan);
+    }
+
+    /**
+     * 方法的结果写入缓存(one to list)
+     *
+     * @param proceed 方法的返回值
+     * @return 方法的返回值(空的话是空集合)
+     */
+    private Object cacheOne2List(String key, Object proceed, CachePlan plan) {
+        long expire = plan.getExpire();
+        long refreshAhead = plan.getRefreshAhead();
+        // Set或者数组之类的统一转成List再缓存
+        Object cached = plan.toCached(proceed);
+        if (cached instanceof List) {
+            List<?> real = (List<?>) cached;
             // db查询也为空的话, 设置空缓存
             if (CollectionUtils.isEmpty(real)) {
-                proceed = new ArrayList<>();
-                expire = missExpire;
+                cached = new ArrayList<>();
+                proceed = plan.toReturn(cached);
+                expire = plan.getMissExpire();
+                refreshAhead = 0L;
             }
             // 如果空缓存过期时间不为0, 则表示需要进行空缓存
             if (!DISABLE_MISS_VALUE.equals(expire)) {
-                redisRepository.set(key, expire, proceed);
+                writeRedis(plan, key, expire, cached, refreshAhead);
             }
+            writeLocal(plan, key, cached, CollectionUtils.isEmpty(real));
         }
         return proceed;
     }
 
+    /**
+     * 执行方法, 顺便记录执行的耗时
+     *
+     * @param args 替换后的参数, null表示用原来的参数
+     */
+    private Object proceed(ProceedingJoinPoint joinPoint, CachePlan plan, Object[] args) throws Throwable {
+        long start = cacheMetrics.start();
+        boolean error = true;
+        try {
+            Object result = args == null ? joinPoint.proceed() : joinPoint.proceed(args);
+            error = false;
+            return result;
+        } finally {
+            cacheMetrics.loader(plan.getMethod(), plan.getPrefix(), start, error);
+        }
+    }
+
     /**
      * 处理one to one的自动缓存
      */
     private Object doHandleOne2OneCache(ProceedingJoinPoint joinPoint,
-                                        String key, long expire,
-                                        Class<?> returnType,
+                                        String key,
+                                        Type valueType,
                                         CacheService cacheService,
-                                        long missExpire) throws Throwable {
+                                        CachePlan plan) throws Throwable {
         // 从缓存容器获取数据
-        Object objectFromLocalCache = cacheService.getObjectFromCache(key, returnType);
-        // 如果有数据, 则直接返回
+        Object objectFromLocalCache = CacheTier.lookup(cacheService, key, valueType, plan.getPrefix());
+        // 如果有数据, 则直接返回, 过了逻辑过期时间的话后台刷新一下
         if (objectFromLocalCache != null) {
-            if (EMPTY_OBJECT.equals(JSON.toJSONString(objectFromLocalCache))) {
-                return null;
-            } else {
-                return objectFromLocalCache;
-            }
+            refreshIfStale(key, objectFromLocalCache, () -> loadOne2One(joinPoint, key, plan), plan);
+            return plan.toReturn(unwrapEmpty(objectFromLocalCache));
         }
         // 如果没有命中则走方法拿数据
-        Object proceed = joinPoint.proceed();
+        SingleFlight.Loader loader = () -> loadOne2One(joinPoint, key, plan);
+        // 开启分布式锁的话, 只有拿到锁的节点执行方法, 其他节点等缓存
+        if (plan.isDistributedLock()) {
+            SingleFlight.Loader direct = loader;
+            loader = () -> lockAndLoad(key, direct,
+                    () -> CacheTier.lookup(cacheService, key, valueType, plan.getPrefix()), cached -> plan.toReturn(unwrapEmpty(cached)));
+        }
+        // 开启合并的话同一个key只会有一个线程执行
+        return plan.isSingleFlight() ? singleFlight.execute(key, loader) : loader.load();
+    }
+
+    /**
+     * 空缓存标记还原成null, 去掉逻辑过期时间
+     */
+    private static Object unwrapEmpty(Object objectFromCache) {
+        return NullValue.isNull(objectFromCache) ? null : RefreshValue.unwrap(objectFromCache);
+    }
+
+    /**
+     * 集合的空缓存标记还原成空集合, 去掉逻辑过期时间
+     */
+    private static Object unwrapEmptyList(Object objectListFromCache) {
+        return NullValue.isNull(objectListFromCache) ? new ArrayList<>() : RefreshValue.unwrap(objectListFromCache);
+    }
+
+    /**
+     * 在分布式锁下加载数据
+     * 拿到锁的节点执行方法, 没拿到的节点轮询缓存, 读到数据(包括空缓存)就返回
+     * 锁已经释放了还没有数据(比如没有开启空缓存), 或者等了cache-anno.lock.wait还没有数据, 就自己执行方法
+     * redis异常的时候不知道锁在谁手里, 等下去也读不到缓存, 直接执行方法
+     *
+     * @param key    缓存的key
+     * @param loader 执行方法并写缓存
+     * @param reader 读缓存, 空缓存是空缓存标记, 没有数据返回null
+     * @param onHit  读到缓存之后的处理
+     * @return 结果
+     */
+    private Object lockAndLoad(String key,
+                               SingleFlight.Loader loader,
+                               Supplier<Object> reader,
+                               Function<Object, Object> onHit) throws Throwable {
+        String lockKey = key + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        RedisRepository.LockResult lock = redisRepository.lock(lockKey, token, lockLease);
+        if (lock == RedisRepository.LockResult.ACQUIRED) {
+            try {
+                return loader.load();
+            } finally {
+                redisRepository.unlock(lockKey, token);
+            }
+        }
+        if (lock == RedisRepository.LockResult.ERROR) {
+            return loader.load();
+        }
+        // 没拿到锁, 等拿到锁的节点写缓存
+        long deadline = System.currentTimeMillis() + lockWait;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LOCK_RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Object cached = reader.get();
+            if (cached != null) {
+                return onHit.apply(cached);
+            }
+            if (!redisRepository.isLocked(lockKey)) {
+                // 锁释放之前可能刚写完缓存, 再读一次
+                cached = reader.get();
+                if (cached != null) {
+                    return onHit.apply(cached);
+                }
+                log.debug("cache-anno lock released without cache, load by self, key:{}", key);
+                return loader.load();
+            }
+        }
+        log.info("cache-anno wait lock timeout, load by self, key:{}", key);
+        return loader.load();
+    }
+
+    /**
+     * 命中的key过了逻辑过期时间的话, 提交一个后台任务重新执行方法刷新redis和本地缓存
+     * 逻辑过期时间是值自己带着的(写redis的时候写进去的头), 不管从哪一级缓存命中, 也不管是哪个节点写的, 判断的结果都一样
+     * 同一个key同时只会有一个刷新任务, 多个节点之间通过分布式锁保证只有一个节点在刷新
+     *
+     * @param key    缓存的key
+     * @param cached 命中的值
+     * @param loader 执行方法并写redis
+     * @param plan   执行计划
+     */
+    private void refreshIfStale(String key, Object cached, SingleFlight.Loader loader, CachePlan plan) {
+        if (plan.getRefreshAhead() <= 0 || !RefreshValue.isStale(cached) || !refreshing.add(key)) {
+            return;
+        }
+        submitRefresh(Collections.singletonList(key), () -> {
+            String lockKey = key + LOCK_SUFFIX;
+            String token = UUID.randomUUID().toString();
+            if (!redisRepository.tryLock(lockKey, token, lockLease)) {
+                return;
+            }
+            try {
+                loader.load();
+            } finally {
+                redisRepository.unlock(lockKey, token);
+            }
+        });
+    }
+
+    /**
+     * 批量查询中过了逻辑过期时间的id, 提交一个后台任务重新执行方法刷新
+     * 已经在刷新中的id会跳过
+     */
+    private void refreshListIfStale(List<Object> staleList,
+                                    ProceedingJoinPoint joinPoint,
+                                    ListKeys keys,
+                                    Object[] args,
+                                    CachePlan plan) {
+        if (CollectionUtils.isEmpty(staleList)) {
+            return;
+        }
+        List<Object> claimedList = staleList.stream()
+                .filter(id -> refreshing.add(keys.get(id)))
+                .collect(Collectors.toList());
+        if (CollectionUtils.isEmpty(claimedList)) {
+            return;
+        }
+        List<String> claimedKeys = claimedList.stream()
+                .map(keys::get)
+                .collect(Collectors.toList());
+        submitRefresh(claimedKeys, () -> loadListCache(claimedList, new HashMap<>(claimedList.size()),
+                joinPoint, keys, args, plan));
+    }
+
+    /**
+     * 提交刷新任务, 任务结束或者提交失败都会释放这些key
+     */
+    private void submitRefresh(List<String> keys, RefreshTask task) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    log.warn("cache-anno refresh ahead error, keys:{}, msg:{}", keys, e.getMessage());
+                } finally {
+                    keys.forEach(refreshing::remove);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            keys.forEach(refreshing::remove);
+            log.warn("cache-anno refresh ahead queue is full, keys:{}", keys);
+        }
+    }
+
+    /**
+     * 刷新任务, 和joinPoint.proceed一样允许抛出Throwable
+     */
+    @FunctionalInterface
+    private interface RefreshTask {
+        void run() throws Throwable;
+    }
+
+    /**
+     * 执行方法并把结果写入缓存(one to one)
+     */
+    private Object loadOne2One(ProceedingJoinPoint joinPoint,
+                               String key,
+                               CachePlan plan) throws Throwable {
+        // Optional的话缓存的是里面的值
+        return cacheOne2One(key, plan.toCached(proceed(joinPoint, plan, null)), plan);
+    }
+
+    /**
+     * 方法的结果写入缓存(one to one)
+     *
+     * @param proceed 要缓存的值(Optional已经取出里面的值)
+     * @return 方法的返回值
+     */
+    private Object cacheOne2One(String key, Object proceed, CachePlan plan) {
+        long expire = plan.getExpire();
+        long missExpire = plan.getMissExpire();
+        long refreshAhead = plan.getRefreshAhead();
         Object result = proceed;
         // 如果方法返回null并且没有禁用空缓存, 则设置空缓存
         if (proceed == null && !DISABLE_MISS_VALUE.equals(missExpire)) {
             proceed = RedisKey.EMPTY_OBJECT;
             expire = missExpire;
+            refreshAhead = 0L;
         }
         /*
             结果不为空的话, 写入redis
             (只有一种情况为空, 就是方法为空并且还没有启用空缓存, 那直接就返回null)
          */
         if (proceed != null) {
-            redisRepository.set(key, expire, proceed);
+            writeRedis(plan, key, expire, proceed, refreshAhead);
         }
-        return result;
+        // 本地缓存里面的空缓存和从redis读出来的一样, 是空缓存标记
+        writeLocal(plan, key, result != null ? result : NullValue.INSTANCE, result == null);
+        return plan.toReturn(result);
     }
 
     /**
@@ -217,20 +823,179 @@ public class CacheAspect {
      * 这里又分为两种,map的value是对象或者List<对象>
      */
     @SuppressWarnings("unchecked")
-    private void doHandleListCache(List<Object> inputList, Class<?> clazz,
+    private void doHandleListCache(List<Object> inputList,
                                    Map<Object, ?> objectFromLocalCache,
                                    ProceedingJoinPoint joinPoint,
-                                   String prefix, long expire,
-                                   String emptyCache,
-                                   Object[] args, long missExpire) throws Throwable {
+                                   ListKeys keys,
+                                   Object[] args,
+                                   CachePlan plan) throws Throwable {
+        // 命中的部分如果有过了逻辑过期时间的, 后台刷新一下, 判断完去掉值上的逻辑过期时间
+        if (plan.getRefreshAhead() > 0) {
+            List<Object> staleList = inputList.stream()
+                    .filter(id -> RefreshValue.isStale(objectFromLocalCache.get(id)))
+                    .distinct()
+                    .collect(Collectors.toList());
+            refreshListIfStale(staleList, joinPoint, keys, args, plan);
+        }
+        ((Map<Object, Object>) objectFromLocalCache).replaceAll((id, value) -> RefreshValue.unwrap(value));
         // objectFromLocalCache这个已经是从缓存容器里面取出来的值, 看一下inputList中少了没有, 如果少了放miss部分走方法给它补上
-        List<Object> cacheMissList = inputList.stream()
-                .filter(key -> !objectFromLocalCache.containsKey(key))
-                .collect(Collectors.toList());
+        List<Object> cacheMissList = missList(inputList, objectFromLocalCache);
         // 如果没有miss的说明, 全在缓存中取了, 直接返回
         if (CollectionUtils.isEmpty(cacheMissList)) {
             return;
         }
+        if (!plan.isSingleFlight()) {
+            loadListCache(cacheMissList, objectFromLocalCache, joinPoint, keys, args, plan);
+            return;
+        }
+
+        // 开启合并的话, 已经有其他线程在加载的id不再送去方法, 等它们的结果就行
+        Map<String, Object> keyIds = new HashMap<>(cacheMissList.size());
+        cacheMissList.forEach(id -> keyIds.put(keys.get(id), id));
+        Map<String, CompletableFuture<Object>> owned = new HashMap<>(keyIds.size());
+        Map<String, CompletableFuture<Object>> inFlights = singleFlight.join(keyIds.keySet(), owned);
+        List<Object> ownedMissList = cacheMissList.stream()
+                .filter(id -> owned.containsKey(keys.get(id)))
+                .collect(Collectors.toList());
+        try {
+            Map<?, ?> result = loadListCache(ownedMissList, objectFromLocalCache, joinPoint, keys,
+                    args, plan);
+            // 把自己加载到的结果分享给等待的线程, 没查到的id会拿到null
+            Map<String, Object> values = new HashMap<>(result.size());
+            result.forEach((k, v) -> values.put(keys.get(k), v));
+            singleFlight.complete(owned, values);
+        } catch (Throwable e) {
+            singleFlight.fail(owned, e);
+            throw e;
+        }
+        // 等待其他线程加载的结果
+        Map<Object, Object> shared = (Map<Object, Object>) objectFromLocalCache;
+        for (Map.Entry<String, CompletableFuture<Object>> entry : inFlights.entrySet()) {
+            Object value = SingleFlight.await(entry.getValue());
+            if (value != null) {
+                shared.put(keyIds.get(entry.getKey()), value);
+            }
+        }
+    }
+
+    /**
+     * 没有命中缓存的id
+     */
+    private static List<Object> missList(List<Object> inputList, Map<Object, ?> cacheMap) {
+        return inputList.stream()
+                .filter(id -> !cacheMap.containsKey(id))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 把未命中的部分送去执行方法, 然后写入缓存并放入要返回的结果中
+     *
+     * @return 方法查询到的结果
+     */
+    private Map<?, ?> loadListCache(List<Object> cacheMissList,
+                                    Map<Object, ?> objectFromLocalCache,
+                                    ProceedingJoinPoint joinPoint,
+                                    ListKeys keys,
+                                    Object[] args,
+                                    CachePlan plan) throws Throwable {
+        if (CollectionUtils.isEmpty(cacheMissList)) {
+            return Collections.emptyMap();
+        }
+        if (plan.getLoadChunkSize() > 0 && cacheMissList.size() > plan.getLoadChunkSize()) {
+            return loadListCacheInChunks(cacheMissList, objectFromLocalCache, joinPoint, keys, args, plan);
+        }
+        // 送去执行方法, 然后拿到结果
+        Map<?, ?> result = (Map<?, ?>) proceed(joinPoint, plan, missArgs(cacheMissList, args));
+        return cacheListResult(cacheMissList, objectFromLocalCache, keys, plan, result);
+    }
+
+    /**
+     * 未命中的部分拆成多片并发执行方法, 调用线程自己执行最后一片
+     * 每片执行完马上写缓存, 全部结束之后在调用线程里面合并到要返回的结果中, 有片失败的话抛出第一个异常
+     * 从开始拆片算起最多等cache-anno.loader.timeout, 超时的话还在排队的片不再执行, 已经在执行的片执行完照常写缓存, 调用方不再等
+     *
+     * @return 方法查询到的结果
+     */
+    @SuppressWarnings("unchecked")
+    private Map<?, ?> loadListCacheInChunks(List<Object> cacheMissList,
+                                            Map<Object, ?> objectFromLocalCache,
+                                            ProceedingJoinPoint joinPoint,
+                                            ListKeys keys,
+                                            Object[] args,
+                                            CachePlan plan) throws Throwable {
+        long timeout = loaderExecutor.getTimeout();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        List<List<Object>> chunks = CollUtil.split(cacheMissList, plan.getLoadChunkSize());
+        List<CompletableFuture<Object>> futures = new ArrayList<>(chunks.size() - 1);
+        for (List<Object> chunk : chunks.subList(0, chunks.size() - 1)) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            loaderExecutor.execute(() -> {
+                // 调用方已经超时放弃了
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(loadChunk(chunk, joinPoint, keys, args, plan));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            futures.add(future);
+        }
+        Map<Object, Object> loaded = new HashMap<>(cacheMissList.size());
+        Throwable error = null;
+        try {
+            loaded.putAll(loadChunk(chunks.get(chunks.size() - 1), joinPoint, keys, args, plan));
+        } catch (Throwable e) {
+            error = e;
+        }
+        // 失败了也要等其他片结束(最多等到超时), 它们写缓存用到的都是这次调用的数据
+        for (CompletableFuture<Object> future : futures) {
+            try {
+                Object result = timeout > 0
+                        ? SingleFlight.await(future, deadline - System.nanoTime())
+                        : SingleFlight.await(future);
+                loaded.putAll((Map<Object, Object>) result);
+            } catch (TimeoutException e) {
+                if (future.isDone()) {
+                    // 方法自己抛出的TimeoutException
+                    error = error != null ? error : e;
+                    continue;
+                }
+                futures.forEach(remaining -> remaining.cancel(false));
+                log.warn("cache-anno load chunks timeout after {}ms, prefix:{}, chunks:{}", timeout, plan.getPrefix(), chunks.size());
+                throw error != null ? error
+                        : new IllegalStateException("cache-anno load chunks timeout after " + timeout + "ms, prefix:" + plan.getPrefix(), e);
+            } catch (Throwable e) {
+                error = error != null ? error : e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        ((Map<Object, Object>) objectFromLocalCache).putAll(loaded);
+        return loaded;
+    }
+
+    /**
+     * 一片未命中的id送去执行方法, 然后写入缓存
+     *
+     * @return 方法查询到的结果
+     */
+    private Map<?, ?> loadChunk(List<Object> chunk,
+                                ProceedingJoinPoint joinPoint,
+                                ListKeys keys,
+                                Object[] args,
+                                CachePlan plan) throws Throwable {
+        Map<?, ?> result = (Map<?, ?>) proceed(joinPoint, plan, missArgs(chunk, args));
+        // 各片在不同的线程里面执行, 先放到自己的map里面, 最后在调用线程里面合并
+        return cacheListResult(chunk, new HashMap<>(chunk.size()), keys, plan, result);
+    }
+
+    /**
+     * 执行方法的参数, 第一个参数换成未命中的id
+     */
+    private static Object[] missArgs(List<Object> cacheMissList, Object[] args) {
         // 参数1是未命中的key集合, 其他位是多余的入参数信息
         List<Object> params = new ArrayList<>();
         params.add(cacheMissList);
@@ -240,38 +1005,202 @@ public class CacheAspect {
          */
         IntStream.range(1, args.length)
                 .forEach(index -> params.add(args[index]));
+        return params.toArray();
+    }
 
-        // 送去执行方法, 然后拿到结果
-        Map result = (Map) joinPoint.proceed(params.toArray());
-
+    /**
+     * 方法查询到的结果写入缓存并放入要返回的结果中, 没查到的id写空缓存
+     *
+     * @param cacheMissList        送去执行方法的id
+     * @param objectFromLocalCache 要返回的结果
+     * @param result               方法的返回值
+     * @return 方法查询到的结果
+     */
+    private Map<?, ?> cacheListResult(List<Object> cacheMissList,
+                                      Map<Object, ?> objectFromLocalCache,
+                                      ListKeys keys,
+                                      CachePlan plan,
+                                      Map<?, ?> result) {
         List<Object> dbMissingList;
         if (MapUtil.isEmpty(result)) {
             // 如果redis为空,说明走方法查到也都是空
             dbMissingList = cacheMissList;
+            result = Collections.emptyMap();
         } else {
             // 否则说明方法还是查到了部分或者全部数据, 取出这部分数据
+            Map<?, ?> found = result;
             dbMissingList = cacheMissList.stream()
-                    .filter(key -> !result.containsKey(key))
+                    .filter(key -> !found.containsKey(key))
                     .collect(Collectors.toList());
             Map<String, Object> keyValues = new HashMap<>(result.size());
-            result.forEach((k, v) -> keyValues.put(String.format(prefix, k), v));
+            result.forEach((k, v) -> keyValues.put(keys.get(k), plan.toCached(v)));
             // 然后写入缓存容器
-            redisRepository.batchSet(keyValues, expire);
-            // 并且放入到要返回的结果中
-            objectFromLocalCache.putAll(result);
+            batchWriteRedis(plan, keyValues, plan.getExpire(), plan.getRefreshAhead());
+            if (plan.isUsingLocalCache()) {
+                Map<String, Object> localValues = new HashMap<>(keyValues);
+                localValues.replaceAll((key, value) -> withRefreshAt(plan, value));
+                localCache.putAll(plan.getPrefix(), localValues);
+            }
+            // 并且放入到要返回的结果中, 值的类型和方法返回值一样
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> target = (Map<Object, Object>) objectFromLocalCache;
+            target.putAll(result);
+            // 查到的id一定存在, 放进布隆过滤器
+            if (plan.isBloomFilter()) {
+                bloomFilters.putAll(plan.getPrefix(), result.keySet());
+            }
         }
 
         // 如果dbMiss为空表示方法查询到了所有miss数据, 则直接返回
         if (CollectionUtils.isEmpty(dbMissingList)) {
-            return;
+            return result;
         }
 
         // 如果空缓存过期时间不为0, 则把没命中的数据都空缓存一下
+        long missExpire = plan.getMissExpire();
         if (!DISABLE_MISS_VALUE.equals(missExpire)) {
             // 把剩下missList转换成key-Empty写入redis(这里没有回写结果, 因为没区别)
             Map<String, Object> emptyMissData = dbMissingList.stream()
-                    .collect(Collectors.toMap(key -> String.format(prefix, key), key -> emptyCache));
-            redisRepository.batchSet(emptyMissData, missExpire);
+                    .collect(Collectors.toMap(keys::get, key -> plan.getEmptyCache(), (a, b) -> a));
+            batchWriteRedis(plan, emptyMissData, missExpire, 0L);
+        }
+        // 本地缓存里面的空缓存和从redis读出来的一样, 是空集合或者空缓存标记
+        if (plan.isUsingLocalCache()) {
+            for (Object id : dbMissingList) {
+                Object empty = plan.getShape() == CachePlan.Shape.LIST_TO_MANY ? new ArrayList<>() : NullValue.INSTANCE;
+                writeLocal(plan, keys.get(id), empty, true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 写入redis, 开启了异步写入的放到队列里面由后台线程写, 异步方法直接异步写
+     *
+     * @param plan         执行计划
+     * @param key          key
+     * @param expire       过期时间
+     * @param value        要写入的值
+     * @param refreshAhead 逻辑过期时间
+     */
+    private void writeRedis(CachePlan plan, String key, long expire, Object value, long refreshAhead) {
+        writeHot(key, value, refreshAhead);
+        CacheCodec codec = plan.getCodec();
+        if (plan.isWriteBehind()) {
+            writeBehindQueue.offer(key, expire, value, refreshAhead, codec, plan.getJitter());
+        } else if (plan.isAsync()) {
+            // 异步方法不等写完, 异常在里面已经打过日志
+            redisRepository.setAsync(key, expire, value, refreshAhead, codec, plan.getJitter());
+        } else {
+            redisRepository.set(key, expire, value, refreshAhead, codec, plan.getJitter());
+        }
+    }
+
+    /**
+     * 批量写入redis, 开启了异步写入的放到队列里面由后台线程写, 异步方法直接异步写
+     *
+     * @param plan         执行计划
+     * @param keyValues    要写入的kv
+     * @param expire       过期时间
+     * @param refreshAhead 逻辑过期时间
+     */
+    private void batchWriteRedis(CachePlan plan, Map<String, Object> keyValues, long expire, long refreshAhead) {
+        if (hotKeyDetector.isEnabled()) {
+            keyValues.forEach((key, value) -> writeHot(key, value, refreshAhead));
+        }
+        CacheCodec codec = plan.getCodec();
+        if (plan.isWriteBehind()) {
+            writeBehindQueue.offerAll(keyValues, expire, refreshAhead, codec, plan.getJitter());
+        } else if (plan.isAsync()) {
+            redisRepository.batchSetAsync(keyValues, expire, refreshAhead, codec, plan.getJitter());
+        } else {
+            redisRepository.batchSet(keyValues, expire, refreshAhead, codec, plan.getJitter());
+        }
+    }
+
+    /**
+     * 方法加载的结果直接写一份到本地缓存, 同一个节点下一次调用就不用再走redis
+     * 空缓存在本地存活的时间不能比redis里面的长, 不满足的话就把本地的删掉, 让下次去读redis
+     *
+     * @param plan  执行计划
+     * @param key   key
+     * @param value 要写入的值
+     * @param empty 是否是空缓存
+     */
+    private void writeLocal(CachePlan plan, String key, Object value, boolean empty) {
+        if (!plan.isUsingLocalCache()) {
+            return;
+        }
+        boolean skipEmpty = DISABLE_MISS_VALUE.equals(plan.getMissExpire()) || plan.getLocalExpire() > plan.getMissExpire();
+        if (value == null || (empty && skipEmpty)) {
+            localCache.delete(plan.getPrefix(), key);
+            return;
+        }
+        localCache.put(plan.getPrefix(), key, empty ? value : withRefreshAt(plan, value));
+    }
+
+    /**
+     * 写redis的时候热点key在本节点的值也换成新的, 不然要等热点key的本地缓存过期才能读到(比如提前刷新之后)
+     * 值的样子和从redis读出来放进去的一样: 空缓存是空缓存标记或者空集合, 其他的带着逻辑过期时间
+     *
+     * @param key          key
+     * @param value        要写入redis的值
+     * @param refreshAhead 逻辑过期时间
+     */
+    private void writeHot(String key, Object value, long refreshAhead) {
+        if (!hotKeyDetector.isEnabled()) {
+            return;
+        }
+        Object hot;
+        if (RedisKey.EMPTY_OBJECT.equals(value)) {
+            hot = NullValue.INSTANCE;
+        } else if (RedisKey.EMPTY_COLLECTION.equals(value)) {
+            hot = new ArrayList<>();
+        } else {
+            hot = refreshAhead > 0 ? RefreshValue.of(value, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(refreshAhead)) : value;
+        }
+        hotKeyDetector.put(key, hot);
+    }
+
+    /**
+     * 本地缓存的值和redis里面一样带上逻辑过期时间, 从本地缓存命中的时候也能判断要不要刷新
+     *
+     * @param plan  执行计划
+     * @param value 要写入的值
+     * @return 没有开启逻辑过期的话还是原来的值
+     */
+    private static Object withRefreshAt(CachePlan plan, Object value) {
+        if (plan.getRefreshAhead() <= 0) {
+            return value;
+        }
+        return RefreshValue.of(value, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(plan.getRefreshAhead()));
+    }
+
+    /**
+     * 一次批量查询的所有key, 调用开始的时候拼一次, 之后各级缓存和加载都直接用
+     * 方法返回了不在入参里面的id时才会再用模板拼一次
+     */
+    private static final class ListKeys {
+
+        private final KeyTemplate template;
+
+        private final Object[] args;
+
+        private final Map<Object, String> keys;
+
+        private ListKeys(KeyTemplate template, Object[] args, Map<Object, String> keys) {
+            this.template = template;
+            this.args = args;
+            this.keys = keys;
+        }
+
+        private Map<Object, String> asMap() {
+            return keys;
+        }
+
+        private String get(Object id) {
+            String key = keys.get(id);
+            return key != null ? key : template.build(args, id);
         }
     }
 }
@@ -0,0 +1,222 @@
+package cn.someget.cache.aop;
+
+import cn.hutool.core.convert.Convert;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.codec.CacheCodec;
+import cn.someget.cache.utils.ExpireJitter;
+import cn.someget.cache.utils.KeyTemplate;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 一个被@Cache标记的方法解析好的执行计划
+ * 注解, 返回值, 参数这些反射信息只在第一次(或者启动扫描时)解析一次, 之后每次调用直接用
+ *
+ * @author agent
+ * @date 2026-10-17 19:52
+ */
+@Getter
+@AllArgsConstructor
+public final class CachePlan {
+
+    /**
+     * 自动缓存的类型
+     */
+    public enum Shape {
+        /**
+         * 一对一, 入参是一个值, 出参是一个对象
+         */
+        ONE_TO_ONE,
+        /**
+         * 一对多, 入参是一个值, 出参是List
+         */
+        ONE_TO_LIST,
+        /**
+         * 批量一对一, 入参是List, 出参是Map<K, V>
+         */
+        LIST_TO_ONE,
+        /**
+         * 批量一对多, 入参是List, 出参是Map<K, List<V>>
+         */
+        LIST_TO_MANY;
+
+        public boolean isBatch() {
+            return this == LIST_TO_ONE || this == LIST_TO_MANY;
+        }
+    }
+
+    /**
+     * 异步的返回值, 缓存的是完成之后里面的值
+     */
+    public enum Async {
+        /**
+         * 同步方法
+         */
+        NONE,
+        /**
+         * CompletableFuture或者CompletionStage
+         */
+        FUTURE,
+        /**
+         * reactor的Mono
+         */
+        MONO,
+        /**
+         * reactor的Flux, 当作List缓存
+         */
+        FLUX
+    }
+
+    /**
+     * 方法
+     */
+    private final Method method;
+
+    /**
+     * 注解本身
+     */
+    private final Cache cache;
+
+    /**
+     * 注解的prefix, 同时也是本地缓存分区和序列化方式的名字
+     */
+    private final String prefix;
+
+    /**
+     * 编译好的key模板
+     */
+    private final KeyTemplate template;
+
+    /**
+     * 自动缓存的类型
+     */
+    private final Shape shape;
+
+    /**
+     * 异步返回值的类型, 下面的类型都是解开之后里面的类型
+     */
+    private final Async async;
+
+    /**
+     * 反序列化的类型(集合的话是元素的类型)
+     */
+    private final Class<?> clazz;
+
+    /**
+     * one to one反序列化的完整类型(带泛型, Optional的话是里面的类型)
+     */
+    private final Type valueType;
+
+    /**
+     * 方法返回的容器类型: Optional, 或者List/Set/数组这些集合(批量一对多时是Map的value),
+     * 缓存里面统一存的是List, 返回的时候再转成这个类型, null表示不需要转换
+     */
+    private final Class<?> containerType;
+
+    /**
+     * 批量查询时第二个参数是否要拼到key后面
+     */
+    private final boolean suffixArg;
+
+    /**
+     * 批量查询的空缓存标记
+     */
+    private final String emptyCache;
+
+    /**
+     * 序列化方式
+     */
+    private final CacheCodec codec;
+
+    private final boolean usingLocalCache;
+
+    private final boolean singleFlight;
+
+    private final boolean distributedLock;
+
+    private final boolean writeBehind;
+
+    /**
+     * key是否带prefix的版本号
+     */
+    private final boolean versioned;
+
+    /**
+     * 批量查询是否用布隆过滤器过滤不存在的id
+     */
+    private final boolean bloomFilter;
+
+    /**
+     * 批量查询未命中的id拆片执行方法的大小, 0表示不拆
+     */
+    private final int loadChunkSize;
+
+    private final long expire;
+
+    private final long missExpire;
+
+    /**
+     * 写入redis时过期时间的随机抖动
+     */
+    private final ExpireJitter jitter;
+
+    private final long refreshAhead;
+
+    private final long localExpire;
+
+    public boolean isAsync() {
+        return async != Async.NONE;
+    }
+
+    /**
+     * 方法的返回值转成缓存里面存的样子: Optional取出里面的值, 集合和数组转成List
+     *
+     * @param value 方法的返回值(批量一对多时是Map的value)
+     * @return 缓存的值
+     */
+    public Object toCached(Object value) {
+        if (value == null || containerType == null) {
+            return value;
+        }
+        if (containerType == Optional.class) {
+            return ((Optional<?>) value).orElse(null);
+        }
+        return value instanceof List ? value : Convert.toList(value);
+    }
+
+    /**
+     * 缓存里面的值转成方法的返回类型
+     *
+     * @param value 缓存的值(空缓存标记已经去掉)
+     * @return 方法的返回值
+     */
+    public Object toReturn(Object value) {
+        if (containerType == null) {
+            return value;
+        }
+        if (containerType == Optional.class) {
+            return Optional.ofNullable(value);
+        }
+        if (value == null || containerType.isInstance(value)) {
+            return value;
+        }
+        // Set保持原来的顺序
+        if (containerType == Set.class) {
+            return new LinkedHashSet<>((Collection<?>) value);
+        }
+        return Convert.convert(containerType, value);
+    }
+
+    @Override
+    public String toString() {
+        return method.getDeclaringClass().getSimpleName() + "#" + method.getName() + "(" + prefix + ", " + shape + ")";
+    }
+}
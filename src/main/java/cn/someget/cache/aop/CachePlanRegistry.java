@@ -0,0 +1,310 @@
+package cn.someget.cache.aop;
+
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.anno.CacheEvict;
+import cn.someget.cache.anno.CachePut;
+import cn.someget.cache.codec.CacheCodec;
+import cn.someget.cache.codec.CacheCodecRegistry;
+import cn.someget.cache.utils.BloomFilterRegistry;
+import cn.someget.cache.utils.ExpireJitter;
+import cn.someget.cache.utils.KeyTemplate;
+import cn.someget.cache.utils.KeyTemplateRegistry;
+import cn.someget.cache.utils.LocalCache;
+import cn.someget.cache.utils.LocalCacheSpec;
+import cn.someget.cache.utils.PrefixVersions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cn.someget.cache.utils.RedisKey.DISABLE_MISS_VALUE;
+import static cn.someget.cache.utils.RedisKey.EMPTY_COLLECTION;
+import static cn.someget.cache.utils.RedisKey.EMPTY_OBJECT;
+
+/**
+ * 解析并保存每个@Cache方法的执行计划
+ * 启动时扫描所有bean, 有@Cache的方法提前解析好, 注解配错了直接启动失败, 而不是等到第一次调用
+ * 没扫描到的方法(比如通过接口代理调用)在第一次调用时解析
+ * <p>
+ * 这里是BeanPostProcessor, 依赖的bean都用ObjectProvider延迟获取, 避免它们被提前创建导致@Scheduled之类的不生效
+ *
+ * @author agent
+ * @date 2026-10-17 19:52
+ */
+@Slf4j
+@Component
+public class CachePlanRegistry implements BeanPostProcessor {
+
+    private final ObjectProvider<CacheCodecRegistry> codecRegistry;
+
+    private final ObjectProvider<LocalCache> localCache;
+
+    private final ObjectProvider<PrefixVersions> prefixVersions;
+
+    private final ObjectProvider<BloomFilterRegistry> bloomFilters;
+
+    private final ObjectProvider<KeyTemplateRegistry> keyTemplates;
+
+    /**
+     * 方法 -> 执行计划
+     */
+    private final Map<Method, CachePlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * 注解的prefix -> 执行计划, 同一个prefix有多个@Cache方法的话是第一个解析的
+     */
+    private final Map<String, CachePlan> prefixes = new ConcurrentHashMap<>();
+
+    public CachePlanRegistry(ObjectProvider<CacheCodecRegistry> codecRegistry, ObjectProvider<LocalCache> localCache,
+                             ObjectProvider<PrefixVersions> prefixVersions, ObjectProvider<BloomFilterRegistry> bloomFilters,
+                             ObjectProvider<KeyTemplateRegistry> keyTemplates) {
+        this.codecRegistry = codecRegistry;
+        this.localCache = localCache;
+        this.prefixVersions = prefixVersions;
+        this.bloomFilters = bloomFilters;
+        this.keyTemplates = keyTemplates;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        ReflectionUtils.doWithMethods(targetClass, method -> {
+            if (method.isBridge()) {
+                return;
+            }
+            declareWrite(method, beanName);
+            if (!method.isAnnotationPresent(Cache.class) || plans.containsKey(method)) {
+                return;
+            }
+            try {
+                CachePlan plan = build(method);
+                plans.put(method, plan);
+                prefixes.putIfAbsent(plan.getPrefix(), plan);
+                log.debug("cache-anno resolved plan:{}", plan);
+            } catch (IllegalArgumentException e) {
+                throw new BeanInitializationException("cache-anno illegal @Cache on " + method + ", bean:" + beanName, e);
+            }
+        });
+        return bean;
+    }
+
+    /**
+     * 写路径(@CachePut和@CacheEvict)的key模板也提前登记, 同一个prefix和@Cache上拼法不一样的话启动失败
+     */
+    private void declareWrite(Method method, String beanName) {
+        CachePut cachePut = method.getAnnotation(CachePut.class);
+        CacheEvict cacheEvict = method.getAnnotation(CacheEvict.class);
+        try {
+            if (cachePut != null) {
+                keyTemplates.getObject().declare(method, cachePut.prefix());
+            }
+            if (cacheEvict != null) {
+                keyTemplates.getObject().declare(method, cacheEvict.prefix());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new BeanInitializationException("cache-anno illegal prefix on " + method + ", bean:" + beanName, e);
+        }
+    }
+
+    /**
+     * 获取执行计划
+     *
+     * @param method      切面拿到的方法(通过接口代理时是接口的方法)
+     * @param targetClass 目标类
+     * @return 执行计划
+     */
+    public CachePlan get(Method method, Class<?> targetClass) {
+        CachePlan plan = plans.get(method);
+        if (plan != null) {
+            return plan;
+        }
+        return plans.computeIfAbsent(method, m -> {
+            Method specific = AopUtils.getMostSpecificMethod(m, targetClass);
+            CachePlan resolved = plans.get(specific);
+            if (resolved == null) {
+                resolved = build(specific);
+                prefixes.putIfAbsent(resolved.getPrefix(), resolved);
+            }
+            return resolved;
+        });
+    }
+
+    /**
+     * 按prefix获取@Cache方法的执行计划, @CachePut写入的时候用它的过期时间之类的配置, 和查询写入的缓存保持一致
+     *
+     * @param prefix 注解的prefix
+     * @return 执行计划, 没有@Cache用过这个prefix(或者还没解析到)的话是null
+     */
+    public CachePlan getByPrefix(String prefix) {
+        return prefixes.get(prefix);
+    }
+
+    /**
+     * 异步返回值的类型, reactor按类名判断, 没引入reactor也不会加载
+     */
+    private static CachePlan.Async asyncOf(Class<?> rawReturnType) {
+        if (CompletionStage.class.isAssignableFrom(rawReturnType)) {
+            return CachePlan.Async.FUTURE;
+        }
+        switch (rawReturnType.getName()) {
+            case "reactor.core.publisher.Mono":
+                return CachePlan.Async.MONO;
+            case "reactor.core.publisher.Flux":
+                return CachePlan.Async.FLUX;
+            default:
+                return CachePlan.Async.NONE;
+        }
+    }
+
+    /**
+     * 是否是集合或者数组
+     */
+    private static boolean isMultiple(ResolvableType type) {
+        Class<?> raw = type.resolve();
+        return raw != null && (type.isArray() || Collection.class.isAssignableFrom(raw));
+    }
+
+    /**
+     * 集合或者数组的元素类型, 解析不出来的用Object, 基本类型用包装类
+     */
+    private static Class<?> elementClass(ResolvableType type) {
+        ResolvableType element = type.isArray() ? type.getComponentType() : type.asCollection().getGeneric(0);
+        return ClassUtils.resolvePrimitiveIfNecessary(element.resolve(Object.class));
+    }
+
+    /**
+     * 解析方法的注解, 参数和返回值
+     *
+     * @param method 方法
+     * @return 执行计划
+     * @throws IllegalArgumentException 注解或者方法签名不支持
+     */
+    private CachePlan build(Method method) {
+        Cache cache = method.getAnnotation(Cache.class);
+        Assert.notNull(cache, "no @Cache on method {}", method);
+        String prefix = cache.prefix();
+        Assert.isTrue(CharSequenceUtil.isNotBlank(prefix), "prefix is blank");
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        // 如果没有入参的话, 暂不支持这种方式自动缓存
+        Assert.isTrue(parameterTypes.length > 0, "do not support non args");
+        ResolvableType returnType = ResolvableType.forMethodReturnType(method);
+        Class<?> rawReturnType = method.getReturnType();
+        // 异步的返回值按照里面的类型解析, Flux当作List
+        CachePlan.Async async = asyncOf(rawReturnType);
+        if (async != CachePlan.Async.NONE) {
+            // 返回的是新建的CompletableFuture, 子类型接不住
+            Assert.isTrue(async != CachePlan.Async.FUTURE || rawReturnType == CompletableFuture.class
+                    || rawReturnType == CompletionStage.class, "async return type must be CompletableFuture or CompletionStage");
+            Assert.isFalse(cache.singleFlight() || cache.distributedLock() || cache.refreshAhead() > 0 || cache.bloomFilter(),
+                    "singleFlight, distributedLock, refreshAhead and bloomFilter do not support async return type");
+            ResolvableType inner = returnType.getGeneric(0);
+            returnType = async == CachePlan.Async.FLUX ? ResolvableType.forClassWithGenerics(List.class, inner) : inner;
+            rawReturnType = returnType.resolve(Object.class);
+        }
+
+        CachePlan.Shape shape;
+        boolean suffixArg = false;
+        // 反序列化的类型, 集合的话是元素的类型
+        Class<?> clazz;
+        Type valueType = null;
+        Class<?> containerType = null;
+        // 以前是按实际传进来的参数是不是List决定要不要批量查询, 现在按声明的类型提前解析
+        // 声明成Object, Collection, Iterable之类List的父类型, 返回值又是Map的话两种都有可能, 没办法提前解析
+        Assert.isFalse(!List.class.isAssignableFrom(parameterTypes[0]) && parameterTypes[0].isAssignableFrom(List.class)
+                        && rawReturnType == Map.class,
+                "first parameter {} may or may not be a List, declare it as List for batch lookups or as the id type", parameterTypes[0]);
+        // 如果第一个入参是list, 则说明是多对多的返回
+        if (List.class.isAssignableFrom(parameterTypes[0])) {
+            // 如果参数大于2则不支持
+            Assert.isTrue(parameterTypes.length <= 2, "do not support args > 2");
+            // 如果有两个参数,第二个参数是List或者Map也不支持
+            if (parameterTypes.length == 2) {
+                Class<?> second = parameterTypes[1];
+                Assert.isFalse(List.class.isAssignableFrom(second) || Map.class.isAssignableFrom(second),
+                        "do not support the args");
+                suffixArg = true;
+            }
+            // 验证返回值是否是字典(那么返回参数一定要是Map, 不然无法映射多对多的关系)
+            Assert.isTrue(rawReturnType == Map.class, "param error, return type must be Map");
+            // Map的value是集合或者数组的话就是一对多
+            ResolvableType value = returnType.getGeneric(1);
+            if (cache.hasMoreValue() || isMultiple(value)) {
+                shape = CachePlan.Shape.LIST_TO_MANY;
+                clazz = elementClass(value);
+                containerType = value.resolve(List.class);
+            } else {
+                shape = CachePlan.Shape.LIST_TO_ONE;
+                clazz = value.resolve(Object.class);
+            }
+        } else if (isMultiple(returnType)) {
+            shape = CachePlan.Shape.ONE_TO_LIST;
+            clazz = elementClass(returnType);
+            containerType = rawReturnType;
+        } else {
+            shape = CachePlan.Shape.ONE_TO_ONE;
+            if (rawReturnType == Optional.class) {
+                containerType = Optional.class;
+                returnType = returnType.getGeneric(0);
+            }
+            clazz = returnType.resolve(Object.class);
+            valueType = returnType.hasUnresolvableGenerics() ? clazz : returnType.getType();
+        }
+        // one to one一直都是按返回值反序列化的, 其他类型注解里面指定了clazz的话以注解为准
+        if (shape != CachePlan.Shape.ONE_TO_ONE && cache.clazz() != Object.class) {
+            clazz = cache.clazz();
+        }
+        Assert.isFalse(cache.refreshAhead() > 0 && cache.refreshAhead() >= cache.expire(),
+                "refreshAhead must be less than expire");
+        Assert.isTrue(cache.compressThreshold() >= 0, "compressThreshold must not be negative");
+        Assert.isTrue(cache.loadChunkSize() >= 0, "loadChunkSize must not be negative");
+        Assert.isTrue(cache.loadChunkSize() == 0 || shape.isBatch(), "loadChunkSize only supports list args");
+        ExpireJitter jitter = ExpireJitter.of(cache.jitter(), cache.jitterPercent());
+
+        // key模板每个方法只编译一次, 登记之后按id删除缓存之类只传prefix的地方也要能解析#{name}
+        KeyTemplate template = keyTemplates.getObject().declare(method, prefix);
+
+        // 本地缓存和序列化方式都按注解的prefix区分
+        if (cache.usingLocalCache()) {
+            localCache.getObject().register(prefix, LocalCacheSpec.of(cache));
+            // 和CacheAspect.writeLocal一样, 本地的空缓存不能比redis里面的活得久
+            if (DISABLE_MISS_VALUE.equals(cache.missExpire()) || cache.localExpire() > cache.missExpire()) {
+                localCache.getObject().skipEmpty(prefix);
+            }
+        }
+        if (cache.bloomFilter()) {
+            Assert.isTrue(shape.isBatch(), "bloomFilter only supports list args");
+            bloomFilters.getObject().register(prefix, cache.bloomExpectedInsertions());
+        }
+        if (cache.versioned()) {
+            prefixVersions.getObject().register(prefix);
+        }
+        CacheCodecRegistry codecs = codecRegistry.getObject();
+        codecs.register(prefix, cache.codec(), cache.compressThreshold());
+        CacheCodec codec = codecs.get(prefix);
+        // 反序列化器提前生成好
+        codec.prepare(valueType != null ? valueType : clazz);
+
+        return new CachePlan(method, cache, prefix, template, shape, async, clazz, valueType, containerType, suffixArg,
+                shape == CachePlan.Shape.LIST_TO_MANY ? EMPTY_COLLECTION : EMPTY_OBJECT,
+                codec, cache.usingLocalCache(), cache.singleFlight(), cache.distributedLock(),
+                cache.writeBehind(), cache.versioned(), cache.bloomFilter(), cache.loadChunkSize(), cache.expire(), cache.missExpire(), jitter, cache.refreshAhead(), cache.localExpire());
+    }
+}
@@ -0,0 +1,217 @@
+package cn.someget.cache.aop;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.someget.cache.anno.CacheEvict;
+import cn.someget.cache.anno.CachePut;
+import cn.someget.cache.codec.CacheCodecRegistry;
+import cn.someget.cache.utils.BloomFilterRegistry;
+import cn.someget.cache.utils.CacheInvalidator;
+import cn.someget.cache.utils.ExpireJitter;
+import cn.someget.cache.utils.KeyTemplate;
+import cn.someget.cache.utils.KeyTemplateRegistry;
+import cn.someget.cache.utils.PrefixVersions;
+import cn.someget.cache.utils.RedisRepository;
+import cn.someget.cache.utils.RequestCache;
+import cn.someget.cache.utils.WriteBehindQueue;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static cn.someget.cache.utils.RedisKey.COMMON_HIT_EXPIRE;
+
+/**
+ * 写路径的切面处理(@CacheEvict和@CachePut)
+ * key的拼法和@Cache完全一样, 多个key放在一个管道里面删除或者写入
+ *
+ * @author agent
+ * @date 2026-10-17 20:04
+ */
+@Component
+@Aspect
+public class CacheWriteAspect {
+
+    @Resource
+    private RedisRepository redisRepository;
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    @Resource
+    private CacheCodecRegistry codecRegistry;
+
+    @Resource
+    private PrefixVersions prefixVersions;
+
+    @Resource
+    private BloomFilterRegistry bloomFilters;
+
+    @Resource
+    private RequestCache requestCache;
+
+    @Resource
+    private WriteBehindQueue writeBehindQueue;
+
+    @Resource
+    private KeyTemplateRegistry keyTemplates;
+
+    @Resource
+    private CachePlanRegistry planRegistry;
+
+    @Around(value = "@annotation(cacheEvict)", argNames = "joinPoint,cacheEvict")
+    public Object doEvict(ProceedingJoinPoint joinPoint, CacheEvict cacheEvict) throws Throwable {
+        String prefix = cacheEvict.prefix();
+        Object[] args = joinPoint.getArgs();
+        if (cacheEvict.beforeInvocation()) {
+            Collection<String> keys = buildKeys(joinPoint, prefix, args).values();
+            requestCache.evict(keys);
+            cacheInvalidator.evictKeys(prefix, keys);
+            return joinPoint.proceed();
+        }
+        Object result = joinPoint.proceed();
+        Collection<String> keys = buildKeys(joinPoint, prefix, args).values();
+        // 当前请求自己能看到自己的修改, 请求级缓存不用等事务提交
+        requestCache.evict(keys);
+        runAfterCommit(cacheEvict.afterCommit(), () -> cacheInvalidator.evictKeys(prefix, keys));
+        return result;
+    }
+
+    @Around(value = "@annotation(cachePut)", argNames = "joinPoint,cachePut")
+    @SuppressWarnings("unchecked")
+    public Object doPut(ProceedingJoinPoint joinPoint, CachePut cachePut) throws Throwable {
+        String prefix = cachePut.prefix();
+        Object[] args = joinPoint.getArgs();
+        Object result = joinPoint.proceed();
+        Map<Object, String> keys = buildKeys(joinPoint, prefix, args);
+
+        Map<String, Object> keyValues = new HashMap<>(keys.size());
+        List<String> missingKeys = new ArrayList<>();
+        if (args.length > 0 && args[0] instanceof List) {
+            // 批量的话返回值是Map<id, 值>, 返回了入参里面没有的id也一起写
+            Map<Object, Object> values = result instanceof Map ? (Map<Object, Object>) result : Collections.emptyMap();
+            KeyTemplate template = template(joinPoint, prefix, args);
+            values.forEach((id, value) -> {
+                Object cached = toCached(value);
+                if (id != null && cached != null) {
+                    keyValues.put(keys.containsKey(id) ? keys.get(id) : template.build(args, id), cached);
+                }
+            });
+            keys.values().stream().filter(key -> !keyValues.containsKey(key)).forEach(missingKeys::add);
+            // 写入的id一定存在, 开启了布隆过滤器的prefix要放进去
+            bloomFilters.putAll(prefix, values.keySet());
+        } else {
+            Map.Entry<Object, String> entry = keys.entrySet().iterator().next();
+            String key = entry.getValue();
+            Object cached = toCached(result);
+            if (cached != null) {
+                keyValues.put(key, cached);
+                // 入参可能是整个对象, 放入拼key时实际用到的id
+                bloomFilters.put(prefix, entry.getKey());
+            } else {
+                missingKeys.add(key);
+            }
+        }
+
+        // 当前请求自己能看到自己的修改, 请求级缓存不用等事务提交
+        requestCache.evict(keyValues.keySet());
+        requestCache.evict(missingKeys);
+        // 过期时间之类的没有单独设置的话和同一个prefix的@Cache一样, 这样和查询写入的缓存没有区别
+        CachePlan plan = planRegistry.getByPrefix(prefix);
+        long expire = cachePut.expire() > 0 ? cachePut.expire() : plan != null ? plan.getExpire() : COMMON_HIT_EXPIRE;
+        ExpireJitter jitter = cachePut.jitter() > 0 || cachePut.jitterPercent() > 0
+                ? ExpireJitter.of(cachePut.jitter(), cachePut.jitterPercent())
+                : plan != null ? plan.getJitter() : ExpireJitter.NONE;
+        long refreshAhead = plan != null ? plan.getRefreshAhead() : 0L;
+        boolean writeBehind = plan != null && plan.isWriteBehind();
+        runAfterCommit(cachePut.afterCommit(), () -> {
+            // 还没写的旧值不能在新值后面写进去, 也不能在删除之后写进去
+            writeBehindQueue.cancel(keyValues.keySet());
+            writeBehindQueue.cancel(missingKeys);
+            List<String> changed = new ArrayList<>(keyValues.keySet());
+            changed.addAll(missingKeys);
+            if (writeBehind) {
+                redisRepository.delete(missingKeys);
+                // 本地缓存失效的时候会取消本节点还没写的值, 要在放进队列之前, 不然新值也被取消了
+                cacheInvalidator.invalidateLocal(prefix, changed);
+                writeBehindQueue.offerAll(keyValues, expire, refreshAhead, codecRegistry.get(prefix), jitter);
+            } else {
+                // 写入和删除放在一个管道里面
+                redisRepository.setAndDelete(keyValues, expire, refreshAhead, codecRegistry.get(prefix), jitter, missingKeys);
+                cacheInvalidator.invalidateLocal(prefix, changed);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 按照@Cache的规则拼key
+     * 第一个参数是List的话每个元素一个key(有第二个参数的话拼在后面), 否则整个入参一个key
+     *
+     * @return 有序的map, id -> key, 不是批量的时候只有一个元素, id是拼key时从入参里面取出来的值(可能是null)
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, String> buildKeys(ProceedingJoinPoint joinPoint, String prefix, Object[] args) {
+        KeyTemplate template = template(joinPoint, prefix, args);
+        if (args.length > 0 && args[0] instanceof List) {
+            return template.buildEach((List<Object>) args[0], args);
+        }
+        return Collections.singletonMap(template.resolveId(args), template.build(args));
+    }
+
+    /**
+     * 方法的key模板, 批量的时候把第二个参数拼到后面, 开启了版本号的prefix再拼上版本号
+     */
+    private KeyTemplate template(ProceedingJoinPoint joinPoint, String prefix, Object[] args) {
+        // 启动时CachePlanRegistry已经登记过了, 没扫描到的方法在这里登记
+        KeyTemplate template = keyTemplates.declare(((MethodSignature) joinPoint.getSignature()).getMethod(), prefix);
+        if (args.length == 2 && args[0] instanceof List && !(args[1] instanceof Collection) && !(args[1] instanceof Map)) {
+            String param2 = Convert.toStr(args[1], "");
+            if (CharSequenceUtil.isNotBlank(param2)) {
+                template = template.append(":" + param2);
+            }
+        }
+        return template.append(prefixVersions.stamp(prefix));
+    }
+
+    /**
+     * 和@Cache缓存的样子保持一致: Optional取出里面的值, 集合和数组转成List
+     */
+    private static Object toCached(Object value) {
+        if (value instanceof Optional) {
+            return ((Optional<?>) value).orElse(null);
+        }
+        if (value instanceof List || !(value instanceof Collection || (value != null && value.getClass().isArray()))) {
+            return value;
+        }
+        return Convert.toList(value);
+    }
+
+    /**
+     * 需要的话等到事务提交之后再执行, 没有事务直接执行
+     */
+    private static void runAfterCommit(boolean afterCommit, Runnable task) {
+        if (afterCommit && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+            return;
+        }
+        task.run();
+    }
+}
@@ -0,0 +1,45 @@
+package cn.someget.cache.aop;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 返回Mono/Flux的方法和CompletableFuture之间的转换, 只有方法返回了Mono/Flux才会被加载
+ * 切面内部统一用CompletableFuture处理, 返回的时候再转成方法声明的类型
+ *
+ * @author agent
+ * @date 2026-10-17 20:55
+ */
+final class ReactorAdapter {
+
+    private ReactorAdapter() {
+    }
+
+    /**
+     * 把缓存的处理包装成方法声明的Mono/Flux, 订阅的时候才开始查缓存
+     *
+     * @param handler 缓存的处理, 结果是null的话是空的Mono
+     * @param flux    是否是Flux, Flux的话结果是List, 展开成多个元素
+     * @return Mono或者Flux
+     */
+    static Object defer(Supplier<CompletableFuture<Object>> handler, boolean flux) {
+        Mono<Object> mono = Mono.defer(() -> Mono.fromFuture(handler.get()));
+        return flux ? mono.<Object>flatMapIterable(value -> (Iterable<?>) value) : mono;
+    }
+
+    /**
+     * 订阅方法返回的Mono/Flux, Flux收集成List
+     *
+     * @param publisher 方法的返回值
+     * @return 完成之后的结果, 空的Mono是null
+     */
+    static CompletableFuture<Object> toFuture(Object publisher) {
+        if (publisher instanceof Flux) {
+            return ((Flux<?>) publisher).collectList().cast(Object.class).toFuture();
+        }
+        return ((Mono<?>) publisher).cast(Object.class).toFuture();
+    }
+}
@@ -0,0 +1,62 @@
+package cn.someget.cache.codec;
+
+import org.springframework.core.ResolvableType;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * 缓存值的序列化方式
+ * 值直接以byte[]的形式写入redis, 中间不会再转一次String
+ * 实现类需要有无参构造并且线程安全, 同一个实现类全局只会创建一个实例
+ *
+ * @author agent
+ * @date 2026-10-17 19:40
+ */
+public interface CacheCodec {
+
+    /**
+     * 序列化
+     * @param value 要写入的值, 不会是null
+     * @return 序列化之后的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化成对象
+     * @param bytes 字节
+     * @param clazz class
+     * @param <V> 对应类型
+     * @return 对象
+     */
+    <V> V decode(byte[] bytes, Class<V> clazz);
+
+    /**
+     * 反序列化成对象集合
+     * @param bytes 字节
+     * @param clazz 集合元素的class
+     * @param <V> 对应类型
+     * @return 对象集合
+     */
+    <V> List<V> decodeList(byte[] bytes, Class<V> clazz);
+
+    /**
+     * 按照完整的类型(可以带泛型)反序列化, 默认只按原始类型处理
+     * @param bytes 字节
+     * @param type 类型
+     * @param <V> 对应类型
+     * @return 对象
+     */
+    @SuppressWarnings("unchecked")
+    default <V> V decode(byte[] bytes, Type type) {
+        return (V) decode(bytes, ResolvableType.forType(type).resolve(Object.class));
+    }
+
+    /**
+     * 提前准备好某个类型的反序列化器, 启动解析注解的时候调用, 避免第一次请求的时候才去生成
+     * @param type 类型
+     */
+    default void prepare(Type type) {
+        // 默认不需要准备
+    }
+}
@@ -0,0 +1,138 @@
+package cn.someget.cache.codec;
+
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.util.ReflectUtil;
+import cn.someget.cache.utils.CacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 序列化方式的注册中心
+ * 每个注解的prefix可以指定自己的序列化方式, 没有指定的使用全局默认
+ * 全局默认: 容器里面如果有唯一的CacheCodec bean就用它, 否则使用json
+ * 拿到的序列化方式外面都包了一层CompressingCacheCodec, 压缩过的数据不管有没有开启压缩都能读
+ *
+ * @author agent
+ * @date 2026-10-17 19:40
+ */
+@Slf4j
+@Component
+public class CacheCodecRegistry {
+
+    /**
+     * 全局默认的名字
+     */
+    private static final String DEFAULT_NAME = "default";
+
+    @Resource
+    private ObjectProvider<CacheCodec> codecProvider;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 全局默认的序列化方式
+     */
+    private CompressingCacheCodec defaultCodec;
+
+    /**
+     * 每个实现类只创建一个实例
+     */
+    private final Map<Class<?>, CacheCodec> instances = new ConcurrentHashMap<>();
+
+    /**
+     * prefix对应的序列化方式
+     */
+    private final Map<String, CompressingCacheCodec> codecs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        defaultCodec = new CompressingCacheCodec(DEFAULT_NAME, codecProvider.getIfUnique(JsonCacheCodec::new), 0);
+    }
+
+    /**
+     * 注册prefix的序列化方式, 已经注册过的不会覆盖, 和已经注册的不一样的话报错
+     *
+     * @param name       注解的prefix
+     * @param codecClass 序列化方式, 传接口本身表示用全局默认
+     */
+    public void register(String name, Class<? extends CacheCodec> codecClass) {
+        register(name, codecClass, 0);
+    }
+
+    /**
+     * 注册prefix的序列化方式和压缩阈值, 已经注册过的不会覆盖
+     * 同一个prefix配置不一样的话直接报错, 不然哪个配置生效取决于bean的初始化顺序, 写进去的数据也可能读不出来
+     *
+     * @param name              注解的prefix
+     * @param codecClass        序列化方式, 传接口本身表示用全局默认
+     * @param compressThreshold 超过多少字节压缩, 0表示不压缩
+     */
+    public void register(String name, Class<? extends CacheCodec> codecClass, int compressThreshold) {
+        CacheCodec codec = codecClass == CacheCodec.class
+                ? defaultCodec.getDelegate()
+                : instances.computeIfAbsent(codecClass, c -> (CacheCodec) ReflectUtil.newInstance(c));
+        CompressingCacheCodec created = new CompressingCacheCodec(name, codec, compressThreshold);
+        CompressingCacheCodec existing = codecs.putIfAbsent(name, created);
+        if (existing == null) {
+            // 开启了压缩的prefix上报压缩前后的字节数
+            if (compressThreshold > 0) {
+                cacheMetrics.bindCompression(name, created);
+            }
+            return;
+        }
+        Assert.isTrue(existing.getDelegate() == codec && existing.getThreshold() == compressThreshold,
+                "cache-anno codec of prefix:{} has conflicting specs, {}(compressThreshold:{}) and {}(compressThreshold:{})",
+                name, existing.getDelegate().getClass().getName(), existing.getThreshold(),
+                codec.getClass().getName(), compressThreshold);
+    }
+
+    /**
+     * 获取prefix对应的序列化方式, 没有注册过的用全局默认
+     *
+     * @param name 注解的prefix
+     * @return 序列化方式
+     */
+    public CacheCodec get(String name) {
+        if (name == null) {
+            return defaultCodec;
+        }
+        return codecs.getOrDefault(name, defaultCodec);
+    }
+
+    /**
+     * 全局默认的序列化方式
+     */
+    public CacheCodec getDefault() {
+        return defaultCodec;
+    }
+
+    /**
+     * 开启了压缩的prefix的序列化方式, 可以拿到压缩的次数和压缩前后的字节数
+     */
+    public List<CompressingCacheCodec> getCompressingCodecs() {
+        return codecs.values().stream()
+                .filter(codec -> codec.getThreshold() > 0)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 打印压缩的统计信息, 只打开启了压缩并且压缩过的
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void stats() {
+        codecs.values().stream()
+                .filter(codec -> codec.compressedCount() > 0)
+                .forEach(codec -> log.info("cache codec compress stats, name:{}, compressedCount:{}, ratio:{}, savedBytes:{}",
+                        codec.getName(), codec.compressedCount(), codec.ratio(), codec.savedBytes()));
+    }
+}
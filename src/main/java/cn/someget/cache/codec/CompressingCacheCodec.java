@@ -0,0 +1,226 @@
+package cn.someget.cache.codec;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * 在序列化结果外面包一层, 超过阈值的值用deflate压缩
+ * 写入的格式: 压缩头 + 原始长度(4字节) + 压缩数据, 或者 原始数据(以控制字符开头时加一个转义头)
+ * 读取时不管有没有开启压缩都能读, 所以开关压缩不影响已经在redis里面的数据
+ *
+ * @author agent
+ * @date 2026-10-17 19:41
+ */
+public class CompressingCacheCodec implements CacheCodec {
+
+    /**
+     * 压缩器不是线程安全的, 每个线程复用一个
+     */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * 长度头占的字节数
+     */
+    private static final int LENGTH_BYTES = 4;
+
+    /**
+     * 解压之后最大的长度, 和redis单个value的上限一样(512MB)
+     */
+    private static final int MAX_LENGTH = 512 * 1024 * 1024;
+
+    /**
+     * deflate最大的压缩比是1032:1, 长度头超过压缩数据的这么多倍一定是坏数据
+     */
+    private static final int MAX_RATIO = 1032;
+
+    /**
+     * 名字(注解的prefix), 统计用
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * 真正的序列化方式
+     */
+    @Getter
+    private final CacheCodec delegate;
+
+    /**
+     * 超过多少字节压缩, 0表示不压缩
+     */
+    @Getter
+    private final int threshold;
+
+    /**
+     * 压缩了多少次
+     */
+    private final LongAdder compressedCount = new LongAdder();
+
+    /**
+     * 压缩前的总字节数
+     */
+    private final LongAdder rawBytes = new LongAdder();
+
+    /**
+     * 压缩后的总字节数
+     */
+    private final LongAdder compressedBytes = new LongAdder();
+
+    public CompressingCacheCodec(String name, CacheCodec delegate, int threshold) {
+        this.name = name;
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        byte[] bytes = delegate.encode(value);
+        if (threshold > 0 && bytes.length >= threshold) {
+            byte[] compressed = compress(bytes);
+            // 压缩之后没有变小就不要了
+            if (compressed.length < bytes.length) {
+                compressedCount.increment();
+                rawBytes.add(bytes.length);
+                compressedBytes.add(compressed.length);
+                return compressed;
+            }
+        }
+        if (bytes.length > 0 && bytes[0] >= 0 && bytes[0] < HEADER_BOUND) {
+            byte[] escaped = new byte[bytes.length + 1];
+            escaped[0] = RAW_HEADER;
+            System.arraycopy(bytes, 0, escaped, 1, bytes.length);
+            return escaped;
+        }
+        return bytes;
+    }
+
+    @Override
+    public <V> V decode(byte[] bytes, Class<V> clazz) {
+        return delegate.decode(unwrap(bytes), clazz);
+    }
+
+    @Override
+    public <V> List<V> decodeList(byte[] bytes, Class<V> clazz) {
+        return delegate.decodeList(unwrap(bytes), clazz);
+    }
+
+    @Override
+    public <V> V decode(byte[] bytes, Type type) {
+        return delegate.decode(unwrap(bytes), type);
+    }
+
+    @Override
+    public void prepare(Type type) {
+        delegate.prepare(type);
+    }
+
+    /**
+     * 压缩节省的字节数
+     */
+    public long savedBytes() {
+        return rawBytes.sum() - compressedBytes.sum();
+    }
+
+    public long compressedCount() {
+        return compressedCount.sum();
+    }
+
+    /**
+     * 压缩过的值压缩前的总字节数
+     */
+    public long rawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * 压缩过的值压缩后的总字节数
+     */
+    public long compressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * 压缩率(压缩后/压缩前), 没有压缩过返回1
+     */
+    public double ratio() {
+        long raw = rawBytes.sum();
+        return raw == 0 ? 1D : (double) compressedBytes.sum() / raw;
+    }
+
+    /**
+     * 去掉转义头或者解压
+     */
+    private static byte[] unwrap(byte[] bytes) {
+        if (bytes.length == 0) {
+            return bytes;
+        }
+        if (bytes[0] == RAW_HEADER) {
+            return Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes[0] == COMPRESS_HEADER) {
+            return decompress(bytes);
+        }
+        return bytes;
+    }
+
+    private static byte[] compress(byte[] bytes) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 2 + LENGTH_BYTES + 1);
+        output.write(COMPRESS_HEADER);
+        output.write(ByteBuffer.allocate(LENGTH_BYTES).putInt(bytes.length).array(), 0, LENGTH_BYTES);
+        byte[] buffer = new byte[Math.min(bytes.length, 8192)];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            output.write(buffer, 0, count);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] bytes) {
+        if (bytes.length < 1 + LENGTH_BYTES) {
+            throw new IllegalStateException("cache-anno illegal compressed value, size:" + bytes.length);
+        }
+        int length = ByteBuffer.wrap(bytes, 1, LENGTH_BYTES).getInt();
+        // 长度是从redis里面读出来的, 不校验的话坏数据可以让这里直接分配很大的数组
+        long maxLength = Math.min(MAX_LENGTH, (long) (bytes.length - 1 - LENGTH_BYTES) * MAX_RATIO);
+        if (length < 0 || length > maxLength) {
+            throw new IllegalStateException("cache-anno illegal compressed value, size:" + bytes.length + ", length:" + length);
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(bytes, 1 + LENGTH_BYTES, bytes.length - 1 - LENGTH_BYTES);
+        byte[] result = new byte[length];
+        try {
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int count = inflater.inflate(result, offset, length - offset);
+                if (count == 0 && inflater.needsInput()) {
+                    break;
+                }
+                offset += count;
+            }
+            if (offset < length) {
+                throw new IllegalStateException("cache-anno illegal compressed value, length:" + length + ", inflated:" + offset);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("cache-anno illegal compressed value", e);
+        }
+        return result;
+    }
+}
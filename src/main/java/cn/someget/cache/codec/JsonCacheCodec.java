@@ -0,0 +1,70 @@
+package cn.someget.cache.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * json序列化(fastjson), 默认的序列化方式
+ * 和之前使用StringRedisSerializer写入的数据格式一致, 可以直接读取老数据
+ *
+ * @author agent
+ * @date 2026-10-17 19:40
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    /**
+     * 元素class -> List<元素>的类型
+     */
+    private static final Map<Class<?>, Type> LIST_TYPES = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] encode(Object value) {
+        // 字符串不再套一层json, 和之前保持一致
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+        return JSON.toJSONBytes(value);
+    }
+
+    @Override
+    public <V> V decode(byte[] bytes, Class<V> clazz) {
+        return JSON.parseObject(bytes, clazz);
+    }
+
+    @Override
+    public <V> List<V> decodeList(byte[] bytes, Class<V> clazz) {
+        return JSON.parseObject(bytes, listType(clazz));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V decode(byte[] bytes, Type type) {
+        if (type instanceof Class) {
+            return decode(bytes, (Class<V>) type);
+        }
+        return JSON.parseObject(bytes, type);
+    }
+
+    @Override
+    public void prepare(Type type) {
+        ParserConfig config = ParserConfig.getGlobalInstance();
+        config.getDeserializer(type);
+        if (type instanceof Class) {
+            config.getDeserializer(listType((Class<?>) type));
+        }
+    }
+
+    /**
+     * List<clazz>的类型, 每个class只创建一次
+     */
+    private static Type listType(Class<?> clazz) {
+        return LIST_TYPES.computeIfAbsent(clazz, c -> new ParameterizedTypeImpl(new Type[]{c}, null, List.class));
+    }
+}
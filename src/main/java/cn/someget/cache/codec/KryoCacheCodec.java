@@ -0,0 +1,152 @@
+package cn.someget.cache.codec;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.util.ClassUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * kryo二进制序列化, 比json更省cpu和空间
+ * 需要自行引入com.esotericsoftware:kryo:5.x
+ * 注意写入的数据只能用kryo读取, 已经有json数据的prefix切换之前需要先清理或者换prefix
+ * <p>
+ * 要求提前注册类型, 读的时候只会创建注册过的类, redis里面的数据被篡改也不能用来创建任意对象
+ * 常用的jdk类型已经注册, 业务的类型通过构造方法传入(配置成CacheCodec bean时), 或者继承后重写{@link #register(Kryo)}(在注解上指定时)
+ * 没有注册的类型写入和读取都会报错; 注册的id按顺序分配, 所以只能在后面追加, 不能调整已有的顺序
+ * 数据里面自带类型, 读出来的类型和要求的class(集合是元素的class)对不上的时候报错
+ *
+ * @author agent
+ * @date 2026-10-17 19:40
+ */
+public class KryoCacheCodec implements CacheCodec {
+
+    /**
+     * 初始化的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * 默认注册的jdk类型, 顺序不能变
+     */
+    private static final List<Class<?>> BUILTIN_TYPES = Arrays.asList(
+            ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class, Date.class, BigDecimal.class, BigInteger.class,
+            Arrays.asList().getClass(), Collections.emptyList().getClass(), Collections.emptyMap().getClass(),
+            Collections.emptySet().getClass(), Collections.singletonList(null).getClass(),
+            Collections.singletonMap(null, null).getClass(), Collections.singleton(null).getClass());
+
+    /**
+     * 业务的类型, 注册在默认类型后面
+     */
+    private final List<Class<?>> types;
+
+    /**
+     * kryo不是线程安全的, 用池子复用
+     */
+    private final Pool<Kryo> kryoPool = new Pool<Kryo>(true, false, Runtime.getRuntime().availableProcessors() * 2) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            // 不注册的话读的时候会按数据里面的类名创建对象, 数据被篡改就能创建任意类
+            kryo.setRegistrationRequired(true);
+            kryo.setReferences(true);
+            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            BUILTIN_TYPES.forEach(kryo::register);
+            register(kryo);
+            return kryo;
+        }
+    };
+
+    /**
+     * 只注册了常用jdk类型, 业务类型需要继承后重写{@link #register(Kryo)}
+     */
+    public KryoCacheCodec() {
+        this(new Class<?>[0]);
+    }
+
+    /**
+     * @param types 缓存里面会出现的业务类型(包括字段里面的), 按顺序注册
+     */
+    public KryoCacheCodec(Class<?>... types) {
+        this.types = Arrays.asList(types);
+    }
+
+    /**
+     * 注册业务类型, 每个kryo实例创建时调用一次, 默认注册构造方法传入的类型
+     * 继承重写的话记得先调用super, 后面追加自己的
+     *
+     * @param kryo 新创建的kryo
+     */
+    protected void register(Kryo kryo) {
+        types.forEach(kryo::register);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Kryo kryo = kryoPool.obtain();
+        try (Output output = new Output(BUFFER_SIZE, -1)) {
+            kryo.writeClassAndObject(output, value);
+            return output.toBytes();
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    /**
+     * 数据里面自带类型, 读出来之后再校验一下是不是要的类型, 不是的话直接报错, 不会把错的类型返回给调用方
+     */
+    @Override
+    public <V> V decode(byte[] bytes, Class<V> clazz) {
+        return checked(read(bytes), clazz);
+    }
+
+    /**
+     * 校验读出来的是List, 并且每个元素都是clazz
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> List<V> decodeList(byte[] bytes, Class<V> clazz) {
+        List<?> list = checked(read(bytes), List.class);
+        if (list != null) {
+            list.forEach(element -> checked(element, clazz));
+        }
+        return (List<V>) list;
+    }
+
+    private Object read(byte[] bytes) {
+        Kryo kryo = kryoPool.obtain();
+        try (Input input = new Input(bytes)) {
+            return kryo.readClassAndObject(input);
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V checked(Object value, Class<V> clazz) {
+        if (value != null && !ClassUtils.resolvePrimitiveIfNecessary(clazz).isInstance(value)) {
+            throw new KryoException("cache-anno kryo decoded " + value.getClass().getName()
+                    + ", expected " + clazz.getName());
+        }
+        return (V) value;
+    }
+}
@@ -1,10 +1,19 @@
 package cn.someget.cache.service;
 
+import cn.hutool.core.collection.CollUtil;
+import org.springframework.core.ResolvableType;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 自动缓存相关皆苦
+ * 对外返回的结果里面不会有空缓存标记, 缓存层之间需要区分空缓存的时候用{@link CacheTier}
+ * 注意(不兼容的变更): 命中对象的空缓存时, 单个查询返回null, 批量查询的结果里面没有这个特征值, 集合的空缓存是空List
+ * 老版本会把空缓存反序列化成一个所有字段都是null的对象返回, 以前靠判断这种对象来识别空缓存的调用方要改成判断null
  *
  * @author zyf
  * @date 2022-05-03 16:05
@@ -13,6 +22,7 @@ public interface CacheService {
 
     /**
      * 从缓存获取对象
+     * 命中空缓存和没有缓存一样返回null(不再返回字段全是null的空对象)
      * @param key 对应的key
      * @param clazz class
      * @param <V> 对应类型
@@ -31,9 +41,10 @@ public interface CacheService {
 
     /**
      * 批量缓存获取对象
+     * 命中空缓存的特征值和没有缓存一样不在结果里面
      * @param ids 特征值,例如prefix:uid 那么uid就是特征值
      * @param clazz class
-     * @param prefix 对应key的前缀
+     * @param prefix 对应key的前缀, 同时也是分区, 按注解上这个prefix的配置选择序列化方式和本地缓存
      * @param <K> 特征值类型
      * @param <V> 返回类型
      * @return 返回map,对应<特征值, 对应对象>
@@ -45,10 +56,176 @@ public interface CacheService {
      * 批量缓存获取对象集合
      * @param ids 特征值,例如prefix:uid 那么uid就是特征值
      * @param clazz class
-     * @param prefix 对应key的前缀
+     * @param prefix 对应key的前缀, 同时也是分区, 按注解上这个prefix的配置选择序列化方式和本地缓存
      * @param <K> 特征值类型
      * @param <V> 返回类型
      * @return 返回map,对应<特征值, 对应对象集合>
      */
     <K, V> Map<K, List<V>> getObjectListFromCache(List<K> ids, Class<V> clazz, String prefix);
+
+    /**
+     * 从缓存获取对象, 指定本地缓存的分区
+     * @param key 对应的key
+     * @param clazz class
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <V> 对应类型
+     * @return 返回对象
+     */
+    default <V> V getObjectFromCache(String key, Class<V> clazz, String region) {
+        return getObjectFromCache(key, clazz);
+    }
+
+    /**
+     * 从缓存获取对象, 按照完整的类型(可以带泛型, 比如Map<String, List<Long>>)反序列化
+     * 命中空缓存和没有缓存一样返回null
+     * 默认实现只按原始类型反序列化
+     * @param key 对应的key
+     * @param type 类型
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <V> 对应类型
+     * @return 返回对象
+     */
+    @SuppressWarnings("unchecked")
+    default <V> V getObjectFromCache(String key, Type type, String region) {
+        return (V) getObjectFromCache(key, ResolvableType.forType(type).resolve(Object.class), region);
+    }
+
+    /**
+     * 从缓存获取对象集合, 指定本地缓存的分区
+     * @param key  对应的key
+     * @param clazz class
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <V> 对应类型
+     * @return 返回对象
+     */
+    default <V> List<V> getObjectListFromCache(String key, Class<V> clazz, String region) {
+        return getObjectListFromCache(key, clazz);
+    }
+
+    /**
+     * 批量缓存获取对象, 指定本地缓存的分区
+     * @param ids 特征值,例如prefix:uid 那么uid就是特征值
+     * @param clazz class
+     * @param prefix 对应key的前缀
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <K> 特征值类型
+     * @param <V> 返回类型
+     * @return 返回map,对应<特征值, 对应对象>
+     */
+    default <K, V> Map<K, V> getObjectFromCache(List<K> ids, Class<V> clazz, String prefix, String region) {
+        return getObjectFromCache(ids, clazz, prefix);
+    }
+
+    /**
+     * 批量缓存获取对象集合, 指定本地缓存的分区
+     * @param ids 特征值,例如prefix:uid 那么uid就是特征值
+     * @param clazz class
+     * @param prefix 对应key的前缀
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <K> 特征值类型
+     * @param <V> 返回类型
+     * @return 返回map,对应<特征值, 对应对象集合>
+     */
+    default <K, V> Map<K, List<V>> getObjectListFromCache(List<K> ids, Class<V> clazz, String prefix, String region) {
+        return getObjectListFromCache(ids, clazz, prefix);
+    }
+
+    /**
+     * 批量缓存获取对象, key已经提前拼好(同一次调用的各级缓存共用, 不用每一级都再拼一遍)
+     * 命中空缓存的特征值和没有缓存一样不在结果里面
+     * 默认实现是一个一个查, 实现类最好自己批量查
+     * @param keys 特征值 -> key, 例如uid -> prefix:uid
+     * @param clazz class
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <K> 特征值类型
+     * @param <V> 返回类型
+     * @return 返回map,对应<特征值, 对应对象>
+     */
+    default <K, V> Map<K, V> getObjectFromCache(Map<K, String> keys, Class<V> clazz, String region) {
+        Map<K, V> result = new HashMap<>(keys.size());
+        keys.forEach((id, key) -> {
+            V value = getObjectFromCache(key, clazz, region);
+            if (value != null) {
+                result.put(id, value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 批量缓存获取对象集合, key已经提前拼好(同一次调用的各级缓存共用, 不用每一级都再拼一遍)
+     * 默认实现是一个一个查, 实现类最好自己批量查
+     * @param keys 特征值 -> key, 例如uid -> prefix:uid
+     * @param clazz class
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <K> 特征值类型
+     * @param <V> 返回类型
+     * @return 返回map,对应<特征值, 对应对象集合>
+     */
+    default <K, V> Map<K, List<V>> getObjectListFromCache(Map<K, String> keys, Class<V> clazz, String region) {
+        Map<K, List<V>> result = new HashMap<>(keys.size());
+        keys.forEach((id, key) -> {
+            List<V> value = getObjectListFromCache(key, clazz, region);
+            if (CollUtil.isNotEmpty(value)) {
+                result.put(id, value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 异步从缓存获取对象, 返回CompletableFuture/Mono/Flux的方法用, 查询的时候不占用调用线程等待
+     * 命中空缓存和没有缓存一样结果是null
+     * 默认实现是同步查询, 实现类最好自己异步查
+     * @param key 对应的key
+     * @param type 类型
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <V> 对应类型
+     * @return 返回对象的future
+     */
+    default <V> CompletableFuture<V> getObjectFromCacheAsync(String key, Type type, String region) {
+        return CompletableFuture.completedFuture(getObjectFromCache(key, type, region));
+    }
+
+    /**
+     * 异步从缓存获取对象集合
+     * 默认实现是同步查询, 实现类最好自己异步查
+     * @param key  对应的key
+     * @param clazz class
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <V> 对应类型
+     * @return 返回对象的future
+     */
+    default <V> CompletableFuture<List<V>> getObjectListFromCacheAsync(String key, Class<V> clazz, String region) {
+        return CompletableFuture.completedFuture(getObjectListFromCache(key, clazz, region));
+    }
+
+    /**
+     * 异步批量缓存获取对象, key已经提前拼好
+     * 命中空缓存的特征值和没有缓存一样不在结果里面
+     * 默认实现是同步查询, 实现类最好自己异步查
+     * @param keys 特征值 -> key, 例如uid -> prefix:uid
+     * @param clazz class
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <K> 特征值类型
+     * @param <V> 返回类型
+     * @return 返回对象的future
+     */
+    default <K, V> CompletableFuture<Map<K, V>> getObjectFromCacheAsync(Map<K, String> keys, Class<V> clazz, String region) {
+        return CompletableFuture.completedFuture(getObjectFromCache(keys, clazz, region));
+    }
+
+    /**
+     * 异步批量缓存获取对象集合, key已经提前拼好
+     * 默认实现是同步查询, 实现类最好自己异步查
+     * @param keys 特征值 -> key, 例如uid -> prefix:uid
+     * @param clazz class
+     * @param region 本地缓存的分区, 不使用本地缓存的实现会忽略
+     * @param <K> 特征值类型
+     * @param <V> 返回类型
+     * @return 返回对象的future
+     */
+    default <K, V> CompletableFuture<Map<K, List<V>>> getObjectListFromCacheAsync(Map<K, String> keys, Class<V> clazz, String region) {
+        return CompletableFuture.completedFuture(getObjectListFromCache(keys, clazz, region));
+    }
 }
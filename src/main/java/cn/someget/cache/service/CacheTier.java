@@ -0,0 +1,160 @@
+package cn.someget.cache.service;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.someget.cache.utils.NullValue;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 缓存层之间(切面, 本地缓存, redis)内部用的查询, 和{@link CacheService}的区别是命中空缓存时返回{@link NullValue#INSTANCE}
+ * 这样切面才能区分"空缓存"和"没有缓存", 不会再去执行方法; 对外的{@link CacheService}会把空缓存标记还原成null
+ * 自己实现的CacheService没有实现这个接口的话, 用静态方法查询时退回到CacheService, 空缓存当作没有缓存
+ *
+ * @author agent
+ * @date 2026-10-17 21:17
+ */
+public interface CacheTier {
+
+    /**
+     * 从缓存获取对象
+     *
+     * @param key    对应的key
+     * @param type   类型(可以带泛型)
+     * @param region 本地缓存的分区
+     * @return 对象, 命中空缓存是{@link NullValue#INSTANCE}, 没有缓存是null
+     */
+    Object lookup(String key, Type type, String region);
+
+    /**
+     * 异步的{@link #lookup(String, Type, String)}
+     */
+    CompletableFuture<Object> lookupAsync(String key, Type type, String region);
+
+    /**
+     * 从缓存获取对象集合
+     *
+     * @param key    对应的key
+     * @param clazz  元素的class
+     * @param region 本地缓存的分区
+     * @return 对象集合, 命中空集合缓存是{@link NullValue#INSTANCE}, 没有缓存是null
+     */
+    Object lookupList(String key, Class<?> clazz, String region);
+
+    /**
+     * 异步的{@link #lookupList(String, Class, String)}
+     */
+    CompletableFuture<Object> lookupListAsync(String key, Class<?> clazz, String region);
+
+    /**
+     * 批量缓存获取对象
+     *
+     * @param keys   特征值 -> key
+     * @param clazz  class
+     * @param region 本地缓存的分区
+     * @return 特征值 -> 对象, 命中空缓存的是{@link NullValue#INSTANCE}, 没有缓存的不在里面
+     */
+    <K> Map<K, Object> lookupAll(Map<K, String> keys, Class<?> clazz, String region);
+
+    /**
+     * 异步的{@link #lookupAll(Map, Class, String)}
+     */
+    <K> CompletableFuture<Map<K, Object>> lookupAllAsync(Map<K, String> keys, Class<?> clazz, String region);
+
+    /**
+     * 批量缓存获取对象集合
+     *
+     * @param keys   特征值 -> key
+     * @param clazz  元素的class
+     * @param region 本地缓存的分区
+     * @return 特征值 -> 对象集合, 没有缓存的不在里面
+     */
+    <K> Map<K, Object> lookupAllLists(Map<K, String> keys, Class<?> clazz, String region);
+
+    /**
+     * 异步的{@link #lookupAllLists(Map, Class, String)}
+     */
+    <K> CompletableFuture<Map<K, Object>> lookupAllListsAsync(Map<K, String> keys, Class<?> clazz, String region);
+
+    /**
+     * 用service查询单个对象, 不是CacheTier的话退回到{@link CacheService#getObjectFromCache(String, Type, String)}
+     */
+    static Object lookup(CacheService service, String key, Type type, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookup(key, type, region)
+                : service.getObjectFromCache(key, type, region);
+    }
+
+    /**
+     * 用service异步查询单个对象, 不是CacheTier的话退回到{@link CacheService#getObjectFromCacheAsync(String, Type, String)}
+     */
+    static CompletableFuture<Object> lookupAsync(CacheService service, String key, Type type, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookupAsync(key, type, region)
+                : service.getObjectFromCacheAsync(key, type, region);
+    }
+
+    /**
+     * 用service查询对象集合, 不是CacheTier的话退回到{@link CacheService#getObjectListFromCache(String, Class, String)}, 空集合当作没有缓存
+     */
+    static Object lookupList(CacheService service, String key, Class<?> clazz, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookupList(key, clazz, region)
+                : emptyToNull(service.getObjectListFromCache(key, clazz, region));
+    }
+
+    /**
+     * 用service异步查询对象集合, 不是CacheTier的话退回到{@link CacheService#getObjectListFromCacheAsync(String, Class, String)}
+     */
+    static CompletableFuture<Object> lookupListAsync(CacheService service, String key, Class<?> clazz, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookupListAsync(key, clazz, region)
+                : service.getObjectListFromCacheAsync(key, clazz, region).thenApply(CacheTier::emptyToNull);
+    }
+
+    /**
+     * 用service批量查询对象, 不是CacheTier的话退回到{@link CacheService#getObjectFromCache(Map, Class, String)}
+     */
+    static <K> Map<K, Object> lookupAll(CacheService service, Map<K, String> keys, Class<?> clazz, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookupAll(keys, clazz, region)
+                : new HashMap<>(service.getObjectFromCache(keys, clazz, region));
+    }
+
+    /**
+     * 用service异步批量查询对象, 不是CacheTier的话退回到{@link CacheService#getObjectFromCacheAsync(Map, Class, String)}
+     */
+    static <K> CompletableFuture<Map<K, Object>> lookupAllAsync(CacheService service, Map<K, String> keys, Class<?> clazz, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookupAllAsync(keys, clazz, region)
+                : service.getObjectFromCacheAsync(keys, clazz, region).thenApply(HashMap::new);
+    }
+
+    /**
+     * 用service批量查询对象集合, 不是CacheTier的话退回到{@link CacheService#getObjectListFromCache(Map, Class, String)}
+     */
+    static <K> Map<K, Object> lookupAllLists(CacheService service, Map<K, String> keys, Class<?> clazz, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookupAllLists(keys, clazz, region)
+                : new HashMap<>(service.getObjectListFromCache(keys, clazz, region));
+    }
+
+    /**
+     * 用service异步批量查询对象集合, 不是CacheTier的话退回到{@link CacheService#getObjectListFromCacheAsync(Map, Class, String)}
+     */
+    static <K> CompletableFuture<Map<K, Object>> lookupAllListsAsync(CacheService service, Map<K, String> keys, Class<?> clazz, String region) {
+        return service instanceof CacheTier
+                ? ((CacheTier) service).lookupAllListsAsync(keys, clazz, region)
+                : service.getObjectListFromCacheAsync(keys, clazz, region).thenApply(HashMap::new);
+    }
+
+    /**
+     * 分不出空缓存的时候空集合当作没有缓存
+     */
+    static Object emptyToNull(List<?> value) {
+        return CollUtil.isEmpty(value) ? null : value;
+    }
+}
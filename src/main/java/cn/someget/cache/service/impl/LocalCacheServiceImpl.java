@@ -3,13 +3,18 @@ package cn.someget.cache.service.impl;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.someget.cache.service.CacheService;
+import cn.someget.cache.service.CacheTier;
+import cn.someget.cache.utils.CacheMetrics;
+import cn.someget.cache.utils.KeyTemplateRegistry;
 import cn.someget.cache.utils.LocalCache;
+import cn.someget.cache.utils.NullValue;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 本地缓存相应的处理
@@ -18,7 +23,7 @@ import java.util.stream.Collectors;
  * @date 2022-05-03 16:05
  */
 @Service("defaultLocalCacheService")
-public class LocalCacheServiceImpl implements CacheService {
+public class LocalCacheServiceImpl implements CacheService, CacheTier {
 
     @Resource(name = "defaultRedisCacheService")
     private CacheService defaultRedisCacheService;
@@ -26,127 +31,297 @@ public class LocalCacheServiceImpl implements CacheService {
     @Resource
     private LocalCache localCache;
 
+    @Resource
+    private KeyTemplateRegistry keyTemplates;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
     @Override
     public <V> V getObjectFromCache(String key, Class<V> clazz) {
+        return getObjectFromCache(key, clazz, (String) null);
+    }
+
+    @Override
+    public <V> V getObjectFromCache(String key, Class<V> clazz, String region) {
+        return NullValue.unwrap(lookup(key, clazz, region));
+    }
+
+    @Override
+    public <V> V getObjectFromCache(String key, Type type, String region) {
+        return NullValue.unwrap(lookup(key, type, region));
+    }
+
+    @Override
+    public <V> CompletableFuture<V> getObjectFromCacheAsync(String key, Type type, String region) {
+        return lookupAsync(key, type, region).thenApply(NullValue::<V>unwrap);
+    }
+
+    @Override
+    public Object lookup(String key, Type type, String region) {
         if (CharSequenceUtil.isBlank(key)) {
             return null;
         }
         // 尝试从本地缓存获取
-        V value = (V) localCache.getIfPresent(key);
+        Object value = localCache.getIfPresent(region, key);
         if (value != null) {
+            cacheMetrics.get(CacheMetrics.Get.LOCAL_HIT, region, 1);
             return value;
         }
+        cacheMetrics.get(CacheMetrics.Get.LOCAL_MISS, region, 1);
 
         // 尝试从redis
-        V v = defaultRedisCacheService.getObjectFromCache(key, clazz);
+        Object v = CacheTier.lookup(defaultRedisCacheService, key, type, region);
         if (v == null) {
             // 如果为空,则直接返回,会走方法去获取值
             return null;
         }
 
-        // 更新本地缓存
-        localCache.put(key, v);
+        // 更新本地缓存, 空缓存要看分区的配置
+        if (!skipLocal(region, v)) {
+            localCache.put(region, key, v);
+        }
         return v;
     }
 
+    @Override
+    public CompletableFuture<Object> lookupAsync(String key, Type type, String region) {
+        if (CharSequenceUtil.isBlank(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Object value = localCache.getIfPresent(region, key);
+        if (value != null) {
+            cacheMetrics.get(CacheMetrics.Get.LOCAL_HIT, region, 1);
+            return CompletableFuture.completedFuture(value);
+        }
+        cacheMetrics.get(CacheMetrics.Get.LOCAL_MISS, region, 1);
+        return CacheTier.lookupAsync(defaultRedisCacheService, key, type, region).thenApply(v -> {
+            if (v != null && !skipLocal(region, v)) {
+                localCache.put(region, key, v);
+            }
+            return v;
+        });
+    }
+
     @Override
     public <V> List<V> getObjectListFromCache(String key, Class<V> clazz) {
+        return getObjectListFromCache(key, clazz, (String) null);
+    }
+
+    @Override
+    public <V> List<V> getObjectListFromCache(String key, Class<V> clazz, String region) {
+        return NullValue.unwrapList(lookupList(key, clazz, region));
+    }
+
+    @Override
+    public <V> CompletableFuture<List<V>> getObjectListFromCacheAsync(String key, Class<V> clazz, String region) {
+        return lookupListAsync(key, clazz, region).thenApply(NullValue::<V>unwrapList);
+    }
+
+    @Override
+    public Object lookupList(String key, Class<?> clazz, String region) {
         if (CharSequenceUtil.isBlank(key)) {
-            return Collections.emptyList();
+            return null;
         }
-        List<V> value = (List<V> ) localCache.getIfPresent(key);
+        // 本地缓存里面的空集合是方法写进来的空缓存
+        Object value = localCache.getIfPresent(region, key);
         if (value != null) {
-            return value;
+            cacheMetrics.get(CacheMetrics.Get.LOCAL_HIT, region, 1);
+            return NullValue.wrapEmpty(value);
         }
-        List<V> v = defaultRedisCacheService.getObjectListFromCache(key, clazz);
-        if (CollectionUtils.isEmpty(v)) {
-            return Collections.emptyList();
+        cacheMetrics.get(CacheMetrics.Get.LOCAL_MISS, region, 1);
+        Object v = CacheTier.lookupList(defaultRedisCacheService, key, clazz, region);
+        if (v != null && !skipLocal(region, v)) {
+            localCache.put(region, key, NullValue.isNull(v) ? new ArrayList<>() : v);
         }
-        localCache.put(key, v);
         return v;
     }
 
+    @Override
+    public CompletableFuture<Object> lookupListAsync(String key, Class<?> clazz, String region) {
+        if (CharSequenceUtil.isBlank(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Object value = localCache.getIfPresent(region, key);
+        if (value != null) {
+            cacheMetrics.get(CacheMetrics.Get.LOCAL_HIT, region, 1);
+            return CompletableFuture.completedFuture(NullValue.wrapEmpty(value));
+        }
+        cacheMetrics.get(CacheMetrics.Get.LOCAL_MISS, region, 1);
+        return CacheTier.lookupListAsync(defaultRedisCacheService, key, clazz, region).thenApply(v -> {
+            if (v != null && !skipLocal(region, v)) {
+                localCache.put(region, key, NullValue.isNull(v) ? new ArrayList<>() : v);
+            }
+            return v;
+        });
+    }
+
     @Override
     public <K, V> Map<K, V> getObjectFromCache(List<K> ids, Class<V> clazz, String prefix) {
+        // prefix就是注解的分区, 本地缓存和序列化方式都和注解的一样
+        return getObjectFromCache(ids, clazz, prefix, prefix);
+    }
+
+    @Override
+    public <K, V> Map<K, V> getObjectFromCache(List<K> ids, Class<V> clazz, String prefix, String region) {
         if (CollectionUtils.isEmpty(ids)) {
             return Collections.emptyMap();
         }
-        ids.removeIf(Objects::isNull);
-        List<String> keys = ids.stream().map(p -> String.format(prefix, p)).collect(Collectors.toList());
-        Map<String, V> allPresent = (Map<String, V>) localCache.getAllPresent(keys);
-        // 从本地缓存里面把结果都筛选出来, 如果有未命中的整理出来
-        Map<K, V> results = new HashMap<>(ids.size());
-        List<K> missIds = new ArrayList<>();
-        for (K id : ids) {
-            String key = String.format(prefix, id);
-            V v = allPresent.get(key);
-            if (v != null) {
-                results.put(id, v);
-            } else {
-                missIds.add(id);
-            }
+        return getObjectFromCache(keyTemplates.of(prefix).buildEach(ids), clazz, region);
+    }
+
+    @Override
+    public <K, V> Map<K, V> getObjectFromCache(Map<K, String> keys, Class<V> clazz, String region) {
+        return NullValue.unwrapAll(lookupAll(keys, clazz, region));
+    }
+
+    @Override
+    public <K, V> CompletableFuture<Map<K, V>> getObjectFromCacheAsync(Map<K, String> keys, Class<V> clazz, String region) {
+        return lookupAllAsync(keys, clazz, region).thenApply(NullValue::<K, V>unwrapAll);
+    }
+
+    @Override
+    public <K> Map<K, Object> lookupAll(Map<K, String> keys, Class<?> clazz, String region) {
+        if (MapUtil.isEmpty(keys)) {
+            return new HashMap<>(0);
         }
+        // 从本地缓存里面把结果都筛选出来, 如果有未命中的整理出来
+        Map<K, Object> results = new HashMap<>(keys.size());
+        Map<K, String> missKeys = getLocalData(keys, region, results);
         // 没有未命中的 直接返回
-        if (CollectionUtils.isEmpty(missIds)) {
+        if (missKeys.isEmpty()) {
             return results;
         }
         // 未命中的尝试去redis里面获取一下
-        Map<K, V> objectFromCache = defaultRedisCacheService.getObjectFromCache(missIds, clazz, prefix);
-        Map<String, Object> needCacheObjects = new HashMap<>(missIds.size());
-        for (K k : missIds) {
-            V v = objectFromCache.get(k);
-            if (v == null) {
-                continue;
-            }
-            needCacheObjects.put(String.format(prefix, k), v);
-            results.put(k, v);
+        return putAll(results, missKeys, CacheTier.lookupAll(defaultRedisCacheService, missKeys, clazz, region), region);
+    }
+
+    @Override
+    public <K> CompletableFuture<Map<K, Object>> lookupAllAsync(Map<K, String> keys, Class<?> clazz, String region) {
+        if (MapUtil.isEmpty(keys)) {
+            return CompletableFuture.completedFuture(new HashMap<>(0));
         }
-        // 更新一下本地缓存
-        if (MapUtil.isNotEmpty(needCacheObjects)) {
-            localCache.putAll(needCacheObjects);
+        Map<K, Object> results = new HashMap<>(keys.size());
+        Map<K, String> missKeys = getLocalData(keys, region, results);
+        if (missKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
         }
-        return results;
+        return CacheTier.lookupAllAsync(defaultRedisCacheService, missKeys, clazz, region)
+                .thenApply(found -> putAll(results, missKeys, found, region));
     }
 
     @Override
     public <K, V> Map<K, List<V>> getObjectListFromCache(List<K> ids, Class<V> clazz, String prefix) {
-        // 这个方法和上面是一样的, 只不过获取的返回值都是List<V>
+        return getObjectListFromCache(ids, clazz, prefix, prefix);
+    }
+
+    @Override
+    public <K, V> Map<K, List<V>> getObjectListFromCache(List<K> ids, Class<V> clazz, String prefix, String region) {
         if (CollectionUtils.isEmpty(ids)) {
             return Collections.emptyMap();
         }
-        ids.removeIf(Objects::isNull);
-        List<String> keys = ids.stream().map(p -> String.format(prefix, p)).collect(Collectors.toList());
-        Map<String, Object> allPresent = localCache.getAllPresent(keys);
-        Map<K, List<V>> results = new HashMap<>(ids.size());
-        List<K> missIds = new ArrayList<>();
-        for (K id : ids) {
-            String key = String.format(prefix, id);
-            List<V> v = (List<V>) allPresent.get(key);
-            if (v != null) {
-                results.put(id, v);
-            } else {
-                missIds.add(id);
-            }
+        return getObjectListFromCache(keyTemplates.of(prefix).buildEach(ids), clazz, region);
+    }
+
+    @Override
+    public <K, V> Map<K, List<V>> getObjectListFromCache(Map<K, String> keys, Class<V> clazz, String region) {
+        return NullValue.unwrapAll(lookupAllLists(keys, clazz, region));
+    }
+
+    @Override
+    public <K, V> CompletableFuture<Map<K, List<V>>> getObjectListFromCacheAsync(Map<K, String> keys, Class<V> clazz, String region) {
+        return lookupAllListsAsync(keys, clazz, region).thenApply(NullValue::<K, List<V>>unwrapAll);
+    }
+
+    @Override
+    public <K> Map<K, Object> lookupAllLists(Map<K, String> keys, Class<?> clazz, String region) {
+        // 这个方法和lookupAll是一样的, 只不过获取的值都是List<V>
+        if (MapUtil.isEmpty(keys)) {
+            return new HashMap<>(0);
         }
+        Map<K, Object> results = new HashMap<>(keys.size());
+        Map<K, String> missKeys = getLocalData(keys, region, results);
 
-        if (CollectionUtils.isEmpty(missIds)) {
+        if (missKeys.isEmpty()) {
             return results;
         }
 
-        Map<K, List<V>> objectListFromCache = defaultRedisCacheService.getObjectListFromCache(missIds, clazz, prefix);
-        Map<String, Object> needCacheObjects = new HashMap<>(missIds.size());
-        for (K k : missIds) {
-            List<V> v = objectListFromCache.get(k);
-            if (v == null) {
-                continue;
+        return putAll(results, missKeys, CacheTier.lookupAllLists(defaultRedisCacheService, missKeys, clazz, region), region);
+    }
+
+    @Override
+    public <K> CompletableFuture<Map<K, Object>> lookupAllListsAsync(Map<K, String> keys, Class<?> clazz, String region) {
+        if (MapUtil.isEmpty(keys)) {
+            return CompletableFuture.completedFuture(new HashMap<>(0));
+        }
+        Map<K, Object> results = new HashMap<>(keys.size());
+        Map<K, String> missKeys = getLocalData(keys, region, results);
+        if (missKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
+        }
+        return CacheTier.lookupAllListsAsync(defaultRedisCacheService, missKeys, clazz, region)
+                .thenApply(found -> putAll(results, missKeys, found, region));
+    }
+
+    /**
+     * 从本地缓存里面批量取数据
+     *
+     * @param keys    特征值 -> key
+     * @param region  本地缓存的分区
+     * @param results 命中的放到这里面
+     * @return 没有命中的部分
+     */
+    @SuppressWarnings("unchecked")
+    private <K, V> Map<K, String> getLocalData(Map<K, String> keys, String region, Map<K, V> results) {
+        Map<String, Object> allPresent = localCache.getAllPresent(region, keys.values());
+        Map<K, String> missKeys = new LinkedHashMap<>();
+        keys.forEach((id, key) -> {
+            V v = (V) allPresent.get(key);
+            if (v != null) {
+                results.put(id, v);
+            } else {
+                missKeys.put(id, key);
+            }
+        });
+        cacheMetrics.get(CacheMetrics.Get.LOCAL_HIT, region, results.size());
+        cacheMetrics.get(CacheMetrics.Get.LOCAL_MISS, region, missKeys.size());
+        return missKeys;
+    }
+
+    /**
+     * 把redis里面查到的数据放到结果里面, 并且更新一下本地缓存(空缓存要看分区的配置)
+     *
+     * @param results  结果
+     * @param missKeys 本地没有命中的部分, 特征值 -> key
+     * @param found    redis里面查到的数据
+     * @param region   本地缓存的分区
+     * @return results
+     */
+    private <K, V> Map<K, V> putAll(Map<K, V> results, Map<K, String> missKeys, Map<K, V> found, String region) {
+        Map<String, Object> needCacheObjects = new HashMap<>(found.size());
+        found.forEach((k, v) -> {
+            if (!skipLocal(region, v)) {
+                needCacheObjects.put(missKeys.get(k), v);
             }
-            needCacheObjects.put(String.format(prefix, k), v);
             results.put(k, v);
-        }
+        });
         if (MapUtil.isNotEmpty(needCacheObjects)) {
-            localCache.putAll(needCacheObjects);
+            localCache.putAll(region, needCacheObjects);
         }
         return results;
     }
 
+    /**
+     * 从redis里面查到的空缓存是否不放进本地缓存
+     * 和切面写本地缓存的规则一样: 没有开启空缓存, 或者本地缓存比空缓存活得久的分区不放
+     *
+     * @param region 本地缓存的分区
+     * @param value  redis里面查到的值, 空缓存是空缓存标记或者空集合
+     * @return 是否不放
+     */
+    private boolean skipLocal(String region, Object value) {
+        boolean empty = NullValue.isNull(value) || (value instanceof Collection && ((Collection<?>) value).isEmpty());
+        return empty && localCache.isSkipEmpty(region);
+    }
+
 }
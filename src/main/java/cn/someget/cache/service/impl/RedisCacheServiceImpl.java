@@ -1,17 +1,25 @@
 package cn.someget.cache.service.impl;
 
 import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.text.CharSequenceUtil;
-import cn.hutool.core.util.ObjectUtil;
+import cn.someget.cache.codec.CacheCodec;
+import cn.someget.cache.codec.CacheCodecRegistry;
 import cn.someget.cache.service.CacheService;
+import cn.someget.cache.service.CacheTier;
+import cn.someget.cache.utils.CacheMetrics;
+import cn.someget.cache.utils.HotKeyDetector;
+import cn.someget.cache.utils.KeyTemplateRegistry;
+import cn.someget.cache.utils.NullValue;
 import cn.someget.cache.utils.RedisRepository;
-import com.alibaba.fastjson.JSON;
+import cn.someget.cache.utils.RefreshValue;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * redis相应的自动缓存处理
@@ -20,85 +28,417 @@ import java.util.stream.Collectors;
  * @date 2022-05-03 16:05
  */
 @Service("defaultRedisCacheService")
-public class RedisCacheServiceImpl implements CacheService {
+public class RedisCacheServiceImpl implements CacheService, CacheTier {
 
     @Resource
     private RedisRepository redisRepository;
 
+    @Resource
+    private CacheCodecRegistry codecRegistry;
+
+    @Resource
+    private KeyTemplateRegistry keyTemplates;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
     @Override
     public <V> V getObjectFromCache(String key, Class<V> clazz) {
+        return getObjectFromCache(key, clazz, (String) null);
+    }
+
+    @Override
+    public <V> V getObjectFromCache(String key, Class<V> clazz, String region) {
+        return NullValue.unwrap(lookup(key, clazz, region));
+    }
+
+    @Override
+    public <V> V getObjectFromCache(String key, Type type, String region) {
+        return NullValue.unwrap(lookup(key, type, region));
+    }
+
+    @Override
+    public <V> CompletableFuture<V> getObjectFromCacheAsync(String key, Type type, String region) {
+        return lookupAsync(key, type, region).thenApply(NullValue::<V>unwrap);
+    }
+
+    @Override
+    public Object lookup(String key, Type type, String region) {
         if (CharSequenceUtil.isBlank(key)) {
             return null;
         }
+        // 热点key直接从本地拿
+        Object hot = getHot(key, region);
+        if (hot != null) {
+            return hot;
+        }
         // 从redis里面查出来
-        String result = redisRepository.get(key);
-        return result == null ? null : JSON.parseObject(result, clazz);
+        return decode(key, redisRepository.getStored(key), type, region);
+    }
+
+    @Override
+    public CompletableFuture<Object> lookupAsync(String key, Type type, String region) {
+        if (CharSequenceUtil.isBlank(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Object hot = getHot(key, region);
+        if (hot != null) {
+            return CompletableFuture.completedFuture(hot);
+        }
+        return redisRepository.getStoredAsync(key).thenApply(stored -> decode(key, stored, type, region));
     }
 
     @Override
     public <V> List<V> getObjectListFromCache(String key, Class<V> clazz) {
+        return getObjectListFromCache(key, clazz, (String) null);
+    }
+
+    @Override
+    public <V> List<V> getObjectListFromCache(String key, Class<V> clazz, String region) {
+        return NullValue.unwrapList(lookupList(key, clazz, region));
+    }
+
+    @Override
+    public <V> CompletableFuture<List<V>> getObjectListFromCacheAsync(String key, Class<V> clazz, String region) {
+        return lookupListAsync(key, clazz, region).thenApply(NullValue::<V>unwrapList);
+    }
+
+    @Override
+    public Object lookupList(String key, Class<?> clazz, String region) {
         if (CharSequenceUtil.isBlank(key)) {
-            return new ArrayList<>();
+            return null;
+        }
+        // 热点key直接从本地拿
+        Object hot = getHot(key, region);
+        if (hot != null) {
+            return NullValue.wrapEmpty(hot);
         }
         // 从redis里面查出来
-        String result = redisRepository.get(key);
-        return result == null ? Collections.emptyList() : JSON.parseArray(result, clazz);
+        return decodeList(key, redisRepository.getStored(key), clazz, region);
+    }
+
+    @Override
+    public CompletableFuture<Object> lookupListAsync(String key, Class<?> clazz, String region) {
+        if (CharSequenceUtil.isBlank(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Object hot = getHot(key, region);
+        if (hot != null) {
+            return CompletableFuture.completedFuture(NullValue.wrapEmpty(hot));
+        }
+        return redisRepository.getStoredAsync(key).thenApply(stored -> decodeList(key, stored, clazz, region));
     }
 
     @Override
     public <K, V> Map<K, V> getObjectFromCache(List<K> ids, Class<V> clazz, String prefix) {
+        // prefix就是注解的分区, 本地缓存和序列化方式都和注解的一样
+        return getObjectFromCache(ids, clazz, prefix, prefix);
+    }
+
+    @Override
+    public <K, V> Map<K, V> getObjectFromCache(List<K> ids, Class<V> clazz, String prefix, String region) {
         if (CollUtil.isEmpty(ids)) {
             return Collections.emptyMap();
         }
-
         // 去构建key, 此时map的value是key
-        Map<K, String> cacheData = getRedisData(ids, prefix);
+        return getObjectFromCache(keyTemplates.of(prefix).buildEach(ids), clazz, region);
+    }
 
-        // 把数据重新转成对应类型然后返回
-        return cacheData.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getKey,
-                        entry -> JSON.parseObject(entry.getValue(), clazz)));
+    @Override
+    public <K, V> Map<K, V> getObjectFromCache(Map<K, String> keys, Class<V> clazz, String region) {
+        return NullValue.unwrapAll(lookupAll(keys, clazz, region));
+    }
+
+    @Override
+    public <K, V> CompletableFuture<Map<K, V>> getObjectFromCacheAsync(Map<K, String> keys, Class<V> clazz, String region) {
+        return lookupAllAsync(keys, clazz, region).thenApply(NullValue::<K, V>unwrapAll);
+    }
+
+    @Override
+    public <K> Map<K, Object> lookupAll(Map<K, String> keys, Class<?> clazz, String region) {
+        if (MapUtil.isEmpty(keys)) {
+            return new HashMap<>(0);
+        }
+
+        // 热点key直接从本地拿, 剩下的再去redis
+        Map<K, Object> result = new HashMap<>(keys.size());
+        Map<K, String> remaining = getHotData(keys, region, result);
+
+        // 从redis中取数据, 把数据重新转成对应类型然后返回
+        CacheCodec codec = codecRegistry.get(region);
+        return putAll(result, remaining, getRedisData(remaining, region), stored -> decode(stored, clazz, codec));
+    }
+
+    @Override
+    public <K> CompletableFuture<Map<K, Object>> lookupAllAsync(Map<K, String> keys, Class<?> clazz, String region) {
+        if (MapUtil.isEmpty(keys)) {
+            return CompletableFuture.completedFuture(new HashMap<>(0));
+        }
+        Map<K, Object> result = new HashMap<>(keys.size());
+        Map<K, String> remaining = getHotData(keys, region, result);
+        CacheCodec codec = codecRegistry.get(region);
+        return getRedisDataAsync(remaining, region)
+                .thenApply(cacheData -> putAll(result, remaining, cacheData, stored -> decode(stored, clazz, codec)));
     }
 
     @Override
     public <K, V> Map<K, List<V>> getObjectListFromCache(List<K> ids, Class<V> clazz, String prefix) {
+        return getObjectListFromCache(ids, clazz, prefix, prefix);
+    }
+
+    @Override
+    public <K, V> Map<K, List<V>> getObjectListFromCache(List<K> ids, Class<V> clazz, String prefix, String region) {
         if (CollUtil.isEmpty(ids)) {
             return Collections.emptyMap();
         }
-
         // 去构建key, 此时map的value是key
-        Map<K, String> cacheData = getRedisData(ids, prefix);
+        return getObjectListFromCache(keyTemplates.of(prefix).buildEach(ids), clazz, region);
+    }
+
+    @Override
+    public <K, V> Map<K, List<V>> getObjectListFromCache(Map<K, String> keys, Class<V> clazz, String region) {
+        return NullValue.unwrapAll(lookupAllLists(keys, clazz, region));
+    }
+
+    @Override
+    public <K, V> CompletableFuture<Map<K, List<V>>> getObjectListFromCacheAsync(Map<K, String> keys, Class<V> clazz, String region) {
+        return lookupAllListsAsync(keys, clazz, region).thenApply(NullValue::<K, List<V>>unwrapAll);
+    }
+
+    @Override
+    public <K> Map<K, Object> lookupAllLists(Map<K, String> keys, Class<?> clazz, String region) {
+        if (MapUtil.isEmpty(keys)) {
+            return new HashMap<>(0);
+        }
+
+        // 热点key直接从本地拿, 剩下的再去redis
+        Map<K, Object> result = new HashMap<>(keys.size());
+        Map<K, String> remaining = getHotData(keys, region, result);
+
+        // 从redis中取数据, 把数据重新转成List然后返回
+        CacheCodec codec = codecRegistry.get(region);
+        return putAll(result, remaining, getRedisData(remaining, region), stored -> decodeList(stored, clazz, codec));
+    }
+
+    @Override
+    public <K> CompletableFuture<Map<K, Object>> lookupAllListsAsync(Map<K, String> keys, Class<?> clazz, String region) {
+        if (MapUtil.isEmpty(keys)) {
+            return CompletableFuture.completedFuture(new HashMap<>(0));
+        }
+        Map<K, Object> result = new HashMap<>(keys.size());
+        Map<K, String> remaining = getHotData(keys, region, result);
+        CacheCodec codec = codecRegistry.get(region);
+        return getRedisDataAsync(remaining, region)
+                .thenApply(cacheData -> putAll(result, remaining, cacheData, stored -> decodeList(stored, clazz, codec)));
+    }
+
+
+    /**
+     * 从热点key的本地缓存里面取单个key
+     * @param key key
+     * @param region 注解的prefix
+     * @return 没有的话返回null
+     */
+    private Object getHot(String key, String region) {
+        Object hot = hotKeyDetector.get(region, key);
+        if (hot != null) {
+            cacheMetrics.get(CacheMetrics.Get.HOT_HIT, region, 1);
+        }
+        return hot;
+    }
+
+    /**
+     * 反序列化redis里面查出来的单个对象(完整类型), 并记录到热点key里面
+     * @param key key
+     * @param stored redis里面存的值
+     * @param type 类型
+     * @param region 注解的prefix
+     * @return 对象或者空缓存标记, 带着逻辑过期时间, 不存在的话返回null
+     */
+    private Object decode(String key, byte[] stored, Type type, String region) {
+        byte[] bytes = RedisRepository.strip(stored);
+        record(region, bytes);
+        if (bytes == null) {
+            return null;
+        }
+        Object value = RedisRepository.isEmptyObject(bytes)
+                ? NullValue.INSTANCE
+                : RefreshValue.of(codecRegistry.get(region).decode(bytes, type), RedisRepository.refreshAt(stored));
+        hotKeyDetector.put(key, value);
+        return value;
+    }
+
+    /**
+     * 反序列化redis里面查出来的单个对象集合, 并记录到热点key里面
+     * @param key key
+     * @param stored redis里面存的值
+     * @param clazz class
+     * @param region 注解的prefix
+     * @return 对象集合, 空集合缓存是空缓存标记, 带着逻辑过期时间, 不存在的话返回null
+     */
+    private Object decodeList(String key, byte[] stored, Class<?> clazz, String region) {
+        byte[] bytes = RedisRepository.strip(stored);
+        record(region, bytes);
+        if (bytes == null) {
+            return null;
+        }
+        Object value = decodeList(stored, clazz, codecRegistry.get(region));
+        hotKeyDetector.put(key, value);
+        return NullValue.wrapEmpty(value);
+    }
+
+    /**
+     * 批量反序列化redis里面查出来的数据, 放进result并记录到热点key里面
+     * @param result 结果放到这里面
+     * @param keys 占位符对应的元素 -> key
+     * @param cacheData 占位符对应的元素 -> redis里面的值
+     * @param decoder 反序列化
+     * @param <K> 元素类型
+     * @param <V> 值类型
+     * @return result
+     */
+    private <K, V> Map<K, V> putAll(Map<K, V> result, Map<K, String> keys, Map<K, byte[]> cacheData, Function<byte[], V> decoder) {
+        cacheData.forEach((id, bytes) -> {
+            V value = decoder.apply(bytes);
+            result.put(id, value);
+            hotKeyDetector.put(keys.get(id), value);
+        });
+        return result;
+    }
+
+    /**
+     * 反序列化对象, 空对象缓存直接返回空缓存标记, 不用再去反序列化
+     * @param stored redis里面存的值
+     * @param clazz class
+     * @param codec 序列化方式
+     * @return 对象或者空缓存标记, 带着逻辑过期时间
+     */
+    private static Object decode(byte[] stored, Class<?> clazz, CacheCodec codec) {
+        byte[] value = RedisRepository.strip(stored);
+        if (value == null) {
+            return null;
+        }
+        if (RedisRepository.isEmptyObject(value)) {
+            return NullValue.INSTANCE;
+        }
+        return RefreshValue.of(codec.decode(value, clazz), RedisRepository.refreshAt(stored));
+    }
 
-        // 把数据重新转成List然后返回
-        return cacheData.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getKey,
-                        entry -> JSON.parseArray(entry.getValue(), clazz)));
+    /**
+     * 反序列化对象集合, 空集合缓存直接返回空集合
+     * @param stored redis里面存的值
+     * @param clazz class
+     * @param codec 序列化方式
+     * @return 对象集合, 带着逻辑过期时间
+     */
+    private static Object decodeList(byte[] stored, Class<?> clazz, CacheCodec codec) {
+        byte[] value = RedisRepository.strip(stored);
+        if (RedisRepository.isEmptyCollection(value)) {
+            return new ArrayList<>();
+        }
+        return RefreshValue.of(codec.decodeList(value, clazz), RedisRepository.refreshAt(stored));
     }
 
+    /**
+     * 从热点key的本地缓存里面取数据
+     * @param keys 占位符对应的元素 -> key
+     * @param region 注解的prefix
+     * @param result 取到的数据放到这里面
+     * @param <K> 元素类型
+     * @param <V> 值类型
+     * @return 没取到的部分
+     */
+    @SuppressWarnings("unchecked")
+    private <K, V> Map<K, String> getHotData(Map<K, String> keys, String region, Map<K, V> result) {
+        if (!hotKeyDetector.isEnabled()) {
+            return keys;
+        }
+        Map<K, String> remaining = new LinkedHashMap<>(keys.size());
+        keys.forEach((id, key) -> {
+            Object hot = hotKeyDetector.get(region, key);
+            if (hot != null) {
+                result.put(id, (V) hot);
+            } else {
+                remaining.put(id, key);
+            }
+        });
+        cacheMetrics.get(CacheMetrics.Get.HOT_HIT, region, keys.size() - remaining.size());
+        return remaining;
+    }
 
     /**
      * 获取数据
-     * @param ids 占位符对应的元素
-     * @param prefix 前缀
+     * @param keys 占位符对应的元素 -> key
+     * @param region 注解的prefix
      * @param <K> 元素类型
      * @return 返回map, 其中key是占位符元素, value是key对应的value
      */
-    private <K> Map<K, String> getRedisData(List<K> ids, String prefix) {
-        // 移除空元素
-        ids = ids.stream().filter(ObjectUtil::isNotNull).collect(Collectors.toList());
-        List<String> keys = ids.stream().map(id -> String.format(prefix, id)).collect(Collectors.toList());
+    private <K> Map<K, byte[]> getRedisData(Map<K, String> keys, String region) {
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
         // 从redis中取数据
-        Map<String, String> cacheData = redisRepository.multiGet(keys);
-        // 按照ids把数据都拼好返回
-        Map<K, String> result = new HashMap<>(cacheData.size());
-        for (K id : ids) {
-            String key = String.format(prefix, id);
-            String value = cacheData.get(key);
-            if (StringUtils.isEmpty(value)) {
-                continue;
+        return toIds(keys, redisRepository.multiGetStored(new ArrayList<>(keys.values())), region);
+    }
+
+    /**
+     * 异步获取数据, 和{@link #getRedisData(Map, String)}一样
+     * @param keys 占位符对应的元素 -> key
+     * @param region 注解的prefix
+     * @param <K> 元素类型
+     * @return 返回map, 其中key是占位符元素, value是key对应的value
+     */
+    private <K> CompletableFuture<Map<K, byte[]>> getRedisDataAsync(Map<K, String> keys, String region) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        return redisRepository.multiGetStoredAsync(new ArrayList<>(keys.values()))
+                .thenApply(cacheData -> toIds(keys, cacheData, region));
+    }
+
+    /**
+     * 按照ids把redis查出来的数据都拼好, 顺便统计命中的情况
+     * @param keys 占位符对应的元素 -> key
+     * @param cacheData key -> redis里面的值
+     * @param region 注解的prefix
+     * @param <K> 元素类型
+     * @return 返回map, 其中key是占位符元素, value是key对应的value
+     */
+    private <K> Map<K, byte[]> toIds(Map<K, String> keys, Map<String, byte[]> cacheData, String region) {
+        Map<K, byte[]> result = new HashMap<>(cacheData.size());
+        keys.forEach((id, key) -> {
+            byte[] value = cacheData.get(key);
+            if (value != null && value.length > 0) {
+                result.put(id, value);
             }
-            result.put(id, value);
+        });
+        if (cacheMetrics.isEnabled()) {
+            int negative = (int) result.values().stream()
+                    .map(RedisRepository::strip)
+                    .filter(value -> RedisRepository.isEmptyObject(value) || RedisRepository.isEmptyCollection(value))
+                    .count();
+            cacheMetrics.get(CacheMetrics.Get.REDIS_HIT, region, result.size() - negative);
+            cacheMetrics.get(CacheMetrics.Get.REDIS_NEGATIVE_HIT, region, negative);
+            cacheMetrics.get(CacheMetrics.Get.REDIS_MISS, region, keys.size() - result.size());
         }
         return result;
     }
+
+    /**
+     * 记录一次redis查询的结果
+     * @param region 注解的prefix
+     * @param value redis里面的值
+     */
+    private void record(String region, byte[] value) {
+        if (value == null) {
+            cacheMetrics.get(CacheMetrics.Get.REDIS_MISS, region, 1);
+        } else if (RedisRepository.isEmptyObject(value) || RedisRepository.isEmptyCollection(value)) {
+            cacheMetrics.get(CacheMetrics.Get.REDIS_NEGATIVE_HIT, region, 1);
+        } else {
+            cacheMetrics.get(CacheMetrics.Get.REDIS_HIT, region, 1);
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器, 判断一个id是否一定不存在
+ * 返回false的一定不存在, 返回true的可能存在(有fpp的误判率)
+ * 位的顺序和redis的bitmap一样(第0位是第一个字节的最高位), 所以可以直接和redis里面的bitmap互相同步
+ *
+ * @author agent
+ * @date 2026-10-17 20:09
+ */
+public class BloomFilter {
+
+    /**
+     * 总位数
+     */
+    private final long size;
+
+    /**
+     * hash函数的个数
+     */
+    private final int hashes;
+
+    private final AtomicLongArray bits;
+
+    /**
+     * @param expectedInsertions 预计有多少个id
+     * @param fpp                误判率(0, 1)
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(expectedInsertions, 1L);
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 按64位对齐, 也就是整字节, 方便和redis的bitmap互相转换
+        this.size = Math.max(64L, (m + 63) / 64 * 64);
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (size / 64));
+    }
+
+    /**
+     * 算出一个id对应的所有位
+     *
+     * @param id id
+     * @return 位的下标
+     */
+    public long[] offsets(Object id) {
+        long hash = MurmurHash.hash64(String.valueOf(id));
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long[] offsets = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            long combined = hash1 + (long) (i + 1) * hash2;
+            offsets[i] = (combined & Long.MAX_VALUE) % size;
+        }
+        return offsets;
+    }
+
+    /**
+     * 是否可能存在
+     *
+     * @param offsets id对应的位
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(long[] offsets) {
+        for (long offset : offsets) {
+            if ((bits.get((int) (offset >>> 6)) & mask(offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 放入一个id
+     *
+     * @param offsets id对应的位
+     * @return 是否有位从0变成了1(false表示之前就已经可能存在)
+     */
+    public boolean put(long[] offsets) {
+        boolean changed = false;
+        for (long offset : offsets) {
+            int index = (int) (offset >>> 6);
+            long mask = mask(offset);
+            long current;
+            do {
+                current = bits.get(index);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(index, current, current | mask));
+            changed |= (current & mask) == 0;
+        }
+        return changed;
+    }
+
+    /**
+     * 把redis里面的bitmap合并进来(按位或)
+     *
+     * @param bitmap redis的bitmap, 长度不够的部分当作0
+     */
+    public void merge(byte[] bitmap) {
+        int words = Math.min(bits.length(), (bitmap.length + 7) / 8);
+        for (int i = 0; i < words; i++) {
+            long word = 0L;
+            for (int j = 0; j < 8; j++) {
+                int position = i * 8 + j;
+                long value = position < bitmap.length ? bitmap[position] & 0xFF : 0L;
+                word |= value << (56 - j * 8);
+            }
+            if (word != 0) {
+                long update = word;
+                bits.getAndUpdate(i, current -> current | update);
+            }
+        }
+    }
+
+    /**
+     * 总位数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 第offset位在long里面的掩码, 高位在前
+     */
+    private static long mask(long offset) {
+        return 1L << (63 - (offset & 63));
+    }
+}
@@ -0,0 +1,259 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * 按prefix划分的布隆过滤器, 用来在查redis和执行方法之前过滤掉一定不存在的id
+ * <p>
+ * 过滤器一开始是空的, 只会从方法查到的结果里面慢慢学习, 这时候不会过滤任何id;
+ * 需要调用{@link #putAll}把所有存在的id放进去, 再调用{@link #markReady}之后才开始过滤
+ * 新增的id要记得调用put(或者通过@CachePut写入), 不然在下次学习到之前会被当作不存在
+ * <p>
+ * 开启cache-anno.bloom.redis-mirror之后, 放入的id会同步写到redis的bitmap(cache-anno:bloom:prefix),
+ * 每个节点定时把redis的bitmap合并到本地; 本地判断不存在的id还会再去redis确认一次, 其他节点刚放进去的id不会被误杀
+ *
+ * @author agent
+ * @date 2026-10-17 20:09
+ */
+@Slf4j
+@Component
+public class BloomFilterRegistry {
+
+    @Resource
+    private RedisRepository redisRepository;
+
+    /**
+     * 默认预计每个prefix有多少个id
+     */
+    @Value("${cache-anno.bloom.expected-insertions:" + BLOOM_EXPECTED_INSERTIONS + "}")
+    private long expectedInsertions;
+
+    /**
+     * 误判率
+     */
+    @Value("${cache-anno.bloom.fpp:" + BLOOM_FPP + "}")
+    private double fpp;
+
+    /**
+     * 是否同步到redis的bitmap
+     */
+    @Value("${cache-anno.bloom.redis-mirror:false}")
+    private boolean redisMirror;
+
+    /**
+     * 多久从redis合并一次, 单位秒
+     */
+    @Value("${cache-anno.bloom.reload-interval:" + BLOOM_RELOAD_INTERVAL + "}")
+    private long reloadInterval;
+
+    /**
+     * prefix -> 过滤器
+     */
+    private final Map<String, Filter> filters = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService reloader;
+
+    /**
+     * 一个prefix的过滤器
+     */
+    private static class Filter {
+
+        private final BloomFilter bloomFilter;
+
+        /**
+         * 是否已经放入了所有存在的id, 之后才开始过滤
+         */
+        private volatile boolean ready;
+
+        private Filter(BloomFilter bloomFilter) {
+            this.bloomFilter = bloomFilter;
+        }
+    }
+
+    /**
+     * 注册prefix的过滤器, 已经存在的不会重复创建
+     *
+     * @param prefix             注解的prefix
+     * @param expectedInsertions 预计有多少个id, 0表示用默认配置
+     */
+    public void register(String prefix, long expectedInsertions) {
+        filters.computeIfAbsent(prefix, p -> {
+            long insertions = expectedInsertions > 0 ? expectedInsertions : this.expectedInsertions;
+            Filter filter = new Filter(new BloomFilter(insertions, fpp));
+            log.info("cache-anno bloom filter registered, prefix:{}, insertions:{}, bits:{}", p, insertions, filter.bloomFilter.size());
+            return filter;
+        });
+        if (redisMirror) {
+            startReloader();
+        }
+    }
+
+    /**
+     * 过滤掉一定不存在的id, 过滤器还没有准备好的话原样返回
+     *
+     * @param prefix 注解的prefix
+     * @param ids    id集合
+     * @param <K>    id类型
+     * @return 可能存在的id
+     */
+    public <K> List<K> filter(String prefix, List<K> ids) {
+        Filter filter = filters.get(prefix);
+        if (filter == null || !filter.ready || CollUtil.isEmpty(ids)) {
+            return ids;
+        }
+        List<K> present = new ArrayList<>(ids.size());
+        List<K> absent = new ArrayList<>();
+        List<long[]> absentOffsets = new ArrayList<>();
+        for (K id : ids) {
+            long[] offsets = filter.bloomFilter.offsets(id);
+            if (filter.bloomFilter.mightContain(offsets)) {
+                present.add(id);
+            } else {
+                absent.add(id);
+                absentOffsets.add(offsets);
+            }
+        }
+        if (absent.isEmpty()) {
+            return ids;
+        }
+        // 其他节点可能刚放进去, 本地还没合并到, 去redis确认一下
+        if (redisMirror) {
+            boolean[] confirmed = redisRepository.getBits(bitmapKey(prefix), absentOffsets);
+            for (int i = 0; i < absent.size(); i++) {
+                if (confirmed == null || confirmed[i]) {
+                    present.add(absent.get(i));
+                    filter.bloomFilter.put(absentOffsets.get(i));
+                }
+            }
+        }
+        log.debug("cache-anno bloom filter rejected, prefix:{}, ids:{}", prefix, ids.size() - present.size());
+        return present;
+    }
+
+    /**
+     * 放入一个存在的id
+     *
+     * @param prefix 注解的prefix
+     * @param id     id
+     */
+    public void put(String prefix, Object id) {
+        putAll(prefix, CollUtil.newArrayList(id));
+    }
+
+    /**
+     * 放入存在的id, 没有注册过的prefix会被忽略
+     *
+     * @param prefix 注解的prefix
+     * @param ids    id集合
+     */
+    public void putAll(String prefix, Collection<?> ids) {
+        Filter filter = filters.get(prefix);
+        if (filter == null || CollUtil.isEmpty(ids)) {
+            return;
+        }
+        List<long[]> changed = new ArrayList<>();
+        for (Object id : ids) {
+            if (id == null) {
+                continue;
+            }
+            long[] offsets = filter.bloomFilter.offsets(id);
+            // 本地已经有了的不用再写redis
+            if (filter.bloomFilter.put(offsets)) {
+                changed.add(offsets);
+            }
+        }
+        if (redisMirror && !changed.isEmpty()) {
+            redisRepository.setBits(bitmapKey(prefix), changed);
+        }
+    }
+
+    /**
+     * 所有存在的id都已经放进去了, 开始过滤
+     * 开启了redis同步的话其他节点下次合并的时候也会开始过滤
+     *
+     * @param prefix 注解的prefix
+     */
+    public void markReady(String prefix) {
+        Filter filter = filters.get(prefix);
+        if (filter == null) {
+            return;
+        }
+        filter.ready = true;
+        if (redisMirror) {
+            redisRepository.setRaw(bitmapKey(prefix) + BLOOM_READY_SUFFIX, BLOOM_READY_VALUE);
+        }
+    }
+
+    /**
+     * 过滤器是否已经开始过滤
+     *
+     * @param prefix 注解的prefix
+     */
+    public boolean isReady(String prefix) {
+        Filter filter = filters.get(prefix);
+        return filter != null && filter.ready;
+    }
+
+    /**
+     * 启动定时合并redis的bitmap
+     */
+    private void startReloader() {
+        if (reloader != null) {
+            return;
+        }
+        synchronized (this) {
+            if (reloader == null) {
+                reloader = Executors.newSingleThreadScheduledExecutor(
+                        ThreadFactoryBuilder.create().setNamePrefix("cache-anno-bloom-").setDaemon(true).build());
+                reloader.scheduleWithFixedDelay(this::reload, 0L, reloadInterval, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * 把redis里面的bitmap合并到本地
+     */
+    private void reload() {
+        filters.forEach((prefix, filter) -> {
+            try {
+                byte[] bitmap = redisRepository.getRaw(bitmapKey(prefix));
+                if (bitmap != null) {
+                    filter.bloomFilter.merge(bitmap);
+                }
+                if (!filter.ready && redisRepository.getRaw(bitmapKey(prefix) + BLOOM_READY_SUFFIX) != null) {
+                    filter.ready = true;
+                }
+            } catch (Exception e) {
+                log.warn("cache-anno bloom filter reload error, prefix:{}, msg:{}", prefix, e.getMessage());
+            }
+        });
+    }
+
+    private static String bitmapKey(String prefix) {
+        return BLOOM_KEY_PREFIX + prefix;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reloader != null) {
+            reloader.shutdown();
+        }
+    }
+}
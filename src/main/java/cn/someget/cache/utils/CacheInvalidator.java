@@ -0,0 +1,295 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * 缓存失效
+ * 删除redis里面的key, 同时让所有节点的本地缓存失效
+ * 本节点的本地缓存直接删除, 其他节点通过redis的pub/sub广播; 广播会攒一小段时间,
+ * 同一段时间里面的多次删除只发一条消息, 写得再频繁也不会把消息刷屏
+ * 默认只删除本节点的本地缓存, 通过cache-anno.invalidation.enabled开启广播
+ * <p>
+ * 广播的消息是一行一条, 第一行是发送方的节点id(收到自己发的消息直接忽略):
+ * <pre>
+ * 节点id
+ * K 分区 key
+ * R 分区
+ * </pre>
+ * K是删除分区里面的一个key, R是清空整个分区(同时重新读取prefix的版本号), 字段之间用tab分隔
+ *
+ * @author agent
+ * @date 2026-10-17 20:02
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    private static final char KEY = 'K';
+
+    private static final char REGION = 'R';
+
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * 当前节点的id
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    @Resource
+    private RedisRepository redisRepository;
+
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private PrefixVersions prefixVersions;
+
+    @Resource
+    private KeyTemplateRegistry keyTemplates;
+
+    @Resource
+    private WriteBehindQueue writeBehindQueue;
+
+    @Value("${cache-anno.invalidation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cache-anno.invalidation.channel:" + INVALIDATION_CHANNEL + "}")
+    private String channel;
+
+    /**
+     * 攒批的间隔, 单位毫秒
+     */
+    @Value("${cache-anno.invalidation.batch-interval:" + INVALIDATION_BATCH_INTERVAL + "}")
+    private long batchInterval;
+
+    /**
+     * 等待广播的key, 分区 -> keys
+     */
+    private Map<String, Set<String>> pendingKeys = new LinkedHashMap<>();
+
+    /**
+     * 等待广播的整个分区的清空
+     */
+    private Set<String> pendingRegions = new LinkedHashSet<>();
+
+    private RedisMessageListenerContainer container;
+
+    private ScheduledExecutorService publisher;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisRepository.getConnectionFactory());
+        container.addMessageListener((message, pattern) -> receive(message.getBody()), new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+        publisher = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("cache-anno-invalidation-").setDaemon(true).build());
+        publisher.scheduleWithFixedDelay(this::flush, batchInterval, batchInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 删除缓存, key按照prefix和id拼出来(和批量查询的规则一样)
+     * 会删除redis, 本节点的本地缓存, 并广播让其他节点的本地缓存失效
+     *
+     * @param prefix 注解的prefix, 同时也是本地缓存的分区
+     * @param ids    id集合
+     */
+    public void evict(String prefix, Collection<?> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return;
+        }
+        KeyTemplate template = keyTemplates.of(prefix).append(prefixVersions.stamp(prefix));
+        evictKeys(prefix, template.buildEach(new ArrayList<>(ids)).values());
+    }
+
+    /**
+     * 删除缓存
+     * 会删除redis, 本节点的本地缓存, 并广播让其他节点的本地缓存失效
+     *
+     * @param region 本地缓存的分区(注解的prefix)
+     * @param keys   完整的key
+     */
+    public void evictKeys(String region, Collection<String> keys) {
+        if (CollUtil.isEmpty(keys)) {
+            return;
+        }
+        // 先取消还没写的旧值, 不然删完之后又被写回去
+        writeBehindQueue.cancel(keys);
+        redisRepository.delete(keys);
+        invalidateLocal(region, keys);
+    }
+
+    /**
+     * 只让所有节点的本地缓存失效, redis里面的数据不动(比如redis刚被更新成新值)
+     *
+     * @param region 本地缓存的分区(注解的prefix)
+     * @param keys   完整的key
+     */
+    public void invalidateLocal(String region, Collection<String> keys) {
+        if (CollUtil.isEmpty(keys)) {
+            return;
+        }
+        evictLocal(region, keys);
+        if (enabled) {
+            synchronized (this) {
+                pendingKeys.computeIfAbsent(region, r -> new LinkedHashSet<>()).addAll(keys);
+            }
+        }
+    }
+
+    /**
+     * 让一个prefix下面所有的缓存失效
+     * 开启了版本号(@Cache(versioned = true))的prefix会把版本号加一, redis里面旧的key不会再被读到, 等着自己过期;
+     * 没有开启的只能清空所有节点的本地缓存, redis里面的数据不会删除
+     *
+     * @param prefix 注解的prefix
+     */
+    public void evictAll(String prefix) {
+        if (prefixVersions.isVersioned(prefix)) {
+            prefixVersions.bump(prefix);
+        }
+        evictRegion(prefix);
+    }
+
+    /**
+     * 清空所有节点上一个分区的本地缓存, redis里面的数据不会删除
+     *
+     * @param region 本地缓存的分区(注解的prefix)
+     */
+    public void evictRegion(String region) {
+        localCache.clear(region);
+        if (enabled) {
+            synchronized (this) {
+                pendingRegions.add(region);
+                pendingKeys.remove(region);
+            }
+        }
+    }
+
+    /**
+     * 删除本节点的本地缓存, 同时取消本节点还没写入redis的旧值
+     */
+    private void evictLocal(String region, Collection<String> keys) {
+        localCache.deleteAll(region, keys);
+        hotKeyDetector.evict(keys);
+        writeBehindQueue.cancel(keys);
+    }
+
+    /**
+     * 把攒着的失效广播出去, 一条消息最多带INVALIDATION_BATCH_SIZE个key
+     */
+    private void flush() {
+        Map<String, Set<String>> keys;
+        Set<String> regions;
+        synchronized (this) {
+            if (pendingKeys.isEmpty() && pendingRegions.isEmpty()) {
+                return;
+            }
+            keys = pendingKeys;
+            regions = pendingRegions;
+            pendingKeys = new LinkedHashMap<>();
+            pendingRegions = new LinkedHashSet<>();
+        }
+        try {
+            StringBuilder message = new StringBuilder(nodeId);
+            int lines = 0;
+            for (String region : regions) {
+                message.append('\n').append(REGION).append(SEPARATOR).append(region);
+                lines++;
+            }
+            for (Map.Entry<String, Set<String>> entry : keys.entrySet()) {
+                for (String key : entry.getValue()) {
+                    if (lines >= INVALIDATION_BATCH_SIZE) {
+                        redisRepository.publish(channel, message.toString());
+                        message.setLength(0);
+                        message.append(nodeId);
+                        lines = 0;
+                    }
+                    message.append('\n').append(KEY).append(SEPARATOR).append(entry.getKey()).append(SEPARATOR).append(key);
+                    lines++;
+                }
+            }
+            redisRepository.publish(channel, message.toString());
+        } catch (Exception e) {
+            log.warn("cache-anno invalidation publish error, msg:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 收到其他节点的失效广播
+     */
+    private void receive(byte[] body) {
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 2 || nodeId.equals(lines[0])) {
+            return;
+        }
+        Map<String, List<String>> keys = new LinkedHashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(String.valueOf(SEPARATOR), 3);
+            if (fields[0].length() != 1) {
+                continue;
+            }
+            if (fields[0].charAt(0) == REGION && fields.length == 2) {
+                localCache.clear(fields[1]);
+                prefixVersions.expire(fields[1]);
+            } else if (fields[0].charAt(0) == KEY && fields.length == 3) {
+                keys.computeIfAbsent(fields[1], r -> new ArrayList<>()).add(fields[2]);
+            }
+        }
+        keys.forEach(this::evictLocal);
+        log.debug("cache-anno invalidation received, from:{}, lines:{}", lines[0], lines.length - 1);
+    }
+
+    /**
+     * 等待广播的key的数量
+     */
+    public synchronized int pending() {
+        return pendingKeys.values().stream().mapToInt(Set::size).sum() + pendingRegions.size();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        publisher.shutdown();
+        // 剩下的也发出去
+        flush();
+        container.destroy();
+    }
+}
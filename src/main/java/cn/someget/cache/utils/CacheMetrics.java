@@ -0,0 +1,203 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.codec.CompressingCacheCodec;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存各个环节的监控
+ * 引入了micrometer并且容器里面有MeterRegistry的时候才会上报, 否则所有方法都是空操作, 不会有额外开销
+ * 上报的指标(prefix是注解的prefix, 也就是本地缓存的分区):
+ * <ul>
+ *     <li>cache.anno.gets: 各级缓存的查询次数, tag: tier(request/local/hot/redis), result(hit/miss/negative), prefix</li>
+ *     <li>cache.anno.redis: redis命令的耗时, tag: operation(get/mget/set/pipeline/delete), outcome(success/error)</li>
+ *     <li>cache.anno.loader: 未命中时执行方法的耗时(次数就是执行方法的次数), tag: prefix, method, outcome</li>
+ *     <li>cache.size, cache.evictions等: 每个本地缓存分区的caffeine指标, tag: cache(分区名)</li>
+ *     <li>cache.anno.compress.bytes: 开启了压缩的prefix压缩前后的总字节数, tag: prefix, direction(in是压缩前/out是压缩后)</li>
+ *     <li>cache.anno.compress.count: 开启了压缩的prefix压缩的次数, tag: prefix</li>
+ * </ul>
+ * MeterRegistry在所有单例创建完之后才去拿, 避免提前创建
+ *
+ * @author agent
+ * @date 2026-10-17 20:13
+ */
+@Slf4j
+@Component
+public class CacheMetrics implements BeanFactoryAware, SmartInitializingSingleton {
+
+    private static final String METER_REGISTRY = "io.micrometer.core.instrument.MeterRegistry";
+
+    /**
+     * 缓存查询的结果
+     */
+    public enum Get {
+        REQUEST_HIT("request", "hit"),
+        LOCAL_HIT("local", "hit"),
+        LOCAL_MISS("local", "miss"),
+        HOT_HIT("hot", "hit"),
+        REDIS_HIT("redis", "hit"),
+        REDIS_MISS("redis", "miss"),
+        REDIS_NEGATIVE_HIT("redis", "negative");
+
+        final String tier;
+
+        final String result;
+
+        Get(String tier, String result) {
+            this.tier = tier;
+            this.result = result;
+        }
+    }
+
+    /**
+     * redis命令
+     */
+    public enum RedisOp {
+        GET, MGET, SET, PIPELINE, DELETE;
+
+        final String tag = name().toLowerCase();
+    }
+
+    @Value("${cache-anno.metrics.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 耗时是否上报直方图(用来算分位数)
+     */
+    @Value("${cache-anno.metrics.histogram:false}")
+    private boolean histogram;
+
+    private BeanFactory beanFactory;
+
+    /**
+     * 真正上报的实现, null表示不上报
+     */
+    private volatile MicrometerRecorder recorder;
+
+    /**
+     * 在拿到MeterRegistry之前注册的本地缓存分区
+     */
+    private final Map<String, Cache<?, ?>> localCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 在拿到MeterRegistry之前注册的开启了压缩的prefix
+     */
+    private final Map<String, CompressingCacheCodec> compressions = new ConcurrentHashMap<>();
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled || !ClassUtils.isPresent(METER_REGISTRY, getClass().getClassLoader())) {
+            return;
+        }
+        MicrometerRecorder created = MicrometerRecorder.create(beanFactory, histogram);
+        if (created == null) {
+            return;
+        }
+        localCaches.forEach(created::bindLocalCache);
+        compressions.forEach(created::bindCompression);
+        recorder = created;
+        log.info("cache-anno metrics enabled, histogram:{}", histogram);
+    }
+
+    /**
+     * 是否在上报, 没有上报的时候调用方可以省掉计时
+     */
+    public boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * 计时开始
+     *
+     * @return 开始的时间(纳秒), 没有上报的时候是0
+     */
+    public long start() {
+        return recorder != null ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 记录缓存查询的结果
+     *
+     * @param get    结果
+     * @param prefix 注解的prefix
+     * @param count  次数
+     */
+    public void get(Get get, String prefix, int count) {
+        MicrometerRecorder current = recorder;
+        if (current != null && count > 0) {
+            current.get(get, prefix, count);
+        }
+    }
+
+    /**
+     * 记录一次redis命令
+     *
+     * @param op    命令
+     * @param start start()的返回值
+     * @param error 是否出错
+     */
+    public void redis(RedisOp op, long start, boolean error) {
+        MicrometerRecorder current = recorder;
+        if (current != null) {
+            current.redis(op, System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * 记录一次执行方法
+     *
+     * @param method 方法
+     * @param prefix 注解的prefix
+     * @param start  start()的返回值
+     * @param error  是否抛了异常
+     */
+    public void loader(Method method, String prefix, long start, boolean error) {
+        MicrometerRecorder current = recorder;
+        if (current != null) {
+            current.loader(method, prefix, System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * 上报本地缓存分区的caffeine指标
+     *
+     * @param region 分区名
+     * @param cache  caffeine实例
+     */
+    public void bindLocalCache(String region, Cache<?, ?> cache) {
+        localCaches.put(region, cache);
+        MicrometerRecorder current = recorder;
+        if (current != null) {
+            current.bindLocalCache(region, cache);
+        }
+    }
+
+    /**
+     * 上报prefix压缩前后的字节数
+     *
+     * @param prefix 注解的prefix
+     * @param codec  开启了压缩的序列化方式
+     */
+    public void bindCompression(String prefix, CompressingCacheCodec codec) {
+        compressions.put(prefix, codec);
+        MicrometerRecorder current = recorder;
+        if (current != null) {
+            current.bindCompression(prefix, codec);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.text.StrPool;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * redis命令的跟踪日志
+ * 默认不打印每一次命令, 按key的前缀采样打印(cache-anno.trace.sample-rate, cache-anno.trace.sample-rates)
+ * 超过cache-anno.trace.slow-threshold的命令放进一个固定大小的环形缓冲区, 需要的时候调用{@link #slowOperations()}或者{@link #dump()}查看
+ * 没有被采样并且不慢的命令不会格式化参数, 也不会创建任何对象; 需要打印的时候批量的key最多打印max-keys个, 太长的key会被截断
+ *
+ * @author agent
+ * @date 2026-10-17 20:16
+ */
+@Slf4j
+@Component
+public class CacheTracer {
+
+    /**
+     * 默认采样率, 0到1
+     */
+    @Value("${cache-anno.trace.sample-rate:" + TRACE_SAMPLE_RATE + "}")
+    private double sampleRate;
+
+    /**
+     * 按key前缀单独设置的采样率, 格式: user:=1,order:=0.01, 匹配到多个的时候最长的前缀优先
+     */
+    @Value("${cache-anno.trace.sample-rates:}")
+    private String sampleRates;
+
+    /**
+     * 超过多少毫秒算慢操作, 0表示不记录
+     */
+    @Value("${cache-anno.trace.slow-threshold:" + TRACE_SLOW_THRESHOLD + "}")
+    private long slowThreshold;
+
+    /**
+     * 最多保留最近多少条慢操作
+     */
+    @Value("${cache-anno.trace.slow-buffer-size:" + TRACE_SLOW_BUFFER_SIZE + "}")
+    private int slowBufferSize;
+
+    /**
+     * 批量命令最多打印多少个key
+     */
+    @Value("${cache-anno.trace.max-keys:" + TRACE_MAX_KEYS + "}")
+    private int maxKeys;
+
+    /**
+     * 单个key最多打印多少个字符
+     */
+    @Value("${cache-anno.trace.max-key-length:" + TRACE_MAX_KEY_LENGTH + "}")
+    private int maxKeyLength;
+
+    /**
+     * 按长度从长到短排好的前缀, 和rates一一对应
+     */
+    private String[] prefixes = new String[0];
+
+    private double[] rates = new double[0];
+
+    /**
+     * 是否有任何采样, 没有的话不用去匹配前缀
+     */
+    private boolean sampling;
+
+    private long slowNanos = Long.MAX_VALUE;
+
+    private AtomicReferenceArray<SlowOperation> slowOperations = new AtomicReferenceArray<>(1);
+
+    /**
+     * 下一条慢操作写入的位置(一直递增, 取模之后才是下标)
+     */
+    private final AtomicLong slowCursor = new AtomicLong();
+
+    /**
+     * 一条慢操作
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SlowOperation {
+
+        /**
+         * 结束的时间戳, 毫秒
+         */
+        private final long timestamp;
+
+        private final CacheMetrics.RedisOp op;
+
+        /**
+         * 已经截断过的key
+         */
+        private final String keys;
+
+        /**
+         * key的数量
+         */
+        private final int count;
+
+        /**
+         * value的字节数, -1表示不知道
+         */
+        private final long bytes;
+
+        /**
+         * 耗时, 微秒
+         */
+        private final long cost;
+
+        private final boolean error;
+
+        @Override
+        public String toString() {
+            return CharSequenceUtil.format("{} op:{}, keys:{}, count:{}, bytes:{}, cost:{}us, error:{}",
+                    DateUtil.date(timestamp), op.tag, keys, count, bytes, cost, error);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        Map<String, Double> parsed = new TreeMap<>(Comparator.comparingInt(String::length).reversed().thenComparing(p -> p));
+        for (String item : CharSequenceUtil.splitTrim(sampleRates, StrPool.COMMA)) {
+            int split = item.lastIndexOf('=');
+            try {
+                parsed.put(item.substring(0, split).trim(), Double.parseDouble(item.substring(split + 1).trim()));
+            } catch (RuntimeException e) {
+                log.warn("cache-anno illegal trace sample rate, item:{}", item);
+            }
+        }
+        prefixes = parsed.keySet().toArray(new String[0]);
+        rates = parsed.values().stream().mapToDouble(Double::doubleValue).toArray();
+        sampling = sampleRate > 0 || parsed.values().stream().anyMatch(rate -> rate > 0);
+        slowNanos = slowThreshold > 0 ? TimeUnit.MILLISECONDS.toNanos(slowThreshold) : Long.MAX_VALUE;
+        slowOperations = new AtomicReferenceArray<>(Math.max(slowBufferSize, 1));
+    }
+
+    /**
+     * 记录一次redis命令
+     *
+     * @param op    命令
+     * @param keys  key(String)或者key集合(Collection), 需要打印的时候才会格式化
+     * @param bytes value的字节数, 不知道的话传-1
+     * @param start 开始的时间(System.nanoTime())
+     * @param error 是否出错
+     */
+    public void trace(CacheMetrics.RedisOp op, Object keys, long bytes, long start, boolean error) {
+        long cost = System.nanoTime() - start;
+        boolean slow = cost >= slowNanos;
+        boolean sampled = sampling && sampled(keys);
+        if (!slow && !sampled) {
+            return;
+        }
+        String described = describe(keys);
+        int count = keys instanceof Collection ? ((Collection<?>) keys).size() : 1;
+        long micros = TimeUnit.NANOSECONDS.toMicros(cost);
+        if (slow) {
+            int index = (int) (slowCursor.getAndIncrement() % slowOperations.length());
+            slowOperations.set(index, new SlowOperation(System.currentTimeMillis(), op, described, count, bytes, micros, error));
+        }
+        if (sampled) {
+            log.info("cache-anno trace, op:{}, keys:{}, count:{}, bytes:{}, cost:{}us, error:{}",
+                    op.tag, described, count, bytes, micros, error);
+        }
+    }
+
+    /**
+     * 把key格式化成可以打印的字符串, 批量的key最多max-keys个, 太长的key会被截断
+     *
+     * @param keys key(String)或者key集合(Collection)
+     * @return 格式化之后的字符串
+     */
+    public String describe(Object keys) {
+        if (!(keys instanceof Collection)) {
+            return truncate(String.valueOf(keys));
+        }
+        Collection<?> collection = (Collection<?>) keys;
+        StringBuilder builder = new StringBuilder("[");
+        int written = 0;
+        for (Object key : collection) {
+            if (written == maxKeys) {
+                builder.append(", ...(").append(collection.size() - written).append(" more)");
+                break;
+            }
+            if (written > 0) {
+                builder.append(", ");
+            }
+            builder.append(truncate(String.valueOf(key)));
+            written++;
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * 最近的慢操作, 最新的在前面
+     */
+    public List<SlowOperation> slowOperations() {
+        int size = slowOperations.length();
+        long end = slowCursor.get();
+        List<SlowOperation> result = new ArrayList<>(size);
+        for (long i = end - 1; i >= 0 && i >= end - size; i--) {
+            SlowOperation operation = slowOperations.get((int) (i % size));
+            if (operation != null) {
+                result.add(operation);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把最近的慢操作格式化成文本, 一行一条, 最新的在前面
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        slowOperations().forEach(operation -> builder.append(operation).append('\n'));
+        return builder.toString();
+    }
+
+    /**
+     * 按照key的前缀决定这次是否打印
+     */
+    private boolean sampled(Object keys) {
+        String key;
+        if (keys instanceof String) {
+            key = (String) keys;
+        } else if (keys instanceof List && !((List<?>) keys).isEmpty()) {
+            key = String.valueOf(((List<?>) keys).get(0));
+        } else if (keys instanceof Collection && !((Collection<?>) keys).isEmpty()) {
+            key = String.valueOf(((Collection<?>) keys).iterator().next());
+        } else {
+            return false;
+        }
+        double rate = rate(key);
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private double rate(String key) {
+        for (int i = 0; i < prefixes.length; i++) {
+            if (key.startsWith(prefixes[i])) {
+                return rates[i];
+            }
+        }
+        return sampleRate;
+    }
+
+    private String truncate(String key) {
+        return key.length() > maxKeyLength ? key.substring(0, maxKeyLength) + "..." : key;
+    }
+}
@@ -0,0 +1,29 @@
+package cn.someget.cache.utils;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 本地缓存默认的权重计算
+ * 集合按元素个数算, 其他对象算1, 这样批量接口缓存的大List不会和单个对象占一样的份额
+ *
+ * @author agent
+ * @date 2026-10-17 19:35
+ */
+public class CollectionWeigher implements Weigher<String, Object> {
+
+    @Override
+    public int weigh(String key, Object cached) {
+        // 带逻辑过期时间的值按里面的值算
+        Object value = RefreshValue.unwrap(cached);
+        if (value instanceof Collection) {
+            return Math.max(1, ((Collection<?>) value).size());
+        }
+        if (value instanceof Map) {
+            return Math.max(1, ((Map<?, ?>) value).size());
+        }
+        return 1;
+    }
+}
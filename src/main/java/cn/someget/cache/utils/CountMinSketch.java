@@ -0,0 +1,74 @@
+package cn.someget.cache.utils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * count-min sketch, 用固定大小的计数器估算每个key出现的次数
+ * 估算值只会偏大不会偏小, 宽度越大误差越小
+ *
+ * @author agent
+ * @date 2026-10-17 19:59
+ */
+public class CountMinSketch {
+
+    /**
+     * 每一行用不同的种子做hash
+     */
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F, 0x165667B1, 0xD3A2646C};
+
+    private final int depth;
+
+    /**
+     * 宽度减一, 宽度是2的幂, 取模直接用与运算
+     */
+    private final int mask;
+
+    private final AtomicIntegerArray counters;
+
+    /**
+     * @param depth 行数(hash函数的个数), 最多6
+     * @param width 每一行的计数器个数, 会向上取到2的幂
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = Math.min(depth, SEEDS.length);
+        int size = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.counters = new AtomicIntegerArray(this.depth * size);
+    }
+
+    /**
+     * 计数加一
+     *
+     * @param key key
+     * @return 加完之后的估算次数
+     */
+    public int increment(String key) {
+        int hash = key.hashCode();
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.incrementAndGet(index(hash, i)));
+        }
+        return min;
+    }
+
+    /**
+     * 估算次数
+     *
+     * @param key key
+     * @return 估算次数
+     */
+    public int estimate(String key) {
+        int hash = key.hashCode();
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.get(index(hash, i)));
+        }
+        return min;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return row * (mask + 1) + (h & mask);
+    }
+}
@@ -0,0 +1,68 @@
+package cn.someget.cache.utils;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 过期时间的随机抖动
+ * 一起加载的一批key如果过期时间完全一样, 会在同一秒一起过期, 然后一起去查db
+ * 每个key写入的时候在过期时间上随机加一点, 让它们分散开过期
+ * <p>
+ * 抖动的范围是 max(过期时间 * percent / 100, min(seconds, 过期时间)), 随机加上[0, 范围]秒
+ * 按比例的抖动对空缓存(missExpire)同样生效; 固定秒数的抖动不会超过过期时间本身, 所以空缓存的过期时间最多翻倍
+ *
+ * @author agent
+ * @date 2026-10-17 20:07
+ */
+@Getter
+@EqualsAndHashCode
+public final class ExpireJitter {
+
+    /**
+     * 不抖动
+     */
+    public static final ExpireJitter NONE = new ExpireJitter(0L, 0);
+
+    /**
+     * 固定的抖动范围, 单位秒
+     */
+    private final long seconds;
+
+    /**
+     * 按过期时间比例的抖动范围, 0-100
+     */
+    private final int percent;
+
+    private ExpireJitter(long seconds, int percent) {
+        this.seconds = seconds;
+        this.percent = percent;
+    }
+
+    /**
+     * @param seconds 固定的抖动范围, 单位秒
+     * @param percent 按过期时间比例的抖动范围, 0-100
+     * @return 抖动配置, 都是0的话返回NONE
+     */
+    public static ExpireJitter of(long seconds, int percent) {
+        if (seconds < 0 || percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("cache-anno illegal jitter, seconds:" + seconds + ", percent:" + percent);
+        }
+        return seconds == 0 && percent == 0 ? NONE : new ExpireJitter(seconds, percent);
+    }
+
+    /**
+     * 给过期时间加上随机抖动
+     *
+     * @param expire 过期时间, 单位秒
+     * @return 抖动之后的过期时间
+     */
+    public long apply(long expire) {
+        if (this == NONE || expire <= 0) {
+            return expire;
+        }
+        long range = Math.max(expire * percent / 100, Math.min(seconds, expire));
+        return range <= 0 ? expire : expire + ThreadLocalRandom.current().nextLong(range + 1);
+    }
+}
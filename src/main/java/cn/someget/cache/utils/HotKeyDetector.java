@@ -0,0 +1,227 @@
+package cn.someget.cache.utils;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * 热点key探测
+ * 每次查redis都用count-min sketch按prefix计数, 一秒内查询次数超过阈值的key会被提升到本地缓存(很短的过期时间),
+ * 之后的查询直接走本地, 不再打到同一个redis分片上; 查询量降到阈值一半以下的时候自动降级
+ * 没有开启本地缓存的方法也会生效, 默认关闭, 通过cache-anno.hot-key.enabled开启
+ * 计数是单个节点上的查询次数
+ *
+ * @author agent
+ * @date 2026-10-17 19:59
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    /**
+     * 热点key在本地缓存的分区
+     */
+    private static final String HOT_REGION = "cache-anno:hot-key";
+
+    /**
+     * 计数的时间窗口, 单位毫秒
+     */
+    private static final long WINDOW = 1000L;
+
+    @Resource
+    private LocalCache localCache;
+
+    @Value("${cache-anno.hot-key.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 一秒内查询多少次算热点
+     */
+    @Value("${cache-anno.hot-key.threshold:" + HOT_KEY_THRESHOLD + "}")
+    private int threshold;
+
+    /**
+     * 热点key在本地缓存的过期时间, 单位秒
+     */
+    @Value("${cache-anno.hot-key.local-expire:" + HOT_KEY_LOCAL_EXPIRE + "}")
+    private long localExpire;
+
+    /**
+     * 最多同时有多少个热点key
+     */
+    @Value("${cache-anno.hot-key.max-size:" + HOT_KEY_MAX_SIZE + "}")
+    private int maxSize;
+
+    /**
+     * 当前的时间窗口
+     */
+    private volatile Window window = new Window(System.currentTimeMillis());
+
+    /**
+     * 当前的热点key
+     */
+    private final Map<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 一个时间窗口内每个prefix的计数
+     */
+    private static class Window {
+
+        private final long start;
+
+        private final Map<String, CountMinSketch> sketches = new ConcurrentHashMap<>();
+
+        private Window(long start) {
+            this.start = start;
+        }
+
+        private CountMinSketch sketch(String region) {
+            return sketches.computeIfAbsent(region, r -> new CountMinSketch(HOT_KEY_SKETCH_DEPTH, HOT_KEY_SKETCH_WIDTH));
+        }
+
+        private int estimate(String region, String key) {
+            CountMinSketch sketch = sketches.get(region);
+            return sketch == null ? 0 : sketch.estimate(key);
+        }
+    }
+
+    /**
+     * 热点key的信息
+     */
+    @Getter
+    public static class HotKey {
+
+        /**
+         * 注解的prefix
+         */
+        private final String region;
+
+        private final String key;
+
+        /**
+         * 上一个时间窗口的查询次数
+         */
+        private volatile int qps;
+
+        private HotKey(String region, String key, int qps) {
+            this.region = region;
+            this.key = key;
+            this.qps = qps;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            localCache.register(HOT_REGION, new LocalCacheSpec(localExpire, 0L, maxSize, 0L, CollectionWeigher.class));
+        }
+    }
+
+    /**
+     * 记录一次查询, 是热点key并且本地有值的话直接返回
+     *
+     * @param region 注解的prefix
+     * @param key    key
+     * @return 本地缓存的值, 没有返回null
+     */
+    public Object get(String region, String key) {
+        if (!enabled) {
+            return null;
+        }
+        String name = region == null ? "" : region;
+        int count = currentWindow().sketch(name).increment(key);
+        if (count >= threshold && !hotKeys.containsKey(key) && hotKeys.size() < maxSize
+                && hotKeys.putIfAbsent(key, new HotKey(name, key, count)) == null) {
+            log.info("cache-anno hot key promoted, region:{}, key:{}", name, key);
+        }
+        return hotKeys.isEmpty() ? null : localCache.getIfPresent(HOT_REGION, key);
+    }
+
+    /**
+     * 从redis查到值, 或者切面往redis写值之后调用, 热点key的值会放到本地缓存
+     *
+     * @param key   key
+     * @param value 值
+     */
+    public void put(String key, Object value) {
+        if (enabled && value != null && hotKeys.containsKey(key)) {
+            localCache.put(HOT_REGION, key, value);
+        }
+    }
+
+    /**
+     * 缓存被删除的时候调用, 把热点key在本地的值也删掉
+     *
+     * @param keys keys
+     */
+    public void evict(Collection<String> keys) {
+        if (enabled && !hotKeys.isEmpty()) {
+            localCache.deleteAll(HOT_REGION, keys);
+        }
+    }
+
+    /**
+     * 当前的热点key
+     */
+    public List<HotKey> getHotKeys() {
+        return new ArrayList<>(hotKeys.values());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 拿到当前的时间窗口, 过期了就换一个新的, 顺便把不热的key降级
+     * 在查询的时候顺带切换, 不依赖定时任务
+     */
+    private Window currentWindow() {
+        Window current = window;
+        long now = System.currentTimeMillis();
+        if (now - current.start < WINDOW) {
+            return current;
+        }
+        synchronized (this) {
+            if (window == current) {
+                window = new Window(now);
+                demote(current);
+            }
+            return window;
+        }
+    }
+
+    /**
+     * 上一个窗口的查询次数低于阈值一半的热点key降级
+     */
+    private void demote(Window previous) {
+        hotKeys.values().removeIf(hotKey -> {
+            int count = previous.estimate(hotKey.region, hotKey.key);
+            hotKey.qps = count;
+            if (count >= threshold / 2) {
+                return false;
+            }
+            localCache.delete(HOT_REGION, hotKey.key);
+            log.info("cache-anno hot key demoted, region:{}, key:{}, qps:{}", hotKey.region, hotKey.key, count);
+            return true;
+        });
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void stats() {
+        if (!hotKeys.isEmpty()) {
+            log.info("cache-anno hot keys, size:{}, keys:{}", hotKeys.size(), hotKeys.keySet());
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.map.MapUtil;
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译好的key模板, 用来代替String.format拼key
+ * 模板只解析一次, 之后拼key只是把片段依次append到StringBuilder里面
+ * <p>
+ * 支持的占位符:
+ * <ul>
+ *     <li>%s 和 %d: 按顺序取参数, 和String.format一样</li>
+ *     <li>%%: 百分号本身</li>
+ *     <li>#{name} 或者 #{0}: 按参数名或者下标取参数, 可以用#{user.id}取参数的属性(参数名需要编译时带上-parameters或者调试信息)</li>
+ * </ul>
+ * 其他String.format的写法(比如%05d)会退回到String.format, 这种情况下不能再用#{}
+ * 批量查询时第一个参数(id集合)会换成每一个id
+ * <p>
+ * 只传prefix(按id批量查询, 按id删除缓存)时没有参数名, 用的是注解上同一个prefix编译好的模板(见{@link KeyTemplateRegistry}), 没有的话#{name}会报错
+ *
+ * @author agent
+ * @date 2026-10-17 19:49
+ */
+public final class KeyTemplate {
+
+    /**
+     * 每个参数值预估的长度
+     */
+    private static final int ARG_LENGTH = 16;
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * 原始模板
+     */
+    private final String template;
+
+    /**
+     * 编译之后的片段
+     */
+    private final Segment[] segments;
+
+    /**
+     * 参数名都换成下标之后的模板, 比如user:#{id}在方法(type, id)上是user:#{1}, 用来判断同一个prefix在不同方法上是不是同一种拼法
+     */
+    private final String normalized;
+
+    /**
+     * 是否退回到String.format
+     */
+    private final boolean formatted;
+
+    /**
+     * 拼在最后面的固定字符串
+     */
+    private final String suffix;
+
+    /**
+     * 拼完之后的预估长度
+     */
+    private final int estimatedLength;
+
+    /**
+     * 模板里面第一个引用第一个参数的地方, 没有引用的话是null
+     */
+    private final Argument id;
+
+    /**
+     * 模板的一个片段, 字面量或者取某个参数
+     */
+    @FunctionalInterface
+    private interface Segment {
+        void appendTo(StringBuilder builder, Object[] args, Object first);
+    }
+
+    /**
+     * 取某个参数的片段, 有path的话再取属性
+     */
+    private static final class Argument implements Segment {
+
+        private final int index;
+
+        private final String path;
+
+        private Argument(int index, String path) {
+            this.index = index;
+            this.path = path;
+        }
+
+        @Override
+        public String toString() {
+            return "#{" + index + (path == null ? "" : "." + path) + "}";
+        }
+
+        /**
+         * 取第index个参数(第一个参数用first), 有path的话再取属性
+         */
+        private Object value(Object[] args, Object first) {
+            if (index > 0 && index >= args.length) {
+                throw new IllegalArgumentException("cache-anno key template needs argument " + index);
+            }
+            Object value = index == 0 ? first : args[index];
+            if (path != null && value != null) {
+                value = BeanUtil.getProperty(value, path);
+            }
+            return value;
+        }
+
+        @Override
+        public void appendTo(StringBuilder builder, Object[] args, Object first) {
+            builder.append(value(args, first));
+        }
+    }
+
+    private KeyTemplate(String template, Segment[] segments, String normalized, boolean formatted, String suffix,
+                        int estimatedLength, Argument id) {
+        this.template = template;
+        this.segments = segments;
+        this.normalized = normalized;
+        this.formatted = formatted;
+        this.suffix = suffix;
+        this.estimatedLength = estimatedLength;
+        this.id = id;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param template       模板
+     * @param parameterNames 方法的参数名, 用来解析#{name}, 没有的话只能用下标
+     * @return 编译好的模板
+     */
+    public static KeyTemplate compile(String template, String[] parameterNames) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        StringBuilder normalized = new StringBuilder();
+        int positional = 0;
+        int placeholders = 0;
+        int estimatedLength = 0;
+        boolean formatted = false;
+        boolean named = false;
+        Argument id = null;
+        int length = template.length();
+        int i = 0;
+        while (i < length) {
+            char c = template.charAt(i);
+            char next = i + 1 < length ? template.charAt(i + 1) : 0;
+            if (c == '%' && next == '%') {
+                literal.append('%');
+                normalized.append("%%");
+                i += 2;
+            } else if (c == '%' && (next == 's' || next == 'd')) {
+                estimatedLength += flush(literal, segments);
+                Argument argument = new Argument(positional++, null);
+                id = id == null && argument.index == 0 ? argument : id;
+                segments.add(argument);
+                normalized.append(argument);
+                placeholders++;
+                i += 2;
+            } else if (c == '%') {
+                // 其他的写法都交给String.format
+                formatted = true;
+                literal.append(c);
+                normalized.append(c);
+                i++;
+            } else if (c == '#' && next == '{') {
+                int end = template.indexOf('}', i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("cache-anno unclosed #{ in key template: " + template);
+                }
+                estimatedLength += flush(literal, segments);
+                Argument argument = reference(template, template.substring(i + 2, end).trim(), parameterNames);
+                id = id == null && argument.index == 0 ? argument : id;
+                segments.add(argument);
+                normalized.append(argument);
+                named = true;
+                placeholders++;
+                i = end + 1;
+            } else {
+                literal.append(c);
+                normalized.append(c);
+                i++;
+            }
+        }
+        if (formatted && named) {
+            throw new IllegalArgumentException("cache-anno key template can not mix #{} with format specifiers: " + template);
+        }
+        estimatedLength += flush(literal, segments);
+        estimatedLength += placeholders * ARG_LENGTH;
+        if (formatted) {
+            // String.format的第一个占位符就是第一个参数
+            id = new Argument(0, null);
+        }
+        // 退回String.format的模板本身就只能按位置取参数
+        return new KeyTemplate(template, segments.toArray(new Segment[0]), formatted ? template : normalized.toString(),
+                formatted, "", estimatedLength, id);
+    }
+
+    /**
+     * 在模板后面拼上一段固定的字符串, 返回新的模板
+     *
+     * @param suffix 后缀(不会当成模板解析)
+     * @return 新的模板
+     */
+    public KeyTemplate append(String suffix) {
+        if (StrUtil.isEmpty(suffix)) {
+            return this;
+        }
+        return new KeyTemplate(template, segments, normalized + suffix.replace("%", "%%"), formatted, this.suffix + suffix,
+                estimatedLength + suffix.length(), id);
+    }
+
+    /**
+     * 拼key
+     *
+     * @param args 方法参数
+     * @return key
+     */
+    public String build(Object[] args) {
+        return build(args, args.length > 0 ? args[0] : null);
+    }
+
+    /**
+     * 拼key, 第一个参数换成first
+     *
+     * @param args  方法参数
+     * @param first 第一个参数的值
+     * @return key
+     */
+    public String build(Object[] args, Object first) {
+        return appendTo(new StringBuilder(estimatedLength), args, first).toString();
+    }
+
+    /**
+     * 批量拼key, 模板里面只能引用第一个参数(也就是id)
+     *
+     * @param ids id集合
+     * @param <K> id类型
+     * @return 有序的map, id -> key
+     */
+    public <K> Map<K, String> buildEach(List<K> ids) {
+        return buildEach(ids, NO_ARGS);
+    }
+
+    /**
+     * 批量拼key, 第一个参数依次换成ids里面的每一个元素, 复用同一个StringBuilder
+     * null的id会被跳过, 重复的id只会有一个
+     *
+     * @param ids  id集合
+     * @param args 方法参数
+     * @param <K>  id类型
+     * @return 有序的map, id -> key
+     */
+    public <K> Map<K, String> buildEach(List<K> ids, Object[] args) {
+        Map<K, String> keys = MapUtil.newHashMap(ids.size(), true);
+        StringBuilder builder = new StringBuilder(estimatedLength);
+        for (K id : ids) {
+            if (id == null || keys.containsKey(id)) {
+                continue;
+            }
+            builder.setLength(0);
+            keys.put(id, appendTo(builder, args, id).toString());
+        }
+        return keys;
+    }
+
+    /**
+     * 拼key时第一个参数实际用到的值, 比如模板是user:#{user.id}的话是user的id, 开启了布隆过滤器的prefix按这个值放入
+     *
+     * @param args 方法参数
+     * @return 模板没有引用第一个参数的话是null
+     */
+    public Object resolveId(Object[] args) {
+        if (id == null || args.length == 0) {
+            return null;
+        }
+        return id.value(args, args[0]);
+    }
+
+    private StringBuilder appendTo(StringBuilder builder, Object[] args, Object first) {
+        if (formatted) {
+            Object[] formatArgs = args;
+            if (args.length == 0 || args[0] != first) {
+                formatArgs = args.length == 0 ? new Object[]{first} : args.clone();
+                formatArgs[0] = first;
+            }
+            return builder.append(String.format(template, formatArgs)).append(suffix);
+        }
+        for (Segment segment : segments) {
+            segment.appendTo(builder, args, first);
+        }
+        return builder.append(suffix);
+    }
+
+    /**
+     * 原始模板, 不带后缀
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * 参数名都换成下标之后的模板(带着后缀)
+     */
+    public String getNormalized() {
+        return normalized;
+    }
+
+    @Override
+    public String toString() {
+        return template + suffix;
+    }
+
+    /**
+     * 把攒着的字面量变成一个片段
+     *
+     * @return 字面量的长度
+     */
+    private static int flush(StringBuilder literal, List<Segment> segments) {
+        int length = literal.length();
+        if (length > 0) {
+            String value = literal.toString();
+            segments.add((builder, args, first) -> builder.append(value));
+            literal.setLength(0);
+        }
+        return length;
+    }
+
+    /**
+     * 解析#{}里面的表达式
+     */
+    private static Argument reference(String template, String expression, String[] parameterNames) {
+        int dot = expression.indexOf('.');
+        String name = dot < 0 ? expression : expression.substring(0, dot);
+        String path = dot < 0 ? null : expression.substring(dot + 1);
+        int index;
+        if (NumberUtil.isInteger(name)) {
+            index = Integer.parseInt(name);
+        } else {
+            index = parameterNames == null ? -1 : ArrayUtil.indexOf(parameterNames, name);
+        }
+        if (index < 0 && parameterNames == null) {
+            throw new IllegalArgumentException("cache-anno #{" + expression + "} needs parameter names, use #{0} or declare the prefix on @Cache"
+                    + " before building keys from ids, key template: " + template);
+        }
+        if (index < 0) {
+            throw new IllegalArgumentException("cache-anno unknown parameter #{" + expression + "} in key template: " + template);
+        }
+        return new Argument(index, path);
+    }
+}
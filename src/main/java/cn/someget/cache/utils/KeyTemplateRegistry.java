@@ -0,0 +1,96 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.text.CharSequenceUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cn.someget.cache.utils.RedisKey.KEY_TEMPLATE_CACHE_SIZE;
+
+/**
+ * 编译好的key模板
+ * 注解(@Cache, @CachePut, @CacheEvict)上的prefix按方法带着参数名编译, 启动时由CachePlanRegistry登记,
+ * 只传prefix(按id批量查询, 按id删除缓存)的时候用的就是登记的模板, 这样#{name}也能解析
+ * <p>
+ * 同一个prefix在不同的方法上必须是同一种拼法(参数名换成下标之后一样), 比如user:#{id}不能一个方法里面id是第一个参数,
+ * 另一个方法里面是第二个参数, 不然只传prefix的时候不知道该用哪个, 这种情况启动时报错
+ *
+ * @author agent
+ * @date 2026-10-18 01:40
+ */
+@Component
+public class KeyTemplateRegistry {
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 方法 -> 带着参数名编译好的模板, 一个方法上有多个注解而且prefix不一样的话只缓存第一个
+     */
+    private final Map<Method, KeyTemplate> methods = new ConcurrentHashMap<>();
+
+    /**
+     * 注解的prefix -> 带着参数名编译好的模板, 只传prefix的时候优先用这个
+     */
+    private final Map<String, KeyTemplate> declared = new ConcurrentHashMap<>();
+
+    /**
+     * 只有prefix没有方法信息时编译过的模板(批量查询的接口直接传prefix的情况)
+     */
+    private final Cache<String, KeyTemplate> templates = Caffeine.newBuilder()
+            .maximumSize(KEY_TEMPLATE_CACHE_SIZE)
+            .build();
+
+    /**
+     * 按方法的参数名编译注解上的prefix并登记, 每个方法只编译一次
+     *
+     * @param method 注解所在的方法
+     * @param prefix 注解的prefix
+     * @return 编译好的模板
+     * @throws IllegalArgumentException prefix是空的, 模板不合法, 或者同一个prefix在别的方法上是另一种拼法
+     */
+    public KeyTemplate declare(Method method, String prefix) {
+        KeyTemplate template = methods.get(method);
+        if (template != null && template.getTemplate().equals(prefix)) {
+            return template;
+        }
+        if (template != null) {
+            return compile(method, prefix);
+        }
+        return methods.computeIfAbsent(method, m -> compile(m, prefix));
+    }
+
+    /**
+     * 编译并登记, 同一个prefix已经登记过另一种拼法的话报错
+     */
+    private KeyTemplate compile(Method method, String prefix) {
+        Assert.isTrue(CharSequenceUtil.isNotBlank(prefix), "cache-anno prefix is blank, method:{}", method);
+        KeyTemplate compiled = KeyTemplate.compile(prefix, parameterNameDiscoverer.getParameterNames(method));
+        KeyTemplate existing = declared.putIfAbsent(prefix, compiled);
+        Assert.isTrue(existing == null || existing.getNormalized().equals(compiled.getNormalized()),
+                "cache-anno prefix {} resolves to {} on {}, but {} elsewhere, use the same parameter position everywhere",
+                prefix, compiled.getNormalized(), method, existing == null ? null : existing.getNormalized());
+        return compiled;
+    }
+
+    /**
+     * 只有prefix的时候拿编译好的模板, 相同的模板只会编译一次
+     * 注解上用过这个prefix的话直接用注解上编译好的模板, 这样#{name}也能解析
+     *
+     * @param prefix 模板
+     * @return 编译好的模板
+     */
+    public KeyTemplate of(String prefix) {
+        KeyTemplate template = declared.get(prefix);
+        if (template != null) {
+            return template;
+        }
+        return templates.get(prefix, t -> KeyTemplate.compile(t, null));
+    }
+}
@@ -0,0 +1,202 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * 批量查询拆片执行方法({@code @Cache(loadChunkSize)})用的线程池
+ * jdk支持虚拟线程(21及以上)的时候每片一个虚拟线程, 否则用固定大小的线程池, 两种情况同时执行的片数都不超过cache-anno.loader.threads
+ * 线程池的队列满了或者已经关闭的时候直接在调用线程里面执行, 不会丢任务
+ * 已经在加载线程里面(方法里面又调用了拆片的批量查询)的时候也直接在当前线程执行, 不然线程都在等嵌套的片, 嵌套的片又排队等线程, 会互相等死
+ * 调用方等各片的结果最多等cache-anno.loader.timeout毫秒, 超时之后不再等, 还没完成的片由调用方放弃
+ *
+ * @author agent
+ * @date 2026-10-17 21:02
+ */
+@Slf4j
+@Component
+public class LoaderExecutor implements Executor {
+
+    /**
+     * 当前线程是否正在执行加载的任务
+     */
+    private static final ThreadLocal<Boolean> LOADING = new ThreadLocal<>();
+
+    /**
+     * 最多同时执行多少片
+     */
+    @Value("${cache-anno.loader.threads:" + LOADER_THREADS + "}")
+    private int threads;
+
+    /**
+     * jdk支持的时候是否用虚拟线程
+     */
+    @Value("${cache-anno.loader.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    /**
+     * 调用方最多等多少毫秒, 0表示一直等
+     */
+    @Value("${cache-anno.loader.timeout:" + LOADER_TIMEOUT + "}")
+    private long timeout;
+
+    private ExecutorService executor;
+
+    /**
+     * 异步方法拆片时让等待超时用的(jdk8的CompletableFuture没有orTimeout), 用到的时候才创建
+     */
+    private volatile ScheduledExecutorService timer;
+
+    /**
+     * 虚拟线程不限数量, 用它限制同时执行的片数; 不是虚拟线程的时候是null
+     */
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            executor = virtual;
+            permits = new Semaphore(threads);
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(LOADER_QUEUE_SIZE),
+                    ThreadFactoryBuilder.create().setNamePrefix("cache-anno-loader-").setDaemon(true).build(),
+                    (task, rejected) -> task.run());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        log.debug("cache-anno loader executor, threads:{}, virtual:{}, timeout:{}ms", threads, virtual != null, timeout);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (isLoading()) {
+            task.run();
+            return;
+        }
+        Runnable marked = () -> {
+            LOADING.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                LOADING.remove();
+            }
+        };
+        Semaphore current = permits;
+        Runnable limited = current == null ? marked : () -> {
+            current.acquireUninterruptibly();
+            try {
+                marked.run();
+            } finally {
+                current.release();
+            }
+        };
+        try {
+            executor.execute(limited);
+        } catch (RejectedExecutionException e) {
+            // 已经关闭了, 直接在调用线程里面执行
+            task.run();
+        }
+    }
+
+    /**
+     * 当前线程是否正在执行加载的任务
+     */
+    public static boolean isLoading() {
+        return Boolean.TRUE.equals(LOADING.get());
+    }
+
+    /**
+     * 调用方最多等多少毫秒, 0表示一直等
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 给异步的等待加上超时, 超过timeout毫秒还没完成的话返回的future以TimeoutException失败
+     * 原来的future不受影响, 完成之后照常执行它后面的操作(比如写缓存)
+     *
+     * @param future 要等的future
+     * @return 带超时的future, 没有配置超时的时候就是原来的future
+     */
+    public <T> CompletableFuture<T> within(CompletableFuture<T> future) {
+        if (timeout <= 0 || future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> bounded = new CompletableFuture<>();
+        ScheduledFuture<?> expiry;
+        try {
+            expiry = timer().schedule(() -> bounded.completeExceptionally(
+                    new TimeoutException("cache-anno load chunks timeout after " + timeout + "ms")), timeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已经关闭了, 不再限制
+            return future;
+        }
+        future.whenComplete((value, e) -> {
+            expiry.cancel(false);
+            if (e != null) {
+                bounded.completeExceptionally(e);
+            } else {
+                bounded.complete(value);
+            }
+        });
+        return bounded;
+    }
+
+    private ScheduledExecutorService timer() {
+        if (timer != null) {
+            return timer;
+        }
+        synchronized (this) {
+            if (timer == null) {
+                ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                        ThreadFactoryBuilder.create().setNamePrefix("cache-anno-loader-timer-").setDaemon(true).build());
+                // 大部分future都会在超时之前完成, 取消的任务马上移出队列
+                scheduler.setRemoveOnCancelPolicy(true);
+                timer = scheduler;
+            }
+            return timer;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * 编译目标是jdk8, 只能反射创建, jdk21以下返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
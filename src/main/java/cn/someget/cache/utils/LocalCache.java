@@ -1,9 +1,13 @@
 package cn.someget.cache.utils;
 
 
+import cn.hutool.core.lang.Assert;
 import cn.hutool.core.map.MapUtil;
+import cn.hutool.core.util.ReflectUtil;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Weigher;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -11,13 +15,17 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 本地缓存的封装
+ * 每个注解的prefix都有自己的分区(一个单独的caffeine实例), 没有指定分区的走默认分区
  *
  * @author zyf
  * @date 2022-05-03 12:12
@@ -27,17 +35,116 @@ import java.util.concurrent.TimeUnit;
 public class
 LocalCache {
 
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 默认分区的名字
+     */
+    private static final String DEFAULT_REGION = "default";
+
     /**
-     * 本地缓存容器
+     * 默认的本地缓存容器
      */
     private Cache<String, Object> cache;
 
+    /**
+     * 按分区名字(注解的prefix)划分的本地缓存容器
+     */
+    private final Map<String, Cache<String, Object>> regions = new ConcurrentHashMap<>();
+
+    /**
+     * 分区名字 -> 创建分区时的配置
+     */
+    private final Map<String, LocalCacheSpec> specs = new ConcurrentHashMap<>();
+
+    /**
+     * 不放空缓存的分区: 没有开启空缓存, 或者本地缓存比redis里面的空缓存活得久
+     */
+    private final Set<String> skipEmptyRegions = ConcurrentHashMap.newKeySet();
 
     @PostConstruct
     public void buildCache() {
-        cache = Caffeine.newBuilder().recordStats()
-                .removalListener(((key, value, cause) -> log.info("key:{}, was removed, cause:{}", key, cause)))
-                .expireAfterWrite(3, TimeUnit.SECONDS).build();
+        cache = buildCache(DEFAULT_REGION, LocalCacheSpec.DEFAULT);
+    }
+
+    /**
+     * 注册分区, 已经存在的分区不会重复创建
+     * 同一个分区配置不一样的话直接报错, 不然哪个配置生效取决于bean的初始化顺序
+     *
+     * @param region 分区名字
+     * @param spec   分区配置
+     */
+    public void register(String region, LocalCacheSpec spec) {
+        LocalCacheSpec existing = specs.putIfAbsent(region, spec);
+        if (existing != null) {
+            Assert.isTrue(existing.equals(spec), "cache-anno local cache region:{} has conflicting specs, {} and {}",
+                    region, existing, spec);
+            return;
+        }
+        regions.put(region, buildCache(region, spec));
+    }
+
+    /**
+     * 分区不放空缓存, 同一个分区有一个注解不满足条件就不放
+     * 不然redis里面的空缓存过期(或者根本没写)之后, 本地还会一直返回空
+     *
+     * @param region 分区名字
+     */
+    public void skipEmpty(String region) {
+        skipEmptyRegions.add(region);
+    }
+
+    /**
+     * 分区是否不放空缓存, 默认分区和没有注册过的分区照常放
+     *
+     * @param region 分区名字
+     * @return 是否不放空缓存
+     */
+    public boolean isSkipEmpty(String region) {
+        return region != null && skipEmptyRegions.contains(region);
+    }
+
+    /**
+     * 按照配置创建一个caffeine实例
+     */
+    @SuppressWarnings("unchecked")
+    private Cache<String, Object> buildCache(String region, LocalCacheSpec spec) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats()
+                .expireAfterWrite(spec.getExpireAfterWrite(), TimeUnit.SECONDS);
+        if (spec.getExpireAfterAccess() > 0) {
+            builder.expireAfterAccess(spec.getExpireAfterAccess(), TimeUnit.SECONDS);
+        }
+        // 每次删除都打印的话量太大, 淘汰的数量在stats和监控里面都有, 只有开启debug才打印被容量淘汰的key
+        Caffeine<String, Object> typed;
+        if (log.isDebugEnabled()) {
+            typed = builder.removalListener((key, value, cause) -> {
+                if (cause == RemovalCause.SIZE) {
+                    log.debug("region:{}, key:{}, was removed, cause:{}", region, key, cause);
+                }
+            });
+        } else {
+            typed = (Caffeine<String, Object>) (Caffeine<?, ?>) builder;
+        }
+        if (spec.getMaximumWeight() > 0) {
+            Weigher<String, Object> weigher = ReflectUtil.newInstance(spec.getWeigher());
+            typed.maximumWeight(spec.getMaximumWeight()).weigher(weigher);
+        } else {
+            typed.maximumSize(spec.getMaximumSize());
+        }
+        Cache<String, Object> built = typed.build();
+        cacheMetrics.bindLocalCache(region, built);
+        return built;
+    }
+
+    /**
+     * 找到对应的分区, 没有注册过的用默认分区
+     */
+    private Cache<String, Object> region(String region) {
+        if (region == null) {
+            return cache;
+        }
+        return regions.getOrDefault(region, cache);
     }
 
     /**
@@ -46,7 +153,17 @@ LocalCache {
      * @param key key
      */
     public Object getIfPresent(String key) {
-        return cache.getIfPresent(key);
+        return getIfPresent(null, key);
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param region 分区
+     * @param key    key
+     */
+    public Object getIfPresent(String region, String key) {
+        return region(region).getIfPresent(key);
     }
 
     /**
@@ -54,11 +171,21 @@ LocalCache {
      *
      * @param keys keys
      */
-    public Map<String, Object> getAllPresent(List<String> keys) {
+    public Map<String, Object> getAllPresent(Collection<String> keys) {
+        return getAllPresent(null, keys);
+    }
+
+    /**
+     * 查询多个缓存
+     *
+     * @param region 分区
+     * @param keys   keys
+     */
+    public Map<String, Object> getAllPresent(String region, Collection<String> keys) {
         if (CollectionUtils.isEmpty(keys)) {
             return Collections.emptyMap();
         }
-        return this.cache.getAllPresent(keys);
+        return region(region).getAllPresent(keys);
     }
 
     /**
@@ -67,7 +194,42 @@ LocalCache {
      * @param key key
      */
     public void delete(String key) {
-        this.cache.invalidate(key);
+        delete(null, key);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param region 分区
+     * @param key    key
+     */
+    public void delete(String region, String key) {
+        region(region).invalidate(key);
+    }
+
+    /**
+     * 批量删除缓存
+     *
+     * @param region 分区
+     * @param keys   keys
+     */
+    public void deleteAll(String region, Collection<String> keys) {
+        if (CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        region(region).invalidateAll(keys);
+    }
+
+    /**
+     * 清空一个分区, 分区不存在的话什么都不做(不会清空默认分区)
+     *
+     * @param region 分区
+     */
+    public void clear(String region) {
+        Cache<String, Object> regionCache = regions.get(region);
+        if (regionCache != null) {
+            regionCache.invalidateAll();
+        }
     }
 
     /**
@@ -77,7 +239,18 @@ LocalCache {
      * @param object 值
      */
     public void put(String key, Object object) {
-        this.cache.put(key, object);
+        put(null, key, object);
+    }
+
+    /**
+     * 写缓存
+     *
+     * @param region 分区
+     * @param key    key
+     * @param object 值
+     */
+    public void put(String region, String key, Object object) {
+        region(region).put(key, object);
     }
 
     /**
@@ -86,17 +259,33 @@ LocalCache {
      * @param caches 缓存map
      */
     public void putAll(Map<String, Object> caches) {
+        putAll(null, caches);
+    }
+
+    /**
+     * 写缓存
+     *
+     * @param region 分区
+     * @param caches 缓存map
+     */
+    public void putAll(String region, Map<String, Object> caches) {
         if (MapUtil.isEmpty(caches)) {
             return;
         }
-        this.cache.putAll(caches);
+        region(region).putAll(caches);
     }
 
 
     @Scheduled(fixedDelay = 60000)
     public void stats() {
-        CacheStats stats = cache.stats();
-        log.info("local cache stats, missCount:{}, missRate:{}, hitCount:{}, hitRate:{}",
-                stats.missCount(), stats.missRate(), stats.hitCount(), stats.hitRate());
+        logStats(DEFAULT_REGION, cache);
+        regions.forEach(this::logStats);
+    }
+
+    private void logStats(String region, Cache<String, Object> regionCache) {
+        CacheStats stats = regionCache.stats();
+        log.info("local cache stats, region:{}, size:{}, missCount:{}, missRate:{}, hitCount:{}, hitRate:{}, evictionCount:{}",
+                region, regionCache.estimatedSize(), stats.missCount(), stats.missRate(),
+                stats.hitCount(), stats.hitRate(), stats.evictionCount());
     }
 }
@@ -0,0 +1,66 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.anno.Cache;
+import com.github.benmanes.caffeine.cache.Weigher;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import static cn.someget.cache.utils.RedisKey.LOCAL_EXPIRE;
+import static cn.someget.cache.utils.RedisKey.LOCAL_MAXIMUM_SIZE;
+
+/**
+ * 本地缓存分区的配置
+ *
+ * @author agent
+ * @date 2026-10-17 19:35
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class LocalCacheSpec {
+
+    /**
+     * 没有单独配置时使用的默认配置, 3秒过期
+     */
+    public static final LocalCacheSpec DEFAULT = new LocalCacheSpec(LOCAL_EXPIRE, 0L,
+            LOCAL_MAXIMUM_SIZE, 0L, CollectionWeigher.class);
+
+    /**
+     * 写入后过期时间, 单位秒
+     */
+    private final long expireAfterWrite;
+
+    /**
+     * 访问后过期时间, 单位秒, 0表示不开启
+     */
+    private final long expireAfterAccess;
+
+    /**
+     * 最多缓存多少个key, 配置了maximumWeight之后不生效
+     */
+    private final long maximumSize;
+
+    /**
+     * 最大权重, 0表示按maximumSize限制
+     */
+    private final long maximumWeight;
+
+    /**
+     * 权重计算
+     */
+    private final Class<? extends Weigher<String, Object>> weigher;
+
+    /**
+     * 从注解里面读取本地缓存配置
+     *
+     * @param cache 注解
+     * @return 配置
+     */
+    public static LocalCacheSpec of(Cache cache) {
+        return new LocalCacheSpec(cache.localExpire(), cache.localExpireAfterAccess(),
+                cache.localMaximumSize(), cache.localMaximumWeight(), cache.localWeigher());
+    }
+}
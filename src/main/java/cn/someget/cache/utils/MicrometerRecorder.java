@@ -0,0 +1,132 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.codec.CompressingCacheCodec;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.BeanFactory;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用micrometer上报的实现, 只有引入了micrometer才会被加载
+ * 每个prefix, 方法的meter第一次用到的时候创建, 之后直接从数组里面取, 不会每次都拼tag
+ *
+ * @author agent
+ * @date 2026-10-17 20:13
+ */
+final class MicrometerRecorder {
+
+    private static final String DEFAULT_PREFIX = "default";
+
+    private final MeterRegistry registry;
+
+    private final boolean histogram;
+
+    /**
+     * prefix -> 按Get的顺序排好的counter
+     */
+    private final Map<String, Counter[]> gets = new ConcurrentHashMap<>();
+
+    /**
+     * 按RedisOp的顺序排好的timer, [成功, 失败]
+     */
+    private final Timer[][] redis;
+
+    /**
+     * 方法 -> [成功, 失败]
+     */
+    private final Map<Method, Timer[]> loaders = new ConcurrentHashMap<>();
+
+    private MicrometerRecorder(MeterRegistry registry, boolean histogram) {
+        this.registry = registry;
+        this.histogram = histogram;
+        CacheMetrics.RedisOp[] ops = CacheMetrics.RedisOp.values();
+        this.redis = new Timer[ops.length][];
+        for (CacheMetrics.RedisOp op : ops) {
+            redis[op.ordinal()] = new Timer[]{redisTimer(op, "success"), redisTimer(op, "error")};
+        }
+    }
+
+    /**
+     * 从容器里面拿MeterRegistry, 没有的话返回null
+     */
+    static MicrometerRecorder create(BeanFactory beanFactory, boolean histogram) {
+        MeterRegistry registry = beanFactory.getBeanProvider(MeterRegistry.class).getIfAvailable();
+        return registry == null ? null : new MicrometerRecorder(registry, histogram);
+    }
+
+    void get(CacheMetrics.Get get, String prefix, int count) {
+        String name = prefix == null ? DEFAULT_PREFIX : prefix;
+        gets.computeIfAbsent(name, this::getCounters)[get.ordinal()].increment(count);
+    }
+
+    void redis(CacheMetrics.RedisOp op, long nanos, boolean error) {
+        redis[op.ordinal()][error ? 1 : 0].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void loader(Method method, String prefix, long nanos, boolean error) {
+        loaders.computeIfAbsent(method, m -> loaderTimers(m, prefix))[error ? 1 : 0].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void bindLocalCache(String region, Cache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(registry, cache, region);
+    }
+
+    void bindCompression(String prefix, CompressingCacheCodec codec) {
+        FunctionCounter.builder("cache.anno.compress.bytes", codec, CompressingCacheCodec::rawBytes)
+                .tag("prefix", prefix)
+                .tag("direction", "in")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("cache.anno.compress.bytes", codec, CompressingCacheCodec::compressedBytes)
+                .tag("prefix", prefix)
+                .tag("direction", "out")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("cache.anno.compress.count", codec, CompressingCacheCodec::compressedCount)
+                .tag("prefix", prefix)
+                .register(registry);
+    }
+
+    private Counter[] getCounters(String prefix) {
+        CacheMetrics.Get[] values = CacheMetrics.Get.values();
+        Counter[] counters = new Counter[values.length];
+        for (CacheMetrics.Get get : values) {
+            counters[get.ordinal()] = Counter.builder("cache.anno.gets")
+                    .tag("tier", get.tier)
+                    .tag("result", get.result)
+                    .tag("prefix", prefix)
+                    .register(registry);
+        }
+        return counters;
+    }
+
+    private Timer redisTimer(CacheMetrics.RedisOp op, String outcome) {
+        return Timer.builder("cache.anno.redis")
+                .tag("operation", op.tag)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram(histogram)
+                .register(registry);
+    }
+
+    private Timer[] loaderTimers(Method method, String prefix) {
+        String name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        return new Timer[]{loaderTimer(name, prefix, "success"), loaderTimer(name, prefix, "error")};
+    }
+
+    private Timer loaderTimer(String method, String prefix, String outcome) {
+        return Timer.builder("cache.anno.loader")
+                .tag("prefix", prefix == null ? DEFAULT_PREFIX : prefix)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram(histogram)
+                .register(registry);
+    }
+}
@@ -0,0 +1,88 @@
+package cn.someget.cache.utils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 空缓存在内存中的标记
+ * redis里面的空对象缓存读出来之后不再反序列化成空对象, 而是统一变成这个单例
+ * 这样判断是否命中空缓存只需要比较引用, 不用再序列化一遍
+ *
+ * @author agent
+ * @date 2026-10-17 19:36
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class NullValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 唯一实例
+     */
+    public static final NullValue INSTANCE = new NullValue();
+
+    /**
+     * 是否是空缓存标记
+     *
+     * @param value 缓存里面取出来的值
+     * @return 是否是空缓存
+     */
+    public static boolean isNull(Object value) {
+        return value == INSTANCE;
+    }
+
+    /**
+     * 空缓存标记还原成null, 去掉逻辑过期时间, 对外返回之前用, 调用方拿到的类型不会不对
+     *
+     * @param value 缓存里面取出来的值
+     * @return 空缓存的话是null
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V unwrap(Object value) {
+        return isNull(value) ? null : (V) RefreshValue.unwrap(value);
+    }
+
+    /**
+     * 去掉批量结果里面的空缓存和逻辑过期时间, 对外返回之前用
+     *
+     * @param values 特征值 -> 缓存里面取出来的值, 会被修改
+     * @return 去掉空缓存之后的values
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> unwrapAll(Map<K, Object> values) {
+        values.values().removeIf(NullValue::isNull);
+        values.replaceAll((id, value) -> RefreshValue.unwrap(value));
+        return (Map<K, V>) values;
+    }
+
+    /**
+     * 集合的空缓存在各级缓存里面都是按空集合存的, 内部查询的时候换成空缓存标记, 这样才能和没有缓存区分开
+     *
+     * @param value 缓存里面取出来的集合
+     * @return 空集合的话是空缓存标记
+     */
+    public static Object wrapEmpty(Object value) {
+        return value instanceof Collection && ((Collection<?>) value).isEmpty() ? INSTANCE : value;
+    }
+
+    /**
+     * 内部查询的集合结果还原成集合, 对外返回之前用, 空缓存和没有缓存都是空集合
+     *
+     * @param value 内部查询的结果
+     * @return 集合
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> List<V> unwrapList(Object value) {
+        return value == null || isNull(value) ? new ArrayList<>() : (List<V>) RefreshValue.unwrap(value);
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+}
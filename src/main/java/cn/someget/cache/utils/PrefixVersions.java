@@ -0,0 +1,154 @@
+package cn.someget.cache.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static cn.someget.cache.utils.RedisKey.VERSION_KEY_PREFIX;
+import static cn.someget.cache.utils.RedisKey.VERSION_REFRESH_INTERVAL;
+
+/**
+ * prefix的版本号
+ * 开启了版本号的prefix拼出来的key后面会带上:v版本号, 版本号存在redis里面(cache-anno:version:prefix),
+ * 每个节点在本地缓存一份, 过了refresh-interval才会再去redis读一次(只有一个线程去读, 其他线程继续用旧的)
+ * 版本号加一之后所有旧的key都不会再被读到, 等着自己过期就行, 不需要SCAN+DEL
+ *
+ * @author agent
+ * @date 2026-10-17 20:05
+ */
+@Slf4j
+@Component
+public class PrefixVersions {
+
+    @Resource
+    private RedisRepository redisRepository;
+
+    /**
+     * 本地的版本号多久从redis刷新一次, 单位毫秒
+     */
+    @Value("${cache-anno.version.refresh-interval:" + VERSION_REFRESH_INTERVAL + "}")
+    private long refreshInterval;
+
+    /**
+     * prefix -> 版本号, 只有开启了版本号的prefix才会在里面
+     */
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+
+    /**
+     * 一个prefix在本地的版本号
+     */
+    private static class Version {
+
+        /**
+         * 拼在key后面的字符串
+         */
+        private volatile String stamp = ":v0";
+
+        /**
+         * 上一次从redis读的时间, 0表示还没读过
+         */
+        private volatile long fetchedAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+    }
+
+    /**
+     * 开启prefix的版本号
+     *
+     * @param prefix 注解的prefix
+     */
+    public void register(String prefix) {
+        versions.computeIfAbsent(prefix, p -> new Version());
+    }
+
+    /**
+     * prefix是否开启了版本号
+     *
+     * @param prefix 注解的prefix
+     */
+    public boolean isVersioned(String prefix) {
+        return versions.containsKey(prefix);
+    }
+
+    /**
+     * 要拼在key后面的版本号
+     *
+     * @param prefix 注解的prefix
+     * @return :v版本号, 没有开启版本号的返回空字符串
+     */
+    public String stamp(String prefix) {
+        Version version = versions.get(prefix);
+        if (version == null) {
+            return "";
+        }
+        long now = System.currentTimeMillis();
+        if (now - version.fetchedAt >= refreshInterval) {
+            refresh(prefix, version, now);
+        }
+        return version.stamp;
+    }
+
+    /**
+     * 版本号加一, prefix下面所有旧的key都会失效
+     *
+     * @param prefix 注解的prefix
+     * @return 新的版本号, redis异常的话返回null
+     */
+    public Long bump(String prefix) {
+        Long value = redisRepository.increment(VERSION_KEY_PREFIX + prefix);
+        Version version = versions.get(prefix);
+        if (value != null && version != null) {
+            version.stamp = ":v" + value;
+            version.fetchedAt = System.currentTimeMillis();
+        }
+        log.info("cache-anno prefix version bumped, prefix:{}, version:{}", prefix, value);
+        return value;
+    }
+
+    /**
+     * 让本地的版本号过期, 下次用到的时候重新从redis读
+     *
+     * @param prefix 注解的prefix
+     */
+    public void expire(String prefix) {
+        Version version = versions.get(prefix);
+        if (version != null) {
+            version.fetchedAt = 0L;
+        }
+    }
+
+    /**
+     * 从redis读版本号, 第一次读的时候其他线程要等着, 之后只有一个线程去读
+     * redis里面没有的话是0, 读失败的话继续用旧的
+     */
+    private void refresh(String prefix, Version version, long now) {
+        if (version.fetchedAt == 0L) {
+            synchronized (version) {
+                if (version.fetchedAt == 0L) {
+                    load(prefix, version, now);
+                }
+            }
+            return;
+        }
+        if (version.refreshing.compareAndSet(false, true)) {
+            try {
+                load(prefix, version, now);
+            } finally {
+                version.refreshing.set(false);
+            }
+        }
+    }
+
+    private void load(String prefix, Version version, long now) {
+        Long value = redisRepository.getLong(VERSION_KEY_PREFIX + prefix, 0L);
+        if (value != null) {
+            version.stamp = ":v" + value;
+        }
+        version.fetchedAt = now;
+    }
+}
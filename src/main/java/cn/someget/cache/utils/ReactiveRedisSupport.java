@@ -0,0 +1,92 @@
+package cn.someget.cache.utils;
+
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveStringCommands;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.types.Expiration;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 用响应式连接(lettuce)做异步读写的实现, 只有引入了reactor并且连接工厂支持响应式连接时才会被加载
+ * 结果都转成CompletableFuture, 调用方不需要依赖reactor; 命令发出去之后线程直接返回, 结果在lettuce的线程里面回调
+ *
+ * @author agent
+ * @date 2026-10-17 20:55
+ */
+final class ReactiveRedisSupport {
+
+    private final ReactiveRedisConnectionFactory connectionFactory;
+
+    private ReactiveRedisSupport(ReactiveRedisConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * 连接工厂不支持响应式连接(比如jedis)的话返回null
+     */
+    static ReactiveRedisSupport create(RedisConnectionFactory connectionFactory) {
+        return connectionFactory instanceof ReactiveRedisConnectionFactory
+                ? new ReactiveRedisSupport((ReactiveRedisConnectionFactory) connectionFactory) : null;
+    }
+
+    /**
+     * GET, 不存在的话结果是null
+     */
+    CompletableFuture<byte[]> get(byte[] key) {
+        return execute(connection -> connection.stringCommands().get(ByteBuffer.wrap(key)))
+                .thenApply(ReactiveRedisSupport::toBytes);
+    }
+
+    /**
+     * MGET, 结果和key一一对应, 不存在的是null
+     */
+    CompletableFuture<List<byte[]>> mGet(List<byte[]> keys) {
+        List<ByteBuffer> rawKeys = keys.stream().map(ByteBuffer::wrap).collect(Collectors.toList());
+        return execute(connection -> connection.stringCommands().mGet(rawKeys))
+                .thenApply(values -> values == null ? null
+                        : values.stream().map(ReactiveRedisSupport::toBytes).collect(Collectors.toList()));
+    }
+
+    /**
+     * 批量SETEX, 同一个连接上的命令lettuce会自动合并发送
+     *
+     * @param keys   key
+     * @param values 和key一一对应的value
+     * @param ttls   和key一一对应的过期时间, 单位秒
+     */
+    CompletableFuture<Void> setEx(List<byte[]> keys, List<byte[]> values, long[] ttls) {
+        Flux<ReactiveStringCommands.SetCommand> commands = Flux.range(0, keys.size())
+                .map(i -> ReactiveStringCommands.SetCommand.set(ByteBuffer.wrap(keys.get(i)))
+                        .value(ByteBuffer.wrap(values.get(i)))
+                        .expiring(Expiration.seconds(ttls[i])));
+        return execute(connection -> connection.stringCommands().setEX(commands).then());
+    }
+
+    /**
+     * 拿一个连接执行命令, 结束(包括异常)之后释放连接
+     */
+    private <T> CompletableFuture<T> execute(Function<ReactiveRedisConnection, Mono<T>> callback) {
+        return Mono.usingWhen(Mono.fromSupplier(connectionFactory::getReactiveConnection), callback,
+                ReactiveRedisConnection::closeLater).toFuture();
+    }
+
+    /**
+     * lettuce用空的ByteBuffer表示不存在
+     */
+    private static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasRemaining()) {
+            return null;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -27,13 +27,26 @@ public class RedisKey {
      */
     public static final Long DISABLE_MISS_VALUE = 0L;
 
+    /**
+     * 本地缓存默认的写入后过期时间 3秒
+     */
+    public static final long LOCAL_EXPIRE = 3L;
+
+    /**
+     * 本地缓存每个分区默认最多缓存的key数量
+     */
+    public static final long LOCAL_MAXIMUM_SIZE = 10_000L;
+
     /**
      * 通用空对象缓存
+     * 写入redis的时候换成保留的一个字节EMPTY_OBJECT_HEADER, 读出来之后会直接变成NullValue, 不会再反序列化
+     * 老版本直接写的是这个字符串, 开启cache-anno.empty-marker.legacy(默认开启)的时候也会当作空缓存读
      */
     public static final String EMPTY_OBJECT = "{}";
 
     /**
      * 空缓存 value
+     * 写入redis的时候换成保留的一个字节EMPTY_COLLECTION_HEADER, 老版本写的这个字符串和EMPTY_OBJECT一样兼容
      */
     public static final String EMPTY_COLLECTION = "[]";
 
@@ -42,4 +55,240 @@ public class RedisKey {
      */
     public static final int DEFAULT_RELEASE_TIME = 2;
 
+    /**
+     * 分布式锁默认的有效期，单位毫秒, 方法执行得比这个久的话要调大cache-anno.lock.lease
+     */
+    public static final long LOCK_LEASE_TIME = DEFAULT_RELEASE_TIME * 1000L;
+
+    /**
+     * 没拿到分布式锁时默认最多等多久，单位毫秒
+     */
+    public static final long LOCK_WAIT_TIME = DEFAULT_RELEASE_TIME * 1000L;
+
+    /**
+     * 分布式锁key的后缀
+     */
+    public static final String LOCK_SUFFIX = ":lock";
+
+    /**
+     * 没拿到锁时轮询缓存的间隔，单位毫秒
+     */
+    public static final long LOCK_RETRY_INTERVAL = 50L;
+
+    /**
+     * redis里面value的头都是小于这个值的控制字符, json之类的文本不会以它们开头
+     */
+    public static final byte HEADER_BOUND = 0x08;
+
+    /**
+     * 没有其他头, 但是原来的value以控制字符开头时加的头
+     */
+    public static final byte RAW_HEADER = 0x01;
+
+    /**
+     * 带逻辑过期时间的value的头, 格式是 头 + 逻辑过期时间戳(毫秒) + 头 + 原来的value
+     */
+    public static final byte REFRESH_HEADER = 0x02;
+
+    /**
+     * 压缩过的value的头, 格式是 头 + 原始长度(4字节) + deflate数据
+     */
+    public static final byte COMPRESS_HEADER = 0x03;
+
+    /**
+     * 空对象缓存在redis里面的值, 只有这一个字节
+     * 序列化出来的值以控制字符开头时会被CompressingCacheCodec加上RAW_HEADER, 所以不会和它冲突
+     */
+    public static final byte EMPTY_OBJECT_HEADER = 0x04;
+
+    /**
+     * 空集合缓存在redis里面的值, 只有这一个字节
+     */
+    public static final byte EMPTY_COLLECTION_HEADER = 0x05;
+
+    /**
+     * 批量查询时每一片MGET默认最多多少个key
+     */
+    public static final int MULTI_GET_CHUNK_SIZE = 500;
+
+    /**
+     * 批量查询并行查询时默认的线程数
+     */
+    public static final int MULTI_GET_THREADS = 4;
+
+    /**
+     * 拿不到客户端的命令超时时间(比如jedis)时, 并行查询等待每一批结果默认最多多少毫秒
+     */
+    public static final long REDIS_COMMAND_TIMEOUT = 2000L;
+
+    /**
+     * 不是响应式的redis客户端(比如jedis)时, 异步读写默认的线程数
+     */
+    public static final int ASYNC_THREADS = 8;
+
+    /**
+     * 批量查询拆片执行方法时, 每个节点默认最多同时执行多少片
+     */
+    public static final int LOADER_THREADS = 16;
+
+    /**
+     * 批量查询拆片执行方法的线程池队列长度(不是虚拟线程的时候), 满了就在调用线程里面执行
+     */
+    public static final int LOADER_QUEUE_SIZE = 1024;
+
+    /**
+     * 批量查询拆片执行方法时, 调用方默认最多等多少毫秒
+     */
+    public static final long LOADER_TIMEOUT = 30000L;
+
+    /**
+     * 后台刷新的线程数
+     */
+    public static final int REFRESH_THREADS = 2;
+
+    /**
+     * 后台刷新的队列长度
+     */
+    public static final int REFRESH_QUEUE_SIZE = 1024;
+
+    /**
+     * 异步写入的队列长度
+     */
+    public static final int WRITE_BEHIND_QUEUE_SIZE = 10_000;
+
+    /**
+     * 异步写入时一个管道最多写多少个key
+     */
+    public static final int WRITE_BEHIND_BATCH_SIZE = 200;
+
+    /**
+     * 异步写入队列满了最多等多久，单位毫秒
+     */
+    public static final long WRITE_BEHIND_OFFER_TIMEOUT = 10L;
+
+    /**
+     * 异步写入线程等待数据的间隔，单位毫秒
+     */
+    public static final long WRITE_BEHIND_POLL_INTERVAL = 100L;
+
+    /**
+     * 关闭时等待异步写入完成的最长时间，单位秒
+     */
+    public static final long WRITE_BEHIND_SHUTDOWN_TIMEOUT = 5L;
+
+    /**
+     * 直接传prefix批量查询时, 最多缓存多少个编译好的key模板
+     */
+    public static final long KEY_TEMPLATE_CACHE_SIZE = 1024L;
+
+    /**
+     * 一个请求里面的请求级缓存默认最多放多少个key
+     */
+    public static final int REQUEST_CACHE_MAX_SIZE = 10_000;
+
+    /**
+     * 一秒内查询多少次算热点key
+     */
+    public static final int HOT_KEY_THRESHOLD = 1000;
+
+    /**
+     * 热点key在本地缓存的过期时间，单位秒
+     */
+    public static final long HOT_KEY_LOCAL_EXPIRE = 1L;
+
+    /**
+     * 最多同时有多少个热点key
+     */
+    public static final int HOT_KEY_MAX_SIZE = 1000;
+
+    /**
+     * 热点key计数用的count-min sketch的行数
+     */
+    public static final int HOT_KEY_SKETCH_DEPTH = 4;
+
+    /**
+     * 热点key计数用的count-min sketch每行的计数器个数
+     */
+    public static final int HOT_KEY_SKETCH_WIDTH = 4096;
+
+    /**
+     * 本地缓存失效广播的频道
+     */
+    public static final String INVALIDATION_CHANNEL = "cache-anno:invalidation";
+
+    /**
+     * 失效广播攒批的间隔，单位毫秒
+     */
+    public static final long INVALIDATION_BATCH_INTERVAL = 20L;
+
+    /**
+     * 一条失效广播最多带多少个key
+     */
+    public static final int INVALIDATION_BATCH_SIZE = 500;
+
+    /**
+     * prefix版本号在redis里面的key的前缀
+     */
+    public static final String VERSION_KEY_PREFIX = "cache-anno:version:";
+
+    /**
+     * 本地的prefix版本号多久从redis刷新一次，单位毫秒
+     */
+    public static final long VERSION_REFRESH_INTERVAL = 1000L;
+
+    /**
+     * 布隆过滤器默认预计每个prefix有多少个id
+     */
+    public static final long BLOOM_EXPECTED_INSERTIONS = 1_000_000L;
+
+    /**
+     * 布隆过滤器默认的误判率
+     */
+    public static final String BLOOM_FPP = "0.01";
+
+    /**
+     * 布隆过滤器从redis合并的间隔，单位秒
+     */
+    public static final long BLOOM_RELOAD_INTERVAL = 30L;
+
+    /**
+     * 布隆过滤器在redis里面的bitmap的key的前缀
+     */
+    public static final String BLOOM_KEY_PREFIX = "cache-anno:bloom:";
+
+    /**
+     * 布隆过滤器已经放入所有id的标记的key的后缀
+     */
+    public static final String BLOOM_READY_SUFFIX = ":ready";
+
+    /**
+     * 布隆过滤器已经放入所有id的标记的值
+     */
+    public static final byte[] BLOOM_READY_VALUE = {'1'};
+
+    /**
+     * redis命令默认的采样率，0表示不打印
+     */
+    public static final String TRACE_SAMPLE_RATE = "0";
+
+    /**
+     * redis命令超过多少毫秒算慢操作
+     */
+    public static final long TRACE_SLOW_THRESHOLD = 50L;
+
+    /**
+     * 最多保留最近多少条慢操作
+     */
+    public static final int TRACE_SLOW_BUFFER_SIZE = 128;
+
+    /**
+     * 打印批量命令的key时最多打印多少个
+     */
+    public static final int TRACE_MAX_KEYS = 10;
+
+    /**
+     * 打印单个key时最多打印多少个字符
+     */
+    public static final int TRACE_MAX_KEY_LENGTH = 128;
+
 }
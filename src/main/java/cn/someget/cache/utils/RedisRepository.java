@@ -1,26 +1,54 @@
 package cn.someget.cache.utils;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.convert.Convert;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.text.CharSequenceUtil;
-import com.alibaba.fastjson.JSON;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.someget.cache.codec.CacheCodec;
+import cn.someget.cache.codec.CacheCodecRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
+import static cn.someget.cache.utils.RedisKey.*;
+
 /**
  * 对redis的一层封装
+ * 值都是以byte[]的形式读写, 序列化和压缩交给{@link CacheCodec}
+ * 带Async后缀的方法不会占用调用线程等待redis: lettuce这种支持响应式连接的客户端直接用响应式命令, 其他客户端(比如jedis)放到单独的线程池里面执行
  *
  * @author zyf
  * @date 2022-05-03 16:05
@@ -29,6 +57,96 @@ import java.util.stream.Collectors;
 @Repository
 public class RedisRepository {
 
+    private static final String REACTOR_MONO = "reactor.core.publisher.Mono";
+
+    private static final String LETTUCE_CLIENT = "io.lettuce.core.RedisClient";
+
+    /**
+     * 释放锁的脚本, 只有value是自己的token才删除, 防止删掉别人的锁
+     */
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * 空对象缓存在redis里面保留的字节
+     */
+    private static final byte[] EMPTY_OBJECT_BYTES = {EMPTY_OBJECT_HEADER};
+
+    /**
+     * 空集合缓存在redis里面保留的字节
+     */
+    private static final byte[] EMPTY_COLLECTION_BYTES = {EMPTY_COLLECTION_HEADER};
+
+    /**
+     * 老版本写入的空对象缓存
+     */
+    private static final byte[] LEGACY_EMPTY_OBJECT_BYTES = EMPTY_OBJECT.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 老版本写入的空集合缓存
+     */
+    private static final byte[] LEGACY_EMPTY_COLLECTION_BYTES = EMPTY_COLLECTION.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 是否把老版本写入的{}和[]也当作空缓存, 反序列化的地方都是静态方法, 所以是静态的
+     * 所有节点都升级并且老的空缓存都过期之后可以关掉, 这样序列化出来刚好是{}的对象也能正常缓存
+     */
+    private static volatile boolean legacyEmptyMarker = true;
+
+    @Resource
+    private CacheCodecRegistry codecRegistry;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    @Resource
+    private CacheTracer cacheTracer;
+
+    /**
+     * 批量查询时每一片MGET最多多少个key
+     */
+    @Value("${cache-anno.redis.chunk-size:" + MULTI_GET_CHUNK_SIZE + "}")
+    private int chunkSize;
+
+    /**
+     * 批量查询拆成多片时是否并行查询(每片单独拿连接), 默认放在一个管道里面
+     */
+    @Value("${cache-anno.redis.parallel-chunks:false}")
+    private boolean parallelChunks;
+
+    /**
+     * 并行查询的线程数
+     */
+    @Value("${cache-anno.redis.parallel-threads:" + MULTI_GET_THREADS + "}")
+    private int parallelThreads;
+
+    /**
+     * 并行查询时最多等多少毫秒, 0表示和客户端的命令超时时间一样
+     */
+    @Value("${cache-anno.redis.timeout:0}")
+    private long timeout;
+
+    private volatile ExecutorService chunkExecutor;
+
+    /**
+     * 客户端不支持响应式连接时, 异步读写的线程数
+     */
+    @Value("${cache-anno.redis.async-threads:" + ASYNC_THREADS + "}")
+    private int asyncThreads;
+
+    private volatile ExecutorService asyncExecutor;
+
+    /**
+     * 响应式的异步读写, null表示客户端不支持, 异步读写放到asyncExecutor里面执行
+     */
+    private ReactiveRedisSupport reactive;
+
+    /**
+     * 是否是集群模式, 第一次用到的时候判断
+     */
+    private volatile Boolean cluster;
+
     protected RedisTemplate<String, String> redisTemplate;
 
     @Resource(name = "redisTemplate")
@@ -45,6 +163,32 @@ public class RedisRepository {
         this.redisTemplate = redisTemplate;
     }
 
+    @Value("${cache-anno.empty-marker.legacy:true}")
+    public void setLegacyEmptyMarker(boolean legacyEmptyMarker) {
+        RedisRepository.legacyEmptyMarker = legacyEmptyMarker;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (ClassUtils.isPresent(REACTOR_MONO, getClass().getClassLoader())) {
+            reactive = ReactiveRedisSupport.create(redisTemplate.getRequiredConnectionFactory());
+        }
+        if (timeout <= 0) {
+            timeout = commandTimeout(redisTemplate.getRequiredConnectionFactory());
+        }
+    }
+
+    /**
+     * 客户端的命令超时时间, 只有lettuce拿得到, 其他客户端用默认值
+     */
+    private static long commandTimeout(RedisConnectionFactory connectionFactory) {
+        if (ClassUtils.isPresent(LETTUCE_CLIENT, RedisRepository.class.getClassLoader())
+                && connectionFactory instanceof LettuceConnectionFactory) {
+            return ((LettuceConnectionFactory) connectionFactory).getClientConfiguration().getCommandTimeout().toMillis();
+        }
+        return REDIS_COMMAND_TIMEOUT;
+    }
+
 
     /**
      * 单个key写入redis
@@ -53,17 +197,59 @@ public class RedisRepository {
      * @param value value
      */
     public void set(String key, Long expire, Object value) {
+        set(key, expire, value, 0L);
+    }
+
+    /**
+     * 单个key写入redis, 并带上逻辑过期时间
+     * @param key key
+     * @param expire 过期时间
+     * @param value value
+     * @param refreshAhead 逻辑过期时间, 单位秒, 0表示不带
+     */
+    public void set(String key, Long expire, Object value, long refreshAhead) {
+        set(key, expire, value, refreshAhead, codecRegistry.getDefault());
+    }
+
+    /**
+     * 单个key写入redis, 并带上逻辑过期时间
+     * @param key key
+     * @param expire 过期时间
+     * @param value value
+     * @param refreshAhead 逻辑过期时间, 单位秒, 0表示不带
+     * @param codec 序列化方式, 需要从CacheCodecRegistry获取
+     */
+    public void set(String key, Long expire, Object value, long refreshAhead, CacheCodec codec) {
+        set(key, expire, value, refreshAhead, codec, ExpireJitter.NONE);
+    }
+
+    /**
+     * 单个key写入redis, 并带上逻辑过期时间, 过期时间加上随机抖动
+     * @param key key
+     * @param expire 过期时间
+     * @param value value
+     * @param refreshAhead 逻辑过期时间, 单位秒, 0表示不带
+     * @param codec 序列化方式, 需要从CacheCodecRegistry获取
+     * @param jitter 过期时间的随机抖动
+     */
+    public void set(String key, Long expire, Object value, long refreshAhead, CacheCodec codec, ExpireJitter jitter) {
         if (value == null) {
             return;
         }
-        // 把要写入的值变成str, 如果是string就不动, 如果是list则序列化成json
-        String valueStr = value instanceof String ? value.toString() : JSON.toJSONString(value);
+        long start = System.nanoTime();
+        boolean error = false;
+        long bytes = -1L;
         try {
-            redisTemplate.opsForValue().set(key, valueStr, expire, TimeUnit.SECONDS);
-            log.info("redis set, keys:[{}] value:[{}]",key, valueStr);
+            byte[] rawKey = rawKey(key);
+            byte[] rawValue = wrap(encode(value, codec), refreshAhead);
+            bytes = rawValue.length;
+            long ttl = jitter.apply(expire);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.setEx(rawKey, ttl, rawValue));
         } catch (Exception e) {
-            log.warn("cache-anno redis set error, keys:[{}], values:[{}], expire:{}, msg:{}",
-                    key, JSON.toJSONString(valueStr), expire, e.getMessage());
+            error = true;
+            log.warn("cache-anno redis set error, key:[{}], expire:{}, msg:{}", cacheTracer.describe(key), expire, e.getMessage());
+        } finally {
+            record(CacheMetrics.RedisOp.SET, key, bytes, start, error);
         }
     }
 
@@ -76,29 +262,353 @@ public class RedisRepository {
      * @param expire    要设置的过期时间
      */
     public void batchSet(Map<String, Object> keyValues, Long expire) {
+        batchSet(keyValues, expire, 0L);
+    }
+
+    /**
+     * 批量写入, 并带上逻辑过期时间
+     *
+     * @param keyValues    写入的kv
+     * @param expire       要设置的过期时间
+     * @param refreshAhead 逻辑过期时间, 单位秒, 0表示不带
+     */
+    public void batchSet(Map<String, Object> keyValues, Long expire, long refreshAhead) {
+        batchSet(keyValues, expire, refreshAhead, codecRegistry.getDefault());
+    }
+
+    /**
+     * 批量写入, 并带上逻辑过期时间
+     *
+     * @param keyValues    写入的kv
+     * @param expire       要设置的过期时间
+     * @param refreshAhead 逻辑过期时间, 单位秒, 0表示不带
+     * @param codec        序列化方式, 需要从CacheCodecRegistry获取
+     */
+    public void batchSet(Map<String, Object> keyValues, Long expire, long refreshAhead, CacheCodec codec) {
+        batchSet(keyValues, expire, refreshAhead, codec, ExpireJitter.NONE);
+    }
+
+    /**
+     * 批量写入, 并带上逻辑过期时间, 每个key的过期时间单独加上随机抖动
+     *
+     * @param keyValues    写入的kv
+     * @param expire       要设置的过期时间
+     * @param refreshAhead 逻辑过期时间, 单位秒, 0表示不带
+     * @param codec        序列化方式, 需要从CacheCodecRegistry获取
+     * @param jitter       过期时间的随机抖动
+     */
+    public void batchSet(Map<String, Object> keyValues, Long expire, long refreshAhead, CacheCodec codec, ExpireJitter jitter) {
         if (MapUtil.isEmpty(keyValues)) {
             return;
         }
+        long start = System.nanoTime();
+        boolean error = false;
         try {
             // 管道批量设置
             redisTemplate.executePipelined((RedisCallback<?>) connection -> {
-                RedisSerializer<String> stringSerializer = redisTemplate.getStringSerializer();
                 keyValues.forEach((k, v) -> {
                     // 如果为空跳过
                     if (CharSequenceUtil.isBlank(k) || v == null) {
                         return;
                     }
-                    byte[] key = stringSerializer.serialize(k);
-                    byte[] value = stringSerializer.serialize(v instanceof String ? v.toString() :JSON.toJSONString(v));
-                    connection.setEx(key, expire, value);
+                    connection.setEx(rawKey(k), jitter.apply(expire), wrap(encode(v, codec), refreshAhead));
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            error = true;
+            log.warn("cache-anno redis batchSet error, keys:{}, expire:{}, msg:{}",
+                    cacheTracer.describe(keyValues.keySet()), expire, e.getMessage());
+        } finally {
+            record(CacheMetrics.RedisOp.PIPELINE, keyValues.keySet(), -1L, start, error);
+        }
+    }
+
+    /**
+     * 异步写入单个key, 参数和{@link #set(String, Long, Object, long, CacheCodec, ExpireJitter)}一样
+     * 异常只打日志, 返回的future不会异常完成
+     *
+     * @return 写完之后完成
+     */
+    public CompletableFuture<Void> setAsync(String key, Long expire, Object value, long refreshAhead, CacheCodec codec, ExpireJitter jitter) {
+        if (value == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactive == null) {
+            return CompletableFuture.runAsync(() -> set(key, expire, value, refreshAhead, codec, jitter), asyncExecutor());
+        }
+        return setExAsync(CacheMetrics.RedisOp.SET, key, Collections.singletonMap(key, value), expire, refreshAhead, codec, jitter);
+    }
+
+    /**
+     * 异步批量写入, 参数和{@link #batchSet(Map, Long, long, CacheCodec, ExpireJitter)}一样
+     * 异常只打日志, 返回的future不会异常完成
+     *
+     * @return 写完之后完成
+     */
+    public CompletableFuture<Void> batchSetAsync(Map<String, Object> keyValues, Long expire, long refreshAhead, CacheCodec codec, ExpireJitter jitter) {
+        if (MapUtil.isEmpty(keyValues)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (reactive == null) {
+            return CompletableFuture.runAsync(() -> batchSet(keyValues, expire, refreshAhead, codec, jitter), asyncExecutor());
+        }
+        return setExAsync(CacheMetrics.RedisOp.PIPELINE, keyValues.keySet(), keyValues, expire, refreshAhead, codec, jitter);
+    }
+
+    /**
+     * 用响应式连接批量SETEX, 序列化在调用线程里面做, 发出去之后直接返回
+     *
+     * @param traced 跟踪日志里面打印的key
+     */
+    private CompletableFuture<Void> setExAsync(CacheMetrics.RedisOp op, Object traced, Map<String, Object> keyValues,
+                                               Long expire, long refreshAhead, CacheCodec codec, ExpireJitter jitter) {
+        long start = System.nanoTime();
+        List<byte[]> rawKeys = new ArrayList<>(keyValues.size());
+        List<byte[]> rawValues = new ArrayList<>(keyValues.size());
+        long[] ttls = new long[keyValues.size()];
+        long bytes = 0L;
+        try {
+            for (Map.Entry<String, Object> entry : keyValues.entrySet()) {
+                String k = entry.getKey();
+                // 如果为空跳过
+                if (CharSequenceUtil.isBlank(k) || entry.getValue() == null) {
+                    continue;
+                }
+                byte[] rawValue = wrap(encode(entry.getValue(), codec), refreshAhead);
+                ttls[rawKeys.size()] = jitter.apply(expire);
+                rawKeys.add(rawKey(k));
+                rawValues.add(rawValue);
+                bytes += rawValue.length;
+            }
+        } catch (Exception e) {
+            log.warn("cache-anno redis set error, keys:{}, expire:{}, msg:{}", cacheTracer.describe(traced), expire, e.getMessage());
+            record(op, traced, -1L, start, true);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (rawKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long total = bytes;
+        return reactive.setEx(rawKeys, rawValues, ttls).handle((ignored, e) -> {
+            if (e != null) {
+                log.warn("cache-anno redis set error, keys:{}, expire:{}, msg:{}", cacheTracer.describe(traced), expire, e.getMessage());
+            }
+            record(op, traced, total, start, e != null);
+            return null;
+        });
+    }
+
+    /**
+     * 批量删除key(UNLINK, redis在后台释放内存)
+     * 和批量查询一样按照chunk-size拆片, 集群模式下同一片里面的key在同一个slot
+     *
+     * @param keys key集合
+     */
+    public void delete(Collection<String> keys) {
+        List<String> distinct = keys.stream().filter(CharSequenceUtil::isNotBlank).distinct().collect(Collectors.toList());
+        if (distinct.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean error = false;
+        try {
+            List<List<String>> slices = slice(distinct);
+            if (isCluster()) {
+                // 集群不支持管道, 一片一片删
+                slices.forEach(slice -> redisTemplate.execute((RedisCallback<Long>) connection ->
+                        connection.keyCommands().unlink(slice.stream().map(this::rawKey).toArray(byte[][]::new))));
+            } else {
+                redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+                    slices.forEach(slice -> connection.keyCommands().unlink(slice.stream().map(this::rawKey).toArray(byte[][]::new)));
+                    return null;
+                });
+            }
+        } catch (Exception e) {
+            error = true;
+            log.warn("cache-anno redis delete error, keys:{}, msg:{}", cacheTracer.describe(distinct), e.getMessage());
+        } finally {
+            record(CacheMetrics.RedisOp.DELETE, distinct, -1L, start, error);
+        }
+    }
+
+    /**
+     * 写入一批key的同时删除另一批key(比如@CachePut批量更新时方法没有返回的id), 放在一个管道里面发出去
+     * 集群模式下不能保证所有key在同一个节点, 分开写入和删除
+     *
+     * @param keyValues    写入的kv
+     * @param expire       要设置的过期时间
+     * @param refreshAhead 逻辑过期时间, 单位秒, 0表示不带
+     * @param codec        序列化方式, 需要从CacheCodecRegistry获取
+     * @param jitter       过期时间的随机抖动
+     * @param deleteKeys   要删除的key
+     */
+    public void setAndDelete(Map<String, Object> keyValues, Long expire, long refreshAhead, CacheCodec codec, ExpireJitter jitter,
+                             Collection<String> deleteKeys) {
+        List<String> distinct = deleteKeys.stream().filter(CharSequenceUtil::isNotBlank).distinct().collect(Collectors.toList());
+        if (distinct.isEmpty() || MapUtil.isEmpty(keyValues) || isCluster()) {
+            batchSet(keyValues, expire, refreshAhead, codec, jitter);
+            delete(distinct);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean error = false;
+        try {
+            redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+                keyValues.forEach((k, v) -> {
+                    if (CharSequenceUtil.isNotBlank(k) && v != null) {
+                        connection.setEx(rawKey(k), jitter.apply(expire), wrap(encode(v, codec), refreshAhead));
+                    }
                 });
+                slice(distinct).forEach(slice -> connection.keyCommands().unlink(slice.stream().map(this::rawKey).toArray(byte[][]::new)));
                 return null;
             });
-            log.info("redis batchSet, valueMap:{}", JSON.toJSONString(keyValues));
         } catch (Exception e) {
-            log.warn("cache-anno redis batchSet error, keyValues:{}, expire:{}, msg:{}",
-                    JSON.toJSONString(keyValues), expire, e.getMessage());
+            error = true;
+            log.warn("cache-anno redis setAndDelete error, keys:{}, deleted:{}, expire:{}, msg:{}",
+                    cacheTracer.describe(keyValues.keySet()), cacheTracer.describe(distinct), expire, e.getMessage());
+        } finally {
+            record(CacheMetrics.RedisOp.PIPELINE, keyValues.keySet(), -1L, start, error);
+        }
+    }
+
+    /**
+     * 计数器加一(INCR)
+     *
+     * @param key key
+     * @return 加完之后的值, redis异常的话返回null
+     */
+    public Long increment(String key) {
+        try {
+            return redisTemplate.execute((RedisCallback<Long>) connection -> connection.incr(rawKey(key)));
+        } catch (Exception e) {
+            log.warn("cache-anno redis incr error, key:[{}], msg:{}", key, e.getMessage());
         }
+        return null;
+    }
+
+    /**
+     * 读一个数字(比如INCR的计数器)
+     *
+     * @param key          key
+     * @param defaultValue key不存在或者不是数字时的值
+     * @return 结果, redis异常的话返回null
+     */
+    public Long getLong(String key, long defaultValue) {
+        try {
+            byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+            return value == null ? defaultValue : Convert.toLong(new String(value, StandardCharsets.UTF_8), defaultValue);
+        } catch (Exception e) {
+            log.warn("cache-anno redis get error, key:[{}], msg:{}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 读原始的字节, 不处理逻辑过期时间之类的头(比如bitmap)
+     *
+     * @param key key
+     * @return 结果, 不存在或者异常的话返回null
+     */
+    public byte[] getRaw(String key) {
+        try {
+            return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+        } catch (Exception e) {
+            log.warn("cache-anno redis get error, key:[{}], msg:{}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 写原始的字节, 不过期
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void setRaw(String key, byte[] value) {
+        try {
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey(key), value));
+        } catch (Exception e) {
+            log.warn("cache-anno redis set error, key:[{}], msg:{}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * bitmap里面每一组位是否都是1, 一个管道
+     *
+     * @param key     bitmap的key
+     * @param offsets 每一组要检查的位
+     * @return 每一组的结果, 异常的话返回null
+     */
+    public boolean[] getBits(String key, List<long[]> offsets) {
+        byte[] rawKey = rawKey(key);
+        try {
+            List<Object> bits = redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+                offsets.forEach(group -> {
+                    for (long offset : group) {
+                        connection.getBit(rawKey, offset);
+                    }
+                });
+                return null;
+            });
+            boolean[] result = new boolean[offsets.size()];
+            int position = 0;
+            for (int i = 0; i < offsets.size(); i++) {
+                boolean all = true;
+                for (int j = 0; j < offsets.get(i).length; j++) {
+                    all &= Boolean.TRUE.equals(bits.get(position++));
+                }
+                result[i] = all;
+            }
+            return result;
+        } catch (Exception e) {
+            log.warn("cache-anno redis getBit error, key:[{}], msg:{}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 把bitmap里面的位都设置成1, 一个管道
+     *
+     * @param key     bitmap的key
+     * @param offsets 要设置的位
+     */
+    public void setBits(String key, List<long[]> offsets) {
+        byte[] rawKey = rawKey(key);
+        try {
+            redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+                offsets.forEach(group -> {
+                    for (long offset : group) {
+                        connection.setBit(rawKey, offset, true);
+                    }
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("cache-anno redis setBit error, key:[{}], msg:{}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 发布一条消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     */
+    public void publish(String channel, String message) {
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.publish(rawKey(channel), message.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            log.warn("cache-anno redis publish error, channel:{}, msg:{}", channel, e.getMessage());
+        }
+    }
+
+    /**
+     * 订阅消息用的连接工厂
+     */
+    public RedisConnectionFactory getConnectionFactory() {
+        return redisTemplate.getRequiredConnectionFactory();
     }
 
     /**
@@ -108,14 +618,72 @@ public class RedisRepository {
      * @return 结果
      */
     public String get(String key) {
+        byte[] result = getBytes(key);
+        return result == null ? null : new String(result, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取key的原始数据(已经去掉了逻辑过期时间之类的头), 会自动处理异常
+     *
+     * @param key key
+     * @return 结果
+     */
+    public byte[] getBytes(String key) {
+        return strip(getStored(key));
+    }
+
+    /**
+     * 获取key在redis里面存的值(带着逻辑过期时间的头), 会自动处理异常
+     * 用{@link #refreshAt(byte[])}取逻辑过期时间, 用{@link #strip(byte[])}去掉头
+     *
+     * @param key key
+     * @return 结果
+     */
+    public byte[] getStored(String key) {
+        long start = System.nanoTime();
+        boolean error = false;
+        byte[] result = null;
         try {
-            String result = redisTemplate.opsForValue().get(key);
-            log.info("redis get, keys:{}, result:{}", key, result);
-            return result;
+            byte[] rawKey = rawKey(key);
+            result = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
         } catch (Exception e) {
-            log.error("cache-anno redis get Error, key:{}", key, e);
+            error = true;
+            log.error("cache-anno redis get Error, key:{}", cacheTracer.describe(key), e);
+        } finally {
+            record(CacheMetrics.RedisOp.GET, key, result == null ? 0L : result.length, start, error);
         }
-        return null;
+        return result;
+    }
+
+    /**
+     * 异步获取key的原始数据(已经去掉了逻辑过期时间之类的头), 会自动处理异常
+     *
+     * @param key key
+     * @return 结果, 不会异常完成, 不存在或者异常的话是null
+     */
+    public CompletableFuture<byte[]> getBytesAsync(String key) {
+        return getStoredAsync(key).thenApply(RedisRepository::strip);
+    }
+
+    /**
+     * 异步获取key在redis里面存的值(带着逻辑过期时间的头), 会自动处理异常
+     *
+     * @param key key
+     * @return 结果, 不会异常完成, 不存在或者异常的话是null
+     */
+    public CompletableFuture<byte[]> getStoredAsync(String key) {
+        if (reactive == null) {
+            return CompletableFuture.supplyAsync(() -> getStored(key), asyncExecutor());
+        }
+        long start = System.nanoTime();
+        return reactive.get(rawKey(key)).handle((value, e) -> {
+            if (e != null) {
+                log.error("cache-anno redis get Error, key:{}", cacheTracer.describe(key), e);
+            }
+            byte[] result = e == null ? value : null;
+            record(CacheMetrics.RedisOp.GET, key, result == null ? 0L : result.length, start, e != null);
+            return result;
+        });
     }
 
 
@@ -126,28 +694,471 @@ public class RedisRepository {
      * @return key-value结果
      */
     public Map<String, String> multiGet(List<String> keys) {
-        keys = keys.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
-        Map<String, String> result = new HashMap<>(keys.size());
+        Map<String, byte[]> bytes = multiGetBytes(keys);
+        Map<String, String> result = new HashMap<>(bytes.size());
+        bytes.forEach((k, v) -> result.put(k, v == null ? null : new String(v, StandardCharsets.UTF_8)));
+        return result;
+    }
+
+    /**
+     * 批量获取key的原始数据(已经去掉了逻辑过期时间之类的头), 和{@link #multiGetStored(List)}一样拆片
+     *
+     * @param keys key集合
+     * @return key-value结果
+     */
+    public Map<String, byte[]> multiGetBytes(List<String> keys) {
+        return stripAll(multiGetStored(keys));
+    }
+
+    /**
+     * 批量获取key在redis里面存的值(带着逻辑过期时间的头)
+     * key超过chunk-size的话会拆成多片MGET, 避免一个大命令长时间阻塞redis
+     * 默认多片放在一个管道里面发出去, 可以开启并行查询; 集群模式下按slot分片, 保证一片里面的key不会跨slot
+     * 某一片出异常的话只有这一片的key当作没有命中, 并行查询超过cache-anno.redis.timeout还没返回的片也当作没有命中
+     *
+     * @param keys key集合
+     * @return key-value结果
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, byte[]> multiGetStored(List<String> keys) {
+        keys = keys.stream().filter(CharSequenceUtil::isNotBlank).distinct().collect(Collectors.toList());
+        Map<String, byte[]> result = new HashMap<>(keys.size());
+        if (keys.isEmpty()) {
+            return result;
+        }
+        long start = System.nanoTime();
+        // key太多的话拆成多片, 集群模式下同一片里面的key一定在同一个slot
+        List<List<String>> slices = slice(keys);
+        if (slices.size() == 1) {
+            fill(result, keys, mGet(keys));
+        } else if (parallelChunks) {
+            // 每一片单独拿连接并行查
+            List<CompletableFuture<List<byte[]>>> futures = slices.stream()
+                    .map(slice -> CompletableFuture.supplyAsync(() -> mGet(slice), chunkExecutor()))
+                    .collect(Collectors.toList());
+            awaitAll(result, slices, futures);
+        } else if (isCluster()) {
+            // 集群不支持管道, 一片一片查
+            slices.forEach(slice -> fill(result, slice, mGet(slice)));
+        } else {
+            // 所有片放在一个管道里面一次发出去
+            List<Object> pipelined = pipelinedMGet(slices);
+            for (int i = 0; i < slices.size(); i++) {
+                fill(result, slices.get(i), i < pipelined.size() ? (List<byte[]>) pipelined.get(i) : null);
+            }
+        }
+        // 每一片的耗时在mGet里面已经统计过了, 这里只跟踪整个批量查询
+        cacheTracer.trace(CacheMetrics.RedisOp.MGET, keys, -1L, start, false);
+        return result;
+    }
+
+    /**
+     * 异步批量获取key的原始数据(已经去掉了逻辑过期时间之类的头)
+     *
+     * @param keys key集合
+     * @return key-value结果, 不会异常完成
+     */
+    public CompletableFuture<Map<String, byte[]>> multiGetBytesAsync(List<String> keys) {
+        return multiGetStoredAsync(keys).thenApply(RedisRepository::stripAll);
+    }
+
+    /**
+     * 异步批量获取key在redis里面存的值, 和{@link #multiGetStored(List)}一样拆片, 所有片同时发出去
+     *
+     * @param keys key集合
+     * @return key-value结果, 不会异常完成
+     */
+    public CompletableFuture<Map<String, byte[]>> multiGetStoredAsync(List<String> keys) {
+        if (reactive == null) {
+            return CompletableFuture.supplyAsync(() -> multiGetStored(keys), asyncExecutor());
+        }
+        List<String> distinct = keys.stream().filter(CharSequenceUtil::isNotBlank).distinct().collect(Collectors.toList());
+        if (distinct.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>(0));
+        }
+        long start = System.nanoTime();
+        List<List<String>> slices = slice(distinct);
+        List<CompletableFuture<List<byte[]>>> futures = slices.stream()
+                .map(this::mGetAsync)
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, byte[]> result = new HashMap<>(distinct.size());
+            for (int i = 0; i < slices.size(); i++) {
+                fill(result, slices.get(i), futures.get(i).join());
+            }
+            cacheTracer.trace(CacheMetrics.RedisOp.MGET, distinct, -1L, start, false);
+            return result;
+        });
+    }
+
+    /**
+     * 把key按照chunkSize拆片, 集群模式下先按slot分组再拆
+     */
+    private List<List<String>> slice(List<String> keys) {
+        int size = Math.max(chunkSize, 1);
+        if (!isCluster()) {
+            return keys.size() <= size ? Collections.singletonList(keys) : CollUtil.split(keys, size);
+        }
+        Map<Integer, List<String>> slots = new LinkedHashMap<>();
+        keys.forEach(key -> slots.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), k -> new ArrayList<>()).add(key));
+        List<List<String>> slices = new ArrayList<>();
+        slots.values().forEach(slot -> slices.addAll(CollUtil.split(slot, size)));
+        return slices;
+    }
+
+    /**
+     * 一片key的MGET, 出异常的话这一片都当作没有命中
+     */
+    private List<byte[]> mGet(List<String> keys) {
+        long start = System.nanoTime();
+        boolean error = false;
         try {
-            // 批量获取key
-            List<String> redisData = redisTemplate.opsForValue().multiGet(keys);
-            if (CollectionUtils.isEmpty(redisData)) {
-                return result;
+            byte[][] rawKeys = keys.stream().map(this::rawKey).toArray(byte[][]::new);
+            return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(rawKeys));
+        } catch (Exception e) {
+            error = true;
+            log.error("cache-anno redis multiGet Error, keys:{}, msg:{}", cacheTracer.describe(keys), e.getMessage());
+        } finally {
+            cacheMetrics.redis(CacheMetrics.RedisOp.MGET, start, error);
+        }
+        return null;
+    }
+
+    /**
+     * 一片key的异步MGET, 出异常的话这一片都当作没有命中
+     */
+    private CompletableFuture<List<byte[]>> mGetAsync(List<String> keys) {
+        long start = System.nanoTime();
+        return reactive.mGet(keys.stream().map(this::rawKey).collect(Collectors.toList())).handle((values, e) -> {
+            if (e != null) {
+                log.error("cache-anno redis multiGet Error, keys:{}, msg:{}", cacheTracer.describe(keys), e.getMessage());
             }
-            // 按照位置进行拼装
-            for (int i = 0; i < keys.size(); i++) {
-                String value = redisData.get(i);
-                String key = keys.get(i);
-                // 如果这个key是空的, 则跳过
-                if (CharSequenceUtil.isBlank(key)) {
-                    continue;
+            cacheMetrics.redis(CacheMetrics.RedisOp.MGET, start, e != null);
+            return e == null ? values : null;
+        });
+    }
+
+    /**
+     * 等待并行查询的每一片, 所有片一共最多等timeout毫秒(和客户端的命令超时时间一样)
+     * 超时的话还没返回的片都当作没有命中, 并且取消掉, 还在排队的片就不会再去查了
+     */
+    private void awaitAll(Map<String, byte[]> result, List<List<String>> slices, List<CompletableFuture<List<byte[]>>> futures) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (int i = 0; i < slices.size(); i++) {
+            try {
+                fill(result, slices.get(i), futures.get(i).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                log.warn("cache-anno redis multiGet timeout, waited:{}ms, abandoned slices:{}", timeout, slices.size() - i);
+                futures.subList(i, futures.size()).forEach(future -> future.cancel(false));
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.subList(i, futures.size()).forEach(future -> future.cancel(false));
+                return;
+            } catch (ExecutionException e) {
+                // mGet自己会处理异常, 这里只是兜底, 这一片当作没有命中
+                log.error("cache-anno redis multiGet Error, keys:{}, msg:{}", cacheTracer.describe(slices.get(i)), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 多片key的MGET放在一个管道里面, 返回的是每一片的结果
+     */
+    private List<Object> pipelinedMGet(List<List<String>> slices) {
+        long start = System.nanoTime();
+        boolean error = false;
+        try {
+            return redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+                slices.forEach(slice -> connection.mGet(slice.stream().map(this::rawKey).toArray(byte[][]::new)));
+                return null;
+            }, null);
+        } catch (Exception e) {
+            error = true;
+            log.error("cache-anno redis pipelined multiGet Error, slices:{}, msg:{}", slices.size(), e.getMessage());
+        } finally {
+            cacheMetrics.redis(CacheMetrics.RedisOp.MGET, start, error);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 按照位置把一片的结果拼装到result里面
+     */
+    private void fill(Map<String, byte[]> result, List<String> keys, List<byte[]> redisData) {
+        if (CollectionUtils.isEmpty(redisData)) {
+            return;
+        }
+        for (int i = 0; i < keys.size() && i < redisData.size(); i++) {
+            String key = keys.get(i);
+            result.put(key, redisData.get(i));
+        }
+    }
+
+    /**
+     * 统计并跟踪一次redis命令
+     */
+    private void record(CacheMetrics.RedisOp op, Object keys, long bytes, long start, boolean error) {
+        cacheMetrics.redis(op, start, error);
+        cacheTracer.trace(op, keys, bytes, start, error);
+    }
+
+    /**
+     * 是否是集群模式
+     */
+    private boolean isCluster() {
+        Boolean clusterMode = cluster;
+        if (clusterMode == null) {
+            try {
+                clusterMode = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection);
+            } catch (Exception e) {
+                // 拿不到连接的话下次再判断
+                return false;
+            }
+            cluster = clusterMode;
+        }
+        return Boolean.TRUE.equals(clusterMode);
+    }
+
+    /**
+     * 并行查询的线程池, 开启并行之后第一次用到的时候才创建
+     */
+    private ExecutorService chunkExecutor() {
+        if (chunkExecutor == null) {
+            synchronized (this) {
+                if (chunkExecutor == null) {
+                    chunkExecutor = Executors.newFixedThreadPool(parallelThreads,
+                            ThreadFactoryBuilder.create().setNamePrefix("cache-anno-mget-").setDaemon(true).build());
+                }
+            }
+        }
+        return chunkExecutor;
+    }
+
+    /**
+     * 客户端不支持响应式连接时异步读写的线程池, 第一次用到的时候才创建
+     */
+    private ExecutorService asyncExecutor() {
+        if (asyncExecutor == null) {
+            synchronized (this) {
+                if (asyncExecutor == null) {
+                    asyncExecutor = Executors.newFixedThreadPool(asyncThreads,
+                            ThreadFactoryBuilder.create().setNamePrefix("cache-anno-async-").setDaemon(true).build());
                 }
-                result.put(key, value);
             }
-            log.info("redis multiGet, keys:{}, result:{}", JSON.toJSONString(keys), JSON.toJSONString(result));
+        }
+        return asyncExecutor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (chunkExecutor != null) {
+            chunkExecutor.shutdown();
+        }
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 加锁的结果
+     */
+    public enum LockResult {
+        /**
+         * 拿到锁
+         */
+        ACQUIRED,
+        /**
+         * 锁在别人手里
+         */
+        HELD,
+        /**
+         * redis异常, 不知道锁在不在别人手里
+         */
+        ERROR
+    }
+
+    /**
+     * 尝试加锁(SET NX PX)
+     * redis异常的时候返回{@link LockResult#ERROR}, 不能当作拿到锁, 调用方自己决定是直接执行方法还是放弃
+     *
+     * @param key    锁的key
+     * @param token  锁的持有者标识, 释放的时候要用
+     * @param expire 锁的过期时间, 单位毫秒
+     * @return 加锁的结果
+     */
+    public LockResult lock(String key, String token, long expire) {
+        try {
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(key, token, expire, TimeUnit.MILLISECONDS);
+            return Boolean.TRUE.equals(locked) ? LockResult.ACQUIRED : LockResult.HELD;
+        } catch (Exception e) {
+            log.warn("cache-anno redis tryLock error, key:[{}], msg:{}", key, e.getMessage());
+        }
+        return LockResult.ERROR;
+    }
+
+    /**
+     * 尝试加锁(SET NX PX), redis异常的时候当作没拿到锁
+     *
+     * @param key    锁的key
+     * @param token  锁的持有者标识, 释放的时候要用
+     * @param expire 锁的过期时间, 单位毫秒
+     * @return 是否拿到锁
+     */
+    public boolean tryLock(String key, String token, long expire) {
+        return lock(key, token, expire) == LockResult.ACQUIRED;
+    }
+
+    /**
+     * 锁是否还在别人手里, redis异常的时候当作不在
+     *
+     * @param key 锁的key
+     * @return 是否还有人持有
+     */
+    public boolean isLocked(String key) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+        } catch (Exception e) {
+            log.warn("cache-anno redis isLocked error, key:[{}], msg:{}", key, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 释放锁, 只会释放自己持有的锁
+     *
+     * @param key   锁的key
+     * @param token 加锁时的token
+     */
+    public void unlock(String key, String token) {
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
         } catch (Exception e) {
-            log.error("cache-anno redis multiGet Error, keys:{}, msg:{}", JSON.toJSONString(keys), e.getMessage());
+            log.warn("cache-anno redis unlock error, key:[{}], msg:{}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * key在redis里面的值是否已经过了逻辑过期时间, 会查一次redis
+     *
+     * @param key key
+     * @return 是否需要刷新
+     */
+    public boolean isStale(String key) {
+        long refreshAt = refreshAt(getStored(key));
+        return refreshAt > 0 && refreshAt <= System.currentTimeMillis();
+    }
+
+    /**
+     * 是否是空缓存标记
+     *
+     * @param value redis里面取出来的值
+     * @return 是否是空对象缓存
+     */
+    public static boolean isEmptyObject(byte[] value) {
+        return Arrays.equals(EMPTY_OBJECT_BYTES, value) || (legacyEmptyMarker && Arrays.equals(LEGACY_EMPTY_OBJECT_BYTES, value));
+    }
+
+    /**
+     * 是否是空集合缓存标记
+     *
+     * @param value redis里面取出来的值
+     * @return 是否是空集合缓存
+     */
+    public static boolean isEmptyCollection(byte[] value) {
+        return Arrays.equals(EMPTY_COLLECTION_BYTES, value) || (legacyEmptyMarker && Arrays.equals(LEGACY_EMPTY_COLLECTION_BYTES, value));
+    }
+
+    private byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 序列化, 空缓存标记不走序列化, 直接写保留的字节
+     */
+    private static byte[] encode(Object value, CacheCodec codec) {
+        if (EMPTY_OBJECT.equals(value)) {
+            return EMPTY_OBJECT_BYTES;
+        }
+        if (EMPTY_COLLECTION.equals(value)) {
+            return EMPTY_COLLECTION_BYTES;
+        }
+        return codec.encode(value);
+    }
+
+    /**
+     * 给value带上逻辑过期时间
+     * 以控制字符开头的值(压缩或者二进制序列化)已经由CompressingCacheCodec加好了头, 不会和逻辑过期的头冲突
+     */
+    private static byte[] wrap(byte[] value, long refreshAhead) {
+        if (refreshAhead <= 0) {
+            return value;
+        }
+        long refreshAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(refreshAhead);
+        byte[] time = Long.toString(refreshAt).getBytes(StandardCharsets.US_ASCII);
+        byte[] header = new byte[time.length + 2];
+        header[0] = REFRESH_HEADER;
+        System.arraycopy(time, 0, header, 1, time.length);
+        header[header.length - 1] = REFRESH_HEADER;
+        return concat(header, value);
+    }
+
+    /**
+     * redis里面存的值的逻辑过期时间
+     *
+     * @param stored redis里面存的值
+     * @return 逻辑过期时间(毫秒时间戳), 没有的话是0
+     */
+    public static long refreshAt(byte[] stored) {
+        int end = headerEnd(stored);
+        if (end < 0) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(new String(stored, 1, end - 1, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            log.warn("cache-anno illegal refresh header, length:{}", end);
+            return 0L;
+        }
+    }
+
+    /**
+     * 去掉redis里面存的值上逻辑过期时间的头, 其他的头交给CompressingCacheCodec处理
+     *
+     * @param stored redis里面存的值
+     * @return 原始数据
+     */
+    public static byte[] strip(byte[] stored) {
+        int end = headerEnd(stored);
+        return end < 0 ? stored : Arrays.copyOfRange(stored, end + 1, stored.length);
+    }
+
+    /**
+     * 批量去掉逻辑过期时间的头
+     */
+    private static Map<String, byte[]> stripAll(Map<String, byte[]> stored) {
+        stored.replaceAll((key, value) -> strip(value));
+        return stored;
+    }
+
+    /**
+     * 逻辑过期时间的头结束的位置, 没有头的话是-1
+     */
+    private static int headerEnd(byte[] stored) {
+        if (stored == null || stored.length == 0 || stored[0] != REFRESH_HEADER) {
+            return -1;
         }
+        int end = 1;
+        while (end < stored.length && stored[end] != REFRESH_HEADER) {
+            end++;
+        }
+        return end == stored.length ? -1 : end;
+    }
+
+    private static byte[] concat(byte[] header, byte[] value) {
+        byte[] result = new byte[header.length + value.length];
+        System.arraycopy(header, 0, result, 0, header.length);
+        System.arraycopy(value, 0, result, header.length, value.length);
         return result;
     }
 }
@@ -0,0 +1,60 @@
+package cn.someget.cache.utils;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 带逻辑过期时间的缓存值
+ * redis里面的值带着逻辑过期时间的头, 读出来之后和值一起放进各级缓存(本地缓存, 热点key), 命中的时候按值自己带的时间判断要不要提前刷新
+ * 这样不管是哪个节点写的, 也不管是从哪一级缓存命中的, 判断的都是这个值本身的逻辑过期时间
+ * 和{@link NullValue}一样只在缓存层之间用, 对外返回之前会去掉
+ *
+ * @author agent
+ * @date 2026-10-17 23:05
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RefreshValue {
+
+    /**
+     * 缓存的值
+     */
+    private final Object value;
+
+    /**
+     * 逻辑过期时间(毫秒时间戳)
+     */
+    private final long refreshAt;
+
+    /**
+     * 给值带上逻辑过期时间
+     *
+     * @param value     缓存的值
+     * @param refreshAt 逻辑过期时间(毫秒时间戳), 小于等于0表示没有
+     * @return 没有逻辑过期时间的话还是原来的值
+     */
+    public static Object of(Object value, long refreshAt) {
+        return value == null || refreshAt <= 0 ? value : new RefreshValue(value, refreshAt);
+    }
+
+    /**
+     * 是否已经过了逻辑过期时间, 没有带逻辑过期时间的值都当作没过期
+     *
+     * @param cached 缓存里面取出来的值
+     * @return 是否需要刷新
+     */
+    public static boolean isStale(Object cached) {
+        return cached instanceof RefreshValue && ((RefreshValue) cached).refreshAt <= System.currentTimeMillis();
+    }
+
+    /**
+     * 去掉逻辑过期时间, 还原成原来的值
+     *
+     * @param cached 缓存里面取出来的值
+     * @return 原来的值
+     */
+    public static Object unwrap(Object cached) {
+        return cached instanceof RefreshValue ? ((RefreshValue) cached).value : cached;
+    }
+}
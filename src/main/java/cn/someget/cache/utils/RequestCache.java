@@ -0,0 +1,223 @@
+package cn.someget.cache.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * 请求级别的缓存(L0), 在本地缓存和redis前面
+ * 同一个请求里面重复查询同一个key(包括批量查询里面部分重叠的id), 直接拿已经反序列化好的对象, 不再查本地缓存/redis, 也不再反序列化
+ * 两种打开方式:
+ * <ul>
+ *     <li>cache-anno.request-cache.enabled=true并且引入了spring-web时, 每个web请求自动有一个, 放在请求的attribute里面, 请求结束跟着一起销毁</li>
+ *     <li>调用{@link #open()}在当前线程手动打开, 用try-with-resources关闭, 适合mq消费、定时任务等不是web请求的场景</li>
+ * </ul>
+ * 都没有的时候什么都不做. 里面的对象和本地缓存一样是共享的, 调用方不要修改
+ *
+ * @author agent
+ * @date 2026-10-17 21:08
+ */
+@Slf4j
+@Component
+public class RequestCache {
+
+    private static final String REQUEST_CONTEXT_HOLDER = "org.springframework.web.context.request.RequestContextHolder";
+
+    private static final String REQUEST_ATTRIBUTES = "org.springframework.web.context.request.RequestAttributes";
+
+    /**
+     * RequestAttributes.SCOPE_REQUEST
+     */
+    private static final int SCOPE_REQUEST = 0;
+
+    /**
+     * 放在请求attribute里面的名字
+     */
+    private static final String ATTRIBUTE = RequestCache.class.getName() + ".MEMO";
+
+    /**
+     * 是否给每个web请求自动打开
+     */
+    @Value("${cache-anno.request-cache.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 一个请求里面最多放多少个key, 满了之后不再放, 已经放进去的照常命中
+     */
+    @Value("${cache-anno.request-cache.max-size:" + REQUEST_CACHE_MAX_SIZE + "}")
+    private int maxSize;
+
+    /**
+     * 手动打开的
+     */
+    private final ThreadLocal<Memo> scopes = new ThreadLocal<>();
+
+    /**
+     * 编译时不依赖spring-web, 反射调用; 没开启或者没有spring-web的时候是null
+     */
+    private Method getRequestAttributes;
+
+    private Method getAttribute;
+
+    private Method setAttribute;
+
+    private Method registerDestructionCallback;
+
+    @PostConstruct
+    public void init() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        if (!enabled || !ClassUtils.isPresent(REQUEST_CONTEXT_HOLDER, classLoader)) {
+            return;
+        }
+        try {
+            Class<?> attributes = ClassUtils.forName(REQUEST_ATTRIBUTES, classLoader);
+            getAttribute = attributes.getMethod("getAttribute", String.class, int.class);
+            setAttribute = attributes.getMethod("setAttribute", String.class, Object.class, int.class);
+            registerDestructionCallback = attributes.getMethod("registerDestructionCallback", String.class, Runnable.class, int.class);
+            getRequestAttributes = ClassUtils.forName(REQUEST_CONTEXT_HOLDER, classLoader).getMethod("getRequestAttributes");
+            log.info("cache-anno request cache enabled, max-size:{}", maxSize);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("cache-anno request cache disabled, spring-web not usable, msg:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在当前线程打开一个请求级缓存, 已经打开了(包括在web请求里面)的话继续用外面的
+     * <pre>
+     * try (RequestCache.Scope ignored = requestCache.open()) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * @return 关闭的时候清空, 外面已经有了的话关闭什么都不做
+     */
+    public Scope open() {
+        if (current() != null) {
+            return new Scope(null);
+        }
+        Memo memo = new Memo(maxSize);
+        scopes.set(memo);
+        return new Scope(memo);
+    }
+
+    /**
+     * 当前线程的请求级缓存, 手动打开的优先, 然后是web请求的
+     *
+     * @return 没有的话是null
+     */
+    public Memo current() {
+        Memo memo = scopes.get();
+        if (memo != null || getRequestAttributes == null) {
+            return memo;
+        }
+        return fromRequest();
+    }
+
+    /**
+     * 从当前线程的请求级缓存里面删掉这些key, @CachePut和@CacheEvict的时候用, 避免同一个请求里面读到改之前的值
+     */
+    public void evict(Collection<String> keys) {
+        Memo memo = current();
+        if (memo != null) {
+            memo.remove(keys);
+        }
+    }
+
+    /**
+     * 从请求的attribute里面拿, 第一次拿的时候创建, 请求结束的时候清空
+     */
+    private Memo fromRequest() {
+        try {
+            Object attributes = getRequestAttributes.invoke(null);
+            if (attributes == null) {
+                return null;
+            }
+            Memo memo = (Memo) getAttribute.invoke(attributes, ATTRIBUTE, SCOPE_REQUEST);
+            if (memo == null) {
+                memo = new Memo(maxSize);
+                setAttribute.invoke(attributes, ATTRIBUTE, memo, SCOPE_REQUEST);
+                registerDestructionCallback.invoke(attributes, ATTRIBUTE, (Runnable) memo::close, SCOPE_REQUEST);
+            }
+            return memo;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 请求已经结束之类的, 这次不用请求级缓存
+            log.debug("cache-anno request cache unavailable, msg:{}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 手动打开的请求级缓存, 关闭的时候清空
+     */
+    public final class Scope implements AutoCloseable {
+
+        /**
+         * 嵌套打开的时候是null
+         */
+        private final Memo memo;
+
+        private Scope(Memo memo) {
+            this.memo = memo;
+        }
+
+        @Override
+        public void close() {
+            if (memo != null) {
+                scopes.remove();
+                memo.close();
+            }
+        }
+    }
+
+    /**
+     * 一个请求里面的缓存, key -> 反序列化好的值(和本地缓存里面的一样, 空缓存是{@link NullValue})
+     * 异步方法的回调会在别的线程里面写, 所以是线程安全的; 关闭之后读不到也写不进去
+     */
+    public static final class Memo {
+
+        private final Map<String, Object> values = new ConcurrentHashMap<>();
+
+        private final int maxSize;
+
+        private volatile boolean closed;
+
+        private Memo(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return 没有的话是null
+         */
+        public Object get(String key) {
+            return values.get(key);
+        }
+
+        /**
+         * 放入一个值, null, 已经关闭或者满了的时候不放
+         */
+        public void put(String key, Object value) {
+            if (value == null || closed || values.size() >= maxSize) {
+                return;
+            }
+            values.put(key, value);
+        }
+
+        public void remove(Collection<String> keys) {
+            keys.forEach(values::remove);
+        }
+
+        private void close() {
+            closed = true;
+            values.clear();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cn.someget.cache.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * jvm内的未命中合并
+ * 同一个key并发未命中时, 只有一个线程去执行方法, 其他线程等待并共享它的结果
+ *
+ * @author agent
+ * @date 2026-10-17 19:30
+ */
+@Component
+public class SingleFlight {
+
+    /**
+     * 正在加载中的key
+     */
+    private final Map<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 加载数据的方法, 和joinPoint.proceed一样允许抛出Throwable
+     */
+    @FunctionalInterface
+    public interface Loader {
+        Object load() throws Throwable;
+    }
+
+    /**
+     * 单个key的合并加载
+     * 如果已经有线程在加载这个key则等待它的结果, 否则由当前线程执行loader
+     *
+     * @param key    key
+     * @param loader 加载方法
+     * @return 加载结果
+     */
+    public Object execute(String key, Loader loader) throws Throwable {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = flights.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            Object result = loader.load();
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, future);
+        }
+    }
+
+    /**
+     * 批量登记key
+     * 已经有其他线程在加载的key会返回对应的future, 其余的key登记到owned中, 由当前线程负责加载
+     * 当前线程加载完之后必须调用complete或者fail, 否则等待的线程会一直等下去
+     *
+     * @param keys  要加载的key
+     * @param owned 由当前线程负责加载的key
+     * @return 其他线程正在加载的key
+     */
+    public Map<String, CompletableFuture<Object>> join(Collection<String> keys,
+                                                       Map<String, CompletableFuture<Object>> owned) {
+        Map<String, CompletableFuture<Object>> inFlights = new HashMap<>();
+        for (String key : keys) {
+            if (owned.containsKey(key) || inFlights.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> inFlight = flights.putIfAbsent(key, future);
+            if (inFlight == null) {
+                owned.put(key, future);
+            } else {
+                inFlights.put(key, inFlight);
+            }
+        }
+        return inFlights;
+    }
+
+    /**
+     * 完成当前线程负责的key, 没有值的key会以null完成
+     *
+     * @param owned  当前线程负责的key
+     * @param values 加载到的值
+     */
+    public void complete(Map<String, CompletableFuture<Object>> owned, Map<String, Object> values) {
+        owned.forEach((key, future) -> {
+            future.complete(values.get(key));
+            flights.remove(key, future);
+        });
+    }
+
+    /**
+     * 当前线程加载失败, 把异常传给等待的线程
+     *
+     * @param owned 当前线程负责的key
+     * @param e     异常
+     */
+    public void fail(Map<String, CompletableFuture<Object>> owned, Throwable e) {
+        owned.forEach((key, future) -> {
+            future.completeExceptionally(e);
+            flights.remove(key, future);
+        });
+    }
+
+    /**
+     * 等待其他线程的加载结果, 异常会原样抛出
+     *
+     * @param future 其他线程的future
+     * @return 加载结果
+     */
+    public static Object await(CompletableFuture<Object> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * 最多等nanos纳秒, 已经过了的话(nanos不是正数)只看future是不是已经完成
+     *
+     * @throws TimeoutException 超时的时候future还没完成
+     */
+    public static Object await(CompletableFuture<Object> future, long nanos) throws Throwable {
+        try {
+            return future.get(nanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+}
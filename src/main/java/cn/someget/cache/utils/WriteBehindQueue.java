@@ -0,0 +1,331 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.codec.CacheCodec;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static cn.someget.cache.utils.RedisKey.*;
+
+/**
+ * 异步写缓存
+ * 方法执行完之后要写入redis的值先放到有界队列里面, 后台线程批量取出来合并成管道写入
+ * 队列满了会等待一小会儿(背压), 还是满的话就丢掉这次写入, 下次查询会重新加载
+ * spring容器关闭的时候会把队列里面剩下的都写完
+ * <p>
+ * 删除或者更新缓存时要调用{@link #cancel(Collection)}, 不然还没写的旧值会在删除之后写进去, 把删除或者新值盖掉
+ * 队列里面的直接删掉; 已经被取出来正在写的, 和调用方还在等着放进队列的, 写之前按序号判断有没有被取消
+ *
+ * @author agent
+ * @date 2026-10-17 19:45
+ */
+@Slf4j
+@Component
+public class WriteBehindQueue {
+
+    @Resource
+    private RedisRepository redisRepository;
+
+    /**
+     * 队列长度
+     */
+    @Value("${cache-anno.write-behind.queue-size:" + WRITE_BEHIND_QUEUE_SIZE + "}")
+    private int queueSize;
+
+    /**
+     * 一个管道最多写多少个key
+     */
+    @Value("${cache-anno.write-behind.batch-size:" + WRITE_BEHIND_BATCH_SIZE + "}")
+    private int batchSize;
+
+    /**
+     * 队列满了最多等多久, 单位毫秒
+     */
+    @Value("${cache-anno.write-behind.offer-timeout:" + WRITE_BEHIND_OFFER_TIMEOUT + "}")
+    private long offerTimeout;
+
+    private BlockingQueue<Entry> queue;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    /**
+     * 进入队列的值和取消都从这里拿序号, 比较先后
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 被取消的key -> 取消的时候, 序号比它小的值都不再写入
+     * 只需要覆盖正在写的和还在等着放进队列的, 所以写完一批之后把足够老的清掉
+     */
+    private final Map<String, Cancellation> cancellations = new ConcurrentHashMap<>();
+
+    /**
+     * 进入队列的数量
+     */
+    private final LongAdder enqueued = new LongAdder();
+
+    /**
+     * 因为队列满了丢掉的数量
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * 写入redis的数量(同一批里面重复的key只算一次)
+     */
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * 写了多少批
+     */
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * 因为取消没有写的数量
+     */
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * 要写入的一个值
+     */
+    @AllArgsConstructor
+    private static class Entry {
+        private final String key;
+        private final Object value;
+        private final Group group;
+        private final long sequence;
+    }
+
+    /**
+     * 一次取消
+     */
+    @AllArgsConstructor
+    private static class Cancellation {
+        private final long sequence;
+        private final long time;
+    }
+
+    /**
+     * 过期时间, 逻辑过期时间, 序列化方式, 抖动都一样的可以放在一个batchSet里面
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class Group {
+        private final long expire;
+        private final long refreshAhead;
+        private final CacheCodec codec;
+        private final ExpireJitter jitter;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueSize);
+        running = true;
+        writer = new Thread(this::drainLoop, "cache-anno-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 放入一个要写的值
+     *
+     * @param key          key
+     * @param expire       过期时间
+     * @param value        值
+     * @param refreshAhead 逻辑过期时间
+     * @param codec        序列化方式
+     * @param jitter       过期时间的随机抖动
+     */
+    public void offer(String key, long expire, Object value, long refreshAhead, CacheCodec codec, ExpireJitter jitter) {
+        if (value == null) {
+            return;
+        }
+        offer(new Entry(key, value, new Group(expire, refreshAhead, codec, jitter), sequence.incrementAndGet()));
+    }
+
+    /**
+     * 放入一批要写的值
+     *
+     * @param keyValues    要写的kv
+     * @param expire       过期时间
+     * @param refreshAhead 逻辑过期时间
+     * @param codec        序列化方式
+     * @param jitter       过期时间的随机抖动
+     */
+    public void offerAll(Map<String, Object> keyValues, long expire, long refreshAhead, CacheCodec codec, ExpireJitter jitter) {
+        Group group = new Group(expire, refreshAhead, codec, jitter);
+        keyValues.forEach((key, value) -> {
+            if (value != null) {
+                offer(new Entry(key, value, group, sequence.incrementAndGet()));
+            }
+        });
+    }
+
+    private void offer(Entry entry) {
+        boolean accepted = false;
+        try {
+            accepted = running && queue.offer(entry, offerTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!accepted) {
+            dropped.increment();
+            return;
+        }
+        enqueued.increment();
+        // 等着放进队列的时候被取消了, 取消的时候还不在队列里面删不掉, 这里自己删
+        if (isCancelled(entry) && queue.remove(entry)) {
+            cancelled.increment();
+        }
+    }
+
+    /**
+     * 取消这些key还没有写入的值, 删除或者更新缓存之前调用
+     *
+     * @param keys 完整的key
+     */
+    public void cancel(Collection<String> keys) {
+        // 一次都没有用过异步写入
+        if (keys.isEmpty() || sequence.get() == 0) {
+            return;
+        }
+        Cancellation cancellation = new Cancellation(sequence.incrementAndGet(), System.currentTimeMillis());
+        Set<String> keySet = keys instanceof Set ? (Set<String>) keys : new HashSet<>(keys);
+        keySet.forEach(key -> cancellations.put(key, cancellation));
+        if (queue.isEmpty()) {
+            return;
+        }
+        queue.removeIf(entry -> {
+            if (!keySet.contains(entry.key)) {
+                return false;
+            }
+            cancelled.increment();
+            return true;
+        });
+    }
+
+    /**
+     * 放进队列之后是否又被取消了
+     */
+    private boolean isCancelled(Entry entry) {
+        Cancellation cancellation = cancellations.get(entry.key);
+        return cancellation != null && cancellation.sequence > entry.sequence;
+    }
+
+    /**
+     * 后台线程: 有数据就一次取一批写入
+     */
+    private void drainLoop() {
+        List<Entry> buffer = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                long start = System.currentTimeMillis();
+                Entry first = queue.poll(WRITE_BEHIND_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    buffer.add(first);
+                    queue.drainTo(buffer, batchSize - 1);
+                    flush(buffer);
+                }
+                purgeCancellations(start);
+            } catch (InterruptedException e) {
+                // 关闭的时候会打断, 继续把剩下的写完
+                running = false;
+            } catch (Exception e) {
+                log.warn("cache-anno write behind error, msg:{}", e.getMessage());
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * 同一批里面重复的key只写最后一次, 然后按照过期时间等分组管道写入
+     */
+    private void flush(List<Entry> buffer) {
+        Map<String, Entry> latest = new LinkedHashMap<>(buffer.size());
+        buffer.forEach(entry -> latest.put(entry.key, entry));
+        Map<Group, List<Entry>> groups = new LinkedHashMap<>();
+        latest.values().forEach(entry -> groups.computeIfAbsent(entry.group, k -> new ArrayList<>()).add(entry));
+        groups.forEach((group, entries) -> {
+            // 取出来之后被取消的不写, 每组写之前再判断一次
+            Map<String, Object> keyValues = new LinkedHashMap<>(entries.size());
+            entries.forEach(entry -> {
+                if (isCancelled(entry)) {
+                    cancelled.increment();
+                } else {
+                    keyValues.put(entry.key, entry.value);
+                }
+            });
+            if (!keyValues.isEmpty()) {
+                redisRepository.batchSet(keyValues, group.expire, group.refreshAhead, group.codec, group.jitter);
+                written.add(keyValues.size());
+            }
+        });
+        batches.increment();
+    }
+
+    /**
+     * 清掉不会再用到的取消: start之前offerTimeout就已经取消了的, 等着放进队列的调用方都已经自己判断过了,
+     * 当时正在写的那一批也写完了
+     *
+     * @param start 这一批开始等数据的时间
+     */
+    private void purgeCancellations(long start) {
+        if (!cancellations.isEmpty()) {
+            cancellations.values().removeIf(cancellation -> cancellation.time < start - offerTimeout);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(WRITE_BEHIND_SHUTDOWN_TIMEOUT));
+        log.info("cache-anno write behind stopped, left:{}", queue.size());
+    }
+
+    /**
+     * 当前队列里面等待写入的数量
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long cancelledCount() {
+        return cancelled.sum();
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void stats() {
+        if (enqueued.sum() == 0 && dropped.sum() == 0) {
+            return;
+        }
+        log.info("cache-anno write behind stats, pending:{}, enqueued:{}, written:{}, batches:{}, dropped:{}, cancelled:{}",
+                queue.size(), enqueued.sum(), written.sum(), batches.sum(), dropped.sum(), cancelled.sum());
+    }
+}
@@ -0,0 +1,127 @@
+package cn.someget.cache;
+
+import com.github.fppt.jedismock.RedisServer;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.protocol.ProtocolVersion;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 测试用的spring容器, 和业务里面一样加载spring.factories里面的所有bean
+ * redis用的是进程内的替身(jedis-mock), 多个容器可以连同一个替身, 模拟多个节点
+ *
+ * @author agent
+ * @date 2026-10-17 21:41
+ */
+public class CacheTestContext implements AutoCloseable {
+
+    /**
+     * redis连接和切面
+     */
+    @EnableAspectJAutoProxy
+    public static class RedisConfig {
+
+        @Bean
+        public LettuceConnectionFactory redisConnectionFactory(RedisServer redisServer) {
+            // redis替身不支持RESP3, lettuce默认会先尝试RESP3
+            LettuceClientConfiguration client = LettuceClientConfiguration.builder()
+                    .clientOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP2).build())
+                    .build();
+            return new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration(redisServer.getHost(), redisServer.getBindPort()), client);
+        }
+
+        @Bean
+        public RedisTemplate<String, String> redisTemplate(LettuceConnectionFactory connectionFactory) {
+            RedisTemplate<String, String> redisTemplate = new RedisTemplate<>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            return redisTemplate;
+        }
+    }
+
+    private final AnnotationConfigApplicationContext context;
+
+    private CacheTestContext(AnnotationConfigApplicationContext context) {
+        this.context = context;
+    }
+
+    /**
+     * 启动一个redis替身
+     */
+    public static RedisServer startRedis() throws IOException {
+        RedisServer redisServer = RedisServer.newRedisServer(0, InetAddress.getLoopbackAddress());
+        redisServer.start();
+        return redisServer;
+    }
+
+    /**
+     * 启动连到redisServer的容器
+     *
+     * @param redisServer redis替身
+     * @param properties  cache-anno的配置
+     * @param beans       测试用的bean(有@Cache方法的服务之类的)
+     */
+    public static CacheTestContext start(RedisServer redisServer, Map<String, Object> properties, Class<?>... beans) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", new HashMap<>(properties)));
+        context.getBeanFactory().registerSingleton("redisServer", redisServer);
+        context.register(RedisConfig.class);
+        ClassLoader classLoader = CacheTestContext.class.getClassLoader();
+        for (String name : SpringFactoriesLoader.loadFactoryNames(EnableAutoConfiguration.class, classLoader)) {
+            if (name.startsWith("cn.someget.cache.")) {
+                context.register(ClassUtils.resolveClassName(name, classLoader));
+            }
+        }
+        if (beans.length > 0) {
+            context.register(beans);
+        }
+        context.refresh();
+        return new CacheTestContext(context);
+    }
+
+    /**
+     * 等到条件满足, 超时返回false
+     *
+     * @param condition 条件
+     * @param timeout   超时时间, 单位毫秒
+     */
+    public static boolean await(BooleanSupplier condition, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(20L);
+        }
+        return true;
+    }
+
+    public <T> T getBean(Class<T> clazz) {
+        return context.getBean(clazz);
+    }
+
+    public <T> T getBean(String name, Class<T> clazz) {
+        return context.getBean(name, clazz);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,193 @@
+package cn.someget.cache.aop;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.utils.RedisRepository;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 异步返回值: CompletableFuture/Mono/Flux缓存的是完成之后里面的值, 命中的时候直接返回完成的结果, 失败的不缓存
+ *
+ * @author agent
+ * @date 2026-10-18 04:40
+ */
+class AsyncCacheTest {
+
+    private static final String FUTURE = "test:async:future:%s";
+
+    private static final String MONO = "test:async:mono:%s";
+
+    private static final String FLUX = "test:async:flux:%s";
+
+    private static final String BATCH = "test:async:batch:%s";
+
+    private static final String FAIL = "test:async:fail:%s";
+
+    private static final long TIMEOUT = 5000L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    public static class AsyncService {
+
+        /**
+         * 每次执行方法的记录, 方法名:参数
+         */
+        private final List<String> calls = new CopyOnWriteArrayList<>();
+
+        @Cache(prefix = FUTURE)
+        public CompletableFuture<User> future(Long id) {
+            calls.add("future:" + id);
+            return CompletableFuture.supplyAsync(() -> new User(id, "future"));
+        }
+
+        @Cache(prefix = MONO)
+        public Mono<User> mono(Long id) {
+            calls.add("mono:" + id);
+            return Mono.fromCallable(() -> new User(id, "mono"));
+        }
+
+        @Cache(prefix = FLUX)
+        public Flux<User> flux(Long id) {
+            calls.add("flux:" + id);
+            return Flux.just(new User(id, "a"), new User(id, "b"));
+        }
+
+        @Cache(prefix = BATCH)
+        public CompletableFuture<Map<Long, User>> batch(List<Long> ids) {
+            calls.add("batch:" + ids);
+            Map<Long, User> result = new HashMap<>();
+            ids.forEach(id -> result.put(id, new User(id, "batch")));
+            return CompletableFuture.completedFuture(result);
+        }
+
+        @Cache(prefix = FAIL)
+        public CompletableFuture<User> fail(Long id) {
+            calls.add("fail:" + id);
+            CompletableFuture<User> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("db down"));
+            return future;
+        }
+
+        public List<String> calls() {
+            return new ArrayList<>(calls);
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static AsyncService service;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), AsyncService.class);
+        service = context.getBean(AsyncService.class);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    /**
+     * 异步方法写缓存不等redis返回, 等到写进去为止
+     */
+    private static void awaitCached(String prefix, Object id) throws InterruptedException {
+        assertTrue(CacheTestContext.await(() -> redisRepository.getRaw(String.format(prefix, id)) != null, TIMEOUT));
+    }
+
+    @Test
+    void futureValueIsCached() throws ExecutionException, InterruptedException {
+        assertEquals(new User(1L, "future"), service.future(1L).get());
+        awaitCached(FUTURE, 1L);
+
+        int calls = service.calls().size();
+        User cached = service.future(1L).get();
+        assertInstanceOf(User.class, cached);
+        assertEquals(new User(1L, "future"), cached);
+        assertEquals(calls, service.calls().size());
+    }
+
+    @Test
+    void monoValueIsCached() throws InterruptedException {
+        assertEquals(new User(2L, "mono"), service.mono(2L).block());
+        awaitCached(MONO, 2L);
+
+        int calls = service.calls().size();
+        assertEquals(new User(2L, "mono"), service.mono(2L).block());
+        assertEquals(calls, service.calls().size());
+    }
+
+    @Test
+    void fluxIsCachedAsList() throws InterruptedException {
+        List<User> loaded = service.flux(3L).collectList().block();
+        assertEquals(Arrays.asList(new User(3L, "a"), new User(3L, "b")), loaded);
+        awaitCached(FLUX, 3L);
+
+        int calls = service.calls().size();
+        assertEquals(loaded, service.flux(3L).collectList().block());
+        assertEquals(calls, service.calls().size());
+    }
+
+    @Test
+    void batchLoadsOnlyMisses() throws ExecutionException, InterruptedException {
+        service.batch(Collections.singletonList(4L)).get();
+        awaitCached(BATCH, 4L);
+
+        Map<Long, User> result = service.batch(Arrays.asList(4L, 5L)).get();
+        assertEquals(2, result.size());
+        assertEquals(new User(5L, "batch"), result.get(5L));
+        List<String> calls = service.calls();
+        assertEquals("batch:[5]", calls.get(calls.size() - 1));
+    }
+
+    @Test
+    void failureIsNotCached() {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> service.fail(6L).get());
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertNull(redisRepository.getRaw(String.format(FAIL, 6L)));
+
+        int calls = service.calls().size();
+        assertThrows(ExecutionException.class, () -> service.fail(6L).get());
+        assertEquals(calls + 1, service.calls().size());
+    }
+}
@@ -0,0 +1,146 @@
+package cn.someget.cache.aop;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeansException;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 执行计划: 按声明的参数和返回值提前解析出查询的方式, 参数声明成List的父类型时的处理
+ *
+ * @author agent
+ * @date 2026-10-18 02:10
+ */
+class CachePlanRegistryTest {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    public static class PlanService {
+
+        @Cache(prefix = "test:plan:one:%s")
+        public Optional<User> one(Long id) {
+            return Optional.of(new User(id, "a"));
+        }
+
+        @Cache(prefix = "test:plan:list:%s")
+        public List<User> list(Long id) {
+            return Collections.singletonList(new User(id, "a"));
+        }
+
+        @Cache(prefix = "test:plan:batch:%s")
+        public Map<Long, User> batch(List<Long> ids) {
+            return Collections.emptyMap();
+        }
+
+        @Cache(prefix = "test:plan:many:%s")
+        public Map<Long, List<User>> many(List<Long> ids) {
+            return Collections.emptyMap();
+        }
+
+        @Cache(prefix = "test:plan:object:%s")
+        public User object(Object id) {
+            return new User(1L, String.valueOf(id));
+        }
+    }
+
+    /**
+     * 参数声明成Collection, 返回值是Map, 不知道是不是批量查询
+     */
+    public static class AmbiguousService {
+
+        @Cache(prefix = "test:plan:ambiguous:%s")
+        public Map<Long, User> find(Collection<Long> ids) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static CachePlanRegistry registry;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), PlanService.class);
+        registry = context.getBean(CachePlanRegistry.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    private static CachePlan plan(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return registry.get(PlanService.class.getMethod(name, parameterTypes), PlanService.class);
+    }
+
+    @Test
+    void shapesFromSignature() throws NoSuchMethodException {
+        CachePlan one = plan("one", Long.class);
+        assertEquals(CachePlan.Shape.ONE_TO_ONE, one.getShape());
+        assertSame(Optional.class, one.getContainerType());
+        assertSame(User.class, one.getClazz());
+
+        CachePlan list = plan("list", Long.class);
+        assertEquals(CachePlan.Shape.ONE_TO_LIST, list.getShape());
+        assertSame(User.class, list.getClazz());
+
+        CachePlan batch = plan("batch", List.class);
+        assertEquals(CachePlan.Shape.LIST_TO_ONE, batch.getShape());
+        assertSame(User.class, batch.getClazz());
+
+        CachePlan many = plan("many", List.class);
+        assertEquals(CachePlan.Shape.LIST_TO_MANY, many.getShape());
+        assertSame(User.class, many.getClazz());
+    }
+
+    @Test
+    void objectParameterStaysSingle() throws NoSuchMethodException {
+        assertEquals(CachePlan.Shape.ONE_TO_ONE, plan("object", Object.class).getShape());
+
+        PlanService service = context.getBean(PlanService.class);
+        assertEquals(new User(1L, "2"), service.object(2L));
+        // 返回值不是Map的时候传进来List没办法批量查询, 和以前一样报错
+        List<Long> ids = Collections.singletonList(2L);
+        assertThrows(IllegalArgumentException.class, () -> service.object(ids));
+    }
+
+    @Test
+    void ambiguousParameterFailsAtStartup() throws IOException {
+        RedisServer otherRedis = CacheTestContext.startRedis();
+        try {
+            assertThrows(BeansException.class,
+                    () -> CacheTestContext.start(otherRedis, Collections.emptyMap(), AmbiguousService.class).close());
+        } finally {
+            otherRedis.stop();
+        }
+    }
+}
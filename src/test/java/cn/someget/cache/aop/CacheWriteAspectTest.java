@@ -0,0 +1,222 @@
+package cn.someget.cache.aop;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.anno.CacheEvict;
+import cn.someget.cache.anno.CachePut;
+import cn.someget.cache.utils.RedisRepository;
+import cn.someget.cache.utils.WriteBehindQueue;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 写路径: @CachePut按同一个prefix的@Cache的配置写入, 写入和删除一起发出去; @CacheEvict删除redis和本地缓存; 等事务提交之后再执行
+ *
+ * @author agent
+ * @date 2026-10-18 02:50
+ */
+class CacheWriteAspectTest {
+
+    private static final String USER = "test:write:user:%s";
+
+    private static final String BEHIND = "test:write:behind:%s";
+
+    private static final long TIMEOUT = 5000L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    public static class WriteService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Cache(prefix = USER, expire = 120L, refreshAhead = 30L, usingLocalCache = true, localExpire = 60L)
+        public User find(Long id) {
+            loads.incrementAndGet();
+            return new User(id, "db");
+        }
+
+        @CachePut(prefix = USER)
+        public User update(Long id) {
+            return new User(id, "put");
+        }
+
+        @CachePut(prefix = USER, expire = 300L)
+        public User updateLonger(Long id) {
+            return new User(id, "longer");
+        }
+
+        /**
+         * 只返回偶数id, 奇数id的缓存会被删除
+         */
+        @CachePut(prefix = USER)
+        public Map<Long, User> updateAll(List<Long> ids) {
+            Map<Long, User> result = new HashMap<>();
+            ids.stream().filter(id -> id % 2 == 0).forEach(id -> result.put(id, new User(id, "batch")));
+            return result;
+        }
+
+        @CacheEvict(prefix = USER)
+        public void delete(Long id) {
+        }
+
+        @CachePut(prefix = USER, afterCommit = true)
+        public User updateAfterCommit(Long id) {
+            return new User(id, "committed");
+        }
+
+        @CacheEvict(prefix = USER, afterCommit = true)
+        public void deleteAfterCommit(Long id) {
+        }
+
+        @Cache(prefix = BEHIND, writeBehind = true)
+        public User findBehind(Long id) {
+            return new User(id, "db");
+        }
+
+        @CachePut(prefix = BEHIND)
+        public User updateBehind(Long id) {
+            return new User(id, "behind");
+        }
+
+        public int loads() {
+            return loads.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static WriteService service;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), WriteService.class);
+        service = context.getBean(WriteService.class);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    private static String key(String prefix, long id) {
+        return String.format(prefix, id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long ttl(String key) {
+        return context.getBean("redisTemplate", RedisTemplate.class).getExpire(key);
+    }
+
+    @Test
+    void putUsesCachePlanSettings() {
+        service.find(1L);
+        int loads = service.loads();
+
+        service.update(1L);
+        // 本地缓存被删掉, 读到的是redis里面的新值, 不会再执行方法
+        assertEquals(new User(1L, "put"), service.find(1L));
+        assertEquals(loads, service.loads());
+        // 过期时间和逻辑过期时间都和@Cache一样
+        long ttl = ttl(key(USER, 1L));
+        assertTrue(ttl > 60L && ttl <= 120L, "ttl " + ttl);
+        assertTrue(RedisRepository.refreshAt(redisRepository.getStored(key(USER, 1L))) > System.currentTimeMillis());
+
+        // 自己设置了过期时间的以自己的为准
+        service.updateLonger(1L);
+        assertTrue(ttl(key(USER, 1L)) > 120L);
+    }
+
+    @Test
+    void batchPutDeletesMissing() {
+        service.find(2L);
+        service.find(3L);
+
+        service.updateAll(Arrays.asList(2L, 3L));
+        assertNull(redisRepository.getRaw(key(USER, 3L)));
+        int loads = service.loads();
+        assertEquals(new User(2L, "batch"), service.find(2L));
+        assertEquals(loads, service.loads());
+        // 删掉的id重新执行方法
+        assertEquals(new User(3L, "db"), service.find(3L));
+        assertEquals(loads + 1, service.loads());
+    }
+
+    @Test
+    void evictRemovesRedisAndLocal() {
+        service.find(4L);
+        int loads = service.loads();
+
+        service.delete(4L);
+        assertNull(redisRepository.getRaw(key(USER, 4L)));
+        service.find(4L);
+        assertEquals(loads + 1, service.loads());
+    }
+
+    @Test
+    void afterCommitWaitsForTransaction() {
+        service.find(5L);
+        service.find(6L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.updateAfterCommit(5L);
+            service.deleteAfterCommit(6L);
+            // 事务还没提交, 缓存没动
+            assertEquals(new User(5L, "db"), service.find(5L));
+            assertNotNull(redisRepository.getRaw(key(USER, 6L)));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(new User(5L, "committed"), service.find(5L));
+        assertNull(redisRepository.getRaw(key(USER, 6L)));
+    }
+
+    @Test
+    void putFollowsWriteBehind() throws InterruptedException {
+        WriteBehindQueue writeBehindQueue = context.getBean(WriteBehindQueue.class);
+        long cancelled = writeBehindQueue.cancelledCount();
+        service.updateBehind(7L);
+
+        assertTrue(CacheTestContext.await(() -> redisRepository.getRaw(key(BEHIND, 7L)) != null, TIMEOUT));
+        // 让本地缓存失效的时候没有把刚放进队列的新值取消掉
+        assertEquals(cancelled, writeBehindQueue.cancelledCount());
+        assertEquals(new User(7L, "behind"), service.findBehind(7L));
+    }
+}
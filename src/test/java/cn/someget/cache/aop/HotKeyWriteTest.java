@@ -0,0 +1,101 @@
+package cn.someget.cache.aop;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.utils.HotKeyDetector;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 热点key: 切面写redis的时候本节点热点key的值也换成新的, 不会一直返回旧值
+ *
+ * @author agent
+ * @date 2026-10-18 02:30
+ */
+class HotKeyWriteTest {
+
+    private static final long TIMEOUT = 5000L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private Integer version;
+    }
+
+    /**
+     * 每执行一次方法版本号加一
+     */
+    public static class HotService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Cache(prefix = "test:hot:user:%s", expire = 60L, refreshAhead = 1L)
+        public User find(Long id) {
+            return new User(id, loads.incrementAndGet());
+        }
+
+        public int loads() {
+            return loads.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cache-anno.hot-key.enabled", "true");
+        properties.put("cache-anno.hot-key.threshold", "2");
+        properties.put("cache-anno.hot-key.local-expire", "60");
+        context = CacheTestContext.start(redisServer, properties, HotService.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void refreshUpdatesHotValue() throws InterruptedException {
+        HotService service = context.getBean(HotService.class);
+        HotKeyDetector hotKeyDetector = context.getBean(HotKeyDetector.class);
+        User loaded = service.find(1L);
+        // 查几次redis之后变成热点key, 值放进本地
+        for (int i = 0; i < 3; i++) {
+            assertEquals(loaded, service.find(1L));
+        }
+        assertEquals(Arrays.asList("test:hot:user:1"),
+                hotKeyDetector.getHotKeys().stream().map(HotKeyDetector.HotKey::getKey).collect(Collectors.toList()));
+        int loads = service.loads();
+        TimeUnit.MILLISECONDS.sleep(1200L);
+
+        // 热点key的值过了逻辑过期时间, 后台刷新写回redis的同时把本地的热点值也换掉
+        assertEquals(loaded, service.find(1L));
+        assertTrue(CacheTestContext.await(() -> service.loads() == loads + 1, TIMEOUT));
+        assertTrue(CacheTestContext.await(() -> service.find(1L).getVersion() == loads + 1, TIMEOUT));
+    }
+}
@@ -0,0 +1,197 @@
+package cn.someget.cache.aop;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.utils.RedisRepository;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 拆片加载: 未命中的id按loadChunkSize拆开执行方法, 结果合并返回并写缓存;
+ * 等各片的结果最多等cache-anno.loader.timeout, 超时的话调用失败, 没完成的片完成之后照常写缓存
+ *
+ * @author agent
+ * @date 2026-10-18 03:10
+ */
+class LoadChunkTest {
+
+    private static final String USER = "test:load:user:%s";
+
+    private static final String ASYNC = "test:load:async:%s";
+
+    /**
+     * 查询这个id的时候方法卡住
+     */
+    private static final long SLOW_ID = 99L;
+
+    private static final long STALL = 4000L;
+
+    private static final long LOADER_TIMEOUT = 1000L;
+
+    private static final long TIMEOUT = 8000L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    public static class ChunkService {
+
+        /**
+         * 每次执行方法传进来的id
+         */
+        private final List<List<Long>> calls = new CopyOnWriteArrayList<>();
+
+        @Cache(prefix = USER, loadChunkSize = 2)
+        public Map<Long, User> find(List<Long> ids) {
+            return load(ids);
+        }
+
+        @Cache(prefix = ASYNC, loadChunkSize = 2)
+        public CompletableFuture<Map<Long, User>> findAsync(List<Long> ids) {
+            return CompletableFuture.supplyAsync(() -> load(ids));
+        }
+
+        private Map<Long, User> load(List<Long> ids) {
+            calls.add(new ArrayList<>(ids));
+            if (ids.contains(SLOW_ID)) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(STALL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Map<Long, User> result = new HashMap<>();
+            ids.forEach(id -> result.put(id, new User(id, "db")));
+            return result;
+        }
+
+        public List<List<Long>> calls() {
+            return calls;
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static ChunkService service;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer,
+                Collections.singletonMap("cache-anno.loader.timeout", String.valueOf(LOADER_TIMEOUT)), ChunkService.class);
+        service = context.getBean(ChunkService.class);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    private static String key(String prefix, long id) {
+        return String.format(prefix, id);
+    }
+
+    /**
+     * 从现在开始执行方法的时候传进来的id
+     */
+    private static List<List<Long>> callsSince(int from) {
+        List<List<Long>> calls = service.calls();
+        return calls.subList(from, calls.size());
+    }
+
+    @Test
+    void chunksAreMergedAndCached() {
+        int from = service.calls().size();
+        Map<Long, User> result = service.find(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+
+        assertEquals(5, result.size());
+        assertEquals(new User(3L, "db"), result.get(3L));
+        List<List<Long>> calls = callsSince(from);
+        assertEquals(3, calls.size());
+        assertTrue(calls.stream().allMatch(chunk -> chunk.size() <= 2), "calls " + calls);
+
+        // 各片都写了缓存, 再查不会执行方法
+        from = service.calls().size();
+        assertEquals(result, service.find(Arrays.asList(1L, 2L, 3L, 4L, 5L)));
+        assertTrue(callsSince(from).isEmpty());
+    }
+
+    @Test
+    void asyncChunksAreMergedAndCached() throws ExecutionException, InterruptedException {
+        int from = service.calls().size();
+        Map<Long, User> result = service.findAsync(Arrays.asList(1L, 2L, 3L, 4L, 5L)).get();
+
+        assertEquals(5, result.size());
+        assertEquals(3, callsSince(from).size());
+
+        // 异步方法写缓存不等redis返回
+        assertTrue(CacheTestContext.await(() -> result.keySet().stream()
+                .allMatch(id -> redisRepository.getRaw(key(ASYNC, id)) != null), TIMEOUT));
+        from = service.calls().size();
+        assertEquals(result, service.findAsync(Arrays.asList(1L, 2L, 3L, 4L, 5L)).get());
+        assertTrue(callsSince(from).isEmpty());
+    }
+
+    @Test
+    void slowChunkTimesOut() throws InterruptedException {
+        // 拆成[10, 99]和[11], 调用线程执行[11], [10, 99]在线程池里面卡住
+        List<Long> ids = Arrays.asList(10L, SLOW_ID, 11L);
+
+        long start = System.nanoTime();
+        assertThrows(IllegalStateException.class, () -> service.find(ids));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(waited < STALL, "waited " + waited + "ms");
+        // 调用线程执行的片已经写了缓存, 放弃等待的片完成之后也照常写缓存
+        assertTrue(redisRepository.getRaw(key(USER, 11L)) != null);
+        assertTrue(CacheTestContext.await(() -> redisRepository.getRaw(key(USER, SLOW_ID)) != null, TIMEOUT));
+    }
+
+    @Test
+    void asyncSlowChunkTimesOut() throws InterruptedException {
+        List<Long> ids = Arrays.asList(20L, SLOW_ID, 21L);
+
+        long start = System.nanoTime();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> service.findAsync(ids).get());
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertTrue(waited < STALL, "waited " + waited + "ms");
+        assertTrue(CacheTestContext.await(() -> redisRepository.getRaw(key(ASYNC, SLOW_ID)) != null, TIMEOUT));
+    }
+}
@@ -0,0 +1,151 @@
+package cn.someget.cache.aop;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.utils.RedisRepository;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cn.someget.cache.utils.RedisKey.LOCK_SUFFIX;
+import static cn.someget.cache.utils.RedisKey.REFRESH_HEADER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 提前刷新: 命中过了逻辑过期时间的缓存先返回旧值, 后台重新执行方法写回去; 本地缓存命中和别的节点写入的值也按值自己的逻辑过期时间判断;
+ * 别的节点在刷新的话本节点不刷新
+ *
+ * @author agent
+ * @date 2026-10-17 22:16
+ */
+class RefreshAheadTest {
+
+    private static final long TIMEOUT = 5000L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private Integer version;
+    }
+
+    /**
+     * 每执行一次方法版本号加一
+     */
+    public static class RefreshService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Cache(prefix = "test:refresh:user:%s", expire = 60L, refreshAhead = 1L)
+        public User find(Long id) {
+            return new User(id, loads.incrementAndGet());
+        }
+
+        @Cache(prefix = "test:refresh:local:%s", expire = 60L, refreshAhead = 1L, usingLocalCache = true, localExpire = 60L)
+        public User findLocal(Long id) {
+            return new User(id, loads.incrementAndGet());
+        }
+
+        public int loads() {
+            return loads.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), RefreshService.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void freshHitDoesNotRefresh() throws InterruptedException {
+        RefreshService service = context.getBean(RefreshService.class);
+        User loaded = service.find(1L);
+        int loads = service.loads();
+
+        assertEquals(loaded, service.find(1L));
+        TimeUnit.MILLISECONDS.sleep(200L);
+        assertEquals(loads, service.loads());
+    }
+
+    @Test
+    void staleHitRefreshesInBackground() throws InterruptedException {
+        RefreshService service = context.getBean(RefreshService.class);
+        User loaded = service.find(2L);
+        int loads = service.loads();
+        TimeUnit.MILLISECONDS.sleep(1200L);
+
+        // 先拿到旧值, 不用等刷新
+        assertEquals(loaded, service.find(2L));
+        assertTrue(CacheTestContext.await(() -> service.loads() == loads + 1, TIMEOUT));
+        assertTrue(CacheTestContext.await(() -> service.find(2L).getVersion() == loads + 1, TIMEOUT));
+        assertFalse(context.getBean(RedisRepository.class).isStale("test:refresh:user:2"));
+    }
+
+    @Test
+    void staleLocalHitRefreshes() throws InterruptedException {
+        RefreshService service = context.getBean(RefreshService.class);
+        User loaded = service.findLocal(4L);
+        int loads = service.loads();
+        TimeUnit.MILLISECONDS.sleep(1200L);
+
+        // 本地缓存还没过期, 命中的值自己带着逻辑过期时间, 同样会刷新
+        assertEquals(loaded, service.findLocal(4L));
+        assertTrue(CacheTestContext.await(() -> service.loads() == loads + 1, TIMEOUT));
+        assertTrue(CacheTestContext.await(() -> service.findLocal(4L).getVersion() == loads + 1, TIMEOUT));
+    }
+
+    @Test
+    void staleValueFromOtherNodeRefreshes() throws InterruptedException {
+        RefreshService service = context.getBean(RefreshService.class);
+        RedisRepository redisRepository = context.getBean(RedisRepository.class);
+        int loads = service.loads();
+        // 别的节点写入的值已经过了逻辑过期时间, 这个节点从来没有读写过这个key
+        String header = (char) REFRESH_HEADER + Long.toString(System.currentTimeMillis() - 1000L) + (char) REFRESH_HEADER;
+        redisRepository.setRaw("test:refresh:user:5",
+                (header + "{\"id\":5,\"version\":100}").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(new User(5L, 100), service.find(5L));
+        assertTrue(CacheTestContext.await(() -> service.loads() == loads + 1, TIMEOUT));
+        assertTrue(CacheTestContext.await(() -> service.find(5L).getVersion() == loads + 1, TIMEOUT));
+    }
+
+    @Test
+    void otherNodeRefreshing() throws InterruptedException {
+        RefreshService service = context.getBean(RefreshService.class);
+        RedisRepository redisRepository = context.getBean(RedisRepository.class);
+        User loaded = service.find(3L);
+        int loads = service.loads();
+        TimeUnit.MILLISECONDS.sleep(1200L);
+        assertTrue(redisRepository.tryLock("test:refresh:user:3" + LOCK_SUFFIX, "other-node", 10_000L));
+
+        assertEquals(loaded, service.find(3L));
+        TimeUnit.MILLISECONDS.sleep(300L);
+        assertEquals(loads, service.loads());
+    }
+}
@@ -0,0 +1,165 @@
+package cn.someget.cache.aop;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * 返回值类型: 按方法声明的泛型返回值反序列化, Optional/Set/数组/Map<K, List<V>>从redis读出来还是原来的类型
+ *
+ * @author agent
+ * @date 2026-10-18 03:40
+ */
+class ReturnTypeTest {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    public static class TypedService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Cache(prefix = "test:type:optional:%s", missExpire = 10L)
+        public Optional<User> optional(Long id) {
+            loads.incrementAndGet();
+            return id > 0 ? Optional.of(new User(id, "optional")) : Optional.empty();
+        }
+
+        @Cache(prefix = "test:type:set:%s")
+        public Set<User> set(Long id) {
+            loads.incrementAndGet();
+            return new LinkedHashSet<>(Arrays.asList(new User(id, "b"), new User(id, "a")));
+        }
+
+        @Cache(prefix = "test:type:array:%s")
+        public User[] array(Long id) {
+            loads.incrementAndGet();
+            return new User[]{new User(id, "array")};
+        }
+
+        @Cache(prefix = "test:type:map:%s")
+        public Map<String, User> map(Long id) {
+            loads.incrementAndGet();
+            return Collections.singletonMap("owner", new User(id, "map"));
+        }
+
+        @Cache(prefix = "test:type:many:%s")
+        public Map<Long, List<User>> many(List<Long> ids) {
+            loads.incrementAndGet();
+            Map<Long, List<User>> result = new HashMap<>();
+            ids.forEach(id -> result.put(id, Arrays.asList(new User(id, "x"), new User(id, "y"))));
+            return result;
+        }
+
+        public int loads() {
+            return loads.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static TypedService service;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), TypedService.class);
+        service = context.getBean(TypedService.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void optionalIsUnwrapped() {
+        assertEquals(Optional.of(new User(1L, "optional")), service.optional(1L));
+        int loads = service.loads();
+        assertEquals(Optional.of(new User(1L, "optional")), service.optional(1L));
+        assertEquals(loads, service.loads());
+
+        // 空的Optional按空缓存处理(开启了missExpire)
+        assertFalse(service.optional(-1L).isPresent());
+        loads = service.loads();
+        assertFalse(service.optional(-1L).isPresent());
+        assertEquals(loads, service.loads());
+    }
+
+    @Test
+    void setKeepsOrder() {
+        Set<User> loaded = service.set(2L);
+        int loads = service.loads();
+        Set<User> cached = service.set(2L);
+
+        assertEquals(loads, service.loads());
+        assertInstanceOf(Set.class, cached);
+        assertEquals(Arrays.asList(loaded.toArray()), Arrays.asList(cached.toArray()));
+    }
+
+    @Test
+    void arrayIsRestored() {
+        service.array(3L);
+        int loads = service.loads();
+        User[] cached = service.array(3L);
+
+        assertEquals(loads, service.loads());
+        assertArrayEquals(new User[]{new User(3L, "array")}, cached);
+    }
+
+    @Test
+    void genericValueDecodedToDeclaredType() {
+        service.map(4L);
+        int loads = service.loads();
+        Map<String, User> cached = service.map(4L);
+
+        assertEquals(loads, service.loads());
+        // 不是JSONObject, 直接是声明的类型
+        assertInstanceOf(User.class, cached.get("owner"));
+        assertEquals(new User(4L, "map"), cached.get("owner"));
+    }
+
+    @Test
+    void batchListsDecodedToElementType() {
+        service.many(Arrays.asList(5L, 6L));
+        int loads = service.loads();
+        Map<Long, List<User>> cached = service.many(Arrays.asList(5L, 6L));
+
+        assertEquals(loads, service.loads());
+        assertEquals(2, cached.size());
+        assertInstanceOf(User.class, cached.get(6L).get(0));
+        assertEquals(Arrays.asList(new User(6L, "x"), new User(6L, "y")), cached.get(6L));
+    }
+}
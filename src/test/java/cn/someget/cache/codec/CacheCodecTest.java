@@ -0,0 +1,157 @@
+package cn.someget.cache.codec;
+
+import cn.hutool.core.util.ReflectUtil;
+import cn.someget.cache.utils.CacheMetrics;
+import com.alibaba.fastjson.TypeReference;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 序列化方式: json和kryo的读写, kryo只认注册过的类型并且校验读出来的类型, 注册中心同一个prefix配置冲突报错
+ *
+ * @author agent
+ * @date 2026-10-17 21:53
+ */
+class CacheCodecTest {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Order {
+
+        private Long id;
+    }
+
+    /**
+     * 在注解上指定时用的kryo, 通过重写注册业务类型
+     */
+    public static class UserKryoCodec extends KryoCacheCodec {
+
+        @Override
+        protected void register(Kryo kryo) {
+            super.register(kryo);
+            kryo.register(User.class);
+        }
+    }
+
+    private static final List<User> USERS = Arrays.asList(new User(1L, "a"), new User(2L, "b"));
+
+    @Test
+    void jsonRoundTrip() {
+        JsonCacheCodec codec = new JsonCacheCodec();
+
+        assertEquals(USERS.get(0), codec.decode(codec.encode(USERS.get(0)), User.class));
+        assertEquals(USERS, codec.decodeList(codec.encode(USERS), User.class));
+        Map<Long, User> map = Collections.singletonMap(1L, USERS.get(0));
+        assertEquals(map, codec.decode(codec.encode(map), new TypeReference<Map<Long, User>>() {}.getType()));
+    }
+
+    @Test
+    void jsonStringIsRaw() {
+        JsonCacheCodec codec = new JsonCacheCodec();
+
+        assertArrayEquals("abc".getBytes(StandardCharsets.UTF_8), codec.encode("abc"));
+    }
+
+    @Test
+    void kryoRoundTrip() {
+        KryoCacheCodec codec = new KryoCacheCodec(User.class);
+
+        assertEquals(USERS.get(0), codec.decode(codec.encode(USERS.get(0)), User.class));
+        assertEquals(USERS, codec.decodeList(codec.encode(USERS), User.class));
+        assertEquals(Collections.emptyList(), codec.decodeList(codec.encode(Collections.emptyList()), User.class));
+    }
+
+    @Test
+    void kryoRegisterBySubclass() {
+        UserKryoCodec codec = new UserKryoCodec();
+
+        assertEquals(USERS, codec.decodeList(codec.encode(USERS), User.class));
+    }
+
+    @Test
+    void kryoRejectsUnregisteredOnWrite() {
+        KryoCacheCodec codec = new KryoCacheCodec(User.class);
+
+        assertThrows(IllegalArgumentException.class, () -> codec.encode(new Order(1L)));
+    }
+
+    @Test
+    void kryoRejectsUnregisteredOnRead() {
+        // redis里面的数据指向了读的一方没有注册的类型
+        byte[] bytes = new KryoCacheCodec(User.class, Order.class).encode(new Order(1L));
+        KryoCacheCodec codec = new KryoCacheCodec(User.class);
+
+        assertThrows(KryoException.class, () -> codec.decode(bytes, Order.class));
+    }
+
+    @Test
+    void kryoRejectsWrongType() {
+        KryoCacheCodec codec = new KryoCacheCodec(User.class, Order.class);
+
+        assertThrows(KryoException.class, () -> codec.decode(codec.encode(new Order(1L)), User.class));
+        assertThrows(KryoException.class, () -> codec.decodeList(codec.encode(USERS.get(0)), User.class));
+        assertThrows(KryoException.class, () -> codec.decodeList(codec.encode(Collections.singletonList(new Order(1L))), User.class));
+        // 要求Object的时候不校验
+        assertEquals(new Order(1L), codec.decode(codec.encode(new Order(1L)), Object.class));
+    }
+
+    @Test
+    void registryKeepsFirstAndRejectsConflict() {
+        CacheCodecRegistry registry = registry();
+
+        registry.register("test:codec:%s", KryoCacheCodec.class, 1024);
+        CacheCodec codec = registry.get("test:codec:%s");
+        registry.register("test:codec:%s", KryoCacheCodec.class, 1024);
+        assertSame(codec, registry.get("test:codec:%s"));
+
+        assertThrows(IllegalArgumentException.class, () -> registry.register("test:codec:%s", JsonCacheCodec.class, 1024));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("test:codec:%s", KryoCacheCodec.class, 0));
+        assertSame(codec, registry.get("test:codec:%s"));
+    }
+
+    @Test
+    void registryDefault() {
+        CacheCodecRegistry registry = registry();
+
+        registry.register("test:codec:default:%s", CacheCodec.class);
+        assertSame(registry.getDefault(), registry.get("test:codec:other:%s"));
+        assertSame(registry.getDefault(), registry.get(null));
+        CompressingCacheCodec codec = (CompressingCacheCodec) registry.get("test:codec:default:%s");
+        assertEquals(JsonCacheCodec.class, codec.getDelegate().getClass());
+    }
+
+    private static CacheCodecRegistry registry() {
+        CacheCodecRegistry registry = new CacheCodecRegistry();
+        ReflectUtil.setFieldValue(registry, "codecProvider", new StaticListableBeanFactory().getBeanProvider(CacheCodec.class));
+        ReflectUtil.setFieldValue(registry, "cacheMetrics", new CacheMetrics());
+        registry.init();
+        return registry;
+    }
+}
@@ -0,0 +1,166 @@
+package cn.someget.cache.codec;
+
+import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.someget.cache.utils.CacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static cn.someget.cache.utils.RedisKey.COMPRESS_HEADER;
+import static cn.someget.cache.utils.RedisKey.RAW_HEADER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 压缩: 超过阈值压缩, 没超过的原样写, 控制字符开头的转义, 坏掉的压缩数据读的时候报错, 按prefix上报压缩前后的字节数
+ *
+ * @author agent
+ * @date 2026-10-17 21:56
+ */
+class CompressingCacheCodecTest {
+
+    private static final CacheCodecTest.User LARGE = new CacheCodecTest.User(1L, StrUtil.repeat("cache-anno", 200));
+
+    private static final int LARGE_LENGTH = new JsonCacheCodec().encode(LARGE).length;
+
+    /**
+     * 原样读写字节, 用来写出以控制字符开头的值
+     */
+    public static class BytesCodec implements CacheCodec {
+
+        @Override
+        public byte[] encode(Object value) {
+            return (byte[]) value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <V> V decode(byte[] bytes, Class<V> clazz) {
+            return (V) bytes;
+        }
+
+        @Override
+        public <V> List<V> decodeList(byte[] bytes, Class<V> clazz) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    void compressAboveThreshold() {
+        CompressingCacheCodec codec = new CompressingCacheCodec("test", new JsonCacheCodec(), 64);
+
+        byte[] bytes = codec.encode(LARGE);
+        assertEquals(COMPRESS_HEADER, bytes[0]);
+        assertTrue(bytes.length < LARGE_LENGTH);
+        assertEquals(LARGE_LENGTH, ByteBuffer.wrap(bytes, 1, 4).getInt());
+        assertEquals(LARGE, codec.decode(bytes, CacheCodecTest.User.class));
+        assertEquals(1L, codec.compressedCount());
+        assertEquals(LARGE_LENGTH - bytes.length, codec.savedBytes());
+        assertEquals(LARGE_LENGTH, codec.rawBytes());
+        assertEquals(bytes.length, codec.compressedBytes());
+    }
+
+    @Test
+    void statsExposedPerPrefix() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        CacheMetrics cacheMetrics = new CacheMetrics();
+        ReflectUtil.setFieldValue(cacheMetrics, "enabled", true);
+        cacheMetrics.setBeanFactory(beanFactory);
+        CacheCodecRegistry registry = new CacheCodecRegistry();
+        ReflectUtil.setFieldValue(registry, "codecProvider", beanFactory.getBeanProvider(CacheCodec.class));
+        ReflectUtil.setFieldValue(registry, "cacheMetrics", cacheMetrics);
+        registry.init();
+
+        // 拿到MeterRegistry之前注册的prefix也会上报
+        registry.register("test:compress:a:%s", CacheCodec.class, 64);
+        cacheMetrics.afterSingletonsInstantiated();
+        registry.register("test:compress:b:%s", CacheCodec.class, 64);
+        registry.register("test:compress:c:%s", CacheCodec.class, 0);
+        int compressed = registry.get("test:compress:a:%s").encode(LARGE).length;
+
+        assertEquals(2, registry.getCompressingCodecs().size());
+        assertEquals(LARGE_LENGTH, meterRegistry.get("cache.anno.compress.bytes")
+                .tags("prefix", "test:compress:a:%s", "direction", "in").functionCounter().count());
+        assertEquals(compressed, meterRegistry.get("cache.anno.compress.bytes")
+                .tags("prefix", "test:compress:a:%s", "direction", "out").functionCounter().count());
+        assertEquals(1D, meterRegistry.get("cache.anno.compress.count")
+                .tags("prefix", "test:compress:a:%s").functionCounter().count());
+        assertEquals(0D, meterRegistry.get("cache.anno.compress.count")
+                .tags("prefix", "test:compress:b:%s").functionCounter().count());
+        assertTrue(meterRegistry.find("cache.anno.compress.count").tags("prefix", "test:compress:c:%s").meters().isEmpty());
+    }
+
+    @Test
+    void rawBelowThreshold() {
+        CompressingCacheCodec codec = new CompressingCacheCodec("test", new JsonCacheCodec(), 64);
+
+        CacheCodecTest.User small = new CacheCodecTest.User(1L, "a");
+        assertArrayEquals(new JsonCacheCodec().encode(small), codec.encode(small));
+        assertEquals(small, codec.decode(codec.encode(small), CacheCodecTest.User.class));
+        assertEquals(0L, codec.compressedCount());
+        assertEquals(1D, codec.ratio());
+    }
+
+    @Test
+    void readCompressedWhenDisabled() {
+        byte[] bytes = new CompressingCacheCodec("test", new JsonCacheCodec(), 64).encode(LARGE);
+        CompressingCacheCodec disabled = new CompressingCacheCodec("test", new JsonCacheCodec(), 0);
+
+        assertEquals(LARGE, disabled.decode(bytes, CacheCodecTest.User.class));
+        assertEquals(LARGE, disabled.decode(disabled.encode(LARGE), CacheCodecTest.User.class));
+    }
+
+    @Test
+    void escapeControlChar() {
+        CompressingCacheCodec codec = new CompressingCacheCodec("test", new BytesCodec(), 0);
+        byte[] value = {COMPRESS_HEADER, 'a'};
+
+        byte[] bytes = codec.encode(value);
+        assertEquals(RAW_HEADER, bytes[0]);
+        assertArrayEquals(value, codec.decode(bytes, byte[].class));
+    }
+
+    @Test
+    void rejectShortValue() {
+        CompressingCacheCodec codec = new CompressingCacheCodec("test", new JsonCacheCodec(), 0);
+
+        assertThrows(IllegalStateException.class, () -> codec.decode(new byte[]{COMPRESS_HEADER, 0, 0}, CacheCodecTest.User.class));
+    }
+
+    @Test
+    void rejectIllegalLength() {
+        CompressingCacheCodec codec = new CompressingCacheCodec("test", new JsonCacheCodec(), 64);
+        byte[] bytes = codec.encode(LARGE);
+
+        byte[] negative = bytes.clone();
+        ByteBuffer.wrap(negative, 1, 4).putInt(-1);
+        assertThrows(IllegalStateException.class, () -> codec.decode(negative, CacheCodecTest.User.class));
+
+        // 长度头远远超过压缩数据能解压出来的大小, 不能按照长度头分配数组
+        byte[] huge = bytes.clone();
+        ByteBuffer.wrap(huge, 1, 4).putInt(Integer.MAX_VALUE);
+        assertThrows(IllegalStateException.class, () -> codec.decode(huge, CacheCodecTest.User.class));
+    }
+
+    @Test
+    void rejectTruncatedValue() {
+        CompressingCacheCodec codec = new CompressingCacheCodec("test", new JsonCacheCodec(), 64);
+        byte[] bytes = codec.encode(LARGE);
+
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(IllegalStateException.class, () -> codec.decode(truncated, CacheCodecTest.User.class));
+
+        byte[] longer = bytes.clone();
+        ByteBuffer.wrap(longer, 1, 4).putInt(LARGE_LENGTH + 1);
+        assertThrows(IllegalStateException.class, () -> codec.decode(longer, CacheCodecTest.User.class));
+    }
+}
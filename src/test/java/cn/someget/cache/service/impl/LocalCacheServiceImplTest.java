@@ -0,0 +1,157 @@
+package cn.someget.cache.service.impl;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.service.CacheService;
+import cn.someget.cache.utils.LocalCache;
+import cn.someget.cache.utils.NullValue;
+import cn.someget.cache.utils.RedisRepository;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static cn.someget.cache.utils.RedisKey.EMPTY_COLLECTION;
+import static cn.someget.cache.utils.RedisKey.EMPTY_OBJECT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地缓存读到redis里面的空缓存时, 和切面写本地缓存一样按分区的配置决定放不放:
+ * 没有开启空缓存, 或者本地缓存比空缓存活得久的分区不放
+ *
+ * @author agent
+ * @date 2026-10-18 00:10
+ */
+class LocalCacheServiceImplTest {
+
+    private static final String SKIP = "test:local:skip:%s";
+
+    private static final String KEEP = "test:local:keep:%s";
+
+    private static final String NO_MISS = "test:local:nomiss:%s";
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    /**
+     * 只是为了注册本地缓存分区
+     */
+    public static class LocalService {
+
+        @Cache(prefix = SKIP, usingLocalCache = true, localExpire = 60L, missExpire = 10L)
+        public User skip(Long id) {
+            return null;
+        }
+
+        @Cache(prefix = KEEP, usingLocalCache = true, localExpire = 3L, missExpire = 60L)
+        public User keep(Long id) {
+            return null;
+        }
+
+        @Cache(prefix = NO_MISS, usingLocalCache = true)
+        public List<User> noMiss(Long id) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static CacheService localCacheService;
+
+    private static LocalCache localCache;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), LocalService.class);
+        localCacheService = context.getBean("defaultLocalCacheService", CacheService.class);
+        localCache = context.getBean(LocalCache.class);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void negativeSkippedWhenLocalOutlivesMiss() {
+        String key = String.format(SKIP, 1);
+        redisRepository.set(key, 10L, EMPTY_OBJECT);
+
+        assertNull(localCacheService.getObjectFromCache(key, User.class, SKIP));
+        assertNull(localCache.getIfPresent(SKIP, key));
+
+        // 正常的值照常放
+        String found = String.format(SKIP, 2);
+        redisRepository.set(found, 60L, new User(2L, "a"));
+        assertEquals(new User(2L, "a"), localCacheService.getObjectFromCache(found, User.class, SKIP));
+        assertEquals(new User(2L, "a"), localCache.getIfPresent(SKIP, found));
+    }
+
+    @Test
+    void negativeKeptWhenMissOutlivesLocal() {
+        String key = String.format(KEEP, 1);
+        redisRepository.set(key, 60L, EMPTY_OBJECT);
+
+        assertNull(localCacheService.getObjectFromCache(key, User.class, KEEP));
+        assertSame(NullValue.INSTANCE, localCache.getIfPresent(KEEP, key));
+    }
+
+    @Test
+    void batchSkipsNegative() {
+        String skipped = String.format(SKIP, 3);
+        String found = String.format(SKIP, 4);
+        redisRepository.set(skipped, 10L, EMPTY_OBJECT);
+        redisRepository.set(found, 60L, new User(4L, "b"));
+
+        Map<Long, User> result = localCacheService.getObjectFromCache(Arrays.asList(3L, 4L), User.class, SKIP, SKIP);
+        assertEquals(Collections.singletonMap(4L, new User(4L, "b")), result);
+        assertNull(localCache.getIfPresent(SKIP, skipped));
+        assertEquals(new User(4L, "b"), localCache.getIfPresent(SKIP, found));
+
+        String kept = String.format(KEEP, 3);
+        redisRepository.set(kept, 60L, EMPTY_OBJECT);
+        assertTrue(localCacheService.getObjectFromCache(Collections.singletonList(3L), User.class, KEEP, KEEP).isEmpty());
+        assertSame(NullValue.INSTANCE, localCache.getIfPresent(KEEP, kept));
+    }
+
+    @Test
+    void listSkipsNegativeWithoutMissCache() {
+        String key = String.format(NO_MISS, 1);
+        // 别的方法(或者别的节点的老版本)写了空集合缓存
+        redisRepository.set(key, 60L, EMPTY_COLLECTION);
+
+        assertTrue(localCacheService.getObjectListFromCache(key, User.class, NO_MISS).isEmpty());
+        assertNull(localCache.getIfPresent(NO_MISS, key));
+
+        Map<Long, List<User>> result = localCacheService.getObjectListFromCache(
+                Collections.singletonList(1L), User.class, NO_MISS, NO_MISS);
+        assertTrue(result.get(1L).isEmpty());
+        assertNull(localCache.getIfPresent(NO_MISS, key));
+    }
+}
@@ -0,0 +1,120 @@
+package cn.someget.cache.service.impl;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.codec.KryoCacheCodec;
+import cn.someget.cache.service.CacheService;
+import com.esotericsoftware.kryo.Kryo;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 只传prefix的批量查询按prefix找序列化方式, 注解上配置了kryo的prefix也能读出来
+ *
+ * @author agent
+ * @date 2026-10-18 01:05
+ */
+class PrefixLookupCodecTest {
+
+    private static final String USER = "test:kryo:user:%s";
+
+    private static final String FRIENDS = "test:kryo:friends:%s";
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    /**
+     * 注册了User的kryo
+     */
+    public static class UserKryoCodec extends KryoCacheCodec {
+
+        @Override
+        protected void register(Kryo kryo) {
+            super.register(kryo);
+            kryo.register(User.class);
+        }
+    }
+
+    /**
+     * 用kryo写缓存的服务
+     */
+    public static class KryoService {
+
+        @Cache(prefix = USER, codec = UserKryoCodec.class, usingLocalCache = true)
+        public Map<Long, User> users(List<Long> ids) {
+            Map<Long, User> result = new HashMap<>(ids.size());
+            ids.forEach(id -> result.put(id, new User(id, "user")));
+            return result;
+        }
+
+        @Cache(prefix = FRIENDS, codec = UserKryoCodec.class, usingLocalCache = true)
+        public Map<Long, List<User>> friends(List<Long> ids) {
+            Map<Long, List<User>> result = new HashMap<>(ids.size());
+            ids.forEach(id -> result.put(id, Collections.singletonList(new User(id, "friend"))));
+            return result;
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), KryoService.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void redisLookupUsesPrefixCodec() {
+        KryoService service = context.getBean(KryoService.class);
+        service.users(Arrays.asList(1L, 2L));
+        service.friends(Arrays.asList(1L, 2L));
+        CacheService redisCacheService = context.getBean("defaultRedisCacheService", CacheService.class);
+
+        assertEquals(service.users(Arrays.asList(1L, 2L)),
+                redisCacheService.getObjectFromCache(Arrays.asList(1L, 2L), User.class, USER));
+        assertEquals(service.friends(Arrays.asList(1L, 2L)),
+                redisCacheService.getObjectListFromCache(Arrays.asList(1L, 2L), User.class, FRIENDS));
+    }
+
+    @Test
+    void localLookupUsesPrefixCodec() {
+        KryoService service = context.getBean(KryoService.class);
+        service.users(Arrays.asList(3L, 4L));
+        service.friends(Arrays.asList(3L, 4L));
+        CacheService localCacheService = context.getBean("defaultLocalCacheService", CacheService.class);
+
+        assertEquals(service.users(Arrays.asList(3L, 4L)),
+                localCacheService.getObjectFromCache(Arrays.asList(3L, 4L), User.class, USER));
+        assertEquals(service.friends(Arrays.asList(3L, 4L)),
+                localCacheService.getObjectListFromCache(Arrays.asList(3L, 4L), User.class, FRIENDS));
+    }
+}
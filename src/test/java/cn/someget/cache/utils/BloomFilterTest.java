@@ -0,0 +1,143 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 布隆过滤器: 准备好之后一定不存在的id不查redis也不执行方法; 开启redis同步时别的节点放进去的id不会被误杀
+ *
+ * @author agent
+ * @date 2026-10-18 04:10
+ */
+class BloomFilterTest {
+
+    private static final String USER = "test:bloom:user:%s";
+
+    private static final long TIMEOUT = 5000L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    /**
+     * 两个节点共用一份调用记录
+     */
+    public static class BloomService {
+
+        private static final List<List<Long>> CALLS = new CopyOnWriteArrayList<>();
+
+        @Cache(prefix = USER, missExpire = 60L, bloomFilter = true, bloomExpectedInsertions = 1000L)
+        public Map<Long, User> find(List<Long> ids) {
+            CALLS.add(new ArrayList<>(ids));
+            Map<Long, User> result = new HashMap<>();
+            ids.stream().filter(id -> id < 900L).forEach(id -> result.put(id, new User(id, "db")));
+            return result;
+        }
+
+        public List<Long> lastCall() {
+            return CALLS.isEmpty() ? null : CALLS.get(CALLS.size() - 1);
+        }
+
+        public int calls() {
+            return CALLS.size();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext node1;
+
+    private static CacheTestContext node2;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cache-anno.bloom.redis-mirror", "true");
+        properties.put("cache-anno.bloom.reload-interval", "1");
+        node1 = CacheTestContext.start(redisServer, properties, BloomService.class);
+        node2 = CacheTestContext.start(redisServer, properties, BloomService.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        node1.close();
+        node2.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void noFalseNegatives() {
+        BloomFilter bloomFilter = new BloomFilter(1000L, 0.01);
+        LongStream.range(0, 1000).forEach(id -> bloomFilter.put(bloomFilter.offsets(id)));
+
+        assertTrue(LongStream.range(0, 1000).allMatch(id -> bloomFilter.mightContain(bloomFilter.offsets(id))));
+        long falsePositives = LongStream.range(1000, 11000).filter(id -> bloomFilter.mightContain(bloomFilter.offsets(id))).count();
+        assertTrue(falsePositives < 300L, "false positives " + falsePositives);
+    }
+
+    @Test
+    void absentIdsSkipRedisAndMethod() throws InterruptedException {
+        BloomService service = node1.getBean(BloomService.class);
+        BloomFilterRegistry bloomFilters = node1.getBean(BloomFilterRegistry.class);
+        RedisRepository redisRepository = node1.getBean(RedisRepository.class);
+
+        // 还没准备好的时候不过滤, 不存在的id照常写空缓存
+        service.find(Arrays.asList(1L, 901L));
+        assertEquals(Arrays.asList(1L, 901L), service.lastCall());
+        assertTrue(redisRepository.getRaw(String.format(USER, 901L)) != null);
+
+        bloomFilters.putAll(USER, LongStream.range(0, 100).boxed().collect(Collectors.toList()));
+        bloomFilters.markReady(USER);
+        assertTrue(bloomFilters.isReady(USER));
+
+        Map<Long, User> result = service.find(Arrays.asList(10L, 11L, 999L));
+        assertEquals(Arrays.asList(10L, 11L), service.lastCall());
+        assertEquals(2, result.size());
+        assertFalse(result.containsKey(999L));
+        // 被过滤掉的id不写空缓存
+        assertNull(redisRepository.getRaw(String.format(USER, 999L)));
+
+        // 全部被过滤掉的话不执行方法
+        int calls = service.calls();
+        assertTrue(service.find(Collections.singletonList(998L)).isEmpty());
+        assertEquals(calls, service.calls());
+
+        // 别的节点合并redis里面的bitmap之后也开始过滤, 本节点后来放进去的id去redis确认, 不会被误杀
+        BloomFilterRegistry otherFilters = node2.getBean(BloomFilterRegistry.class);
+        assertTrue(CacheTestContext.await(() -> otherFilters.isReady(USER), TIMEOUT));
+        bloomFilters.put(USER, 500L);
+        Map<Long, User> other = node2.getBean(BloomService.class).find(Arrays.asList(500L, 997L));
+        assertEquals(Collections.singletonList(500L), service.lastCall());
+        assertEquals(Collections.singleton(500L), other.keySet());
+    }
+}
@@ -0,0 +1,153 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import com.github.fppt.jedismock.RedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static cn.someget.cache.utils.RedisKey.INVALIDATION_BATCH_SIZE;
+import static cn.someget.cache.utils.RedisKey.INVALIDATION_CHANNEL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地缓存失效的广播: 两个容器连同一个redis替身模拟两个节点, 一段时间里面的多次失效只发一条消息
+ *
+ * @author agent
+ * @date 2026-10-17 22:08
+ */
+class CacheInvalidatorTest {
+
+    private static final String REGION = "test:invalidation:%s";
+
+    private static final long BATCH_INTERVAL = 200L;
+
+    private static final long TIMEOUT = 5000L;
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext nodeA;
+
+    private static CacheTestContext nodeB;
+
+    private static RedisMessageListenerContainer listener;
+
+    /**
+     * 频道上收到的消息
+     */
+    private static final BlockingQueue<String> MESSAGES = new LinkedBlockingQueue<>();
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cache-anno.invalidation.enabled", "true");
+        properties.put("cache-anno.invalidation.batch-interval", String.valueOf(BATCH_INTERVAL));
+        nodeA = CacheTestContext.start(redisServer, properties);
+        nodeB = CacheTestContext.start(redisServer, properties);
+        for (CacheTestContext node : new CacheTestContext[]{nodeA, nodeB}) {
+            node.getBean(LocalCache.class).register(REGION, LocalCacheSpec.DEFAULT);
+        }
+
+        listener = new RedisMessageListenerContainer();
+        listener.setConnectionFactory(nodeA.getBean(RedisRepository.class).getConnectionFactory());
+        listener.addMessageListener((message, pattern) -> MESSAGES.add(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+        listener.afterPropertiesSet();
+        listener.start();
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        listener.destroy();
+        nodeA.close();
+        nodeB.close();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void clear() throws InterruptedException {
+        // 等上一个用例的广播发完
+        TimeUnit.MILLISECONDS.sleep(BATCH_INTERVAL * 2);
+        MESSAGES.clear();
+    }
+
+    @Test
+    void invalidateOtherNodes() throws InterruptedException {
+        LocalCache cacheA = nodeA.getBean(LocalCache.class);
+        LocalCache cacheB = nodeB.getBean(LocalCache.class);
+        cacheA.put(REGION, "test:invalidation:1", "a");
+        cacheB.put(REGION, "test:invalidation:1", "b");
+
+        nodeA.getBean(CacheInvalidator.class).invalidateLocal(REGION, Collections.singletonList("test:invalidation:1"));
+        assertNull(cacheA.getIfPresent(REGION, "test:invalidation:1"));
+        // 失效之后本节点马上又写入了新值, 收到自己的广播不能把它删掉
+        cacheA.put(REGION, "test:invalidation:1", "a2");
+
+        assertTrue(CacheTestContext.await(() -> cacheB.getIfPresent(REGION, "test:invalidation:1") == null, TIMEOUT));
+        assertNotNull(MESSAGES.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("a2", cacheA.getIfPresent(REGION, "test:invalidation:1"));
+    }
+
+    @Test
+    void evictRegionOnOtherNodes() throws InterruptedException {
+        LocalCache cacheB = nodeB.getBean(LocalCache.class);
+        cacheB.put(REGION, "test:invalidation:2", "b");
+        cacheB.put(REGION, "test:invalidation:3", "b");
+
+        nodeA.getBean(CacheInvalidator.class).evictRegion(REGION);
+
+        assertTrue(CacheTestContext.await(() -> cacheB.getAllPresent(REGION, Arrays.asList(
+                "test:invalidation:2", "test:invalidation:3")).isEmpty(), TIMEOUT));
+    }
+
+    @Test
+    void burstIsOneMessage() throws InterruptedException {
+        CacheInvalidator invalidator = nodeA.getBean(CacheInvalidator.class);
+        for (int i = 0; i < 10; i++) {
+            invalidator.invalidateLocal(REGION, Collections.singletonList("test:invalidation:burst:" + i));
+        }
+        // 重复的key只发一次
+        invalidator.invalidateLocal(REGION, Collections.singletonList("test:invalidation:burst:0"));
+
+        String message = MESSAGES.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(message);
+        assertEquals(1 + 10, message.split("\n").length);
+        assertNull(MESSAGES.poll(BATCH_INTERVAL * 2, TimeUnit.MILLISECONDS));
+        assertEquals(0, invalidator.pending());
+    }
+
+    @Test
+    void largeBatchIsSplit() throws InterruptedException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < INVALIDATION_BATCH_SIZE + 1; i++) {
+            keys.add("test:invalidation:large:" + i);
+        }
+        nodeA.getBean(CacheInvalidator.class).invalidateLocal(REGION, keys);
+
+        String first = MESSAGES.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        String second = MESSAGES.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(1 + INVALIDATION_BATCH_SIZE, first.split("\n").length);
+        assertEquals(1 + 1, second.split("\n").length);
+    }
+}
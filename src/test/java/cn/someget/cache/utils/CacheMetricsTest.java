@@ -0,0 +1,138 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 指标: 容器里面有MeterRegistry的时候上报各级缓存的命中、redis命令和执行方法的耗时、本地缓存的大小; 没有的时候不上报
+ *
+ * @author agent
+ * @date 2026-10-18 04:20
+ */
+class CacheMetricsTest {
+
+    private static final String USER = "test:metrics:user:%s";
+
+    private static final String FAIL = "test:metrics:fail:%s";
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    @Configuration
+    public static class MetricsConfig {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    public static class MetricsService {
+
+        @Cache(prefix = USER, usingLocalCache = true, localExpire = 60L)
+        public User find(Long id) {
+            return new User(id, "db");
+        }
+
+        @Cache(prefix = FAIL)
+        public User fail(Long id) {
+            throw new IllegalStateException("db down");
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static MeterRegistry registry;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), MetricsConfig.class, MetricsService.class);
+        registry = context.getBean(MeterRegistry.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    private static double gets(String tier, String result) {
+        return registry.get("cache.anno.gets").tag("prefix", USER).tag("tier", tier).tag("result", result).counter().count();
+    }
+
+    private static long loads(String prefix, String outcome) {
+        return registry.get("cache.anno.loader").tag("prefix", prefix).tag("outcome", outcome).timer().count();
+    }
+
+    @Test
+    void tiersAreCounted() {
+        MetricsService service = context.getBean(MetricsService.class);
+        assertTrue(context.getBean(CacheMetrics.class).isEnabled());
+
+        service.find(1L);
+        assertEquals(1.0, gets("local", "miss"));
+        assertEquals(1.0, gets("redis", "miss"));
+        assertEquals(1L, loads(USER, "success"));
+
+        // 第二次命中本地缓存, 不再查redis也不执行方法
+        service.find(1L);
+        assertEquals(1.0, gets("local", "hit"));
+        assertEquals(1.0, gets("redis", "miss"));
+        assertEquals(0.0, gets("redis", "hit"));
+        assertEquals(1L, loads(USER, "success"));
+
+        assertTrue(registry.get("cache.anno.redis").tag("operation", "get").tag("outcome", "success").timer().count() > 0);
+        // 本地缓存分区的caffeine指标
+        assertNotNull(registry.get("cache.size").tag("cache", USER).gauge());
+    }
+
+    @Test
+    void loaderErrorsAreTimed() {
+        MetricsService service = context.getBean(MetricsService.class);
+
+        assertThrows(IllegalStateException.class, () -> service.fail(1L));
+        assertEquals(1L, loads(FAIL, "error"));
+    }
+
+    @Test
+    void disabledWithoutRegistry() throws IOException {
+        RedisServer otherRedis = CacheTestContext.startRedis();
+        try (CacheTestContext other = CacheTestContext.start(otherRedis, Collections.emptyMap(), MetricsService.class)) {
+            CacheMetrics cacheMetrics = other.getBean(CacheMetrics.class);
+            assertFalse(cacheMetrics.isEnabled());
+            assertEquals(0L, cacheMetrics.start());
+        } finally {
+            otherRedis.stop();
+        }
+    }
+}
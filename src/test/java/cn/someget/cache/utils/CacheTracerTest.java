@@ -0,0 +1,108 @@
+package cn.someget.cache.utils;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import cn.someget.cache.CacheTestContext;
+import com.github.fppt.jedismock.RedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * redis命令的跟踪: 按前缀采样打印, 慢操作放进环形缓冲区, 批量的key和太长的key截断
+ *
+ * @author agent
+ * @date 2026-10-18 04:30
+ */
+class CacheTracerTest {
+
+    private static final long SLOW_THRESHOLD = 50L;
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static CacheTracer tracer;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cache-anno.trace.sample-rate", "0");
+        properties.put("cache-anno.trace.sample-rates", "test:trace:=1, test:trace:off:=0");
+        properties.put("cache-anno.trace.slow-threshold", String.valueOf(SLOW_THRESHOLD));
+        properties.put("cache-anno.trace.slow-buffer-size", "3");
+        properties.put("cache-anno.trace.max-keys", "2");
+        properties.put("cache-anno.trace.max-key-length", "12");
+        context = CacheTestContext.start(redisServer, properties);
+        tracer = context.getBean(CacheTracer.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    /**
+     * 假装已经执行了millis毫秒的开始时间
+     */
+    private static long startedAgo(long millis) {
+        return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    void describeTruncates() {
+        assertEquals("test:trace:a", tracer.describe("test:trace:a"));
+        assertEquals("test:trace:a...", tracer.describe("test:trace:abc"));
+        assertEquals("[a, b, ...(2 more)]", tracer.describe(Arrays.asList("a", "b", "c", "d")));
+    }
+
+    @Test
+    void slowOperationsKeepLatest() {
+        tracer.trace(CacheMetrics.RedisOp.GET, "fast", -1L, System.nanoTime(), false);
+        for (int i = 0; i < 5; i++) {
+            tracer.trace(CacheMetrics.RedisOp.MGET, Arrays.asList("slow" + i, "x"), 10L, startedAgo(SLOW_THRESHOLD * 2), i == 4);
+        }
+
+        List<CacheTracer.SlowOperation> operations = tracer.slowOperations();
+        // 只保留最近的3条, 最新的在前面, 快的不记录
+        assertEquals(Arrays.asList("[slow4, x]", "[slow3, x]", "[slow2, x]"),
+                operations.stream().map(CacheTracer.SlowOperation::getKeys).collect(Collectors.toList()));
+        assertTrue(operations.get(0).isError());
+        assertEquals(2, operations.get(0).getCount());
+        assertTrue(operations.get(0).getCost() >= TimeUnit.MILLISECONDS.toMicros(SLOW_THRESHOLD));
+        assertEquals(3, tracer.dump().split("\n").length);
+    }
+
+    @Test
+    void sampledByLongestPrefix() {
+        Logger logger = (Logger) LoggerFactory.getLogger(CacheTracer.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            tracer.trace(CacheMetrics.RedisOp.GET, "test:trace:on", -1L, System.nanoTime(), false);
+            tracer.trace(CacheMetrics.RedisOp.GET, "test:trace:off:1", -1L, System.nanoTime(), false);
+            tracer.trace(CacheMetrics.RedisOp.GET, "other", -1L, System.nanoTime(), false);
+        } finally {
+            logger.detachAppender(appender);
+        }
+
+        assertEquals(1, appender.list.size());
+        assertTrue(appender.list.get(0).getFormattedMessage().contains("test:trace:o..."), appender.list.get(0).getFormattedMessage());
+    }
+}
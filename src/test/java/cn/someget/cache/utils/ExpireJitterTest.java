@@ -0,0 +1,121 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 过期时间的随机抖动: 抖动的范围, 一起写入的一批key(包括空缓存)过期时间分散开
+ *
+ * @author agent
+ * @date 2026-10-18 04:00
+ */
+class ExpireJitterTest {
+
+    private static final int SAMPLES = 200;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    public static class JitterService {
+
+        /**
+         * 只返回偶数id, 奇数id写空缓存
+         */
+        @Cache(prefix = "test:jitter:user:%s", expire = 100L, missExpire = 10L, jitter = 50L, jitterPercent = 100)
+        public Map<Long, User> find(List<Long> ids) {
+            Map<Long, User> result = new HashMap<>();
+            ids.stream().filter(id -> id % 2 == 0).forEach(id -> result.put(id, new User(id, "db")));
+            return result;
+        }
+    }
+
+    private static Set<Long> sample(ExpireJitter jitter, long expire) {
+        return IntStream.range(0, SAMPLES).mapToObj(i -> jitter.apply(expire)).collect(Collectors.toSet());
+    }
+
+    @Test
+    void noneKeepsExpire() {
+        assertSame(ExpireJitter.NONE, ExpireJitter.of(0L, 0));
+        assertEquals(100L, ExpireJitter.NONE.apply(100L));
+        // 不过期的不抖动
+        assertEquals(0L, ExpireJitter.of(10L, 10).apply(0L));
+    }
+
+    @Test
+    void illegalJitterRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ExpireJitter.of(-1L, 0));
+        assertThrows(IllegalArgumentException.class, () -> ExpireJitter.of(0L, 101));
+    }
+
+    @Test
+    void secondsBoundedByExpire() {
+        Set<Long> values = sample(ExpireJitter.of(10L, 0), 100L);
+        assertTrue(values.stream().allMatch(value -> value >= 100L && value <= 110L), "values " + values);
+        assertTrue(values.size() > 1);
+
+        // 固定秒数不超过过期时间本身, 最多翻倍
+        Set<Long> small = sample(ExpireJitter.of(100L, 0), 5L);
+        assertTrue(small.stream().allMatch(value -> value >= 5L && value <= 10L), "values " + small);
+    }
+
+    @Test
+    void percentOfExpire() {
+        Set<Long> values = sample(ExpireJitter.of(0L, 20), 100L);
+        assertTrue(values.stream().allMatch(value -> value >= 100L && value <= 120L), "values " + values);
+        assertTrue(values.size() > 1);
+
+        // 同时设置取大的范围
+        Set<Long> both = sample(ExpireJitter.of(5L, 20), 100L);
+        assertTrue(both.stream().anyMatch(value -> value > 105L), "values " + both);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchWriteSpreadsTtl() throws IOException {
+        RedisServer redisServer = CacheTestContext.startRedis();
+        try (CacheTestContext context = CacheTestContext.start(redisServer, Collections.emptyMap(), JitterService.class)) {
+            List<Long> ids = LongStream.rangeClosed(1, 40).boxed().collect(Collectors.toList());
+            context.getBean(JitterService.class).find(ids);
+
+            RedisTemplate<String, Object> redisTemplate = context.getBean("redisTemplate", RedisTemplate.class);
+            Map<Boolean, Set<Long>> ttls = ids.stream().collect(Collectors.partitioningBy(id -> id % 2 == 0,
+                    Collectors.mapping(id -> redisTemplate.getExpire("test:jitter:user:" + id), Collectors.toSet())));
+            // 查到的数据: 100秒加上[0, 100]秒
+            assertTrue(ttls.get(true).stream().allMatch(ttl -> ttl > 90L && ttl <= 200L), "ttls " + ttls);
+            assertTrue(ttls.get(true).size() > 1, "ttls " + ttls);
+            // 空缓存: 10秒加上[0, 10]秒
+            assertTrue(ttls.get(false).stream().allMatch(ttl -> ttl > 0L && ttl <= 20L), "ttls " + ttls);
+            assertTrue(ttls.get(false).size() > 1, "ttls " + ttls);
+        } finally {
+            redisServer.stop();
+        }
+    }
+}
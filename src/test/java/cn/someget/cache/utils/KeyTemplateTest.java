@@ -0,0 +1,204 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.anno.CacheEvict;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeansException;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * key模板: 占位符的解析, 退回String.format, 批量拼key, 只传prefix时的#{name}和同一个prefix的不同拼法
+ *
+ * @author agent
+ * @date 2026-10-17 22:00
+ */
+class KeyTemplateTest {
+
+    private static final String[] NAMES = {"user", "type"};
+
+    @Data
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    /**
+     * 只是用来拿参数名
+     */
+    public static class Methods {
+
+        public User find(User user) {
+            return user;
+        }
+
+        public void evict(User user) {
+        }
+
+        public User findByType(String type, User user) {
+            return user;
+        }
+    }
+
+    /**
+     * 同一个prefix在两个方法上引用的参数位置不一样
+     */
+    public static class ConflictService {
+
+        @Cache(prefix = "test:conflict:#{id}")
+        public User find(Long id) {
+            return null;
+        }
+
+        @CacheEvict(prefix = "test:conflict:#{id}")
+        public void update(String name, Long id) {
+        }
+    }
+
+    @Test
+    void positional() {
+        assertEquals("user:1:2", KeyTemplate.compile("user:%s:%d", null).build(new Object[]{1L, 2}));
+        assertEquals("100%:1", KeyTemplate.compile("100%%:%s", null).build(new Object[]{1L}));
+        assertEquals("user:null", KeyTemplate.compile("user:%s", null).build(new Object[]{null}));
+    }
+
+    @Test
+    void named() {
+        Object[] args = {new User(1L, "a"), "vip"};
+
+        assertEquals("user:vip:1", KeyTemplate.compile("user:#{type}:#{user.id}", NAMES).build(args));
+        assertEquals("user:vip:a", KeyTemplate.compile("user:#{1}:#{0.name}", null).build(args));
+        assertEquals("user:vip", KeyTemplate.compile("user:#{ type }", NAMES).build(args));
+    }
+
+    @Test
+    void firstReplaced() {
+        KeyTemplate template = KeyTemplate.compile("user:#{type}:#{user.id}", NAMES);
+
+        assertEquals("user:vip:2", template.build(new Object[]{new User(1L, "a"), "vip"}, new User(2L, "b")));
+        assertEquals("user:2", KeyTemplate.compile("user:%s", null).build(new Object[]{1L}, 2L));
+    }
+
+    @Test
+    void fallbackToFormat() {
+        KeyTemplate template = KeyTemplate.compile("order:%05d:%s", null);
+
+        assertEquals("order:00012:a", template.build(new Object[]{12, "a"}));
+        assertEquals("order:00034:a", template.build(new Object[]{12, "a"}, 34));
+        assertEquals("order:00012", KeyTemplate.compile("order:%05d", null).build(new Object[0], 12));
+    }
+
+    @Test
+    void illegalTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> KeyTemplate.compile("order:%05d:#{0}", null));
+        assertThrows(IllegalArgumentException.class, () -> KeyTemplate.compile("user:#{type", NAMES));
+        assertThrows(IllegalArgumentException.class, () -> KeyTemplate.compile("user:#{other}", NAMES));
+        assertThrows(IllegalArgumentException.class, () -> KeyTemplate.compile("user:#{type}", null));
+        assertThrows(IllegalArgumentException.class, () -> KeyTemplate.compile("user:%s:%s", null).build(new Object[]{1L}));
+    }
+
+    @Test
+    void buildEach() {
+        KeyTemplate template = KeyTemplate.compile("user:%s", null);
+
+        Map<Long, String> expected = new LinkedHashMap<>();
+        expected.put(2L, "user:2");
+        expected.put(1L, "user:1");
+        Map<Long, String> keys = template.buildEach(Arrays.asList(2L, null, 1L, 2L));
+        assertEquals(expected, keys);
+        assertEquals(Arrays.asList(2L, 1L), Arrays.asList(keys.keySet().toArray()));
+
+        assertEquals("user:vip:1", KeyTemplate.compile("user:#{type}:#{user}", NAMES)
+                .buildEach(Arrays.asList(1L), new Object[]{null, "vip"}).get(1L));
+    }
+
+    @Test
+    void append() {
+        KeyTemplate template = KeyTemplate.compile("user:%s", null);
+
+        assertEquals("user:1:lock", template.append(":lock").build(new Object[]{1L}));
+        assertEquals("user:1", template.build(new Object[]{1L}));
+        assertSame(template, template.append(""));
+        assertEquals("user:%s:lock", template.append(":lock").toString());
+    }
+
+    @Test
+    void ofNeedsDeclare() throws NoSuchMethodException {
+        KeyTemplateRegistry registry = new KeyTemplateRegistry();
+        assertThrows(IllegalArgumentException.class, () -> registry.of("test:of:#{user.id}"));
+
+        KeyTemplate declared = registry.declare(Methods.class.getMethod("find", User.class), "test:of:#{user.id}");
+        assertSame(declared, registry.of("test:of:#{user.id}"));
+        assertEquals("test:of:1", registry.of("test:of:#{user.id}").buildEach(Arrays.asList(new User(1L, "a")))
+                .values().iterator().next());
+
+        // 同一个方法只编译一次, 同样拼法的其他方法不影响只传prefix时用的模板
+        assertSame(declared, registry.declare(Methods.class.getMethod("find", User.class), "test:of:#{user.id}"));
+        registry.declare(Methods.class.getMethod("evict", User.class), "test:of:#{user.id}");
+        assertSame(declared, registry.of("test:of:#{user.id}"));
+    }
+
+    @Test
+    void conflictingDeclarationsRejected() throws NoSuchMethodException {
+        KeyTemplateRegistry registry = new KeyTemplateRegistry();
+        registry.declare(Methods.class.getMethod("find", User.class), "test:of:#{user.id}");
+
+        // user在这个方法里面是第二个参数, 只传prefix的时候不知道该取哪个
+        Method other = Methods.class.getMethod("findByType", String.class, User.class);
+        assertThrows(IllegalArgumentException.class, () -> registry.declare(other, "test:of:#{user.id}"));
+        assertThrows(IllegalArgumentException.class, () -> registry.declare(other, " "));
+    }
+
+    @Test
+    void conflictFailsAtStartup() throws IOException {
+        RedisServer redisServer = CacheTestContext.startRedis();
+        try {
+            assertThrows(BeansException.class,
+                    () -> CacheTestContext.start(redisServer, Collections.emptyMap(), ConflictService.class).close());
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    void normalized() {
+        assertEquals("user:#{1}:#{0.id}", KeyTemplate.compile("user:#{type}:#{user.id}", new String[]{"user", "type"}).getNormalized());
+        assertEquals("user:#{0}:#{1}%%", KeyTemplate.compile("user:%s:#{1}%%", null).getNormalized());
+        assertEquals("order:%05d", KeyTemplate.compile("order:%05d", null).getNormalized());
+        assertEquals("user:#{0}:v1", KeyTemplate.compile("user:%s", null).append(":v1").getNormalized());
+    }
+
+    @Test
+    void ofCachesPositional() {
+        KeyTemplateRegistry registry = new KeyTemplateRegistry();
+        assertSame(registry.of("test:of:%s"), registry.of("test:of:%s"));
+    }
+
+    @Test
+    void resolveId() {
+        Object[] args = {new User(1L, "a"), "vip"};
+
+        assertEquals(1L, KeyTemplate.compile("user:#{type}:#{user.id}", NAMES).resolveId(args));
+        assertEquals(args[0], KeyTemplate.compile("user:%s", null).resolveId(args));
+        assertEquals(args[0], KeyTemplate.compile("user:%05d", null).resolveId(args));
+        assertNull(KeyTemplate.compile("user:#{type}", NAMES).resolveId(args));
+        assertNull(KeyTemplate.compile("user:%s", null).resolveId(new Object[0]));
+    }
+}
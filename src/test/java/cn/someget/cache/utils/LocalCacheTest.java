@@ -0,0 +1,150 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地缓存分区: 每个prefix按注解上的配置单独一个caffeine, 容量和过期时间互不影响; 同一个分区配置冲突时报错
+ *
+ * @author agent
+ * @date 2026-10-18 03:30
+ */
+class LocalCacheTest {
+
+    private static final String REGION = "test:local:user:%s";
+
+    private static final long TIMEOUT = 5000L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    public static class LocalService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Cache(prefix = REGION, usingLocalCache = true, localExpire = 60L, localMaximumSize = 2L)
+        public User find(Long id) {
+            loads.incrementAndGet();
+            return new User(id, "db");
+        }
+
+        public int loads() {
+            return loads.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static LocalCache localCache;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), LocalService.class);
+        localCache = context.getBean(LocalCache.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void annotationRegistersBoundedRegion() throws InterruptedException {
+        LocalService service = context.getBean(LocalService.class);
+        service.find(1L);
+        int loads = service.loads();
+        // 命中本地缓存, 也不查redis
+        assertEquals(new User(1L, "db"), service.find(1L));
+        assertEquals(loads, service.loads());
+        assertNotNull(localCache.getIfPresent(REGION, String.format(REGION, 1L)));
+
+        for (long id = 2L; id <= 10L; id++) {
+            service.find(id);
+        }
+        // 分区最多2个key, 淘汰是异步的
+        List<String> keys = IntStream.rangeClosed(1, 10).mapToObj(id -> String.format(REGION, id)).collect(Collectors.toList());
+        assertTrue(CacheTestContext.await(() -> localCache.getAllPresent(REGION, keys).size() <= 2, TIMEOUT));
+    }
+
+    @Test
+    void regionsAreIsolated() throws InterruptedException {
+        localCache.register("test:local:short", new LocalCacheSpec(1L, 0L, 100L, 0L, CollectionWeigher.class));
+        localCache.register("test:local:long", new LocalCacheSpec(60L, 0L, 100L, 0L, CollectionWeigher.class));
+        localCache.put("test:local:short", "k", "short");
+        localCache.put("test:local:long", "k", "long");
+
+        // 同一个key在不同的分区里面互不影响
+        assertEquals("short", localCache.getIfPresent("test:local:short", "k"));
+        assertEquals("long", localCache.getIfPresent("test:local:long", "k"));
+        assertNull(localCache.getIfPresent("k"));
+
+        TimeUnit.MILLISECONDS.sleep(1200L);
+        assertNull(localCache.getIfPresent("test:local:short", "k"));
+        assertEquals("long", localCache.getIfPresent("test:local:long", "k"));
+
+        localCache.clear("test:local:long");
+        assertNull(localCache.getIfPresent("test:local:long", "k"));
+    }
+
+    @Test
+    void unregisteredRegionUsesDefault() {
+        localCache.put("test:local:unknown", "test:local:default", "value");
+
+        assertEquals("value", localCache.getIfPresent("test:local:default"));
+    }
+
+    @Test
+    void weightBoundsCollections() throws InterruptedException {
+        localCache.register("test:local:weight", new LocalCacheSpec(60L, 0L, 100L, 5L, CollectionWeigher.class));
+        localCache.put("test:local:weight", "small", Collections.singletonList(1));
+        localCache.put("test:local:weight", "big", Arrays.asList(1, 2, 3, 4, 5, 6));
+
+        // 大List的权重超过了整个分区, 放不下
+        assertTrue(CacheTestContext.await(() -> localCache.getIfPresent("test:local:weight", "big") == null, TIMEOUT));
+        assertEquals(6, new CollectionWeigher().weigh("big", Arrays.asList(1, 2, 3, 4, 5, 6)));
+        assertEquals(1, new CollectionWeigher().weigh("empty", Collections.emptyList()));
+    }
+
+    @Test
+    void conflictingSpecRejected() {
+        localCache.register("test:local:conflict", new LocalCacheSpec(60L, 0L, 100L, 0L, CollectionWeigher.class));
+        // 一样的配置可以重复注册
+        localCache.register("test:local:conflict", new LocalCacheSpec(60L, 0L, 100L, 0L, CollectionWeigher.class));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> localCache.register("test:local:conflict", new LocalCacheSpec(30L, 0L, 100L, 0L, CollectionWeigher.class)));
+    }
+}
@@ -0,0 +1,132 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cn.someget.cache.utils.RedisKey.VERSION_KEY_PREFIX;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * prefix的版本号: key带上版本号, 版本号加一之后旧的key都读不到; 别的节点过了refresh-interval之后看到新的版本号
+ *
+ * @author agent
+ * @date 2026-10-18 03:50
+ */
+class PrefixVersionsTest {
+
+    private static final String VERSIONED = "test:version:user:%s";
+
+    private static final String PLAIN = "test:version:plain:%s";
+
+    private static final long REFRESH_INTERVAL = 300L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private Integer version;
+    }
+
+    /**
+     * 两个节点共用一个计数, 每执行一次方法版本号加一
+     */
+    public static class VersionedService {
+
+        private static final AtomicInteger LOADS = new AtomicInteger();
+
+        @Cache(prefix = VERSIONED, versioned = true)
+        public User find(Long id) {
+            return new User(id, LOADS.incrementAndGet());
+        }
+
+        @Cache(prefix = PLAIN)
+        public User findPlain(Long id) {
+            return new User(id, LOADS.incrementAndGet());
+        }
+
+        public int loads() {
+            return LOADS.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext node1;
+
+    private static CacheTestContext node2;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        node1 = CacheTestContext.start(redisServer,
+                Collections.singletonMap("cache-anno.version.refresh-interval", String.valueOf(REFRESH_INTERVAL)), VersionedService.class);
+        node2 = CacheTestContext.start(redisServer,
+                Collections.singletonMap("cache-anno.version.refresh-interval", String.valueOf(REFRESH_INTERVAL)), VersionedService.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        node1.close();
+        node2.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void stampOnlyForVersionedPrefix() {
+        PrefixVersions prefixVersions = node1.getBean(PrefixVersions.class);
+
+        assertTrue(prefixVersions.isVersioned(VERSIONED));
+        assertTrue(prefixVersions.stamp(VERSIONED).startsWith(":v"));
+        assertEquals("", prefixVersions.stamp(PLAIN));
+
+        VersionedService service = node1.getBean(VersionedService.class);
+        service.findPlain(1L);
+        assertNotNull(node1.getBean(RedisRepository.class).getRaw(String.format(PLAIN, 1L)));
+    }
+
+    @Test
+    void bumpHidesOldKeys() throws InterruptedException {
+        VersionedService service1 = node1.getBean(VersionedService.class);
+        VersionedService service2 = node2.getBean(VersionedService.class);
+        PrefixVersions versions1 = node1.getBean(PrefixVersions.class);
+        RedisRepository redisRepository = node1.getBean(RedisRepository.class);
+
+        User loaded = service1.find(2L);
+        // 两个节点读的是同一个key
+        assertEquals(loaded, service2.find(2L));
+        assertNotNull(redisRepository.getRaw(String.format(VERSIONED, 2L) + versions1.stamp(VERSIONED)));
+        String oldStamp = versions1.stamp(VERSIONED);
+
+        node1.getBean(CacheInvalidator.class).evictAll(VERSIONED);
+        String newStamp = versions1.stamp(VERSIONED);
+        assertEquals(":v" + redisRepository.getLong(VERSION_KEY_PREFIX + VERSIONED, 0L), newStamp);
+
+        // 本节点马上读不到旧的key, 重新执行方法
+        User reloaded = service1.find(2L);
+        assertEquals(loaded.getVersion() + 1, reloaded.getVersion());
+        // 旧的key还在redis里面, 等着自己过期
+        assertNotNull(redisRepository.getRaw(String.format(VERSIONED, 2L) + oldStamp));
+
+        // 别的节点过了refresh-interval之后也用新的版本号
+        TimeUnit.MILLISECONDS.sleep(REFRESH_INTERVAL + 100L);
+        assertEquals(reloaded, service2.find(2L));
+        assertEquals(newStamp, node2.getBean(PrefixVersions.class).stamp(VERSIONED));
+    }
+}
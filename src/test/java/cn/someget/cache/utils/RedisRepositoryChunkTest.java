@@ -0,0 +1,97 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import com.github.fppt.jedismock.RedisServer;
+import com.github.fppt.jedismock.datastructures.Slice;
+import com.github.fppt.jedismock.operations.server.MockExecutor;
+import com.github.fppt.jedismock.server.ServiceOptions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 批量查询并行拆片: 每片的结果按位置拼回去, 卡住的片最多等cache-anno.redis.timeout, 超时当作没有命中
+ *
+ * @author agent
+ * @date 2026-10-18 01:20
+ */
+class RedisRepositoryChunkTest {
+
+    /**
+     * MGET这个key的时候redis卡住
+     */
+    private static final String SLOW = "test:chunk:slow";
+
+    private static final long STALL = 1500L;
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = RedisServer.newRedisServer(0, InetAddress.getLoopbackAddress())
+                .setOptions(ServiceOptions.withInterceptor((state, command, params) -> {
+                    if ("mget".equalsIgnoreCase(command) && params.contains(Slice.create(SLOW))) {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(STALL);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return MockExecutor.proceed(state, command, params);
+                }));
+        redisServer.start();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cache-anno.redis.chunk-size", "1");
+        properties.put("cache-anno.redis.parallel-chunks", "true");
+        properties.put("cache-anno.redis.timeout", "300");
+        context = CacheTestContext.start(redisServer, properties);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void parallelSlicesAreMerged() {
+        redisRepository.setRaw("test:chunk:a", new byte[]{'a'});
+        redisRepository.setRaw("test:chunk:b", new byte[]{'b'});
+        redisRepository.setRaw("test:chunk:c", new byte[]{'c'});
+
+        Map<String, byte[]> result = redisRepository.multiGetBytes(Arrays.asList("test:chunk:a", "test:chunk:b", "test:chunk:c"));
+        assertEquals(3, result.size());
+        assertEquals('b', result.get("test:chunk:b")[0]);
+    }
+
+    @Test
+    void stalledSliceTimesOut() {
+        redisRepository.setRaw(SLOW, new byte[]{'s'});
+        List<String> keys = Arrays.asList("test:chunk:d", SLOW);
+
+        long start = System.nanoTime();
+        Map<String, byte[]> result = redisRepository.multiGetBytes(keys);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 没有等到卡住的片返回, 卡住的key当作没有命中
+        assertTrue(waited < STALL, "waited " + waited + "ms");
+        assertFalse(result.containsKey(SLOW));
+    }
+}
@@ -0,0 +1,135 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.service.CacheService;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.Data;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cn.someget.cache.utils.RedisKey.EMPTY_COLLECTION;
+import static cn.someget.cache.utils.RedisKey.EMPTY_COLLECTION_HEADER;
+import static cn.someget.cache.utils.RedisKey.EMPTY_OBJECT;
+import static cn.someget.cache.utils.RedisKey.EMPTY_OBJECT_HEADER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 空缓存标记: 写入保留的一个字节, 老版本写的{}和[]按配置兼容, 对外命中空缓存返回null
+ *
+ * @author agent
+ * @date 2026-10-18 00:40
+ */
+class RedisRepositoryEmptyMarkerTest {
+
+    /**
+     * 序列化出来刚好是{}的对象
+     */
+    @Data
+    public static class Empty {
+    }
+
+    /**
+     * 记录方法执行的次数
+     */
+    public static class EmptyService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Cache(prefix = "test:marker:empty:%s", missExpire = 60L)
+        public Empty find(Long id) {
+            loads.incrementAndGet();
+            return new Empty();
+        }
+
+        public int loads() {
+            return loads.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), EmptyService.class);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void markersAreReservedBytes() {
+        redisRepository.set("test:marker:a", 60L, EMPTY_OBJECT);
+        redisRepository.set("test:marker:b", 60L, EMPTY_COLLECTION);
+
+        assertArrayEquals(new byte[]{EMPTY_OBJECT_HEADER}, redisRepository.getRaw("test:marker:a"));
+        assertArrayEquals(new byte[]{EMPTY_COLLECTION_HEADER}, redisRepository.getRaw("test:marker:b"));
+        assertTrue(RedisRepository.isEmptyObject(redisRepository.getRaw("test:marker:a")));
+        assertTrue(RedisRepository.isEmptyCollection(redisRepository.getRaw("test:marker:b")));
+    }
+
+    @Test
+    void negativeHitReturnsNull() {
+        CacheService redisCacheService = context.getBean("defaultRedisCacheService", CacheService.class);
+        redisRepository.set("test:marker:c", 60L, EMPTY_OBJECT);
+        redisRepository.setRaw("test:marker:d", EMPTY_OBJECT.getBytes(StandardCharsets.UTF_8));
+
+        // 新老标记都不会反序列化成字段全是null的对象
+        assertNull(redisCacheService.getObjectFromCache("test:marker:c", Empty.class));
+        assertNull(redisCacheService.getObjectFromCache("test:marker:d", Empty.class));
+        assertTrue(redisCacheService.getObjectFromCache(Arrays.asList("c", "d"), Empty.class, "test:marker:%s").isEmpty());
+    }
+
+    @Test
+    void legacyMarkersAreStillNegative() {
+        EmptyService service = context.getBean(EmptyService.class);
+        redisRepository.setRaw("test:marker:empty:1", EMPTY_OBJECT.getBytes(StandardCharsets.UTF_8));
+        redisRepository.setRaw("test:marker:e", EMPTY_COLLECTION.getBytes(StandardCharsets.UTF_8));
+
+        int loads = service.loads();
+        assertNull(service.find(1L));
+        assertEquals(loads, service.loads());
+        assertTrue(RedisRepository.isEmptyCollection(redisRepository.getRaw("test:marker:e")));
+    }
+
+    @Test
+    void legacyOffCachesEmptyObject() throws IOException {
+        RedisServer otherRedis = CacheTestContext.startRedis();
+        CacheTestContext other = CacheTestContext.start(otherRedis,
+                Collections.singletonMap("cache-anno.empty-marker.legacy", "false"), EmptyService.class);
+        try {
+            EmptyService service = other.getBean(EmptyService.class);
+            assertNotNull(service.find(2L));
+            // 值刚好是{}, 关掉兼容之后照常命中, 不当作空缓存
+            assertNotNull(service.find(2L));
+            assertEquals(1, service.loads());
+            assertFalse(RedisRepository.isEmptyObject(EMPTY_OBJECT.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            other.close();
+            otherRedis.stop();
+            // 兼容开关是静态的, 还原成默认值
+            redisRepository.setLegacyEmptyMarker(true);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cn.someget.cache.utils.RedisKey.EMPTY_COLLECTION;
+import static cn.someget.cache.utils.RedisKey.LOCK_SUFFIX;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分布式锁: 加锁, 只释放自己的锁, 锁过期, redis异常的加锁结果, 以及@Cache(distributedLock = true)没拿到锁时的等待和兜底
+ *
+ * @author agent
+ * @date 2026-10-17 21:41
+ */
+class RedisRepositoryLockTest {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    /**
+     * 有@Cache(distributedLock = true)方法的服务, 记录方法执行的次数
+     */
+    public static class LockedService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Cache(prefix = "test:lock:user:%s", distributedLock = true)
+        public User find(Long id) {
+            loads.incrementAndGet();
+            return new User(id, "loaded");
+        }
+
+        @Cache(prefix = "test:lock:friends:%s", missExpire = 60L, distributedLock = true)
+        public List<User> friends(Long id) {
+            loads.incrementAndGet();
+            return Collections.singletonList(new User(id, "loaded"));
+        }
+
+        public int loads() {
+            return loads.get();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static RedisRepository redisRepository;
+
+    /**
+     * 没拿到锁时最多等多久, 单位毫秒
+     */
+    private static final long LOCK_WAIT = 1000L;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cache-anno.lock.wait", String.valueOf(LOCK_WAIT));
+        context = CacheTestContext.start(redisServer, properties, LockedService.class);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void onlyOneHolderAtATime() {
+        assertTrue(redisRepository.tryLock("test:lock:a", "owner", 10_000L));
+        assertFalse(redisRepository.tryLock("test:lock:a", "other", 10_000L));
+    }
+
+    @Test
+    void unlockOnlyReleasesOwnLock() {
+        assertTrue(redisRepository.tryLock("test:lock:b", "owner", 10_000L));
+        redisRepository.unlock("test:lock:b", "other");
+        assertFalse(redisRepository.tryLock("test:lock:b", "other", 10_000L));
+
+        redisRepository.unlock("test:lock:b", "owner");
+        assertTrue(redisRepository.tryLock("test:lock:b", "other", 10_000L));
+    }
+
+    @Test
+    void lockExpiresAfterLease() throws InterruptedException {
+        assertTrue(redisRepository.tryLock("test:lock:c", "owner", 200L));
+        TimeUnit.MILLISECONDS.sleep(500L);
+        assertTrue(redisRepository.tryLock("test:lock:c", "other", 10_000L));
+    }
+
+    @Test
+    void redisErrorIsReported() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(InetAddress.getLoopbackAddress().getHostAddress(), port));
+        connectionFactory.afterPropertiesSet();
+        try {
+            RedisTemplate<String, String> redisTemplate = new RedisTemplate<>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            RedisRepository unreachable = new RedisRepository();
+            unreachable.setRedisTemplate(redisTemplate);
+            redisTemplate.afterPropertiesSet();
+
+            assertEquals(RedisRepository.LockResult.ERROR, unreachable.lock("test:lock:d", "owner", 10_000L));
+            assertFalse(unreachable.tryLock("test:lock:d", "owner", 10_000L));
+            assertFalse(unreachable.isLocked("test:lock:d"));
+            // 释放失败也不抛出去
+            unreachable.unlock("test:lock:d", "owner");
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    void waiterReadsWhatTheHolderCached() throws Exception {
+        LockedService service = context.getBean(LockedService.class);
+        int before = service.loads();
+        String key = "test:lock:user:1";
+        assertTrue(redisRepository.tryLock(key + LOCK_SUFFIX, "other-node", 10_000L));
+
+        CompletableFuture<User> result = CompletableFuture.supplyAsync(() -> service.find(1L));
+        TimeUnit.MILLISECONDS.sleep(300L);
+        assertFalse(result.isDone());
+        // 拿到锁的节点加载完写入缓存
+        redisRepository.set(key, 60L, new User(1L, "from-other-node"));
+
+        assertEquals(new User(1L, "from-other-node"), result.get(LOCK_WAIT, TimeUnit.MILLISECONDS));
+        assertEquals(before, service.loads());
+    }
+
+    @Test
+    void waiterLoadsBySelfAfterWait() {
+        LockedService service = context.getBean(LockedService.class);
+        int before = service.loads();
+        String key = "test:lock:user:2";
+        assertTrue(redisRepository.tryLock(key + LOCK_SUFFIX, "other-node", 60_000L));
+
+        long start = System.currentTimeMillis();
+        assertEquals(new User(2L, "loaded"), service.find(2L));
+        assertTrue(System.currentTimeMillis() - start >= LOCK_WAIT);
+        assertEquals(before + 1, service.loads());
+        // 自己加载的结果也写入了缓存
+        assertEquals(new User(2L, "loaded"), service.find(2L));
+        assertEquals(before + 1, service.loads());
+    }
+
+    @Test
+    void negativeResultEndsWait() throws Exception {
+        LockedService service = context.getBean(LockedService.class);
+        int before = service.loads();
+        String key = "test:lock:friends:3";
+        assertTrue(redisRepository.tryLock(key + LOCK_SUFFIX, "other-node", 60_000L));
+
+        CompletableFuture<List<User>> result = CompletableFuture.supplyAsync(() -> service.friends(3L));
+        TimeUnit.MILLISECONDS.sleep(300L);
+        assertFalse(result.isDone());
+        // 拿到锁的节点查出来是空的, 写了空缓存
+        redisRepository.set(key, 60L, EMPTY_COLLECTION);
+
+        assertTrue(result.get(LOCK_WAIT / 2, TimeUnit.MILLISECONDS).isEmpty());
+        assertEquals(before, service.loads());
+        // 空缓存也直接命中, 不会再执行方法
+        assertTrue(service.friends(3L).isEmpty());
+        assertEquals(before, service.loads());
+    }
+
+    @Test
+    void releasedLockWithoutCacheEndsWait() throws Exception {
+        LockedService service = context.getBean(LockedService.class);
+        int before = service.loads();
+        String key = "test:lock:user:4";
+        assertTrue(redisRepository.tryLock(key + LOCK_SUFFIX, "other-node", 60_000L));
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<User> result = CompletableFuture.supplyAsync(() -> service.find(4L));
+        TimeUnit.MILLISECONDS.sleep(200L);
+        // 拿到锁的节点没有写缓存就释放了锁
+        redisRepository.unlock(key + LOCK_SUFFIX, "other-node");
+
+        assertEquals(new User(4L, "loaded"), result.get(LOCK_WAIT, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start < LOCK_WAIT);
+        assertEquals(before + 1, service.loads());
+    }
+}
@@ -0,0 +1,141 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import com.github.fppt.jedismock.RedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static cn.someget.cache.utils.RedisKey.REFRESH_HEADER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 逻辑过期时间的头: 写入带头, 读出来去掉头, 是否过期只看redis里面存的值自己带的头, 坏掉的头
+ *
+ * @author agent
+ * @date 2026-10-17 21:49
+ */
+class RedisRepositoryRefreshTest {
+
+    private static final byte[] VALUE = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap());
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void headerRoundTrip() {
+        redisRepository.set("test:refresh:a", 60L, Collections.singletonMap("id", 1), 30L);
+
+        byte[] raw = redisRepository.getRaw("test:refresh:a");
+        assertEquals(REFRESH_HEADER, raw[0]);
+        assertArrayEquals(VALUE, redisRepository.getBytes("test:refresh:a"));
+        assertFalse(redisRepository.isStale("test:refresh:a"));
+    }
+
+    @Test
+    void withoutRefreshAheadNoHeader() {
+        redisRepository.set("test:refresh:b", 60L, Collections.singletonMap("id", 1));
+
+        assertArrayEquals(VALUE, redisRepository.getRaw("test:refresh:b"));
+        assertArrayEquals(VALUE, redisRepository.getBytes("test:refresh:b"));
+        assertFalse(redisRepository.isStale("test:refresh:b"));
+    }
+
+    @Test
+    void expiredHeaderIsStale() {
+        redisRepository.setRaw("test:refresh:c", withHeader(System.currentTimeMillis() - 1000L));
+
+        assertArrayEquals(VALUE, redisRepository.getBytes("test:refresh:c"));
+        assertTrue(redisRepository.isStale("test:refresh:c"));
+    }
+
+    @Test
+    void staleFollowsStoredValue() {
+        long refreshAt = System.currentTimeMillis() - 1000L;
+        redisRepository.setRaw("test:refresh:d", withHeader(refreshAt));
+        byte[] stored = redisRepository.getStored("test:refresh:d");
+        assertEquals(refreshAt, RedisRepository.refreshAt(stored));
+        assertArrayEquals(VALUE, RedisRepository.strip(stored));
+        assertTrue(redisRepository.isStale("test:refresh:d"));
+
+        // 不带逻辑过期时间覆盖之后, 不管这个节点之前读到过什么都不再当作过期
+        redisRepository.set("test:refresh:d", 60L, Collections.singletonMap("id", 1));
+        assertEquals(0L, RedisRepository.refreshAt(redisRepository.getStored("test:refresh:d")));
+        assertFalse(redisRepository.isStale("test:refresh:d"));
+
+        // 别的节点直接写了过期的值, 这个节点没有读过也能判断出来
+        redisRepository.setRaw("test:refresh:d", withHeader(refreshAt));
+        assertTrue(redisRepository.isStale("test:refresh:d"));
+    }
+
+    @Test
+    void multiGetStripsHeader() {
+        long refreshAt = System.currentTimeMillis() - 1000L;
+        redisRepository.setRaw("test:refresh:e", withHeader(refreshAt));
+        redisRepository.setRaw("test:refresh:f", VALUE);
+
+        Map<String, byte[]> result = redisRepository.multiGetBytes(Arrays.asList("test:refresh:e", "test:refresh:f"));
+        assertArrayEquals(VALUE, result.get("test:refresh:e"));
+        assertArrayEquals(VALUE, result.get("test:refresh:f"));
+
+        Map<String, byte[]> stored = redisRepository.multiGetStored(Arrays.asList("test:refresh:e", "test:refresh:f"));
+        assertEquals(refreshAt, RedisRepository.refreshAt(stored.get("test:refresh:e")));
+        assertEquals(0L, RedisRepository.refreshAt(stored.get("test:refresh:f")));
+        assertTrue(redisRepository.isStale("test:refresh:e"));
+        assertFalse(redisRepository.isStale("test:refresh:f"));
+    }
+
+    @Test
+    void unclosedHeaderIsKept() {
+        byte[] value = concat(new byte[]{REFRESH_HEADER}, "123".getBytes(StandardCharsets.US_ASCII));
+        redisRepository.setRaw("test:refresh:g", value);
+
+        assertArrayEquals(value, redisRepository.getBytes("test:refresh:g"));
+        assertFalse(redisRepository.isStale("test:refresh:g"));
+    }
+
+    @Test
+    void illegalTimeIsNotStale() {
+        byte[] header = concat(new byte[]{REFRESH_HEADER}, "abc".getBytes(StandardCharsets.US_ASCII));
+        redisRepository.setRaw("test:refresh:h", concat(concat(header, new byte[]{REFRESH_HEADER}), VALUE));
+        assertArrayEquals(VALUE, redisRepository.getBytes("test:refresh:h"));
+        assertFalse(redisRepository.isStale("test:refresh:h"));
+    }
+
+    private static byte[] withHeader(long refreshAt) {
+        byte[] time = Long.toString(refreshAt).getBytes(StandardCharsets.US_ASCII);
+        byte[] header = concat(concat(new byte[]{REFRESH_HEADER}, time), new byte[]{REFRESH_HEADER});
+        return concat(header, VALUE);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+package cn.someget.cache.utils;
+
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.anno.Cache;
+import cn.someget.cache.anno.CacheEvict;
+import com.github.fppt.jedismock.RedisServer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 请求级缓存: 打开之后同一个key只查一次缓存容器, 批量查询只查没记住的id; 关闭之后失效; 删除缓存时同时删掉记住的值
+ *
+ * @author agent
+ * @date 2026-10-18 04:50
+ */
+class RequestCacheTest {
+
+    private static final String USER = "test:request:user:%s";
+
+    private static final String STRICT = "test:request:strict:%s";
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+
+        private Long id;
+
+        private String name;
+    }
+
+    /**
+     * 只返回小于100的id
+     */
+    public static class RequestService {
+
+        private final List<String> calls = new ArrayList<>();
+
+        @Cache(prefix = USER, missExpire = 60L)
+        public Map<Long, User> find(List<Long> ids) {
+            calls.add("find:" + ids);
+            Map<Long, User> result = new HashMap<>();
+            ids.stream().filter(id -> id < 100L).forEach(id -> result.put(id, new User(id, "db")));
+            return result;
+        }
+
+        @Cache(prefix = STRICT)
+        public Map<Long, User> findStrict(List<Long> ids) {
+            calls.add("strict:" + ids);
+            Map<Long, User> result = new HashMap<>();
+            ids.stream().filter(id -> id < 100L).forEach(id -> result.put(id, new User(id, "db")));
+            return result;
+        }
+
+        @Cache(prefix = USER)
+        public User findOne(Long id) {
+            calls.add("one:" + id);
+            return new User(id, "db");
+        }
+
+        @CacheEvict(prefix = USER)
+        public void delete(Long id) {
+        }
+
+        public String lastCall() {
+            return calls.isEmpty() ? null : calls.get(calls.size() - 1);
+        }
+
+        public int calls() {
+            return calls.size();
+        }
+    }
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static RequestService service;
+
+    private static RequestCache requestCache;
+
+    private static RedisRepository redisRepository;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap(), RequestService.class);
+        service = context.getBean(RequestService.class);
+        requestCache = context.getBean(RequestCache.class);
+        redisRepository = context.getBean(RedisRepository.class);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    /**
+     * 直接删掉redis里面的缓存, 不经过请求级缓存
+     */
+    private static void dropRedis(String prefix, Long... ids) {
+        redisRepository.delete(Arrays.stream(ids).map(id -> String.format(prefix, id)).collect(Collectors.toList()));
+    }
+
+    @Test
+    void partialOverlapLoadsOnlyNewIds() {
+        try (RequestCache.Scope ignored = requestCache.open()) {
+            Map<Long, User> first = service.find(Arrays.asList(1L, 2L));
+            dropRedis(USER, 1L, 2L);
+
+            Map<Long, User> second = service.find(Arrays.asList(2L, 3L));
+            assertEquals("find:[3]", service.lastCall());
+            assertEquals(2, second.size());
+            // 拿到的是同一个对象, 没有再反序列化
+            assertSame(first.get(2L), second.get(2L));
+
+            // 单个查询和批量查询是同一个prefix, 一样命中
+            int calls = service.calls();
+            assertEquals(new User(1L, "db"), service.findOne(1L));
+            assertEquals(calls, service.calls());
+        }
+    }
+
+    @Test
+    void missesFollowMissExpire() {
+        try (RequestCache.Scope ignored = requestCache.open()) {
+            // 开启了空缓存的记住没查到的id
+            service.find(Arrays.asList(4L, 104L));
+            dropRedis(USER, 4L, 104L);
+            int calls = service.calls();
+            assertEquals(Collections.singleton(4L), service.find(Arrays.asList(4L, 104L)).keySet());
+            assertEquals(calls, service.calls());
+
+            // 没有开启的每次都重新查
+            service.findStrict(Arrays.asList(5L, 105L));
+            assertEquals(Collections.singleton(5L), service.findStrict(Arrays.asList(5L, 105L)).keySet());
+            assertEquals("strict:[105]", service.lastCall());
+        }
+    }
+
+    @Test
+    void scopeEndsOnClose() {
+        try (RequestCache.Scope ignored = requestCache.open()) {
+            RequestCache.Memo memo = requestCache.current();
+            // 嵌套打开的用外面的
+            try (RequestCache.Scope nested = requestCache.open()) {
+                assertSame(memo, requestCache.current());
+            }
+            assertSame(memo, requestCache.current());
+            service.find(Collections.singletonList(6L));
+            assertNotNull(memo.get(String.format(USER, 6L)));
+        }
+        assertNull(requestCache.current());
+
+        // 关闭之后不再记住, 每次都查缓存容器
+        dropRedis(USER, 6L);
+        service.find(Collections.singletonList(6L));
+        assertEquals("find:[6]", service.lastCall());
+    }
+
+    @Test
+    void evictRemovesMemoized() {
+        try (RequestCache.Scope ignored = requestCache.open()) {
+            service.findOne(7L);
+            service.delete(7L);
+
+            int calls = service.calls();
+            service.findOne(7L);
+            assertEquals(calls + 1, service.calls());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package cn.someget.cache.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jvm内的未命中合并: 并发的同一个key只加载一次, 异常传给等待的线程, 批量登记
+ *
+ * @author agent
+ * @date 2026-10-17 22:04
+ */
+class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentLoadsCoalesce() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<Object> first = executor.submit(() -> execute(singleFlight, "user:1", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "loaded";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<?>[] waiters = new Future<?>[THREADS - 1];
+            for (int i = 0; i < waiters.length; i++) {
+                waiters[i] = executor.submit(() -> execute(singleFlight, "user:1", () -> {
+                    loads.incrementAndGet();
+                    return "again";
+                }));
+            }
+            TimeUnit.MILLISECONDS.sleep(100L);
+            release.countDown();
+
+            assertEquals("loaded", first.get(5, TimeUnit.SECONDS));
+            for (Future<?> waiter : waiters) {
+                assertEquals("loaded", waiter.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void finishedLoadIsNotShared() throws Throwable {
+        SingleFlight singleFlight = new SingleFlight();
+
+        assertEquals("a", singleFlight.execute("user:2", () -> "a"));
+        assertEquals("b", singleFlight.execute("user:2", () -> "b"));
+    }
+
+    @Test
+    void exceptionPropagates() throws Throwable {
+        SingleFlight singleFlight = new SingleFlight();
+        IllegalStateException error = new IllegalStateException("db down");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> first = executor.submit(() -> execute(singleFlight, "user:3", () -> {
+                started.countDown();
+                release.await();
+                throw error;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Object> waiter = new CompletableFuture<>();
+            executor.submit(() -> {
+                try {
+                    waiter.complete(singleFlight.execute("user:3", () -> "again"));
+                } catch (Throwable e) {
+                    waiter.completeExceptionally(e);
+                }
+            });
+            TimeUnit.MILLISECONDS.sleep(100L);
+            release.countDown();
+
+            assertSame(error, assertThrows(IllegalStateException.class, () -> SingleFlight.await(waiter)));
+            assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            // 失败之后不会留在加载中
+            assertEquals("retry", singleFlight.execute("user:3", () -> "retry"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void joinAndComplete() throws Throwable {
+        SingleFlight singleFlight = new SingleFlight();
+        Map<String, CompletableFuture<Object>> owned = new HashMap<>();
+
+        assertTrue(singleFlight.join(Arrays.asList("user:4", "user:5", "user:4"), owned).isEmpty());
+        assertEquals(2, owned.size());
+
+        Map<String, CompletableFuture<Object>> other = new HashMap<>();
+        Map<String, CompletableFuture<Object>> inFlights = singleFlight.join(Arrays.asList("user:5", "user:6"), other);
+        assertEquals(Collections.singleton("user:5"), inFlights.keySet());
+        assertEquals(Collections.singleton("user:6"), other.keySet());
+
+        singleFlight.complete(owned, Collections.singletonMap("user:5", "five"));
+        assertEquals("five", SingleFlight.await(inFlights.get("user:5")));
+        assertNull(SingleFlight.await(owned.get("user:4")));
+        singleFlight.complete(other, Collections.emptyMap());
+
+        // 完成之后可以重新登记
+        Map<String, CompletableFuture<Object>> again = new HashMap<>();
+        assertTrue(singleFlight.join(Arrays.asList("user:4", "user:5", "user:6"), again).isEmpty());
+        assertEquals(3, again.size());
+    }
+
+    @Test
+    void joinAndFail() {
+        SingleFlight singleFlight = new SingleFlight();
+        Map<String, CompletableFuture<Object>> owned = new HashMap<>();
+        singleFlight.join(Collections.singletonList("user:7"), owned);
+        Map<String, CompletableFuture<Object>> inFlights = singleFlight.join(Collections.singletonList("user:7"), new HashMap<>());
+
+        IllegalStateException error = new IllegalStateException("db down");
+        singleFlight.fail(owned, error);
+        assertSame(error, assertThrows(IllegalStateException.class, () -> SingleFlight.await(inFlights.get("user:7"))));
+        assertTrue(singleFlight.join(Collections.singletonList("user:7"), new HashMap<>()).isEmpty());
+    }
+
+    private static Object execute(SingleFlight singleFlight, String key, SingleFlight.Loader loader) throws Exception {
+        try {
+            return singleFlight.execute(key, loader);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
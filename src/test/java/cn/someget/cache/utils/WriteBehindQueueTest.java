@@ -0,0 +1,110 @@
+package cn.someget.cache.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import cn.someget.cache.CacheTestContext;
+import cn.someget.cache.codec.CacheCodec;
+import cn.someget.cache.codec.CacheCodecRegistry;
+import com.github.fppt.jedismock.RedisServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 异步写入的取消: 删除或者更新之前取消的旧值不会再写入redis, 取消之后放进来的新值照常写入
+ * 不启动后台线程, 放完之后在当前线程里面把队列写完, 结果不受线程调度影响
+ *
+ * @author agent
+ * @date 2026-10-17 22:24
+ */
+class WriteBehindQueueTest {
+
+    private static RedisServer redisServer;
+
+    private static CacheTestContext context;
+
+    private static RedisRepository redisRepository;
+
+    private static CacheCodec codec;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redisServer = CacheTestContext.startRedis();
+        context = CacheTestContext.start(redisServer, Collections.emptyMap());
+        redisRepository = context.getBean(RedisRepository.class);
+        codec = context.getBean(CacheCodecRegistry.class).getDefault();
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        context.close();
+        redisServer.stop();
+    }
+
+    @Test
+    void cancelledValueIsNotWritten() {
+        WriteBehindQueue queue = queue();
+        queue.offer("test:write-behind:a", 60L, Collections.singletonMap("v", 1), 0L, codec, ExpireJitter.NONE);
+        queue.offer("test:write-behind:b", 60L, Collections.singletonMap("v", 1), 0L, codec, ExpireJitter.NONE);
+
+        queue.cancel(Collections.singletonList("test:write-behind:a"));
+        assertEquals(1, queue.pending());
+        assertEquals(1L, queue.cancelledCount());
+
+        drain(queue);
+        assertNull(redisRepository.get("test:write-behind:a"));
+        assertEquals("{\"v\":1}", redisRepository.get("test:write-behind:b"));
+    }
+
+    @Test
+    void offerAfterCancelIsWritten() {
+        WriteBehindQueue queue = queue();
+        queue.offerAll(Collections.singletonMap("test:write-behind:c", Collections.singletonMap("v", 1)),
+                60L, 0L, codec, ExpireJitter.NONE);
+        queue.cancel(Arrays.asList("test:write-behind:c", "test:write-behind:d"));
+        queue.offer("test:write-behind:c", 60L, Collections.singletonMap("v", 2), 0L, codec, ExpireJitter.NONE);
+
+        drain(queue);
+        assertEquals("{\"v\":2}", redisRepository.get("test:write-behind:c"));
+        assertNull(redisRepository.get("test:write-behind:d"));
+    }
+
+    @Test
+    void cancelWithoutWriteBehind() {
+        WriteBehindQueue queue = queue();
+        queue.cancel(Collections.singletonList("test:write-behind:e"));
+
+        assertEquals(0L, queue.cancelledCount());
+        queue.offer("test:write-behind:e", 60L, Collections.singletonMap("v", 1), 0L, codec, ExpireJitter.NONE);
+        drain(queue);
+        assertEquals("{\"v\":1}", redisRepository.get("test:write-behind:e"));
+    }
+
+    /**
+     * 没有启动后台线程的队列
+     */
+    private static WriteBehindQueue queue() {
+        WriteBehindQueue queue = new WriteBehindQueue();
+        ReflectUtil.setFieldValue(queue, "redisRepository", redisRepository);
+        ReflectUtil.setFieldValue(queue, "batchSize", 16);
+        ReflectUtil.setFieldValue(queue, "offerTimeout", 10L);
+        ReflectUtil.setFieldValue(queue, "queue", new ArrayBlockingQueue<>(16));
+        ReflectUtil.setFieldValue(queue, "running", true);
+        return queue;
+    }
+
+    /**
+     * 在当前线程里面把队列写完
+     */
+    private static void drain(WriteBehindQueue queue) {
+        ReflectUtil.setFieldValue(queue, "running", false);
+        ReflectUtil.invoke(queue, "drainLoop");
+    }
+}